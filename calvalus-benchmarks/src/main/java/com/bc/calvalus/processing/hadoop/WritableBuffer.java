@@ -0,0 +1,46 @@
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+
+import java.io.IOException;
+
+/**
+ * Serialises writables into a reused buffer and reads them back, like the map output buffer of a task.
+ */
+public class WritableBuffer {
+
+    private final DataOutputBuffer out = new DataOutputBuffer();
+    private final DataInputBuffer in = new DataInputBuffer();
+
+    /**
+     * @return the number of bytes written
+     */
+    public int write(Writable... writables) throws IOException {
+        out.reset();
+        for (Writable writable : writables) {
+            writable.write(out);
+        }
+        return out.getLength();
+    }
+
+    /**
+     * Reads the records last written into the given instance, one after the other.
+     */
+    public <T extends Writable> T read(T writable, int count) throws IOException {
+        in.reset(out.getData(), out.getLength());
+        for (int i = 0; i < count; i++) {
+            writable.readFields(in);
+        }
+        return writable;
+    }
+
+    public byte[] getData() {
+        return out.getData();
+    }
+
+    public int getLength() {
+        return out.getLength();
+    }
+}
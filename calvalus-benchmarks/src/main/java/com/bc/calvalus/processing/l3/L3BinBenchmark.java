@@ -0,0 +1,80 @@
+package com.bc.calvalus.processing.l3;
+
+import com.bc.calvalus.processing.hadoop.WritableBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialisation of the spatial bins emitted by the L3 mappers and of the temporal bins written by the reducers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class L3BinBenchmark {
+
+    private static final int NUM_BINS = 1000;
+
+    @Param({"6", "24"})
+    public int numFeatures;
+
+    private L3SpatialBin[] spatialBins;
+    private L3TemporalBin[] temporalBins;
+    private WritableBuffer spatialBuffer;
+    private WritableBuffer temporalBuffer;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        spatialBins = new L3SpatialBin[NUM_BINS];
+        temporalBins = new L3TemporalBin[NUM_BINS];
+        for (int i = 0; i < NUM_BINS; i++) {
+            spatialBins[i] = new L3SpatialBin(i, numFeatures, 0);
+            spatialBins[i].setNumObs(1 + random.nextInt(9));
+            fill(spatialBins[i].getFeatureValues(), random);
+            temporalBins[i] = new L3TemporalBin(i, numFeatures);
+            temporalBins[i].setNumObs(1 + random.nextInt(90));
+            temporalBins[i].setNumPasses(1 + random.nextInt(30));
+            fill(temporalBins[i].getFeatureValues(), random);
+        }
+        spatialBuffer = new WritableBuffer();
+        spatialBuffer.write(spatialBins);
+        temporalBuffer = new WritableBuffer();
+        temporalBuffer.write(temporalBins);
+    }
+
+    @Benchmark
+    public int writeSpatialBins() throws IOException {
+        return spatialBuffer.write(spatialBins);
+    }
+
+    @Benchmark
+    public L3SpatialBin readSpatialBins() throws IOException {
+        return spatialBuffer.read(new L3SpatialBin(), NUM_BINS);
+    }
+
+    @Benchmark
+    public int writeTemporalBins() throws IOException {
+        return temporalBuffer.write(temporalBins);
+    }
+
+    @Benchmark
+    public L3TemporalBin readTemporalBins() throws IOException {
+        return temporalBuffer.read(new L3TemporalBin(), NUM_BINS);
+    }
+
+    private static void fill(float[] featureValues, Random random) {
+        for (int i = 0; i < featureValues.length; i++) {
+            featureValues[i] = (float) random.nextGaussian();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.bc.calvalus.processing.ma;
+
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of the pixel positions of reference records in a product, as done by the MA mappers.
+ * Half of the records are outside of the product or its time window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PixelPosProviderBenchmark {
+
+    private static final int NUM_RECORDS = 10000;
+
+    private PixelPosProvider spatialProvider;
+    private PixelPosProvider temporalProvider;
+    private List<Record> records;
+
+    @Setup
+    public void setUp() throws Exception {
+        Product product = new Product("l2", "synthetic", 1000, 1000);
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, 1000, 1000, 0.0, 50.0, 0.01, 0.01, 0.0, 0.0));
+        ProductData.UTC startTime = ProductData.UTC.parse("01-JUN-2017 10:00:00");
+        ProductData.UTC endTime = ProductData.UTC.parse("01-JUN-2017 10:05:00");
+        product.setStartTime(startTime);
+        product.setEndTime(endTime);
+
+        spatialProvider = new PixelPosProvider(product, null, null, false);
+        temporalProvider = new PixelPosProvider(product, PixelTimeProvider.create(startTime, endTime, 1000), "3", true);
+
+        Random random = new Random(42);
+        records = new ArrayList<>(NUM_RECORDS);
+        long time = startTime.getAsDate().getTime();
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            GeoPos location = new GeoPos(50.0 - random.nextDouble() * 20.0, random.nextDouble() * 20.0);
+            Date recordTime = new Date(time + (long) (random.nextGaussian() * 3 * 3600000L));
+            Object[] attributeValues = {location.lat, location.lon, recordTime, "site_" + i};
+            records.add(new DefaultRecord(i, location, recordTime, attributeValues));
+        }
+    }
+
+    @Benchmark
+    public int lookupPixelPositions() {
+        return spatialProvider.computePixelPosRecords(records).size();
+    }
+
+    @Benchmark
+    public int lookupPixelPositionsInTimeWindow() {
+        return temporalProvider.computePixelPosRecords(records).size();
+    }
+}
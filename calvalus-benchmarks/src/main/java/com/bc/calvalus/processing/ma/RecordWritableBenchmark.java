@@ -0,0 +1,64 @@
+package com.bc.calvalus.processing.ma;
+
+import com.bc.calvalus.processing.hadoop.WritableBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialisation of the match-up records emitted by the MA mappers.
+ * Each record has the reference attributes and an aggregated 5x5 macro pixel per band.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecordWritableBenchmark {
+
+    private static final int NUM_RECORDS = 100;
+    private static final int NUM_BANDS = 15;
+
+    private RecordWritable[] records;
+    private WritableBuffer buffer;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        records = new RecordWritable[NUM_RECORDS];
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            Object[] attributeValues = new Object[4 + NUM_BANDS];
+            attributeValues[0] = "site_" + i;
+            attributeValues[1] = (float) (random.nextDouble() * 180 - 90);
+            attributeValues[2] = (float) (random.nextDouble() * 360 - 180);
+            attributeValues[3] = new Date(1483228800000L + i * 3600000L);
+            for (int b = 0; b < NUM_BANDS; b++) {
+                float[] data = new float[25];
+                for (int p = 0; p < data.length; p++) {
+                    data[p] = (float) random.nextGaussian();
+                }
+                attributeValues[4 + b] = new AggregatedNumber(25, 25, 0, -1.0, 1.0, 0.0, 0.5, data);
+            }
+            records[i] = new RecordWritable(attributeValues, new Object[]{""});
+        }
+        buffer = new WritableBuffer();
+        buffer.write(records);
+    }
+
+    @Benchmark
+    public int writeRecords() throws IOException {
+        return buffer.write(records);
+    }
+
+    @Benchmark
+    public RecordWritable readRecords() throws IOException {
+        return buffer.read(new RecordWritable(), NUM_RECORDS);
+    }
+}
@@ -0,0 +1,94 @@
+package com.bc.calvalus.processing.mosaic;
+
+import com.bc.calvalus.processing.hadoop.WritableBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialisation of the mosaic tiles and comparison of their indices in the shuffle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MosaicTileBenchmark {
+
+    private static final int NUM_BANDS = 10;
+    private static final int NUM_INDICES = 1000;
+
+    @Param({"90", "370"})
+    public int tileSize;
+
+    @Param({"true", "false"})
+    public boolean writableCompression;
+
+    private TileDataWritable tile;
+    private WritableBuffer tileBuffer;
+    private TileIndexWritable[] tileIndices;
+    private byte[] tileIndexBytes;
+    private WritableComparator tileIndexComparator;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        float[][] samples = new float[NUM_BANDS][tileSize * tileSize];
+        for (int b = 0; b < NUM_BANDS; b++) {
+            for (int p = 0; p < samples[b].length; p++) {
+                // a quarter of the tile is no-data, the rest a smooth field with some noise
+                boolean noData = p % tileSize < tileSize / 4;
+                samples[b][p] = noData ? Float.NaN : (float) (0.1 * b + 0.05 * Math.sin(p * 0.01) + random.nextGaussian() * 0.002);
+            }
+        }
+        tile = new TileDataWritable(samples, writableCompression);
+        tileBuffer = new WritableBuffer();
+        tileBuffer.write(tile);
+
+        tileIndices = new TileIndexWritable[NUM_INDICES];
+        for (int i = 0; i < NUM_INDICES; i++) {
+            tileIndices[i] = new TileIndexWritable(random.nextInt(36), random.nextInt(18), random.nextInt(360), random.nextInt(180));
+        }
+        WritableBuffer indexBuffer = new WritableBuffer();
+        indexBuffer.write(tileIndices);
+        tileIndexBytes = indexBuffer.getData();
+        tileIndexComparator = WritableComparator.get(TileIndexWritable.class);
+    }
+
+    @Benchmark
+    public int writeTile() throws IOException {
+        // a new instance, the writable keeps its deflated form once written
+        return tileBuffer.write(new TileDataWritable(tile.getSamples(), writableCompression));
+    }
+
+    @Benchmark
+    public float[][] readTile() throws IOException {
+        return tileBuffer.read(new TileDataWritable(), 1).getSamples();
+    }
+
+    @Benchmark
+    public int compareTileIndices() {
+        int sum = 0;
+        for (int i = 1; i < NUM_INDICES; i++) {
+            sum += tileIndices[i - 1].compareTo(tileIndices[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int compareTileIndicesRaw() {
+        int sum = 0;
+        for (int i = 1; i < NUM_INDICES; i++) {
+            sum += tileIndexComparator.compare(tileIndexBytes, (i - 1) * 16, 16, tileIndexBytes, i * 16, 16);
+        }
+        return sum;
+    }
+}
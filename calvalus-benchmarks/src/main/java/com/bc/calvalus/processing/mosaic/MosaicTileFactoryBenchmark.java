@@ -0,0 +1,83 @@
+package com.bc.calvalus.processing.mosaic;
+
+import com.bc.ceres.glevel.MultiLevelImage;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.VirtualBand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creation of the mosaic tiles by the {@link MosaicMapper} from the mask and variable images of a gridded product.
+ * The product is synthetic, its bands are computed from the pixel coordinates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MosaicTileFactoryBenchmark {
+
+    private static final int NUM_TILES = 4;
+    private static final int NUM_VARIABLES = 5;
+
+    @Param({"90", "370"})
+    public int tileSize;
+
+    private Product product;
+    private MultiLevelImage maskImage;
+    private MultiLevelImage[] varImages;
+    private TileIndexWritable[] tileIndices;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        int size = NUM_TILES * tileSize;
+        product = new Product("grid", "synthetic", size, size);
+        product.setPreferredTileSize(tileSize, tileSize);
+        varImages = new MultiLevelImage[NUM_VARIABLES];
+        for (int i = 0; i < NUM_VARIABLES; i++) {
+            VirtualBand band = new VirtualBand("var" + i, ProductData.TYPE_FLOAT32, size, size,
+                                               String.format("sin(X * 0.01 + %d) * cos(Y * 0.01)", i));
+            band.setValidPixelExpression("X > Y / 2");
+            product.addBand(band);
+            varImages[i] = band.getGeophysicalImage();
+        }
+        maskImage = product.getMaskImage("X > Y / 2", null);
+        tileIndices = new TileIndexWritable[NUM_TILES * NUM_TILES];
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                tileIndices[y * NUM_TILES + x] = new TileIndexWritable(0, 0, x, y);
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        product.dispose();
+    }
+
+    @Benchmark
+    public int createTiles() {
+        // a new factory and images per invocation would measure the image setup, the tile cache is flushed instead
+        for (MultiLevelImage varImage : varImages) {
+            varImage.reset();
+        }
+        maskImage.reset();
+        MosaicMapper.TileFactory tileFactory = new MosaicMapper.TileFactory(maskImage, varImages, tileSize, true);
+        int numTiles = 0;
+        for (TileIndexWritable tileIndex : tileIndices) {
+            if (tileFactory.createTile(tileIndex) != null) {
+                numTiles++;
+            }
+        }
+        return numTiles;
+    }
+}
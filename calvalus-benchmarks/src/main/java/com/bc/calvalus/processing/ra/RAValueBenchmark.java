@@ -0,0 +1,56 @@
+package com.bc.calvalus.processing.ra;
+
+import com.bc.calvalus.processing.hadoop.WritableBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialisation of the region extracts emitted by the RA mappers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RAValueBenchmark {
+
+    private static final int NUM_BANDS = 5;
+
+    @Param({"1000", "100000"})
+    public int numSamples;
+
+    private float[][] samples;
+    private WritableBuffer buffer;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        samples = new float[NUM_BANDS][numSamples];
+        for (float[] bandSamples : samples) {
+            for (int i = 0; i < numSamples; i++) {
+                bandSamples[i] = (float) (0.2 + random.nextGaussian() * 0.05);
+            }
+        }
+        buffer = new WritableBuffer();
+        write();
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        // a new instance, the writable keeps its deflated form once written
+        return buffer.write(new RAValue(numSamples, samples, 1496275200000L, "S2A_MSIL2A_20170601T102021_T32UNE"));
+    }
+
+    @Benchmark
+    public float[][] read() throws IOException {
+        return buffer.read(new RAValue(), 1).getSamples();
+    }
+}
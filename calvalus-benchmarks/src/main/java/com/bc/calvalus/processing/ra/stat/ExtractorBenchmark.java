@@ -0,0 +1,70 @@
+package com.bc.calvalus.processing.ra.stat;
+
+import com.bc.calvalus.processing.ra.RAConfig;
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of the pixels of two regions from a synthetic global product, as done by the RA mappers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExtractorBenchmark {
+
+    private static final String NORTH_SEA_WKT = "polygon((-19.94 40.00, 0.00 40.00, 0.00 49.22, 12.99 53.99, 13.06 65.00, 0.00 65.00, 0.0 60.00, -20.00 60.00, -19.94 40.00))";
+    private static final String BALTIC_SEA_WKT = "polygon((10.0 53.5, 30.0 53.5, 30.0 66.0, 10.0 66.0, 10.0 53.5))";
+
+    private Product product;
+    private RAConfig config;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        product = new Product("l2", "synthetic", 3600, 1800);
+        product.setPreferredTileSize(512, 512);
+        product.addBand("chl", "exp(sin(X * 0.01) * cos(Y * 0.01))");
+        product.addBand("tsm", "abs(sin(X * 0.003 + Y * 0.002))");
+        product.addBand("lat", "LAT");
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, 3600, 1800, -180.0, 90.0, 0.1, 0.1, 0.0, 0.0));
+        product.setStartTime(ProductData.UTC.parse("01-JUN-2017 10:00:00"));
+        product.setEndTime(ProductData.UTC.parse("01-JUN-2017 12:00:00"));
+
+        config = new RAConfig();
+        config.setBandConfigs(new RAConfig.BandConfig("chl"), new RAConfig.BandConfig("tsm"), new RAConfig.BandConfig("lat"));
+        config.setGoodPixelExpression("tsm > 0.1");
+        config.setRegions(new RAConfig.Region("northsea", NORTH_SEA_WKT), new RAConfig.Region("balticsea", BALTIC_SEA_WKT));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        product.dispose();
+    }
+
+    @Benchmark
+    public long extract() throws Exception {
+        long[] numSamples = new long[1];
+        Extractor extractor = new Extractor(product, config.getGoodPixelExpression(), config.getBandNames(),
+                                            config.createNamedRegionIterator(null)) {
+            @Override
+            public void extractedData(int regionIndex, String regionName, long time, int numObs, float[][] samples) {
+                numSamples[0] += samples[0].length;
+            }
+        };
+        extractor.extract(ProgressMonitor.NULL);
+        return numSamples[0];
+    }
+}
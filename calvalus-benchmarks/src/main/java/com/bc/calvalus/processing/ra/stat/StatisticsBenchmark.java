@@ -0,0 +1,61 @@
+package com.bc.calvalus.processing.ra.stat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulation of the region samples into statistics, histograms and percentiles, as done by the RA reducer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StatisticsBenchmark {
+
+    private static final int NUM_CHUNKS = 10;
+
+    @Param({"10000", "1000000"})
+    public int numSamples;
+
+    private float[][] chunks;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        chunks = new float[NUM_CHUNKS][numSamples / NUM_CHUNKS];
+        for (float[] chunk : chunks) {
+            for (int i = 0; i < chunk.length; i++) {
+                // log-normal like chlorophyll, with some no-data
+                chunk[i] = i % 17 == 0 ? Float.NaN : (float) Math.exp(random.nextGaussian());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<String> statistics() {
+        Statistics statistics = new Statistics(0, Double.NaN, Double.NaN, null, false);
+        for (float[] chunk : chunks) {
+            statistics.process(chunk);
+        }
+        return statistics.getStatisticsRecords();
+    }
+
+    @Benchmark
+    public List<String> statisticsWithHistogramAndPercentiles() {
+        Statistics statistics = new Statistics(100, 0.0, 10.0, new int[]{5, 25, 50, 75, 95}, false);
+        for (float[] chunk : chunks) {
+            statistics.process(chunk);
+        }
+        statistics.getHistogramRecords();
+        return statistics.getStatisticsRecords();
+    }
+}
@@ -0,0 +1,60 @@
+package com.bc.calvalus.ingestion;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the files of an ingestion batch that have been copied completely, so that an interrupted batch
+ * can be resumed without copying or re-reading them again.
+ * <pre>
+ *    archive path TAB size TAB source modification time TAB MD5 of the content
+ * </pre>
+ * One line is appended and flushed per ingested file. Concurrent copies may add entries.
+ */
+class IngestionManifest {
+
+    private final Map<String, String> entries = new HashMap<>();
+    private final Writer writer;
+
+    IngestionManifest(File file) throws IOException {
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] columns = line.split("\t");
+                    if (columns.length >= 3) {
+                        entries.put(columns[0], identity(columns[1], columns[2]));
+                    }
+                }
+            }
+        }
+        writer = new FileWriter(file, true);
+    }
+
+    /**
+     * @return whether the source file with this size and modification time has already been ingested to the archive path
+     */
+    synchronized boolean contains(String archivePath, long size, long lastModified) {
+        return identity(String.valueOf(size), String.valueOf(lastModified)).equals(entries.get(archivePath));
+    }
+
+    synchronized void add(String archivePath, long size, long lastModified, String md5) throws IOException {
+        entries.put(archivePath, identity(String.valueOf(size), String.valueOf(lastModified)));
+        writer.write(String.format("%s\t%d\t%d\t%s\n", archivePath, size, lastModified, md5));
+        writer.flush();
+    }
+
+    synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private static String identity(String size, String lastModified) {
+        return size + ":" + lastModified;
+    }
+}
@@ -4,19 +4,26 @@ import com.bc.calvalus.commons.DateUtils;
 import org.apache.commons.cli.CommandLine;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.IOUtils;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,7 +33,7 @@ import java.util.regex.Pattern;
  * into a computed directory in the HDFS archive.
  * <pre>
  * Usage:
- *    hadoop --config ${configDir} jar ${jobJar} com.bc.calvalus.ingestion.IngestionTool ( ${sourceDir} | ${sourceFiles} ) [-producttype=${productType}] [-revision=${revision}] [-replication=${replication}] [-blocksize=${blocksize}]
+ *    hadoop --config ${configDir} jar ${jobJar} com.bc.calvalus.ingestion.IngestionTool ( ${sourceDir} | ${sourceFiles} ) [-producttype=${productType}] [-revision=${revision}] [-replication=${replication}] [-blocksize=${blocksize}] [-threads=${threads}] [-manifest=${manifestFile}]
  * </pre>
  */
 public class IngestionTool {
@@ -93,6 +100,14 @@ public class IngestionTool {
         }
 
         boolean verify = commandLine.hasOption("verify");
+        int numThreads = 1;
+        if (commandLine.hasOption("threads")) {
+            numThreads = Integer.parseInt(commandLine.getOptionValue("threads"));
+        }
+        File manifestFile = null;
+        if (commandLine.hasOption("manifest")) {
+            manifestFile = new File(commandLine.getOptionValue("manifest"));
+        }
 
         // determine input files
         List<IngestionFile> ingestionFiles = new ArrayList<IngestionFile>();
@@ -106,7 +121,14 @@ public class IngestionTool {
         System.out.format("%d files to be ingested\n", ingestionFiles.size());
 
 
-        return ingest(productType, revision, blockSizeParameter, pattern, hdfs, replication, verify, ingestionFiles);
+        IngestionManifest manifest = manifestFile != null ? new IngestionManifest(manifestFile) : null;
+        try {
+            return ingest(blockSizeParameter, hdfs, replication, verify, numThreads, manifest, ingestionFiles);
+        } finally {
+            if (manifest != null) {
+                manifest.close();
+            }
+        }
     }
 
     static class IngestionFile {
@@ -121,68 +143,157 @@ public class IngestionTool {
         }
     }
 
-    private static int ingest(String productType, String revision, long blockSizeParameter, Pattern pattern, FileSystem hdfs, short replication, boolean verify, List<IngestionFile> sourceFiles) throws IOException {
+    private static int ingest(long blockSizeParameter, FileSystem hdfs, short replication, boolean verify, int numThreads,
+                              IngestionManifest manifest, List<IngestionFile> sourceFiles) throws IOException {
         // cache HDFS parameters for block size
         final int bufferSize = hdfs.getConf().getInt("io.file.buffer.size", 4096);
         final int checksumSize = hdfs.getConf().getInt("io.bytes.per.checksum", 512);
 
-        // loop over input files
-        for (IngestionFile sourceFile : sourceFiles) {
-            //String archivePath = getArchivePath(sourceFile, productType, revision, pattern);
-            final String archivePath = sourceFile.output;
-
-            // calculate block size to cover complete N1
-            // blocksize must be a multiple of checksum size
-            long fileSize = sourceFile.input.length();
-            long blockSize;
-            if (blockSizeParameter == -1) {
-                blockSize = ((fileSize + checksumSize - 1) / checksumSize) * checksumSize;
-                if (blockSize < MINIMUM_BLOCK_SIZE) {
-                    blockSize = MINIMUM_BLOCK_SIZE;
-                } else if (blockSize > MAXIMUM_BLOCK_SIZE) {
-                    blockSize = MAXIMUM_BLOCK_SIZE;
-                }
-            } else {
-                blockSize = ((blockSizeParameter + checksumSize - 1) / checksumSize) * checksumSize;
+        if (numThreads <= 1) {
+            // loop over input files
+            for (IngestionFile sourceFile : sourceFiles) {
+                ingest(sourceFile, blockSizeParameter, hdfs, bufferSize, checksumSize, replication, verify, manifest);
             }
+            return 0;
+        }
 
-            // construct HDFS output stream
-            Path destPath = new Path(archivePath, sourceFile.input.getName());
-            // copy if either verification is off or target does not exist or target has different size
-            if (! verify || ! hdfs.exists(destPath) || hdfs.listStatus(destPath) == null || hdfs.listStatus(destPath)[0].getLen() < fileSize) {
-                int attempt = 1;
-                boolean finished = false;
-                IOException exception = null;
-                System.out.println(MessageFormat.format("archiving {0} in {1}", sourceFile, archivePath));
-                while (attempt <= 3 && !finished) {
-                    short actualReplication = attempt == 1 ? replication : 3;
-                    OutputStream out = hdfs.create(destPath, true, bufferSize, actualReplication, blockSize);
-                    FileInputStream in = new FileInputStream(sourceFile.input);
-                    try  {
-                        IOUtils.copyBytes(in, out, hdfs.getConf(), true);
-                        finished = true;
-                        if (actualReplication != replication) {
-                            hdfs.setReplication(destPath, replication);
-                        }
-                    }catch (IOException ioe){
-                        System.err.print("copying attempt " + attempt + " failed.");
-                        ioe.printStackTrace();
-                        exception = ioe;
-                    } finally {
-                        out.close();
-                        in.close();
+        // copy concurrently, report the first failure after all other copies are done
+        System.out.format("ingesting with %d concurrent copies\n", numThreads);
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>(sourceFiles.size());
+            for (IngestionFile sourceFile : sourceFiles) {
+                futures.add(executorService.submit(() -> {
+                    ingest(sourceFile, blockSizeParameter, hdfs, bufferSize, checksumSize, replication, verify, manifest);
+                    return null;
+                }));
+            }
+            IOException exception = null;
+            int numFailed = 0;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    numFailed++;
+                    if (exception == null) {
+                        exception = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
                     }
-                    attempt++;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("ingestion interrupted");
                 }
-                if (!finished) {
-                    throw new IOException("Failed to copy: " + sourceFile, exception);
+            }
+            if (exception != null) {
+                System.err.format("%d of %d files failed\n", numFailed, sourceFiles.size());
+                throw exception;
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        return 0;
+    }
+
+    private static void ingest(IngestionFile sourceFile, long blockSizeParameter, FileSystem hdfs, int bufferSize, int checksumSize,
+                               short replication, boolean verify, IngestionManifest manifest) throws IOException {
+        //String archivePath = getArchivePath(sourceFile, productType, revision, pattern);
+        final String archivePath = sourceFile.output;
+
+        long fileSize = sourceFile.input.length();
+        long lastModified = sourceFile.input.lastModified();
+        long blockSize = getBlockSize(blockSizeParameter, fileSize, checksumSize);
+
+        // construct HDFS output stream
+        Path destPath = new Path(archivePath, sourceFile.input.getName());
+        if (manifest != null && manifest.contains(destPath.toString(), fileSize, lastModified)) {
+            System.out.println(MessageFormat.format("skipping {0} recorded in manifest", sourceFile));
+            return;
+        }
+        // copy if either verification is off or target does not exist or target has different size
+        if (verify && getLength(hdfs, destPath) >= fileSize) {
+            System.out.println(MessageFormat.format("skipping {0} existing in {1}", sourceFile, archivePath));
+            return;
+        }
+        int attempt = 1;
+        String md5 = null;
+        IOException exception = null;
+        System.out.println(MessageFormat.format("archiving {0} in {1}", sourceFile, archivePath));
+        while (attempt <= 3 && md5 == null) {
+            short actualReplication = attempt == 1 ? replication : 3;
+            try {
+                md5 = copy(sourceFile.input, hdfs.create(destPath, true, bufferSize, actualReplication, blockSize), bufferSize, fileSize);
+                if (actualReplication != replication) {
+                    hdfs.setReplication(destPath, replication);
                 }
-            } else {
-                System.out.println(MessageFormat.format("skipping {0} existing in {1}", sourceFile, archivePath));
+            } catch (IOException ioe) {
+                System.err.print("copying attempt " + attempt + " failed.");
+                ioe.printStackTrace();
+                exception = ioe;
             }
+            attempt++;
         }
+        if (md5 == null) {
+            throw new IOException("Failed to copy: " + sourceFile, exception);
+        }
+        if (manifest != null) {
+            manifest.add(destPath.toString(), fileSize, lastModified, md5);
+        }
+    }
 
-        return 0;
+    /**
+     * Copies the file and computes its MD5 in the same read.
+     * The number of bytes written is verified against the expected size, the target is not read again.
+     *
+     * @return the hex encoded MD5 of the content
+     */
+    static String copy(File input, OutputStream out, int bufferSize, long expectedSize) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long bytesCopied = 0;
+        try (InputStream in = new FileInputStream(input); OutputStream o = out) {
+            byte[] buffer = new byte[Math.max(bufferSize, 64 * 1024)];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                o.write(buffer, 0, n);
+                digest.update(buffer, 0, n);
+                bytesCopied += n;
+            }
+        }
+        if (bytesCopied != expectedSize) {
+            throw new IOException(String.format("copied %d bytes of %s, expected %d", bytesCopied, input, expectedSize));
+        }
+        StringBuilder md5 = new StringBuilder(32);
+        for (byte b : digest.digest()) {
+            md5.append(String.format("%02x", b));
+        }
+        return md5.toString();
+    }
+
+    /**
+     * calculates block size to cover complete file, block size must be a multiple of checksum size
+     */
+    static long getBlockSize(long blockSizeParameter, long fileSize, int checksumSize) {
+        if (blockSizeParameter != -1) {
+            return ((blockSizeParameter + checksumSize - 1) / checksumSize) * checksumSize;
+        }
+        long blockSize = ((fileSize + checksumSize - 1) / checksumSize) * checksumSize;
+        if (blockSize < MINIMUM_BLOCK_SIZE) {
+            return MINIMUM_BLOCK_SIZE;
+        } else if (blockSize > MAXIMUM_BLOCK_SIZE) {
+            return MAXIMUM_BLOCK_SIZE;
+        }
+        return blockSize;
+    }
+
+    private static long getLength(FileSystem hdfs, Path path) throws IOException {
+        try {
+            return hdfs.getFileStatus(path).getLen();
+        } catch (FileNotFoundException e) {
+            return -1;
+        }
     }
 
     private static void collectInputFiles(String rootDir, File file, Pattern pattern, String timeElements, String timeFormat, String productType, String revision, String pathTemplate, List<IngestionFile> accu) throws IOException {
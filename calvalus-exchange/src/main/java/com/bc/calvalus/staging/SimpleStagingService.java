@@ -7,21 +7,41 @@ import java.io.IOException;
 import java.util.Observable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /**
  * A (trivial) staging service implementation.
+ * <p/>
+ * Stagings run concurrently as long as the sum of their {@link Staging#getStagingSize() sizes}
+ * does not exceed the bytes in flight. A staging larger than that runs alone.
  *
  * @author MarcoZ
  * @author Norman
  */
 public class SimpleStagingService implements StagingService {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
     private final File stagingDir;
     private final ExecutorService executorService;
+    private final Semaphore megabytesInFlight;
+    private final int maxMegabytesInFlight;
     private Observable productionService;
 
     public SimpleStagingService(File stagingDir, int numParallelJobs) throws IOException {
+        this(stagingDir, numParallelJobs, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param stagingDir       the local staging area
+     * @param maxParallelJobs  the maximum number of stagings running at the same time
+     * @param maxBytesInFlight the maximum sum of the sizes of the stagings running at the same time
+     */
+    public SimpleStagingService(File stagingDir, int maxParallelJobs, long maxBytesInFlight) throws IOException {
         this.stagingDir = stagingDir.getCanonicalFile();
-        this.executorService = Executors.newFixedThreadPool(numParallelJobs);
+        this.executorService = Executors.newFixedThreadPool(maxParallelJobs);
+        this.maxMegabytesInFlight = (int) Math.max(1L, Math.min(Integer.MAX_VALUE, maxBytesInFlight / MEGABYTE));
+        this.megabytesInFlight = new Semaphore(maxMegabytesInFlight, true);
     }
 
     @Override
@@ -31,7 +51,15 @@ public class SimpleStagingService implements StagingService {
 
     @Override
     public void submitStaging(Staging staging) throws IOException {
-        executorService.execute(staging);
+        executorService.execute(() -> {
+            int permits = getPermits(staging);
+            megabytesInFlight.acquireUninterruptibly(permits);
+            try {
+                staging.run();
+            } finally {
+                megabytesInFlight.release(permits);
+            }
+        });
     }
 
     @Override
@@ -62,4 +90,10 @@ public class SimpleStagingService implements StagingService {
     public Observable getProductionService() {
         return productionService;
     }
+
+    private int getPermits(Staging staging) {
+        long stagingSize = staging.getStagingSize();
+        long megabytes = (stagingSize + MEGABYTE - 1) / MEGABYTE;
+        return (int) Math.max(0L, Math.min(maxMegabytesInFlight, megabytes));
+    }
 }
@@ -31,6 +31,14 @@ public abstract class Staging implements Runnable {
     public void performStaging() throws Throwable {
     }
 
+    /**
+     * @return The estimated number of bytes transferred by this staging, or zero if unknown.
+     * Used by the staging service to limit the bytes in flight of concurrently running stagings.
+     */
+    public long getStagingSize() {
+        return 0L;
+    }
+
 
     public final boolean isCancelled() {
         return cancelled;
@@ -0,0 +1,31 @@
+package com.bc.calvalus.ingestion;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IngestionManifestTest {
+
+    @Test
+    public void testEntriesSurviveReopening() throws Exception {
+        File file = File.createTempFile("ingestion", ".manifest");
+        try {
+            IngestionManifest manifest = new IngestionManifest(file);
+            assertFalse(manifest.contains("/calvalus/eodata/S3A/2017/01/01/a.zip", 100, 5000));
+            manifest.add("/calvalus/eodata/S3A/2017/01/01/a.zip", 100, 5000, "5d41402abc4b2a76b9719d911017c592");
+            manifest.close();
+
+            manifest = new IngestionManifest(file);
+            assertTrue(manifest.contains("/calvalus/eodata/S3A/2017/01/01/a.zip", 100, 5000));
+            assertFalse(manifest.contains("/calvalus/eodata/S3A/2017/01/01/a.zip", 101, 5000));
+            assertFalse(manifest.contains("/calvalus/eodata/S3A/2017/01/01/a.zip", 100, 5001));
+            assertFalse(manifest.contains("/calvalus/eodata/S3A/2017/01/01/b.zip", 100, 5000));
+            manifest.close();
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -2,7 +2,9 @@ package com.bc.calvalus.ingestion;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.regex.Pattern;
 
@@ -57,6 +59,35 @@ public class IngestionToolTest {
         assertEquals("/calvalus/eodata/MER_RR__1P/r03/2006/07/18", archivePath);
     }
 
+    @Test
+    public void testBlockSize() {
+        assertEquals(IngestionTool.MINIMUM_BLOCK_SIZE, IngestionTool.getBlockSize(-1, 1000, 512));
+        assertEquals(300L * 1024 * 1024, IngestionTool.getBlockSize(-1, 300L * 1024 * 1024 - 100, 512));
+        assertEquals(IngestionTool.MAXIMUM_BLOCK_SIZE, IngestionTool.getBlockSize(-1, 5L * 1024 * 1024 * 1024, 512));
+        assertEquals(1024, IngestionTool.getBlockSize(1000, 5L * 1024 * 1024 * 1024, 512));
+    }
+
+    @Test
+    public void testCopyComputesMd5() throws IOException {
+        File input = File.createTempFile("ingestion", ".txt");
+        try {
+            try (FileOutputStream out = new FileOutputStream(input)) {
+                out.write("hello".getBytes("US-ASCII"));
+            }
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+            assertEquals("5d41402abc4b2a76b9719d911017c592", IngestionTool.copy(input, target, 4096, 5));
+            assertEquals("hello", target.toString("US-ASCII"));
+            try {
+                IngestionTool.copy(input, new ByteArrayOutputStream(), 4096, 6);
+                fail("IOException expected for size mismatch");
+            } catch (IOException expected) {
+                // ok
+            }
+        } finally {
+            input.delete();
+        }
+    }
+
 //    @Test
 //    public void testAcceptFilename() {
 //        IngestionTool.ProductFilenameFilter filenameFilter = new IngestionTool.ProductFilenameFilter("MER_RR__1P");
@@ -4,6 +4,11 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -13,6 +18,8 @@ import static org.junit.Assert.*;
  */
 public class SimpleStagingServiceTest {
 
+    private static final long MB = 1024L * 1024L;
+
     @Test
     public void testGetStagingAreaPath() throws IOException {
         SimpleStagingService stagingService = new SimpleStagingService(new File("/foo/bar/buz"), 1);
@@ -44,4 +51,72 @@ public class SimpleStagingServiceTest {
             // ok
         }
     }
+
+    @Test
+    public void testLargeStagingsRunOneAfterTheOther() throws Exception {
+        SimpleStagingService stagingService = new SimpleStagingService(new File("/foo/bar/buz"), 4, 100 * MB);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            stagingService.submitStaging(new SizedStaging(60 * MB) {
+                @Override
+                public void run() {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(50);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        stagingService.close();
+    }
+
+    @Test
+    public void testSmallStagingsRunConcurrently() throws Exception {
+        SimpleStagingService stagingService = new SimpleStagingService(new File("/foo/bar/buz"), 4, 100 * MB);
+        CyclicBarrier allRunning = new CyclicBarrier(4);
+        AtomicBoolean concurrent = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            stagingService.submitStaging(new SizedStaging(10 * MB) {
+                @Override
+                public void run() {
+                    try {
+                        allRunning.await(10, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        concurrent.set(false);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(20, TimeUnit.SECONDS));
+        assertTrue(concurrent.get());
+        stagingService.close();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private abstract static class SizedStaging extends Staging {
+
+        private final long size;
+
+        SizedStaging(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public long getStagingSize() {
+            return size;
+        }
+    }
 }
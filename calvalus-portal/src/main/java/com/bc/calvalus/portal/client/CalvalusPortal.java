@@ -14,6 +14,7 @@ import com.bc.calvalus.portal.shared.DtoCalvalusConfig;
 import com.bc.calvalus.portal.shared.DtoProcessorDescriptor;
 import com.bc.calvalus.portal.shared.DtoProductSet;
 import com.bc.calvalus.portal.shared.DtoProduction;
+import com.bc.calvalus.portal.shared.DtoProductionDelta;
 import com.bc.calvalus.portal.shared.DtoRegion;
 import com.google.gwt.core.client.EntryPoint;
 import com.google.gwt.core.client.GWT;
@@ -34,8 +35,10 @@ import com.google.gwt.view.client.SingleSelectionModel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -48,6 +51,8 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
     public static final Logger LOG = Logger.getLogger("CalvalusPortal");
 
     public static final String NO_FILTER = "";
+    // Time the server may hold a production list request until something changes
+    private static final int PRODUCTION_LIST_WAIT_MILLIS = 20000;
     private static final String[] VIEW_NAMES = {
                 "newsView",
                 "l2View",
@@ -82,6 +87,12 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
     private DtoAggregatorDescriptor[] allUserAggregators;
     private ListDataProvider<DtoProduction> productions;
     private Map<String, DtoProduction> productionsMap;
+    // Version of the production list received last, used to request only the changes
+    private long productionListVersion;
+    // Filter of the production list request currently waiting for changes, or null
+    private String pendingProductionFilter;
+    // Difference between the server clock and the client clock, used for the processing time of running productions
+    private long serverTimeOffsetMillis;
     // A timer that periodically retrieves production statuses from server
     private Timer productionsUpdateTimer;
     private RegionMapModel regionMapModel;
@@ -150,7 +161,7 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
                                              new InitProcessorsCallback(BundleFilter.PROVIDER_ALL_USERS));
                 // aggregators from other users are currently not shown
                 // backendService.getAggregators(allUserFilter.toString(), new InitAggregatorsCallback(BundleFilter.PROVIDER_ALL_USERS));
-                backendService.getProductions(getProductionFilterString(), new InitProductionsCallback());
+                backendService.getProductionDelta(getProductionFilterString(), 0L, 0, new InitProductionsCallback());
 
                 GWT.log("checking for user roles asynchronously");
                 backendService.getCalvalusConfig(new CalvalusConfigCallback());
@@ -211,6 +222,11 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
         return productions;
     }
 
+    @Override
+    public long getServerTimeMillis() {
+        return System.currentTimeMillis() + serverTimeOffsetMillis;
+    }
+
     @Override
     public BackendServiceAsync getBackendService() {
         return backendService;
@@ -240,6 +256,7 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
     public void setProductionListFiltered(boolean productionListFiltered) {
         if (productionListFiltered != this.productionListFiltered) {
             this.productionListFiltered = productionListFiltered;
+            productionListVersion = 0L;
             updateProductionList();
         }
     }
@@ -376,6 +393,7 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
             @Override
             public void run() {
                 updateProductionList();
+                updateProcessingTimes();
             }
         };
     }
@@ -398,51 +416,104 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
                && calvalusConfig != null;
     }
 
-    private synchronized void updateProductions(DtoProduction[] unknownProductions) {
+    private synchronized void updateProductions(DtoProductionDelta delta) {
         if (productions == null) {
             productions = new ListDataProvider<DtoProduction>();
             productionsMap = new HashMap<String, DtoProduction>();
         }
+        productionListVersion = delta.getVersion();
+        serverTimeOffsetMillis = delta.getServerTimeMillis() - System.currentTimeMillis();
+        List<DtoProduction> productionList = productions.getList();
         boolean listChange = false;
-        boolean propertyChange = false;
-        ArrayList<DtoProduction> deletedProductions = new ArrayList<DtoProduction>(productions.getList());
-        for (int i = 0; i < unknownProductions.length; i++) {
-            DtoProduction unknownProduction = unknownProductions[i];
-            DtoProduction knownProduction = productionsMap.get(unknownProduction.getId());
+        boolean rowChange = false;
+        DtoProduction[] changedProductions = delta.getChangedProductions();
+        if (delta.isComplete()) {
+            Set<String> currentIds = new HashSet<String>();
+            for (DtoProduction changedProduction : changedProductions) {
+                currentIds.add(changedProduction.getId());
+            }
+            for (DtoProduction knownProduction : new ArrayList<DtoProduction>(productionList)) {
+                if (!currentIds.contains(knownProduction.getId())) {
+                    productionList.remove(knownProduction);
+                    productionsMap.remove(knownProduction.getId());
+                    listChange = true;
+                }
+            }
+        } else {
+            for (String removedProductionId : delta.getRemovedProductionIds()) {
+                DtoProduction knownProduction = productionsMap.remove(removedProductionId);
+                if (knownProduction != null) {
+                    productionList.remove(knownProduction);
+                    listChange = true;
+                }
+            }
+        }
+        List<DtoProduction> newProductions = new ArrayList<DtoProduction>();
+        for (DtoProduction changedProduction : changedProductions) {
+            DtoProduction knownProduction = productionsMap.get(changedProduction.getId());
             if (knownProduction != null) {
-                if (!unknownProduction.getProcessingStatus().equals(knownProduction.getProcessingStatus())) {
-                    knownProduction.setProcessingStatus(unknownProduction.getProcessingStatus());
+                boolean propertyChange = false;
+                if (!changedProduction.getProcessingStatus().equals(knownProduction.getProcessingStatus())) {
+                    knownProduction.setProcessingStatus(changedProduction.getProcessingStatus());
                     propertyChange = true;
                 }
-                if (!unknownProduction.getStagingStatus().equals(knownProduction.getStagingStatus())) {
-                    knownProduction.setStagingStatus(unknownProduction.getStagingStatus());
+                if (!changedProduction.getStagingStatus().equals(knownProduction.getStagingStatus())) {
+                    knownProduction.setStagingStatus(changedProduction.getStagingStatus());
                     propertyChange = true;
                 }
-                deletedProductions.remove(knownProduction);
+                if (propertyChange) {
+                    // marks only the row of this production for redrawing
+                    productionList.set(productionList.indexOf(knownProduction), knownProduction);
+                    rowChange = true;
+                }
             } else {
-                productions.getList().add(i, unknownProduction);
-                productionsMap.put(unknownProduction.getId(), unknownProduction);
-                listChange = true;
+                newProductions.add(changedProduction);
+                productionsMap.put(changedProduction.getId(), changedProduction);
             }
         }
-        for (DtoProduction deletedProduction : deletedProductions) {
-            productions.getList().remove(deletedProduction);
-            productionsMap.remove(deletedProduction.getId());
+        if (!newProductions.isEmpty()) {
+            // new productions come first, in the order of the server
+            productionList.addAll(0, newProductions);
             listChange = true;
         }
-        if (listChange) {
-            if (manageProductionsView != null) {
-                manageProductionsView.fireSortListEvent();
-            }
+        if (listChange && manageProductionsView != null) {
+            manageProductionsView.fireSortListEvent();
+        }
+        if (listChange || rowChange) {
             productions.flush();
         }
-        if (propertyChange) {
-            productions.refresh();
+    }
+
+    /**
+     * Redraws the rows of the running productions, whose processing time is not sent with every delta.
+     */
+    private synchronized void updateProcessingTimes() {
+        if (productions == null) {
+            return;
+        }
+        List<DtoProduction> productionList = productions.getList();
+        boolean rowChange = false;
+        for (int i = 0; i < productionList.size(); i++) {
+            DtoProduction production = productionList.get(i);
+            if (production.getProcessingStatus().isProcessingTimeRunning()) {
+                productionList.set(i, production);
+                rowChange = true;
+            }
+        }
+        if (rowChange) {
+            productions.flush();
         }
     }
 
     private void updateProductionList() {
-        backendService.getProductions(getProductionFilterString(), new UpdateProductionsCallback());
+        if (pendingProductionFilter != null) {
+            // the pending request returns as soon as the production list changes
+            return;
+        }
+        String filter = getProductionFilterString();
+        pendingProductionFilter = filter;
+        backendService.getProductionDelta(filter, productionListVersion, PRODUCTION_LIST_WAIT_MILLIS,
+                                          new UpdateProductionsCallback(filter));
     }
 
     private String getProductionFilterString() {
@@ -547,11 +618,11 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
         }
     }
 
-    private class InitProductionsCallback implements AsyncCallback<DtoProduction[]> {
+    private class InitProductionsCallback implements AsyncCallback<DtoProductionDelta> {
 
         @Override
-        public void onSuccess(DtoProduction[] productions) {
-            updateProductions(productions);
+        public void onSuccess(DtoProductionDelta delta) {
+            updateProductions(delta);
             maybeInitFrontend();
         }
 
@@ -563,15 +634,28 @@ public class CalvalusPortal implements EntryPoint, PortalContext {
         }
     }
 
-    private class UpdateProductionsCallback implements AsyncCallback<DtoProduction[]> {
+    private class UpdateProductionsCallback implements AsyncCallback<DtoProductionDelta> {
+
+        private final String filter;
+
+        public UpdateProductionsCallback(String filter) {
+            this.filter = filter;
+        }
 
         @Override
-        public void onSuccess(DtoProduction[] unknownProductions) {
-            updateProductions(unknownProductions);
+        public void onSuccess(DtoProductionDelta delta) {
+            pendingProductionFilter = null;
+            if (filter.equals(getProductionFilterString())) {
+                updateProductions(delta);
+            } else {
+                // the filter changed while the request was pending
+                updateProductionList();
+            }
         }
 
         @Override
         public void onFailure(Throwable caught) {
+            pendingProductionFilter = null;
             caught.printStackTrace(System.err);
             GWT.log("Failed to get productions from server", caught);
         }
@@ -286,14 +286,15 @@ public class ManageProductionsView extends PortalView {
         TextColumn<DtoProduction> productionTimeColumn = new TextColumn<DtoProduction>() {
             @Override
             public String getValue(DtoProduction production) {
-                return getTimeText(production.getProcessingStatus().getProcessingSeconds());
+                return getTimeText(production.getProcessingStatus().getProcessingSeconds(getPortal().getServerTimeMillis()));
             }
         };
         productionTimeColumn.setSortable(true);
         sortHandler.setComparator(productionTimeColumn, new Comparator<DtoProduction>() {
             public int compare(DtoProduction p1, DtoProduction p2) {
-                Integer p1Sec = p1.getProcessingStatus().getProcessingSeconds();
-                Integer p2Sec = p2.getProcessingStatus().getProcessingSeconds();
+                long serverTimeMillis = getPortal().getServerTimeMillis();
+                Integer p1Sec = p1.getProcessingStatus().getProcessingSeconds(serverTimeMillis);
+                Integer p2Sec = p2.getProcessingStatus().getProcessingSeconds(serverTimeMillis);
                 return p1Sec.compareTo(p2Sec);
             }
         });
@@ -33,6 +33,11 @@ public interface PortalContext {
 
     ListDataProvider<DtoProduction> getProductions();
 
+    /**
+     * @return The current time of the server, estimated from the time of the last production list update.
+     */
+    long getServerTimeMillis();
+
     BackendServiceAsync getBackendService();
 
     ContextRetrievalServiceAsync getContextRetrievalService();
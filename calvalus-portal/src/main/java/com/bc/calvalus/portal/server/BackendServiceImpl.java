@@ -37,6 +37,7 @@ import com.bc.calvalus.portal.shared.DtoProcessorDescriptor;
 import com.bc.calvalus.portal.shared.DtoProcessorVariable;
 import com.bc.calvalus.portal.shared.DtoProductSet;
 import com.bc.calvalus.portal.shared.DtoProduction;
+import com.bc.calvalus.portal.shared.DtoProductionDelta;
 import com.bc.calvalus.portal.shared.DtoProductionRequest;
 import com.bc.calvalus.portal.shared.DtoProductionResponse;
 import com.bc.calvalus.portal.shared.DtoRegion;
@@ -156,6 +157,7 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
     private ServiceContainer serviceContainer;
     private BackendConfig backendConfig;
     private Timer statusObserver;
+    private ProductionListTracker productionListTracker;
     private static final DateFormat CCSDS_FORMAT = DateUtils.createDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
 
     /**
@@ -204,6 +206,7 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
                     initLogger(servletContext);
                     initBackendConfig(servletContext);
                     initProductionService();
+                    productionListTracker = new ProductionListTracker(this::convert);
                     startObservingProductionService();
                 }
             }
@@ -402,6 +405,26 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
         }
     }
 
+    @Override
+    public DtoProductionDelta getProductionDelta(String filter, long version, int waitMillis) throws BackendServiceException {
+        boolean currentUserFilter = (PARAM_NAME_CURRENT_USER_ONLY + "=true").equals(filter);
+        try {
+            if (!productionListTracker.isInitialised()) {
+                updateProductionListTracker();
+            }
+            DtoProductionDelta delta = productionListTracker.getDelta(currentUserFilter ? getUserName() : null,
+                                                                      version, waitMillis);
+            LOG.fine("getProductionDelta returns " + delta.getChangedProductions().length + " changed and "
+                     + delta.getRemovedProductionIds().length + " removed productions");
+            return delta;
+        } catch (ProductionException e) {
+            throw convert(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackendServiceException("Interrupted while waiting for production changes", e);
+        }
+    }
+
     @Override
     public DtoProductionRequest getProductionRequest(String productionId) throws BackendServiceException {
         try {
@@ -452,6 +475,7 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
                 productionRequest.setParameter(JobConfigNames.CALVALUS_REQUEST_SIZE_LIMIT, (String) requestSizeLimit);
             }
             ProductionResponse productionResponse = serviceContainer.getProductionService().orderProduction(productionRequest, hook);
+            updateProductionListTracker();
             return convert(productionResponse);
         } catch (ProductionException e) {
             throw convert(e);
@@ -517,6 +541,7 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
     public void cancelProductions(String[] productionIds) throws BackendServiceException {
         try {
             serviceContainer.getProductionService().cancelProductions(productionIds);
+            updateProductionListTracker();
         } catch (ProductionException e) {
             throw convert(e);
         }
@@ -526,6 +551,7 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
     public void deleteProductions(String[] productionIds) throws BackendServiceException {
         try {
             serviceContainer.getProductionService().deleteProductions(productionIds);
+            updateProductionListTracker();
         } catch (ProductionException e) {
             throw convert(e);
         }
@@ -829,16 +855,19 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
         Date startTime = workflow.getStartTime();
         Date stopTime = workflow.getStopTime();
         int processingSeconds = 0;
+        long startTimeMillis = 0L;
         if (startTime != null) {
             if (stopTime == null) {
                 stopTime = new Date();
+                startTimeMillis = startTime.getTime();
             }
             processingSeconds = (int) ((stopTime.getTime() - startTime.getTime()) / 1000);
         }
         return new DtoProcessStatus(DtoProcessState.valueOf(status.getState().name()),
                 status.getMessage(),
                 status.getProgress(),
-                processingSeconds);
+                processingSeconds,
+                startTimeMillis);
     }
 
     private DtoProcessStatus convert(ProcessStatus status) {
@@ -917,9 +946,18 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
         final ProductionService productionService = this.serviceContainer.getProductionService();
         if (productionService != null) {
             productionService.updateStatuses(getUserName());
+            try {
+                updateProductionListTracker();
+            } catch (ProductionException e) {
+                LOG.log(Level.WARNING, "Failed to update production list: " + e.getMessage(), e);
+            }
         }
     }
 
+    private void updateProductionListTracker() throws ProductionException {
+        productionListTracker.update(serviceContainer.getProductionService().getProductions(null));
+    }
+
     private String getUserName() {
         return getUserName(getThreadLocalRequest());
     }
@@ -0,0 +1,84 @@
+package com.bc.calvalus.portal.server;
+
+/**
+ * A single byte range of an HTTP {@code Range} request, resolved against the length of the requested file.
+ * Multiple ranges are not supported, such requests are answered with the complete file.
+ */
+class ByteRange {
+
+    static final ByteRange UNSATISFIABLE = new ByteRange(0, -1);
+
+    private final long first;
+    private final long last;
+
+    ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * @param rangeHeader the value of the {@code Range} header, may be {@code null}
+     * @param length      the length of the file
+     * @return the requested range, {@link #UNSATISFIABLE} if it is outside of the file,
+     * or {@code null} if the complete file shall be sent
+     */
+    static ByteRange parse(String rangeHeader, long length) {
+        if (rangeHeader == null) {
+            return null;
+        }
+        String spec = rangeHeader.trim();
+        if (!spec.startsWith("bytes=") || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        spec = spec.substring("bytes=".length());
+        int dashPos = spec.indexOf('-');
+        if (dashPos < 0) {
+            return null;
+        }
+        String firstString = spec.substring(0, dashPos).trim();
+        String lastString = spec.substring(dashPos + 1).trim();
+        try {
+            if (firstString.isEmpty()) {
+                if (lastString.isEmpty()) {
+                    return null;
+                }
+                long suffixLength = Long.parseLong(lastString);
+                if (suffixLength <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new ByteRange(Math.max(0, length - suffixLength), length - 1);
+            }
+            long first = Long.parseLong(firstString);
+            long last = lastString.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastString);
+            if (first < 0 || last < first) {
+                return null;
+            }
+            if (first >= length) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(first, Math.min(last, length - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    boolean isSatisfiable() {
+        return first <= last;
+    }
+
+    long getFirst() {
+        return first;
+    }
+
+    long getLast() {
+        return last;
+    }
+
+    long getLength() {
+        return last - first + 1;
+    }
+
+    String toContentRange(long length) {
+        return String.format("bytes %d-%d/%d", first, last, length);
+    }
+}
@@ -1,22 +1,39 @@
 package com.bc.calvalus.portal.server;
 
+import com.bc.calvalus.inventory.AbstractFileSystemService;
+import com.bc.calvalus.production.ServiceContainer;
+import org.apache.hadoop.fs.FileStatus;
+
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+
+import static com.bc.calvalus.portal.server.BackendServiceImpl.getUserName;
 
 /**
  * Servlet to handle file download requests.
+ * <p/>
+ * Staged files are requested with the query parameter {@code file} relative to the local staging directory,
+ * files in the user's inventory with the parameter {@code path} relative to the user's home directory.
+ * Single byte ranges are supported (with {@code If-Range}), so that interrupted downloads can be resumed.
  *
  * @author Norman
  */
 public class FileDownloadServlet extends HttpServlet {
 
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         doGet(req, resp);
@@ -26,37 +43,137 @@ public class FileDownloadServlet extends HttpServlet {
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 
         String filePath = req.getParameter("file");
-        if (filePath == null) {
+        String inventoryPath = req.getParameter("path");
+        if (filePath != null) {
+            File downloadDir = new BackendConfig(getServletContext()).getLocalStagingDir();
+            sendLocalFile(new File(downloadDir, filePath), req, resp);
+        } else if (inventoryPath != null) {
+            sendInventoryFile(inventoryPath, req, resp);
+        } else {
             throw new ServletException("Missing query parameter 'file'");
         }
+    }
 
-        File downloadDir = new BackendConfig(getServletContext()).getLocalStagingDir();
-        File file = new File(downloadDir, filePath);
-        if (file.length() > Integer.MAX_VALUE) {
-            throw new ServletException(String.format("File size too big (expected less than 2 GB, but got %d bytes).", file.length()));
+    private void sendLocalFile(File file, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!file.isFile()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "File not found: " + file.getName());
+            return;
+        }
+        ByteRange range = prepareResponse(req, resp, file.getName(), file.length(), file.lastModified());
+        if (range == null) {
+            return;
+        }
+        try (FileChannel input = new FileInputStream(file).getChannel()) {
+            WritableByteChannel output = Channels.newChannel(resp.getOutputStream());
+            long position = range.getFirst();
+            long end = range.getLast() + 1;
+            while (position < end) {
+                long bytesTransferred = input.transferTo(position, end - position, output);
+                if (bytesTransferred <= 0) {
+                    throw new EOFException("Unexpected end of file " + file.getName() + " at " + position);
+                }
+                position += bytesTransferred;
+            }
+            log(range.getLength() + " bytes sent");
         }
-        int contentLength = (int) file.length();
+    }
 
-        BufferedInputStream input = new BufferedInputStream(new FileInputStream(file), 4 * 1024 * 1024);
-        try {
-            resp.reset();
-            resp.setContentType("application/octet-stream");
-            resp.setContentLength(contentLength);
-            resp.setHeader("Content-disposition",
-                           String.format("attachment; filename=\"%s\"", file.getName()));
-            BufferedOutputStream output = new BufferedOutputStream(resp.getOutputStream(), 4 * 1024 * 1024);
-            byte[] buffer = new byte[1024 * 1024];
-            int bytesRead, bytesWritten = 0;
-            while ((bytesRead = input.read(buffer)) != -1) {
+    private void sendInventoryFile(String inventoryPath, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        ServiceContainer serviceContainer = (ServiceContainer) getServletContext().getAttribute("serviceContainer");
+        String userName = getUserName(req).toLowerCase();
+        String userPath = AbstractFileSystemService.getUserPath(userName, inventoryPath);
+        FileStatus[] fileStatuses = serviceContainer.getFileSystemService().globFiles(userName, Collections.singletonList(userPath));
+        if (fileStatuses.length != 1) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "File not found: " + inventoryPath);
+            return;
+        }
+        FileStatus fileStatus = fileStatuses[0];
+        ByteRange range = prepareResponse(req, resp, fileStatus.getPath().getName(), fileStatus.getLen(), fileStatus.getModificationTime());
+        if (range == null) {
+            return;
+        }
+        try (InputStream input = serviceContainer.getFileSystemService().openFile(userName, userPath)) {
+            skipFully(input, range.getFirst());
+            OutputStream output = resp.getOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = range.getLength();
+            while (remaining > 0) {
+                int bytesRead = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (bytesRead == -1) {
+                    throw new EOFException("Unexpected end of file " + inventoryPath);
+                }
                 output.write(buffer, 0, bytesRead);
-                bytesWritten += bytesRead;
+                remaining -= bytesRead;
             }
             output.flush();
-            log(bytesWritten + " bytes sent");
-        } finally {
-            input.close();
+            log(range.getLength() + " bytes sent");
         }
     }
 
+    /**
+     * Evaluates the range headers of the request and writes the response headers.
+     *
+     * @return the range of the file to be sent, or {@code null} if nothing is to be sent
+     */
+    private static ByteRange prepareResponse(HttpServletRequest req, HttpServletResponse resp,
+                                             String fileName, long length, long lastModified) throws IOException {
+        String eTag = String.format("\"%x-%x\"", length, lastModified);
+        ByteRange range = null;
+        if (matchesIfRange(req, eTag, lastModified)) {
+            range = ByteRange.parse(req.getHeader("Range"), length);
+        }
 
+        resp.reset();
+        resp.setHeader("Accept-Ranges", "bytes");
+        resp.setHeader("ETag", eTag);
+        resp.setDateHeader("Last-Modified", lastModified);
+        if (range != null && !range.isSatisfiable()) {
+            resp.setHeader("Content-Range", "bytes */" + length);
+            resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return null;
+        }
+        if (range == null) {
+            range = new ByteRange(0, length - 1);
+            resp.setStatus(HttpServletResponse.SC_OK);
+        } else {
+            resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            resp.setHeader("Content-Range", range.toContentRange(length));
+        }
+        resp.setContentType("application/octet-stream");
+        // setContentLength is limited to int, files may be larger than 2 GB
+        resp.setHeader("Content-Length", Long.toString(range.getLength()));
+        resp.setHeader("Content-disposition", String.format("attachment; filename=\"%s\"", fileName));
+        return range;
+    }
+
+    /**
+     * A range request is only served partially if the file is still the one given by {@code If-Range}.
+     */
+    private static boolean matchesIfRange(HttpServletRequest req, String eTag, long lastModified) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(eTag);
+        }
+        try {
+            return req.getDateHeader("If-Range") == lastModified / 1000 * 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void skipFully(InputStream input, long count) throws IOException {
+        while (count > 0) {
+            long skipped = input.skip(count);
+            if (skipped <= 0) {
+                if (input.read() == -1) {
+                    throw new EOFException("Range start beyond end of file");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
 }
@@ -0,0 +1,179 @@
+package com.bc.calvalus.portal.server;
+
+import com.bc.calvalus.commons.ProcessStatus;
+import com.bc.calvalus.commons.WorkflowItem;
+import com.bc.calvalus.portal.shared.DtoProduction;
+import com.bc.calvalus.portal.shared.DtoProductionDelta;
+import com.bc.calvalus.production.Production;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Maintains a versioned copy of the production list as seen by portal clients.
+ * <p/>
+ * {@link #update(Production[])} is called by the status observer and after production actions. Only productions
+ * whose status changed are converted again and get the new version. Clients pass the version of their last
+ * delta and receive the productions changed or removed since then. A client whose version is unknown, e.g.
+ * from a previous server instance or older than the retained removals, receives the complete list.
+ */
+class ProductionListTracker {
+
+    static final int MAX_REMOVED_PRODUCTIONS = 1000;
+    static final int MAX_WAIT_MILLIS = 30 * 1000;
+
+    private final Function<Production, DtoProduction> converter;
+    private final LongSupplier serverClock;
+    private final Map<String, Entry> entries;
+    private final Map<String, Long> removedProductionVersions;
+    private final long baseVersion;
+    private long removalHorizon;
+    private long version;
+    private boolean initialised;
+
+    ProductionListTracker(Function<Production, DtoProduction> converter) {
+        this(converter, System.currentTimeMillis());
+    }
+
+    ProductionListTracker(Function<Production, DtoProduction> converter, long baseVersion) {
+        this(converter, baseVersion, System::currentTimeMillis);
+    }
+
+    /**
+     * @param serverClock The clock of the server time passed to the clients, which compute the processing time
+     *                    of running productions from it.
+     */
+    ProductionListTracker(Function<Production, DtoProduction> converter, long baseVersion, LongSupplier serverClock) {
+        this.converter = converter;
+        this.serverClock = serverClock;
+        this.entries = new LinkedHashMap<>();
+        this.removedProductionVersions = new LinkedHashMap<>();
+        this.baseVersion = baseVersion;
+        this.removalHorizon = baseVersion;
+        this.version = baseVersion;
+    }
+
+    synchronized boolean isInitialised() {
+        return initialised;
+    }
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    synchronized void update(Production[] productions) {
+        long newVersion = version + 1;
+        boolean changed = false;
+        Set<String> removedIds = new HashSet<>(entries.keySet());
+        for (Production production : productions) {
+            String id = production.getId();
+            removedIds.remove(id);
+            String signature = getSignature(production);
+            Entry entry = entries.get(id);
+            if (entry == null || !entry.signature.equals(signature)) {
+                DtoProduction dtoProduction = converter.apply(production);
+                entries.put(id, new Entry(dtoProduction, signature, production.getProductionRequest().getUserName(), newVersion));
+                removedProductionVersions.remove(id);
+                changed = true;
+            }
+        }
+        for (String id : removedIds) {
+            entries.remove(id);
+            removedProductionVersions.put(id, newVersion);
+            changed = true;
+        }
+        Iterator<Long> iterator = removedProductionVersions.values().iterator();
+        while (removedProductionVersions.size() > MAX_REMOVED_PRODUCTIONS) {
+            removalHorizon = iterator.next();
+            iterator.remove();
+        }
+        if (changed) {
+            version = newVersion;
+            notifyAll();
+        }
+        initialised = true;
+    }
+
+    /**
+     * @param userName   The user whose productions are requested, or {@code null} for all users.
+     * @param since      The version of the client.
+     * @param waitMillis If positive and nothing changed since {@code since}, the time to wait for changes.
+     */
+    synchronized DtoProductionDelta getDelta(String userName, long since, int waitMillis) throws InterruptedException {
+        if (since == version && waitMillis > 0) {
+            long deadline = System.currentTimeMillis() + Math.min(waitMillis, MAX_WAIT_MILLIS);
+            long remaining;
+            while (since == version && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+        }
+        boolean complete = since < baseVersion || since > version || since < removalHorizon;
+        List<DtoProduction> changedProductions = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if ((complete || entry.version > since)
+                && (userName == null || userName.equalsIgnoreCase(entry.userName))) {
+                changedProductions.add(entry.production);
+            }
+        }
+        List<String> removedProductionIds = new ArrayList<>();
+        if (!complete) {
+            for (Map.Entry<String, Long> removed : removedProductionVersions.entrySet()) {
+                if (removed.getValue() > since) {
+                    removedProductionIds.add(removed.getKey());
+                }
+            }
+        }
+        return new DtoProductionDelta(version,
+                                      complete,
+                                      changedProductions.toArray(new DtoProduction[changedProductions.size()]),
+                                      removedProductionIds.toArray(new String[removedProductionIds.size()]),
+                                      serverClock.getAsLong());
+    }
+
+    /**
+     * @return A string that changes whenever the converted production would change. The processing time of
+     *         running productions is computed by the clients from the start time and does not count as a change.
+     */
+    private static String getSignature(Production production) {
+        ProcessStatus processingStatus = production.getProcessingStatus();
+        ProcessStatus stagingStatus = production.getStagingStatus();
+        WorkflowItem workflow = production.getWorkflow();
+        StringBuilder sb = new StringBuilder();
+        sb.append(processingStatus.getState()).append('|')
+                .append(processingStatus.getProgress()).append('|')
+                .append(processingStatus.getMessage()).append('|')
+                .append(stagingStatus.getState()).append('|')
+                .append(stagingStatus.getProgress()).append('|')
+                .append(stagingStatus.getMessage()).append('|')
+                .append(getTime(workflow.getStartTime())).append('|')
+                .append(getTime(workflow.getStopTime()));
+        return sb.toString();
+    }
+
+    private static long getTime(Date date) {
+        return date != null ? date.getTime() : -1L;
+    }
+
+    private static class Entry {
+
+        private final DtoProduction production;
+        private final String signature;
+        private final String userName;
+        private final long version;
+
+        private Entry(DtoProduction production, String signature, String userName, long version) {
+            this.production = production;
+            this.signature = signature;
+            this.userName = userName;
+            this.version = version;
+        }
+    }
+}
@@ -85,6 +85,21 @@ public interface BackendService extends RemoteService {
      */
     DtoProduction[] getProductions(String filter) throws BackendServiceException;
 
+    /**
+     * Gets the productions added, changed or removed since the given version of the production list.
+     *
+     * @param filter      A filter expression, see {@link #getProductions(String)}.
+     * @param version     The version returned by the last call, or {@code 0} to get the complete list.
+     *                    If the version is unknown to the server, the complete list is returned.
+     * @param waitMillis  If greater than zero and nothing changed since {@code version}, the call blocks
+     *                    until something changes or the given time (bounded by the server) has elapsed.
+     *
+     * @return The changes and the current version of the production list.
+     *
+     * @throws BackendServiceException If a server error occurred.
+     */
+    DtoProductionDelta getProductionDelta(String filter, long version, int waitMillis) throws BackendServiceException;
+
     /**
      * Orders a new productions.
      *
@@ -31,6 +31,8 @@ public interface BackendServiceAsync {
 
     void getProductions(String filter, AsyncCallback<DtoProduction[]> callback);
 
+    void getProductionDelta(String filter, long version, int waitMillis, AsyncCallback<DtoProductionDelta> callback);
+
     void orderProduction(DtoProductionRequest request, AsyncCallback<DtoProductionResponse> callback);
 
     void cancelProductions(String[] productionIds, AsyncCallback<Void> callback);
@@ -13,6 +13,7 @@ public class DtoProcessStatus implements IsSerializable {
     private String message;
     private float progress;
     private int processingSeconds;
+    private long startTimeMillis;
 
     /**
      * No-arg constructor as required by {@link IsSerializable}.
@@ -30,6 +31,13 @@ public class DtoProcessStatus implements IsSerializable {
     }
 
     public DtoProcessStatus(DtoProcessState state, String message, float progress, int processingSeconds) {
+        this(state, message, progress, processingSeconds, 0L);
+    }
+
+    /**
+     * @param startTimeMillis The start time of a production that is still being processed, or 0.
+     */
+    public DtoProcessStatus(DtoProcessState state, String message, float progress, int processingSeconds, long startTimeMillis) {
         if (state == null) {
             throw new NullPointerException("state");
         }
@@ -40,6 +48,7 @@ public class DtoProcessStatus implements IsSerializable {
         this.message = message;
         this.progress = progress;
         this.processingSeconds = processingSeconds;
+        this.startTimeMillis = startTimeMillis;
     }
 
     public DtoProcessState getState() {
@@ -66,6 +75,22 @@ public class DtoProcessStatus implements IsSerializable {
         return processingSeconds;
     }
 
+    /**
+     * @param serverTimeMillis The current time of the server.
+     * @return The processing time up to the given time if the production is still being processed,
+     *         otherwise the processing time passed by the server.
+     */
+    public int getProcessingSeconds(long serverTimeMillis) {
+        if (startTimeMillis > 0L) {
+            return (int) ((serverTimeMillis - startTimeMillis) / 1000);
+        }
+        return processingSeconds;
+    }
+
+    public boolean isProcessingTimeRunning() {
+        return startTimeMillis > 0L;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -84,6 +109,7 @@ public class DtoProcessStatus implements IsSerializable {
 
         return delta <= EPS
                 && processingSeconds == that.processingSeconds
+                && startTimeMillis == that.startTimeMillis
                 && message.equals(that.message)
                 && state == that.state;
     }
@@ -94,6 +120,7 @@ public class DtoProcessStatus implements IsSerializable {
         result = 31 * result + message.hashCode();
         result = 31 * result + (int) (progress / EPS);
         result = 31 * result + processingSeconds;
+        result = 31 * result + (int) (startTimeMillis ^ (startTimeMillis >>> 32));
         return result;
     }
 
@@ -104,6 +131,7 @@ public class DtoProcessStatus implements IsSerializable {
                 ", message='" + message + '\'' +
                 ", progress=" + progress +
                 ", processingSeconds=" + processingSeconds +
+                ", startTimeMillis=" + startTimeMillis +
                 '}';
     }
 }
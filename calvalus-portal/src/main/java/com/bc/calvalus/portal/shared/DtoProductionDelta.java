@@ -0,0 +1,70 @@
+package com.bc.calvalus.portal.shared;
+
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * The changes of the production list since a given version, see
+ * {@link BackendService#getProductionDelta(String, long, int)}.
+ * <p/>
+ * If {@link #isComplete()} is {@code true}, {@link #getChangedProductions()} holds all productions and
+ * clients shall drop productions they know but which are not contained.
+ */
+public class DtoProductionDelta implements IsSerializable {
+    private long version;
+    private boolean complete;
+    private DtoProduction[] changedProductions;
+    private String[] removedProductionIds;
+    private long serverTimeMillis;
+
+    /**
+     * No-arg constructor as required by {@link IsSerializable}. Don't use directly.
+     */
+    public DtoProductionDelta() {
+    }
+
+    public DtoProductionDelta(long version,
+                              boolean complete,
+                              DtoProduction[] changedProductions,
+                              String[] removedProductionIds,
+                              long serverTimeMillis) {
+        this.version = version;
+        this.complete = complete;
+        this.changedProductions = changedProductions;
+        this.removedProductionIds = removedProductionIds;
+        this.serverTimeMillis = serverTimeMillis;
+    }
+
+    /**
+     * @return The version token to be passed with the next request.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return The productions added or changed since the requested version.
+     */
+    public DtoProduction[] getChangedProductions() {
+        return changedProductions;
+    }
+
+    /**
+     * @return The IDs of the productions removed since the requested version.
+     */
+    public String[] getRemovedProductionIds() {
+        return removedProductionIds;
+    }
+
+    /**
+     * @return The time of the server when the delta was created, used by clients to compute
+     *         the processing time of running productions from their start time.
+     */
+    public long getServerTimeMillis() {
+        return serverTimeMillis;
+    }
+}
@@ -0,0 +1,62 @@
+package com.bc.calvalus.portal.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ByteRangeTest {
+
+    private static final long LENGTH = 5L * 1024 * 1024 * 1024;
+
+    @Test
+    public void testClosedRange() throws Exception {
+        ByteRange range = ByteRange.parse("bytes=100-199", LENGTH);
+        assertEquals(100, range.getFirst());
+        assertEquals(199, range.getLast());
+        assertEquals(100, range.getLength());
+        assertEquals("bytes 100-199/5368709120", range.toContentRange(LENGTH));
+    }
+
+    @Test
+    public void testOpenRangeBeyond2GB() throws Exception {
+        ByteRange range = ByteRange.parse("bytes=3000000000-", LENGTH);
+        assertEquals(3000000000L, range.getFirst());
+        assertEquals(LENGTH - 1, range.getLast());
+        assertEquals(LENGTH - 3000000000L, range.getLength());
+    }
+
+    @Test
+    public void testSuffixRange() throws Exception {
+        ByteRange range = ByteRange.parse("bytes=-500", 1000);
+        assertEquals(500, range.getFirst());
+        assertEquals(999, range.getLast());
+        assertEquals(0, ByteRange.parse("bytes=-5000", 1000).getFirst());
+    }
+
+    @Test
+    public void testLastIsClippedToLength() throws Exception {
+        assertEquals(999, ByteRange.parse("bytes=900-2000", 1000).getLast());
+    }
+
+    @Test
+    public void testUnsatisfiable() throws Exception {
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=1000-", 1000));
+        assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 1000));
+        assertFalse(ByteRange.UNSATISFIABLE.isSatisfiable());
+        assertTrue(ByteRange.parse("bytes=999-", 1000).isSatisfiable());
+    }
+
+    @Test
+    public void testCompleteFileIsSentForUnsupportedRanges() throws Exception {
+        assertNull(ByteRange.parse(null, 1000));
+        assertNull(ByteRange.parse("bytes=0-1,5-6", 1000));
+        assertNull(ByteRange.parse("items=0-1", 1000));
+        assertNull(ByteRange.parse("bytes=5-1", 1000));
+        assertNull(ByteRange.parse("bytes=x-", 1000));
+        assertNull(ByteRange.parse("bytes=-", 1000));
+    }
+}
@@ -0,0 +1,156 @@
+package com.bc.calvalus.portal.server;
+
+import com.bc.calvalus.commons.AbstractWorkflowItem;
+import com.bc.calvalus.commons.ProcessState;
+import com.bc.calvalus.commons.ProcessStatus;
+import com.bc.calvalus.portal.shared.DtoProcessState;
+import com.bc.calvalus.portal.shared.DtoProcessStatus;
+import com.bc.calvalus.portal.shared.DtoProduction;
+import com.bc.calvalus.portal.shared.DtoProductionDelta;
+import com.bc.calvalus.production.Production;
+import com.bc.calvalus.production.ProductionRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProductionListTrackerTest {
+
+    private ProductionListTracker tracker;
+    private int conversionCount;
+    private long serverTime;
+
+    @Before
+    public void setUp() throws Exception {
+        conversionCount = 0;
+        serverTime = 1500000000000L;
+        tracker = new ProductionListTracker(production -> {
+            conversionCount++;
+            Date startTime = production.getWorkflow().getStartTime();
+            DtoProcessStatus status = new DtoProcessStatus(DtoProcessState.valueOf(production.getProcessingStatus().getState().name()),
+                                                           "", production.getProcessingStatus().getProgress(), 0,
+                                                           startTime != null ? startTime.getTime() : 0L);
+            return new DtoProduction(production.getId(), production.getName(),
+                                     production.getProductionRequest().getUserName(), "test",
+                                     null, null, null, false, status, new DtoProcessStatus(DtoProcessState.UNKNOWN));
+        }, 1000L, () -> serverTime);
+    }
+
+    @Test
+    public void testDeltas() throws Exception {
+        SimpleWorkflow workflow1 = new SimpleWorkflow(new ProcessStatus(ProcessState.SCHEDULED));
+        Production production1 = createProduction("id1", "ewa", workflow1);
+        Production production2 = createProduction("id2", "norman", new SimpleWorkflow(new ProcessStatus(ProcessState.COMPLETED)));
+
+        tracker.update(new Production[]{production1, production2});
+        assertEquals(2, conversionCount);
+
+        DtoProductionDelta delta = tracker.getDelta(null, 0L, 0);
+        assertTrue(delta.isComplete());
+        assertEquals(2, delta.getChangedProductions().length);
+        long version = delta.getVersion();
+
+        // nothing changed
+        tracker.update(new Production[]{production1, production2});
+        assertEquals(2, conversionCount);
+        delta = tracker.getDelta(null, version, 0);
+        assertFalse(delta.isComplete());
+        assertEquals(0, delta.getChangedProductions().length);
+        assertEquals(version, delta.getVersion());
+
+        // status change and removal
+        workflow1.setStatus(new ProcessStatus(ProcessState.COMPLETED));
+        tracker.update(new Production[]{production1});
+        assertEquals(3, conversionCount);
+        delta = tracker.getDelta(null, version, 0);
+        assertFalse(delta.isComplete());
+        assertEquals(1, delta.getChangedProductions().length);
+        assertEquals("id1", delta.getChangedProductions()[0].getId());
+        assertArrayEquals(new String[]{"id2"}, delta.getRemovedProductionIds());
+
+        // filtered by user
+        delta = tracker.getDelta("norman", 0L, 0);
+        assertTrue(delta.isComplete());
+        assertEquals(0, delta.getChangedProductions().length);
+
+        // unknown version from a previous server instance
+        delta = tracker.getDelta(null, version + 100, 0);
+        assertTrue(delta.isComplete());
+        assertEquals(1, delta.getChangedProductions().length);
+    }
+
+    @Test
+    public void testRunningProductionIsNotConvertedAgain() throws Exception {
+        SimpleWorkflow workflow = new SimpleWorkflow(new ProcessStatus(ProcessState.RUNNING, 0.5f, ""));
+        workflow.setStartTime(new Date(serverTime - 5000));
+        Production production = createProduction("id1", "ewa", workflow);
+        tracker.update(new Production[]{production});
+        long version = tracker.getVersion();
+        DtoProductionDelta delta = tracker.getDelta(null, 0L, 0);
+        assertEquals(5, delta.getChangedProductions()[0].getProcessingStatus().getProcessingSeconds(delta.getServerTimeMillis()));
+
+        // the processing time is computed by the client, the production is unchanged a second later
+        serverTime += 1100;
+        tracker.update(new Production[]{production});
+        assertEquals(1, conversionCount);
+        assertEquals(version, tracker.getVersion());
+        delta = tracker.getDelta(null, 0L, 0);
+        assertEquals(6, delta.getChangedProductions()[0].getProcessingStatus().getProcessingSeconds(delta.getServerTimeMillis()));
+    }
+
+    @Test
+    public void testLongPoll() throws Exception {
+        SimpleWorkflow workflow = new SimpleWorkflow(new ProcessStatus(ProcessState.SCHEDULED));
+        Production production = createProduction("id1", "ewa", workflow);
+        tracker.update(new Production[]{production});
+        long version = tracker.getVersion();
+
+        long t0 = System.currentTimeMillis();
+        DtoProductionDelta delta = tracker.getDelta(null, version, 100);
+        assertTrue(System.currentTimeMillis() - t0 >= 100);
+        assertEquals(version, delta.getVersion());
+
+        Thread updater = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            workflow.setStatus(new ProcessStatus(ProcessState.COMPLETED));
+            tracker.update(new Production[]{production});
+        });
+        updater.start();
+        delta = tracker.getDelta(null, version, 10000);
+        updater.join();
+        assertEquals(version + 1, delta.getVersion());
+        assertEquals(1, delta.getChangedProductions().length);
+    }
+
+    private static Production createProduction(String id, String userName, SimpleWorkflow workflow) {
+        return new Production(id, "name_" + id, null, new String[0], null, false,
+                              new ProductionRequest("test", userName), workflow);
+    }
+
+    private static class SimpleWorkflow extends AbstractWorkflowItem {
+
+        private SimpleWorkflow(ProcessStatus status) {
+            super(status);
+        }
+
+        @Override
+        public void submit() {
+        }
+
+        @Override
+        public void kill() {
+        }
+
+        @Override
+        public void updateStatus() {
+        }
+    }
+}
@@ -43,4 +43,14 @@ public class DtoProcessStatusTest extends TestCase {
         assertFalse(new DtoProcessStatus(DtoProcessState.RUNNING, "Dabei!", 0.2f, 34).equals(
                 new DtoProcessStatus(DtoProcessState.RUNNING, "Dabei!", 0.2f, 35)));
     }
+
+    public void testProcessingSecondsOfRunningProduction() {
+        DtoProcessStatus running = new DtoProcessStatus(DtoProcessState.RUNNING, "", 0.2f, 10, 100000L);
+        assertTrue(running.isProcessingTimeRunning());
+        assertEquals(25, running.getProcessingSeconds(125000L));
+
+        DtoProcessStatus completed = new DtoProcessStatus(DtoProcessState.COMPLETED, "", 1.0f, 34);
+        assertFalse(completed.isProcessingTimeRunning());
+        assertEquals(34, completed.getProcessingSeconds(125000L));
+    }
 }
@@ -40,11 +40,19 @@ public interface JobConfigNames {
     String CALVALUS_INPUT_PRODUCT_IDENTIFIERS = "calvalus.input.productIdentifiers";
     String CALVALUS_INPUT_COLLECTION_NAME = "calvalus.input.collectionName";
     String CALVALUS_INPUT_PRODUCT_TYPE = "calvalus.input.productType";
+    String CALVALUS_INPUT_PRODUCTS_PER_SPLIT = "calvalus.input.productsPerSplit";
+    String CALVALUS_INPUT_SPLIT_SIZE = "calvalus.input.splitSize";
+    String CALVALUS_INPUT_MULTI_PRODUCT_SPLITS = "calvalus.input.multiProductSplits";
+    String CALVALUS_INPUT_TOLERATE_FAILED_PRODUCTS = "calvalus.input.tolerateFailedProducts";
 
     String CALVALUS_OUTPUT_DIR = "calvalus.output.dir";
     String CALVALUS_OUTPUT_FORMAT = "calvalus.output.format";
     String CALVALUS_OUTPUT_PRODUCT_TYPE = "calvalus.output.productType";
     String CALVALUS_OUTPUT_COMPRESSION = "calvalus.output.compression";
+    String CALVALUS_OUTPUT_COMPRESSION_THREADS = "calvalus.output.compressionThreads";
+    String CALVALUS_INTERMEDIATE_CODEC = "calvalus.intermediate.codec";
+    String CALVALUS_INTERMEDIATE_SEQUENCE_FILE_COMPRESSION = "calvalus.intermediate.sequenceFileCompression";
+    String CALVALUS_INTERMEDIATE_WRITABLE_COMPRESSION = "calvalus.intermediate.writableCompression";
     String CALVALUS_OUTPUT_REPLACE_NAN_VALUE = "calvalus.output.replaceNanValue";
     String CALVALUS_OUTPUT_CRS = "calvalus.output.crs";
     String CALVALUS_OUTPUT_BANDLIST = "calvalus.output.bandList";
@@ -150,6 +158,7 @@ public interface JobConfigNames {
     String PRESERVE_DATE_TREE = "preserveDateTree";
     String INPUT_SUBSETTING = "inputSubsetting";
     String OUTPUT_SUBSETTING = "outputSubsetting";
+    String OUTPUT_FUSED = "outputFused";
     String QUEUE = "queue";
     String ATTEMPTS = "attempts";
     String FAILURE_PERCENT = "failurePercent";
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.hadoop.MultiProductSplit;
+import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
+import com.bc.ceres.core.ProgressMonitor;
+import com.bc.ceres.core.SubProgressMonitor;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.MapContext;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the processing of a mapper for each product of the task's input split, using one processor adapter.
+ * <p/>
+ * For an ordinary split the product is processed once and failures are passed on as before.
+ * For a {@link MultiProductSplit} the adapter is switched from product to product, so that the processor
+ * installation, the GPF operator registry and the JAI tile cache are initialised only once per task.
+ * A failing product is counted and logged and its failure is passed on, so that the task is retried.
+ * <p/>
+ * With {@link JobConfigNames#CALVALUS_INPUT_TOLERATE_FAILED_PRODUCTS} the remaining products are still processed
+ * and the task only fails if all of its products fail. This is only done for mappers that write each product
+ * to an output of its own. Mappers that emit records or bins of several products into the same output,
+ * e.g. L3 and MA, cannot take back what a failed product has emitted and always fail.
+ */
+public class MultiProductProcessor {
+
+    private static final String COUNTER_GROUP_NAME_PRODUCTS = "Products";
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+
+    public interface ProductHandler {
+        /**
+         * Processes the current product of the processor adapter.
+         *
+         * @param processorAdapter the processor adapter, set to the current product
+         * @param pm               the progress monitor for this product
+         */
+        void process(ProcessorAdapter processorAdapter, ProgressMonitor pm) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Processes the products of the split, a failing product fails the task.
+     */
+    public static void process(MapContext context, ProcessorAdapter processorAdapter, ProductHandler handler)
+            throws IOException, InterruptedException {
+        process(context, processorAdapter, handler, false);
+    }
+
+    /**
+     * @param failureTolerable whether the handler writes each product to an output of its own, so that the task
+     *                         may continue after a failed product if the job allows it
+     */
+    public static void process(MapContext context, ProcessorAdapter processorAdapter, ProductHandler handler,
+                               boolean failureTolerable) throws IOException, InterruptedException {
+        InputSplit[] productSplits = MultiProductSplit.getProductSplits(context.getInputSplit());
+        ProgressMonitor pm = new ProgressSplitProgressMonitor(context);
+        if (productSplits.length == 1) {
+            handler.process(processorAdapter, pm);
+            return;
+        }
+        boolean tolerateFailures = failureTolerable
+                                   && context.getConfiguration().getBoolean(JobConfigNames.CALVALUS_INPUT_TOLERATE_FAILED_PRODUCTS, false);
+        LOG.info(String.format("processing %d products of split", productSplits.length));
+        pm.beginTask("Processing products", productSplits.length);
+        Exception lastException = null;
+        int numFailed = 0;
+        try {
+            for (int i = 0; i < productSplits.length; i++) {
+                if (i > 0) {
+                    processorAdapter.setInputSplit(productSplits[i]);
+                }
+                try {
+                    handler.process(processorAdapter, SubProgressMonitor.create(pm, 1));
+                } catch (IOException | RuntimeException e) {
+                    LOG.log(Level.SEVERE, "failed to process product " + processorAdapter.getInputPath() + ": " + e.toString(), e);
+                    context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product failed").increment(1);
+                    if (!tolerateFailures) {
+                        throw e;
+                    }
+                    lastException = e;
+                    numFailed++;
+                }
+            }
+        } finally {
+            pm.done();
+            processorAdapter.dispose();
+        }
+        if (numFailed == productSplits.length) {
+            throw new IOException("All " + numFailed + " products of the split failed: " + lastException.toString(), lastException);
+        } else if (numFailed > 0) {
+            LOG.warning(String.format("%d of %d products failed", numFailed, productSplits.length));
+        }
+    }
+}
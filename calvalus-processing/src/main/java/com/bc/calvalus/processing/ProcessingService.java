@@ -50,6 +50,16 @@ public interface ProcessingService<JobId> {
      */
     ProcessStatus getJobStatus(JobId jobId);
 
+    /**
+     * Gets status information for a processing job of a given user, e.g. of a production restored from a store.
+     *
+     * @param username The owner of the job, whose rights are used to query it.
+     * @param jobId    The job identifier.
+     *
+     * @return Job status information.
+     */
+    ProcessStatus getJobStatus(String username, JobId jobId);
+
     /**
      * Kill a processing job.
      *
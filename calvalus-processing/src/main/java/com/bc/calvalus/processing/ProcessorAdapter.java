@@ -19,12 +19,15 @@ package com.bc.calvalus.processing;
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.beam.CalvalusProductIO;
 import com.bc.calvalus.processing.beam.GpfUtils;
+import com.bc.calvalus.processing.beam.PathConfiguration;
+import com.bc.calvalus.processing.hadoop.MultiProductSplit;
 import com.bc.calvalus.processing.hadoop.ParameterizedSplit;
 import com.bc.calvalus.processing.hadoop.ProductSplit;
 import com.bc.calvalus.processing.utils.GeometryUtils;
 import com.bc.ceres.core.ProgressMonitor;
 import com.vividsolutions.jts.geom.Geometry;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.MapContext;
@@ -96,7 +99,7 @@ public abstract class ProcessorAdapter {
 
     private final MapContext mapContext;
     private final Configuration conf;
-    private final InputSplit inputSplit;
+    private InputSplit inputSplit;
 
     private Product inputProduct;
     private Rectangle inputRectangle;
@@ -106,7 +109,8 @@ public abstract class ProcessorAdapter {
 
     public ProcessorAdapter(MapContext mapContext) {
         this.mapContext = mapContext;
-        this.inputSplit = mapContext.getInputSplit();
+        // with a multi-product split the adapter starts with the first product
+        this.inputSplit = MultiProductSplit.getProductSplits(mapContext.getInputSplit())[0];
         this.conf = mapContext.getConfiguration();
         if (conf.getBoolean("calvalus.snap.setSnapProperties", true)) {
             String cwd = new File(".").getAbsolutePath();
@@ -128,6 +132,59 @@ public abstract class ProcessorAdapter {
         return conf;
     }
 
+    /**
+     * @return The split of the product currently processed.
+     */
+    protected InputSplit getInputSplit() {
+        return inputSplit;
+    }
+
+    /**
+     * Switches the adapter to the next product of a {@link MultiProductSplit}.
+     * All products opened or processed for the previous product are disposed
+     * and its local files are deleted.
+     * The adapter itself and the installed processor are kept.
+     *
+     * @param inputSplit the split of the next product
+     */
+    public void setInputSplit(InputSplit inputSplit) {
+        dispose();
+        deleteLocalProductFiles();
+        this.inputSplit = inputSplit;
+        this.inputRectangle = null;
+        this.roiRectangle = null;
+        this.inputFile = null;
+        this.input2OutputTransform = null;
+    }
+
+    /**
+     * Deletes the local copy of the current product before the adapter switches to the next product,
+     * so that a multi-product split does not keep all of its products on the local disk.
+     * Subclasses that create further local files per product delete them, too.
+     */
+    protected void deleteLocalProductFiles() {
+        deleteLocalFile(inputFile, new File("."));
+    }
+
+    /**
+     * Deletes a file or directory, but only if it is located directly in the given directory.
+     * Symbolic links are deleted, not their targets.
+     */
+    protected static void deleteLocalFile(File file, File dir) {
+        if (file == null || !Files.exists(file.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && parent.getCanonicalPath().equals(dir.getCanonicalPath())) {
+                LOG.info("deleting local file " + file);
+                FileUtil.fullyDelete(file);
+            }
+        } catch (IOException e) {
+            LOG.warning("failed to delete local file " + file + ": " + e.getMessage());
+        }
+    }
+
     protected Logger getLogger() {
         return LOG;
     }
@@ -241,6 +298,17 @@ public abstract class ProcessorAdapter {
      */
     public abstract Path getOutputProductPath() throws IOException;
 
+    /**
+     * Returns the output for writing the processed product in the native format, if the caller may write it
+     * instead of {@code #saveProcessedProducts}. This allows to compute the processed product only once
+     * for the native and the formatted output.
+     *
+     * @return The native output of the processed product, or {@code null} if {@code #saveProcessedProducts} must be used.
+     */
+    public PathConfiguration getProcessedProductOutput() throws IOException {
+        return null;
+    }
+
     protected Path getOutputDirectoryPath() throws IOException {
         Path outputPath = FileOutputFormat.getOutputPath(getMapContext());
         return appendDatePart(outputPath);
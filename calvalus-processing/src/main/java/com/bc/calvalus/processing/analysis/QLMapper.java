@@ -24,9 +24,11 @@ import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
 import com.bc.calvalus.processing.l2.L2FormattingMapper;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.esa.snap.core.datamodel.Product;
@@ -35,6 +37,7 @@ import org.esa.snap.core.util.io.FileUtils;
 import javax.imageio.ImageIO;
 import java.awt.image.RenderedImage;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.logging.Logger;
@@ -46,6 +49,7 @@ public class QLMapper extends Mapper<NullWritable, NullWritable, NullWritable, N
 
     private static final String FILE_SYSTEM_COUNTERS = "FileSystemCounters";
     private static final String FILE_BYTES_WRITTEN = "FILE_BYTES_WRITTEN";
+    private static final String CALVALUS_QL_NUM_THREADS = "calvalus.ql.numThreads";
 
     public static final Logger LOGGER = CalvalusLogger.getLogger();
 
@@ -83,6 +87,10 @@ public class QLMapper extends Mapper<NullWritable, NullWritable, NullWritable, N
 
     public static void createQuicklook(Product product, String imageFileName, Mapper.Context context,
                                        Quicklooks.QLConfig config) throws IOException, InterruptedException {
+        if (config.getTileSize() > 0) {
+            createQuicklookTiles(product, imageFileName, context, config);
+            return;
+        }
 //        try {
             RenderedImage quicklookImage = new QuicklookGenerator(context, product, config).createImage();
             if (quicklookImage != null) {
@@ -100,6 +108,33 @@ public class QLMapper extends Mapper<NullWritable, NullWritable, NullWritable, N
 //        }
     }
 
+    /**
+     * Writes the quicklook as a pyramid of tiles {@code <imageFileName>/<level>/<x>/<y>.<imageType>}.
+     * The tiles are rendered and encoded concurrently, written one at a time.
+     */
+    public static void createQuicklookTiles(Product product, String imageFileName, Mapper.Context context,
+                                            Quicklooks.QLConfig config) throws IOException, InterruptedException {
+        final Configuration conf = context.getConfiguration();
+        final Path pyramidDir = new Path(FileOutputFormat.getWorkOutputPath(context), imageFileName);
+        final int numThreads = conf.getInt(CALVALUS_QL_NUM_THREADS, conf.getInt(MRJobConfig.MAP_CPU_VCORES,
+                                                                                MRJobConfig.DEFAULT_MAP_CPU_VCORES));
+        QuicklookGenerator quicklookGenerator = new QuicklookGenerator(context, product, config);
+        int numLevels = quicklookGenerator.createTiles(config.getTileSize(), numThreads, (level, tileX, tileY, tile) -> {
+            ByteArrayOutputStream encodedTile = new ByteArrayOutputStream();
+            ImageIO.write(tile, config.getImageType(), encodedTile);
+            Path path = new Path(pyramidDir, level + "/" + tileX + "/" + tileY + "." + config.getImageType());
+            synchronized (context) {
+                try (OutputStream outputStream = new BytesCountingOutputStream(
+                        new BufferedOutputStream(path.getFileSystem(conf).create(path)), context)) {
+                    encodedTile.writeTo(outputStream);
+                }
+            }
+        });
+        if (numLevels > 0) {
+            LOGGER.info("quicklook " + imageFileName + " written as " + numLevels + " levels of tiles");
+        }
+    }
+
     private static OutputStream createOutputStream(Mapper.Context context, String fileName) throws IOException, InterruptedException {
         Path path = new Path(FileOutputFormat.getWorkOutputPath(context), fileName);
         final FSDataOutputStream fsDataOutputStream = path.getFileSystem(context.getConfiguration()).create(path);
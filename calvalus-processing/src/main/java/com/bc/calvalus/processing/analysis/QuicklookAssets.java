@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.esa.snap.core.datamodel.ColorPaletteDef;
+import org.esa.snap.core.util.DefaultPropertyMap;
+import org.esa.snap.core.util.PropertyMap;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The shapefiles, overlay images and colour palettes used by the quicklooks of a task.
+ * <p/>
+ * Assets are loaded on first use and shared by all quicklook configurations and all products
+ * of the task. They are keyed by their URL and the modification time of the resource, so that
+ * a resource changed in between is loaded again. The modification time is known for HDFS and
+ * file URLs, other URLs are loaded once.
+ */
+public class QuicklookAssets {
+
+    private static final Logger LOGGER = CalvalusLogger.getLogger();
+
+    private static QuicklookAssets taskAssets;
+    private static String taskAttemptId;
+
+    private final Configuration conf;
+    private final Map<String, Asset<ShapefileLoader>> shapefiles = new HashMap<>();
+    private final Map<String, Asset<BufferedImage>> images = new HashMap<>();
+    private final Map<String, Asset<ColorPaletteDef>> colorPalettes = new HashMap<>();
+
+    /**
+     * @return the assets of the task attempt, the assets of a previous task attempt are dropped
+     */
+    public static synchronized QuicklookAssets forTask(TaskAttemptContext context) {
+        String id = String.valueOf(context.getTaskAttemptID());
+        if (taskAssets == null || !id.equals(taskAttemptId)) {
+            taskAssets = new QuicklookAssets(context.getConfiguration());
+            taskAttemptId = id;
+        }
+        return taskAssets;
+    }
+
+    QuicklookAssets(Configuration conf) {
+        this.conf = conf;
+    }
+
+    /**
+     * @return the loader of the shapefile in the zip archive at the given URL
+     */
+    synchronized ShapefileLoader getShapefile(String shapefileUrl) throws IOException {
+        return get(shapefiles, shapefileUrl, url -> new ShapefileLoader(extractShapefile(url)));
+    }
+
+    /**
+     * @return the image at the given URL, shared and not to be modified
+     */
+    public synchronized BufferedImage getImage(String imageUrl) throws IOException {
+        return get(images, imageUrl, url -> {
+            try (InputStream inputStream = HadoopProcessingService.openUrlAsStream(url, conf)) {
+                BufferedImage image = ImageIO.read(inputStream);
+                if (image == null) {
+                    throw new IOException("no image reader for " + url);
+                }
+                return image;
+            }
+        });
+    }
+
+    /**
+     * @return a copy of the colour palette in the CPD file at the given URL
+     */
+    public synchronized ColorPaletteDef getColorPalette(String cpdUrl) throws IOException {
+        ColorPaletteDef colorPaletteDef = get(colorPalettes, cpdUrl, url -> {
+            try (InputStream inputStream = HadoopProcessingService.openUrlAsStream(url, conf)) {
+                return loadColorPaletteDef(inputStream);
+            }
+        });
+        return colorPaletteDef.createDeepCopy();
+    }
+
+    private <T> T get(Map<String, Asset<T>> assets, String url, Loader<T> loader) throws IOException {
+        long modificationTime = getModificationTime(url);
+        Asset<T> asset = assets.get(url);
+        if (asset == null || asset.modificationTime != modificationTime) {
+            LOGGER.info("loading quicklook asset " + url);
+            asset = new Asset<>(modificationTime, loader.load(url));
+            assets.put(url, asset);
+        }
+        return asset.value;
+    }
+
+    private long getModificationTime(String url) throws IOException {
+        if (url.startsWith("hdfs:")) {
+            Path path = new Path(url);
+            return path.getFileSystem(conf).getFileStatus(path).getModificationTime();
+        } else if (url.startsWith("file:")) {
+            return new File(URI.create(url)).lastModified();
+        }
+        return 0L;
+    }
+
+    private File extractShapefile(String shapefileUrl) throws IOException {
+        File shapefile = null;
+        final String shapeDir = Files.createTempDirectory("shapefile").toFile().getAbsolutePath();
+        final byte[] buffer = new byte[2048];
+        try (ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(HadoopProcessingService.openUrlAsStream(shapefileUrl, conf)))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                final String outputfileName = shapeDir + "/" + entry.getName();
+                if (outputfileName.toLowerCase().endsWith(".shp")) {
+                    shapefile = new File(outputfileName);
+                }
+                try (OutputStream output = new FileOutputStream(outputfileName)) {
+                    int len;
+                    while ((len = zipInputStream.read(buffer)) > 0) {
+                        output.write(buffer, 0, len);
+                    }
+                }
+            }
+        }
+        if (shapefile == null) {
+            throw new IOException("no shapefile in " + shapefileUrl);
+        }
+        return shapefile;
+    }
+
+    /**
+     * Taken from  ColorPaletteDef. modified to use InputStream
+     */
+    static ColorPaletteDef loadColorPaletteDef(InputStream inputStream) throws IOException {
+        final PropertyMap propertyMap = new DefaultPropertyMap();
+        propertyMap.getProperties().load(inputStream);
+
+        final int numPoints = propertyMap.getPropertyInt("numPoints");
+        if (numPoints < 2) {
+            throw new IOException("The selected file contains less than\n" +
+                                  "two colour points.");
+        }
+        final ColorPaletteDef.Point[] points = new ColorPaletteDef.Point[numPoints];
+        double lastSample = 0;
+        for (int i = 0; i < points.length; i++) {
+            final ColorPaletteDef.Point point = new ColorPaletteDef.Point();
+            final Color color = propertyMap.getPropertyColor("color" + i);
+            double sample = propertyMap.getPropertyDouble("sample" + i);
+            if (i > 0 && sample < lastSample) {
+                sample = lastSample + 1.0;
+            }
+            point.setColor(color);
+            point.setSample(sample);
+            points[i] = point;
+            lastSample = sample;
+        }
+        ColorPaletteDef paletteDef = new ColorPaletteDef(points, 256);
+        paletteDef.setAutoDistribute(propertyMap.getPropertyBool("autoDistribute", false));
+        return paletteDef;
+    }
+
+    private interface Loader<T> {
+
+        T load(String url) throws IOException;
+    }
+
+    private static class Asset<T> {
+
+        private final long modificationTime;
+        private final T value;
+
+        private Asset(long modificationTime, T value) {
+            this.modificationTime = modificationTime;
+            this.value = value;
+        }
+    }
+}
@@ -18,7 +18,6 @@ package com.bc.calvalus.processing.analysis;
 
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.JobConfigNames;
-import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
 import com.bc.ceres.binding.PropertySet;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.glayer.CollectionLayer;
@@ -29,6 +28,7 @@ import com.bc.ceres.glayer.support.ImageLayer;
 import com.bc.ceres.grender.Rendering;
 import com.bc.ceres.grender.Viewport;
 import com.bc.ceres.grender.support.BufferedImageRendering;
+import com.bc.ceres.grender.support.DefaultViewport;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.util.Progressable;
@@ -39,10 +39,7 @@ import org.esa.snap.core.image.ColoredBandImageMultiLevelSource;
 import org.esa.snap.core.jexp.ParseException;
 import org.esa.snap.core.layer.MaskLayerType;
 import org.esa.snap.core.layer.NoDataLayerType;
-import org.esa.snap.core.util.DefaultPropertyMap;
-import org.esa.snap.core.util.PropertyMap;
 
-import javax.imageio.ImageIO;
 import javax.media.jai.Interpolation;
 import javax.media.jai.operator.ScaleDescriptor;
 import java.awt.*;
@@ -51,13 +48,17 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.io.*;
-import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 /**
  * Generates Quick look images from products
@@ -69,14 +70,173 @@ public class QuicklookGenerator {
     private final TaskAttemptContext context;
     private final Product sourceProduct;
     private final Quicklooks.QLConfig qlConfig;
+    private final QuicklookAssets assets;
 
     public QuicklookGenerator(TaskAttemptContext context, Product product, Quicklooks.QLConfig qlConfig) {
+        this(context, product, qlConfig, QuicklookAssets.forTask(context));
+    }
+
+    public QuicklookGenerator(TaskAttemptContext context, Product product, Quicklooks.QLConfig qlConfig,
+                              QuicklookAssets assets) {
         this.context = context;
         this.sourceProduct = product;
         this.qlConfig = qlConfig;
+        this.assets = assets;
+    }
+
+    /**
+     * Receives the tiles of a quicklook pyramid. Must be thread-safe if tiles are rendered concurrently.
+     */
+    public interface TileWriter {
+
+        void writeTile(int level, int tileX, int tileY, RenderedImage tile) throws IOException;
     }
 
+    /**
+     * @return the quicklook image in full resolution, or {@code null} if the quicklook cannot be created
+     */
     public RenderedImage createImage() throws IOException {
+        QuicklookLayers layers = createLayers();
+        if (layers == null) {
+            return null;
+        }
+        BufferedImage bufferedImage = new BufferedImage(layers.width, layers.height, layers.imageType);
+
+        final BufferedImageRendering rendering = new BufferedImageRendering(bufferedImage);
+        Viewport viewport = rendering.getViewport();
+        viewport.setModelYAxisDown(layers.modelYAxisDown);
+        viewport.zoom(layers.modelBounds);
+
+        final Graphics2D graphics = rendering.getGraphics();
+        graphics.setColor(qlConfig.getBackgroundColor());
+        graphics.fill(layers.imageBounds);
+
+        layers.root.render(createProgressRendering(rendering));
+        return rendering.getImage();
+    }
+
+    /**
+     * Renders the quicklook as a pyramid of square tiles, in the XYZ tile scheme with the origin at the upper left.
+     * Level 0 is a single tile of the whole quicklook, each further level doubles the resolution,
+     * the last level has the full resolution of the quicklook image. Each thread renders into a tile image
+     * of its own with a layer tree of its own, because layers create their renderers lazily and are not thread-safe.
+     *
+     * @param tileSize   the width and height of the tiles
+     * @param numThreads the number of tiles rendered concurrently
+     * @return the number of levels, or 0 if the quicklook cannot be created
+     */
+    public int createTiles(int tileSize, int numThreads, TileWriter tileWriter) throws IOException {
+        QuicklookLayers layers = createLayers();
+        if (layers == null) {
+            return 0;
+        }
+        int maxLevel = getMaxLevel(layers.width, layers.height, tileSize);
+        DefaultViewport fullViewport = new DefaultViewport(new Rectangle(layers.width, layers.height),
+                                                           layers.modelYAxisDown);
+        fullViewport.zoom(layers.modelBounds);
+        AffineTransform viewToModel = fullViewport.getViewToModelTransform();
+
+        int poolSize = Math.max(1, numThreads);
+        // the layer trees are created one after the other, each rendering task borrows one of them
+        BlockingQueue<QuicklookLayers> layerPool = new ArrayBlockingQueue<>(poolSize);
+        layerPool.add(layers);
+        for (int i = 1; i < poolSize; i++) {
+            layerPool.add(createLayers());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            for (int level = 0; level <= maxLevel; level++) {
+                double scale = Math.pow(2.0, maxLevel - level);
+                int levelWidth = (int) Math.ceil(layers.width / scale);
+                int levelHeight = (int) Math.ceil(layers.height / scale);
+                int numTilesX = (levelWidth + tileSize - 1) / tileSize;
+                int numTilesY = (levelHeight + tileSize - 1) / tileSize;
+                List<Future<?>> tiles = new ArrayList<>(numTilesX * numTilesY);
+                for (int tileY = 0; tileY < numTilesY; tileY++) {
+                    for (int tileX = 0; tileX < numTilesX; tileX++) {
+                        final int z = level;
+                        final int x = tileX;
+                        final int y = tileY;
+                        Rectangle2D tileBounds = new Rectangle2D.Double(x * tileSize * scale, y * tileSize * scale,
+                                                                        tileSize * scale, tileSize * scale);
+                        Rectangle2D tileModelBounds = viewToModel.createTransformedShape(tileBounds).getBounds2D();
+                        int validWidth = Math.min(tileSize, levelWidth - x * tileSize);
+                        int validHeight = Math.min(tileSize, levelHeight - y * tileSize);
+                        tiles.add(executor.submit(() -> {
+                            QuicklookLayers threadLayers = layerPool.take();
+                            RenderedImage tile;
+                            try {
+                                tile = renderTile(threadLayers, tileSize, tileModelBounds, validWidth, validHeight);
+                            } finally {
+                                layerPool.add(threadLayers);
+                            }
+                            tileWriter.writeTile(z, x, y, tile);
+                            return null;
+                        }));
+                    }
+                }
+                for (Future<?> tile : tiles) {
+                    tile.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("failed to render quicklook tile", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return maxLevel + 1;
+    }
+
+    /**
+     * @return the level of the full resolution, the level at which the image is covered by one tile is 0
+     */
+    static int getMaxLevel(int width, int height, int tileSize) {
+        int maxLevel = 0;
+        while ((long) tileSize << maxLevel < Math.max(width, height)) {
+            maxLevel++;
+        }
+        return maxLevel;
+    }
+
+    private RenderedImage renderTile(QuicklookLayers layers, int tileSize, Rectangle2D tileModelBounds,
+                                     int validWidth, int validHeight) {
+        BufferedImage tileImage = new BufferedImage(tileSize, tileSize, layers.imageType);
+        final BufferedImageRendering rendering = new BufferedImageRendering(tileImage);
+        Viewport viewport = rendering.getViewport();
+        viewport.setModelYAxisDown(layers.modelYAxisDown);
+        viewport.zoom(tileModelBounds);
+
+        final Graphics2D graphics = rendering.getGraphics();
+        graphics.setColor(qlConfig.getBackgroundColor());
+        graphics.fillRect(0, 0, validWidth, validHeight);
+
+        layers.root.render(createProgressRendering(rendering));
+        return rendering.getImage();
+    }
+
+    private Rendering createProgressRendering(final Rendering rendering) {
+        return new Rendering() {
+            @Override
+            public Graphics2D getGraphics() {
+                context.progress();
+                return rendering.getGraphics();
+            }
+
+            @Override
+            public Viewport getViewport() {
+                context.progress();
+                return rendering.getViewport();
+            }
+        };
+    }
+
+    private QuicklookLayers createLayers() throws IOException {
         Product product = sourceProduct;
         if (qlConfig.getSubSamplingX() > 0 || qlConfig.getSubSamplingY() > 0) {
             Map<String, Object> subsetParams = new HashMap<>();
@@ -102,6 +262,14 @@ public class QuicklookGenerator {
             for (int i = 0; i < rgbBands.length; i++) {
                 String expression = rgbaExpressions[i];
                 Band rgbBand = product.getBand(expression);
+                if (rgbBand == null) {
+                    // reuses the band added by a previous layer tree of the same product
+                    Band expressionBand = product.getBand(RGBImageProfile.RGB_BAND_NAMES[i]);
+                    if (expressionBand instanceof VirtualBand
+                        && expression.equals(((VirtualBand) expressionBand).getExpression())) {
+                        rgbBand = expressionBand;
+                    }
+                }
                 if (rgbBand == null) {
                     rgbBand = new VirtualBand(RGBImageProfile.RGB_BAND_NAMES[i],
                                               ProductData.TYPE_FLOAT32,
@@ -152,17 +320,15 @@ public class QuicklookGenerator {
             masterBand.getImageInfo(wrapPM(context));
             multiLevelSource = ColoredBandImageMultiLevelSource.create(masterBand, wrapPM(context));
 
-            try (InputStream inputStream = HadoopProcessingService.openUrlAsStream(cpdURL, context.getConfiguration())) {
-                ColorPaletteDef colorPaletteDef = loadColorPaletteDef(inputStream);
-                ImageInfo imageInfo = multiLevelSource.getImageInfo();
-                if (masterBand.getIndexCoding() != null) {
-                    imageInfo.setColors(colorPaletteDef.getColors());
-                } else {
-                    Stx stx = masterBand.getStx();
-                    imageInfo.setColorPaletteDef(colorPaletteDef,
-                                                 stx.getMinimum(),
-                                                 stx.getMaximum(), false);
-                }
+            ColorPaletteDef colorPaletteDef = assets.getColorPalette(cpdURL);
+            ImageInfo imageInfo = multiLevelSource.getImageInfo();
+            if (masterBand.getIndexCoding() != null) {
+                imageInfo.setColors(colorPaletteDef.getColors());
+            } else {
+                Stx stx = masterBand.getStx();
+                imageInfo.setColorPaletteDef(colorPaletteDef,
+                                             stx.getMinimum(),
+                                             stx.getMaximum(), false);
             }
         } else {
             throw new IllegalArgumentException("Neither RGB nor band information given");
@@ -198,32 +364,7 @@ public class QuicklookGenerator {
         Rectangle2D modelBounds = collectionLayer.getModelBounds();
         Rectangle2D imageBounds = imageLayer.getModelToImageTransform().createTransformedShape(modelBounds).getBounds2D();
         int imageType = canUseAlpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
-        BufferedImage bufferedImage = new BufferedImage((int) imageBounds.getWidth(),
-                                                        (int) imageBounds.getHeight(), imageType);
-
-        final BufferedImageRendering rendering = new BufferedImageRendering(bufferedImage);
-        Viewport viewport = rendering.getViewport();
-        viewport.setModelYAxisDown(isModelYAxisDown(imageLayer));
-        viewport.zoom(modelBounds);
-
-        final Graphics2D graphics = rendering.getGraphics();
-        graphics.setColor(qlConfig.getBackgroundColor());
-        graphics.fill(imageBounds);
-
-        collectionLayer.render(new Rendering() {
-            @Override
-            public Graphics2D getGraphics() {
-                context.progress();
-                return rendering.getGraphics();
-            }
-
-            @Override
-            public Viewport getViewport() {
-                context.progress();
-                return rendering.getViewport();
-            }
-        });
-        return rendering.getImage();
+        return new QuicklookLayers(collectionLayer, modelBounds, imageBounds, imageType, isModelYAxisDown(imageLayer));
     }
 
     private static int determineWidth(String expression, Product product) {
@@ -253,7 +394,7 @@ public class QuicklookGenerator {
     }
 
     private Layer createShapefileLayer(final Product product, String shapefileUrl) throws IOException {
-        final File shapefile = extractShapefile(shapefileUrl);
+        final ShapefileLoader shapefileLoader = assets.getShapefile(shapefileUrl);
         final LayerContext layerContext = new LayerContext() {
             @Override
             public Object getCoordinateReferenceSystem() {
@@ -270,7 +411,7 @@ public class QuicklookGenerator {
             }
         };
         try {
-            return new ShapefileLoader().createLayer(product, shapefile, layerContext);
+            return shapefileLoader.createLayer(product, layerContext);
         } catch (Exception e) {
             throw  new IOException("could not create shape layer", e);
         }
@@ -332,39 +473,10 @@ public class QuicklookGenerator {
 //        return gf.createPolygon(gf.createLinearRing(coordinates), null);
 //    }
 
-    private File extractShapefile(String shapefileUrl) throws IOException {
-        File shapefile = null;
-        final String shapeDir = Files.createTempDirectory("shapefile").toFile().getAbsolutePath();
-        final byte[] buffer = new byte[2048];
-        try (ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(HadoopProcessingService.openUrlAsStream(shapefileUrl, context.getConfiguration())))) {
-            ZipEntry entry;
-            while ((entry = zipInputStream.getNextEntry()) != null) {
-                FileOutputStream output = null;
-                try {
-                    final String outputfileName = shapeDir + "/" + entry.getName();
-                    final File outputFile = new File(outputfileName);
-                    if (outputfileName.toLowerCase().endsWith(".shp")) {
-                        shapefile = outputFile;
-                    }
-                    output = new FileOutputStream(outputfileName);
-                    int len;
-                    while ((len = zipInputStream.read(buffer)) > 0) {
-                        output.write(buffer, 0, len);
-                    }
-                } finally {
-                    // we must always close the output file
-                    if (output != null) output.close();
-                }
-            }
-        }
-        return shapefile;
-    }
-
     private void addFreshmonOverlay(Quicklooks.QLConfig qlConfig, Band masterBand, ImageLayer imageLayer,
                                            boolean canUseAlpha, List<Layer> layerChildren) throws IOException {
         BufferedImage legend = createImageLegend(masterBand, canUseAlpha, ImageLegend.VERTICAL);
-        Configuration conf = context.getConfiguration();
-        RenderedImage logo = ImageIO.read(HadoopProcessingService.openUrlAsStream(qlConfig.getOverlayURL(), conf));
+        RenderedImage logo = assets.getImage(qlConfig.getOverlayURL());
         float scale = (float) legend.getWidth() / (float) logo.getWidth();
         RenderingHints hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING,
                                                   RenderingHints.VALUE_ANTIALIAS_ON);
@@ -394,8 +506,7 @@ public class QuicklookGenerator {
 
     private void addOverlay(ImageLayer imageLayer, List<Layer> layerChildren, String overlayURL) throws
                                                                                                         IOException {
-        InputStream inputStream = HadoopProcessingService.openUrlAsStream(overlayURL, context.getConfiguration());
-        BufferedImage bufferedImage = ImageIO.read(inputStream);
+        BufferedImage bufferedImage = assets.getImage(overlayURL);
         final ImageLayer overlayLayer = new ImageLayer(bufferedImage, imageLayer.getImageToModelTransform(), 1);
         layerChildren.add(0, overlayLayer);
     }
@@ -438,35 +549,26 @@ public class QuicklookGenerator {
         return imageLayer.getImageToModelTransform().getDeterminant() > 0.0;
     }
 
-    /**
-     * Taken from  ColorPaletteDef. modified to use InputStream
-     */
-    private static ColorPaletteDef loadColorPaletteDef(InputStream inputStream) throws IOException {
-        final PropertyMap propertyMap = new DefaultPropertyMap();
-        propertyMap.getProperties().load(inputStream);
-
-        final int numPoints = propertyMap.getPropertyInt("numPoints");
-        if (numPoints < 2) {
-            throw new IOException("The selected file contains less than\n" +
-                                  "two colour points.");
-        }
-        final ColorPaletteDef.Point[] points = new ColorPaletteDef.Point[numPoints];
-        double lastSample = 0;
-        for (int i = 0; i < points.length; i++) {
-            final ColorPaletteDef.Point point = new ColorPaletteDef.Point();
-            final Color color = propertyMap.getPropertyColor("color" + i);
-            double sample = propertyMap.getPropertyDouble("sample" + i);
-            if (i > 0 && sample < lastSample) {
-                sample = lastSample + 1.0;
-            }
-            point.setColor(color);
-            point.setSample(sample);
-            points[i] = point;
-            lastSample = sample;
+    private static class QuicklookLayers {
+
+        private final CollectionLayer root;
+        private final Rectangle2D modelBounds;
+        private final Rectangle2D imageBounds;
+        private final int width;
+        private final int height;
+        private final int imageType;
+        private final boolean modelYAxisDown;
+
+        private QuicklookLayers(CollectionLayer root, Rectangle2D modelBounds, Rectangle2D imageBounds, int imageType,
+                                boolean modelYAxisDown) {
+            this.root = root;
+            this.modelBounds = modelBounds;
+            this.imageBounds = imageBounds;
+            this.width = (int) imageBounds.getWidth();
+            this.height = (int) imageBounds.getHeight();
+            this.imageType = imageType;
+            this.modelYAxisDown = modelYAxisDown;
         }
-        ColorPaletteDef paletteDef = new ColorPaletteDef(points, 256);
-        paletteDef.setAutoDistribute(propertyMap.getPropertyBool("autoDistribute", false));
-        return paletteDef;
     }
 
     private static ProgressMonitor wrapPM(Progressable progressable) {
@@ -76,6 +76,12 @@ public class Quicklooks {
         @Parameter
         private String shapefileURL;
 
+        /**
+         * If greater than 0, the quicklook is written as a pyramid of tiles of this size instead of a single image.
+         */
+        @Parameter
+        private int tileSize;
+
         public String getImageType() {
             return imageType;
         }
@@ -128,6 +134,10 @@ public class Quicklooks {
             return shapefileURL;
         }
 
+        public int getTileSize() {
+            return tileSize;
+        }
+
         public void setBandName(String bandName) {
             this.bandName = bandName;
         }
@@ -155,5 +165,9 @@ public class Quicklooks {
         public void setOverlayURL(String overlayURL) {
             this.overlayURL = overlayURL;
         }
+
+        public void setTileSize(int tileSize) {
+            this.tileSize = tileSize;
+        }
     }
 }
@@ -27,6 +27,7 @@ import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Polygon;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.util.FeatureUtils;
+import org.geotools.data.DataUtilities;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.styling.FeatureTypeStyle;
@@ -47,30 +48,39 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import java.awt.Color;
 import java.io.File;
+import java.io.IOException;
 
+/**
+ * A shapefile read into memory, to create layers clipped to products.
+ */
 class ShapefileLoader {
 
     private static final StyleFactory styleFactory = CommonFactoryFinder.getStyleFactory(null);
     private static final FilterFactory filterFactory = CommonFactoryFinder.getFilterFactory(null);
 
+    private final File shapeFile;
+    private final FeatureCollection<SimpleFeatureType, SimpleFeature> featureCollection;
+    private final Style style;
+
+    ShapefileLoader(File shapeFile) throws IOException {
+        this.shapeFile = shapeFile;
+        featureCollection = DataUtilities.collection(FeatureUtils.getFeatureSource(shapeFile.toURI().toURL()).getFeatures());
+        style = createStyle(shapeFile, featureCollection.getSchema())[0];
+    }
 
-    public Layer createLayer(Product product, File shapeFile, LayerContext layerContext) throws Exception {
+    public Layer createLayer(Product product, LayerContext layerContext) throws Exception {
 
         final Geometry clipGeometry = FeatureUtils.createGeoBoundaryPolygon(product);
 
-        FeatureCollection<SimpleFeatureType, SimpleFeature> featureCollection = FeatureUtils.getFeatureSource(shapeFile.toURI().toURL()).getFeatures();
         CoordinateReferenceSystem featureCrs = featureCollection.getSchema().getCoordinateReferenceSystem();
 
-        Style[] styles = createStyle(shapeFile, featureCollection.getSchema());
-        Style selectedStyle = styles[0];
-
         final LayerType type = new FeatureLayerType();
         final PropertySet configuration = type.createLayerConfig(null);
         configuration.setValue(FeatureLayerType.PROPERTY_NAME_FEATURE_COLLECTION_URL, shapeFile.toURI().toURL());
         configuration.setValue(FeatureLayerType.PROPERTY_NAME_FEATURE_COLLECTION, featureCollection);
         configuration.setValue(FeatureLayerType.PROPERTY_NAME_FEATURE_COLLECTION_CRS, featureCrs);
         configuration.setValue(FeatureLayerType.PROPERTY_NAME_FEATURE_COLLECTION_CLIP_GEOMETRY, clipGeometry);
-        configuration.setValue(FeatureLayerType.PROPERTY_NAME_SLD_STYLE, selectedStyle);
+        configuration.setValue(FeatureLayerType.PROPERTY_NAME_SLD_STYLE, style);
         Layer featureLayer = type.createLayer(layerContext, configuration);
         featureLayer.setName(shapeFile.getName());
         featureLayer.setVisible(true);
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.beam;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.dataio.ProductWriter;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.util.ImageUtils;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Writes a product to several writers while computing each of its band slices only once.
+ * <p/>
+ * The slices are computed in the calling thread and handed to the writers,
+ * which write concurrently, each one in its own thread and in slice order.
+ * At most {@link #MAX_PENDING_SLICES} slices are kept in memory.
+ * The products of the writers must have the raster size of the computed product,
+ * their bands are matched by name, so a band subset of the computed product can be written, too.
+ */
+public class FusedProductWriter {
+
+    static final int MAX_PENDING_SLICES = 2;
+    private static final long TERMINATION_TIMEOUT_SECONDS = 60;
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+
+    private final Product product;
+    private final List<Target> targets;
+
+    public FusedProductWriter(Product product) {
+        this.product = product;
+        this.targets = new ArrayList<>();
+    }
+
+    /**
+     * @return {@code true} if all bands of the product have the scene raster size
+     */
+    public static boolean canWrite(Product product) {
+        for (Band band : product.getBands()) {
+            if (band.getRasterWidth() != product.getSceneRasterWidth() ||
+                band.getRasterHeight() != product.getSceneRasterHeight()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a writer.
+     *
+     * @param writer        the product writer
+     * @param targetProduct the product written, the computed product itself or a band subset of it
+     * @param output        the output passed to the writer
+     */
+    public void addTarget(ProductWriter writer, Product targetProduct, Object output) {
+        if (targetProduct.getSceneRasterWidth() != product.getSceneRasterWidth() ||
+            targetProduct.getSceneRasterHeight() != product.getSceneRasterHeight()) {
+            throw new IllegalArgumentException("target product " + targetProduct.getName() + " differs in size");
+        }
+        targets.add(new Target(writer, targetProduct, output));
+    }
+
+    /**
+     * Writes the product to all writers and closes them.
+     * If writing fails the outputs of all writers are deleted.
+     *
+     * @param tileHeight the height of the slices
+     * @param pm         a progress monitor
+     */
+    public void write(int tileHeight, ProgressMonitor pm) throws IOException {
+        List<Band> bandsToCompute = new ArrayList<>();
+        for (Target target : targets) {
+            target.writer.writeProductNodes(target.product, target.output);
+            target.selectBands(product);
+        }
+        for (Band band : product.getBands()) {
+            for (Target target : targets) {
+                if (target.getBand(band) != null) {
+                    bandsToCompute.add(band);
+                    break;
+                }
+            }
+        }
+        int sceneWidth = product.getSceneRasterWidth();
+        int sceneHeight = product.getSceneRasterHeight();
+        LOG.info(String.format("writing %d bands to %d writers in slices of %d lines", bandsToCompute.size(), targets.size(), tileHeight));
+
+        pm.beginTask("Writing bands of product '" + product.getName() + "'...", bandsToCompute.size() * sceneHeight);
+        Deque<List<Future<?>>> pendingSlices = new ArrayDeque<>();
+        boolean written = false;
+        try {
+            for (int y = 0; y < sceneHeight; y += tileHeight) {
+                int h = Math.min(tileHeight, sceneHeight - y);
+                List<Future<?>> slice = new ArrayList<>();
+                for (Band band : bandsToCompute) {
+                    ProductData productData = computeSlice(band, new Rectangle(0, y, sceneWidth, h));
+                    for (Target target : targets) {
+                        Band targetBand = target.getBand(band);
+                        if (targetBand != null) {
+                            slice.add(target.submit(targetBand, y, sceneWidth, h, productData));
+                        }
+                    }
+                    pm.worked(h);
+                }
+                pendingSlices.addLast(slice);
+                if (pendingSlices.size() > MAX_PENDING_SLICES) {
+                    waitFor(pendingSlices.removeFirst());
+                }
+            }
+            while (!pendingSlices.isEmpty()) {
+                waitFor(pendingSlices.removeFirst());
+            }
+            for (Target target : targets) {
+                target.writer.flush();
+                target.writer.close();
+            }
+            written = true;
+        } finally {
+            for (Target target : targets) {
+                target.executor.shutdownNow();
+            }
+            if (!written) {
+                for (Target target : targets) {
+                    target.discard();
+                }
+            }
+            pm.done();
+        }
+    }
+
+    private static ProductData computeSlice(Band band, Rectangle rectangle) {
+        Raster tile = band.getSourceImage().getData(rectangle);
+        int numElems = rectangle.width * rectangle.height;
+        if (tile.getDataBuffer().getSize() == numElems) {
+            return ProductData.createInstance(band.getDataType(), ImageUtils.getPrimitiveArray(tile.getDataBuffer()));
+        }
+        ProductData productData = ProductData.createInstance(band.getDataType(), numElems);
+        tile.getDataElements(rectangle.x, rectangle.y, rectangle.width, rectangle.height, productData.getElems());
+        return productData;
+    }
+
+    private static void waitFor(List<Future<?>> slice) throws IOException {
+        try {
+            for (Future<?> future : slice) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("writing interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("writing failed: " + cause, cause);
+        }
+    }
+
+    private static class Target {
+
+        private final ProductWriter writer;
+        private final Product product;
+        private final Object output;
+        private final ExecutorService executor;
+        private final List<Band> sourceBands;
+        private final List<Band> targetBands;
+
+        private Target(ProductWriter writer, Product product, Object output) {
+            this.writer = writer;
+            this.product = product;
+            this.output = output;
+            this.executor = Executors.newSingleThreadExecutor();
+            this.sourceBands = new ArrayList<>();
+            this.targetBands = new ArrayList<>();
+        }
+
+        private void selectBands(Product computedProduct) {
+            for (Band band : product.getBands()) {
+                Band sourceBand = computedProduct.getBand(band.getName());
+                if (sourceBand != null && writer.shouldWrite(band)) {
+                    sourceBands.add(sourceBand);
+                    targetBands.add(band);
+                }
+            }
+        }
+
+        private Band getBand(Band sourceBand) {
+            int index = sourceBands.indexOf(sourceBand);
+            return index >= 0 ? targetBands.get(index) : null;
+        }
+
+        /**
+         * Closes the writer after its pending slices are cancelled and deletes the partially written output.
+         */
+        private void discard() {
+            try {
+                if (!executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    LOG.warning("writer of " + output + " still busy, closing it anyway");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                writer.close();
+            } catch (IOException | RuntimeException e) {
+                LOG.warning("failed to close writer of " + output + ": " + e.getMessage());
+            }
+            try {
+                writer.deleteOutput();
+                LOG.info("partially written " + output + " deleted");
+            } catch (IOException | RuntimeException e) {
+                LOG.warning("failed to delete partially written " + output + ": " + e.getMessage());
+            }
+        }
+
+        private Future<?> submit(Band band, int y, int w, int h, ProductData productData) {
+            return executor.submit(() -> {
+                writer.writeBandRasterData(band, 0, y, w, h, productData, ProgressMonitor.NULL);
+                return null;
+            });
+        }
+    }
+}
@@ -311,6 +311,12 @@ public class SnapGraphAdapter extends SubsetProcessorAdapter {
         }
     }
 
+    @Override
+    public PathConfiguration getProcessedProductOutput() throws IOException {
+        // a graph without target output writes its outputs itself
+        return shallSaveTarget ? super.getProcessedProductOutput() : null;
+    }
+
     @Override
     public void dispose() {
         super.dispose();
@@ -88,6 +88,18 @@ public class SubsetProcessorAdapter extends ProcessorAdapter {
         return getWorkOutputProductPath();
     }
 
+    @Override
+    public PathConfiguration getProcessedProductOutput() throws IOException {
+        Product product = openProcessedProduct();
+        if (product == null) {
+            return null;
+        }
+        if (product.getPreferredTileSize() == null) {
+            product.setPreferredTileSize(product.getSceneRasterWidth(), DEFAULT_TILE_HEIGHT);
+        }
+        return new PathConfiguration(getWorkOutputProductPath(), getConfiguration());
+    }
+
     @Override
     public boolean supportsPullProcessing() {
         return true;
@@ -29,6 +29,7 @@ import com.bc.ceres.core.ProcessObserver;
 import com.bc.ceres.core.ProgressMonitor;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.MapContext;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.velocity.VelocityContext;
@@ -45,13 +46,17 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
 /**
  * A processor adapter that uses an executable to process an input product.
+ * With {@code calvalus.l2.workerMode} the prepare and process steps are passed as jobs
+ * to an {@link ExecutableWorker} that is started once per task.
  *
  * @author MarcoZ
  */
@@ -60,18 +65,32 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
     private final File cwd;
     private final String parameterSuffix;
     private final boolean debugScriptGenerator;
+    private final boolean workerMode;
     private String[] outputFilesNames;
     private boolean skipProcessing = false;
+    private boolean switchingInputSplit = false;
+    private volatile boolean cancelled = false;
+    private volatile Process activeProcess;
+    private volatile ExecutableWorker activeWorker;
 
     public ExecutableProcessorAdapter(MapContext mapContext) {
         this(mapContext, "");
     }
 
     public ExecutableProcessorAdapter(MapContext mapContext, String parameterSuffix) {
+        this(mapContext, parameterSuffix, new File("."));
+    }
+
+    /**
+     * Creates an adapter that writes its scripts to and runs its processes in the given working directory.
+     * Adapters with distinct working directories can process concurrently within the same task.
+     */
+    public ExecutableProcessorAdapter(MapContext mapContext, String parameterSuffix, File cwd) {
         super(mapContext);
         this.parameterSuffix = parameterSuffix;
-        this.cwd = new File(".");
+        this.cwd = cwd;
         this.debugScriptGenerator = mapContext.getConfiguration().getBoolean("calvalus.l2.debugScriptGenerator", false);
+        this.workerMode = mapContext.getConfiguration().getBoolean("calvalus.l2.workerMode", false);
     }
 
     @Override
@@ -80,22 +99,25 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
         Configuration conf = getConfiguration();
         String user = conf.get("mapreduce.job.user.name");
         String executable = conf.get(JobConfigNames.CALVALUS_L2_OPERATOR + parameterSuffix);
-        String processorParameters = conf.get(JobConfigNames.CALVALUS_L2_PARAMETERS + parameterSuffix);
-        if (getInputParameters().length > 0) {
-            final StringBuilder accu = new StringBuilder(processorParameters);
-            for (int i=0; i<getInputParameters().length; i+=2) {
-                if (!"output".equals(getInputParameters()[i])) {
-                    if (accu.length() > 0) {
-                        accu.append('\n');
-                    }
-                    accu.append(getInputParameters()[i]);
-                    accu.append(':');
-                    accu.append(getInputParameters()[i + 1]);
-                }
+
+        Path inputPath = getInputPath();
+        Path outputPath = getOutputDirectoryPath();
+        if (workerMode) {
+            getLogger().info("prepare: " + executable + " " + inputPath.toString()+ " " + outputPath.toString());
+            List<String> arguments = new ArrayList<>();
+            arguments.add(inputPath.toString());
+            arguments.add(outputPath.toString());
+            addInputParameters(arguments);
+            KeywordHandler keywordHandler = getWorker(executable).runJob(ExecutableWorker.PREPARE, arguments.toArray(new String[0]), ProgressMonitor.NULL);
+            skipProcessing = keywordHandler.skipProcessing();
+            String inputFile = keywordHandler.getInputFile();
+            if (inputFile != null) {
+                setInputFile(new File(inputFile));
             }
-            processorParameters = accu.toString();
+            return;
         }
 
+        String processorParameters = getProcessorParameters();
         ScriptGenerator scriptGenerator = new ScriptGenerator(ScriptGenerator.Step.PREPARE, executable);
         VelocityContext velocityContext = scriptGenerator.getVelocityContext();
         velocityContext.put("system", System.getProperties());
@@ -103,8 +125,6 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
         velocityContext.put("parameterText", processorParameters);
         velocityContext.put("parameters", PropertiesHandler.asProperties(processorParameters));
 
-        Path inputPath = getInputPath();
-        Path outputPath = getOutputDirectoryPath();
         velocityContext.put("inputPath", inputPath);
         velocityContext.put("outputPath", outputPath);
         velocityContext.put("workOutputPath", getWorkOutputDirectoryPath());
@@ -117,7 +137,7 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
             getLogger().info("prepare: " + executable + " " + inputPath.toString()+ " " + outputPath.toString());
             String[] cmdArray = {"./prepare", inputPath.toString(), outputPath.toString()};
             String[] env = new String[] { "HADOOP_USER_NAME=" + user };
-            Process process = Runtime.getRuntime().exec(cmdArray, env);
+            Process process = startProcess(cmdArray, env);
             String processLogName = executable + "-prepare";
             KeywordHandler keywordHandler = new KeywordHandler(processLogName, getMapContext());
 
@@ -147,8 +167,8 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
             inputFile = CalvalusProductIO.copyFileToLocal(inputPath, getConfiguration());
             setInputFile(inputFile);
         }
-        if (getMapContext().getInputSplit() instanceof FileSplit) {
-            FileSplit fileSplit = (FileSplit) getMapContext().getInputSplit();
+        if (getInputSplit() instanceof FileSplit) {
+            FileSplit fileSplit = (FileSplit) getInputSplit();
             getMapContext().getCounter("Direct File System Counters", "FILE_SPLIT_BYTES_READ").setValue(fileSplit.getLength());
         }
         Rectangle productRect = null;
@@ -162,6 +182,74 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
         return outputFilesNames.length > 0;
     }
 
+    @Override
+    public void setInputSplit(InputSplit inputSplit) {
+        // the worker of the task keeps running for the next product of a multi-product split
+        switchingInputSplit = true;
+        try {
+            super.setInputSplit(inputSplit);
+        } finally {
+            switchingInputSplit = false;
+        }
+    }
+
+    /**
+     * Disposes the adapter and, in worker mode, closes the worker of the adapter
+     * so that it does not outlive the processing of the task.
+     */
+    @Override
+    public void dispose() {
+        super.dispose();
+        if (workerMode && !switchingInputSplit) {
+            String executable = getConfiguration().get(JobConfigNames.CALVALUS_L2_OPERATOR + parameterSuffix);
+            try {
+                ExecutableWorker.closeTaskWorker(getWorkerName(executable), cwd);
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "failed to close worker of " + executable + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    protected void deleteLocalProductFiles() {
+        super.deleteLocalProductFiles();
+        if (outputFilesNames != null) {
+            for (String outputFileName : outputFilesNames) {
+                deleteLocalFile(new File(cwd, outputFileName), cwd);
+            }
+        }
+        outputFilesNames = null;
+        skipProcessing = false;
+    }
+
+    /**
+     * Kills the process or the worker of the adapter if it is running, e.g. because another part of the task
+     * has failed, and lets further processing steps of the adapter fail. May be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        Process runningProcess = activeProcess;
+        if (runningProcess != null) {
+            runningProcess.destroyForcibly();
+        }
+        ExecutableWorker runningWorker = activeWorker;
+        if (runningWorker != null) {
+            runningWorker.kill();
+        }
+    }
+
+    private Process startProcess(String[] cmdArray, String[] env) throws IOException {
+        if (cancelled) {
+            throw new IOException("processing in " + cwd + " has been cancelled");
+        }
+        Process startedProcess = Runtime.getRuntime().exec(cmdArray, env, cwd);
+        activeProcess = startedProcess;
+        if (cancelled) {
+            startedProcess.destroyForcibly();
+        }
+        return startedProcess;
+    }
+
     public File getCurrentWorkingDir() {
         return cwd;
     }
@@ -190,22 +278,28 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
         Configuration conf = getConfiguration();
         String user = conf.get("mapreduce.job.user.name");
         String executable = conf.get(JobConfigNames.CALVALUS_L2_OPERATOR + parameterSuffix);
-        String processorParameters = conf.get(JobConfigNames.CALVALUS_L2_PARAMETERS + parameterSuffix, "");
-        if (getInputParameters().length > 0) {
-            final StringBuilder accu = new StringBuilder(processorParameters);
-            for (int i=0; i<getInputParameters().length; i+=2) {
-                if (! "output".equals(getInputParameters()[i])) {
-                    if (accu.length() > 0) {
-                        accu.append('\n');
-                    }
-                    accu.append(getInputParameters()[i]);
-                    accu.append(':');
-                    accu.append(getInputParameters()[i + 1]);
+
+        if (workerMode) {
+            getLogger().info("process: " + executable + " " + inputFile.getCanonicalPath());
+            List<String> arguments = new ArrayList<>();
+            arguments.add(inputFile.getCanonicalPath());
+            arguments.add("inputPath=" + inputPath);
+            if (inputRectangle != null) {
+                arguments.add("inputRectangle=" + formatRectangle(inputRectangle));
+            }
+            if (productRectangle != null) {
+                arguments.add("productRectangle=" + formatRectangle(productRectangle));
+            }
+            if (velocityProps != null) {
+                for (Map.Entry<String, String> entry : velocityProps.entrySet()) {
+                    arguments.add(entry.getKey() + "=" + entry.getValue());
                 }
             }
-            processorParameters = accu.toString();
+            addInputParameters(arguments);
+            return getWorker(executable).runJob(ExecutableWorker.PROCESS, arguments.toArray(new String[0]), pm);
         }
 
+        String processorParameters = getProcessorParameters();
         ScriptGenerator scriptGenerator = new ScriptGenerator(ScriptGenerator.Step.PROCESS, executable);
         VelocityContext velocityContext = scriptGenerator.getVelocityContext();
         velocityContext.put("system", System.getProperties());
@@ -236,7 +330,7 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
         getLogger().info("process: " + executable + " " + inputFile.getCanonicalPath());
         String[] cmdArray = {"./process", inputFile.getCanonicalPath()};
         String[] env = new String[] { "HADOOP_USER_NAME=" + user };
-        Process process = Runtime.getRuntime().exec(cmdArray, env);
+        Process process = startProcess(cmdArray, env);
         String processLogName = executable + "-process";
         KeywordHandler keywordHandler = new KeywordHandler(processLogName, getMapContext());
 
@@ -248,6 +342,83 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
         return keywordHandler;
     }
 
+    /**
+     * @return the processor parameters of the job, extended by the parameters of the input split
+     */
+    private String getProcessorParameters() {
+        String processorParameters = getConfiguration().get(JobConfigNames.CALVALUS_L2_PARAMETERS + parameterSuffix, "");
+        if (getInputParameters().length > 0) {
+            final StringBuilder accu = new StringBuilder(processorParameters);
+            for (int i=0; i<getInputParameters().length; i+=2) {
+                if (!"output".equals(getInputParameters()[i])) {
+                    if (accu.length() > 0) {
+                        accu.append('\n');
+                    }
+                    accu.append(getInputParameters()[i]);
+                    accu.append(':');
+                    accu.append(getInputParameters()[i + 1]);
+                }
+            }
+            processorParameters = accu.toString();
+        }
+        return processorParameters;
+    }
+
+    /**
+     * @return the worker of the task for the executable, started with the worker script of the processor bundle.
+     * The parameters of the input split are not known to the script, they are passed with each job.
+     */
+    private String getWorkerName(String executable) {
+        return executable + parameterSuffix + "-worker";
+    }
+
+    private ExecutableWorker getWorker(String executable) throws IOException {
+        synchronized (ExecutableWorker.class) {
+            String workerName = getWorkerName(executable);
+            ExecutableWorker worker = ExecutableWorker.getTaskWorker(getMapContext(), workerName, cwd);
+            if (worker == null) {
+                Configuration conf = getConfiguration();
+                String processorParameters = conf.get(JobConfigNames.CALVALUS_L2_PARAMETERS + parameterSuffix, "");
+                ScriptGenerator scriptGenerator = new ScriptGenerator(ScriptGenerator.Step.WORKER, executable);
+                VelocityContext velocityContext = scriptGenerator.getVelocityContext();
+                velocityContext.put("system", System.getProperties());
+                velocityContext.put("configuration", conf);
+                velocityContext.put("parameterText", processorParameters);
+                velocityContext.put("parameters", PropertiesHandler.asProperties(processorParameters));
+                velocityContext.put("outputPath", getOutputDirectoryPath());
+                velocityContext.put("workOutputPath", getWorkOutputDirectoryPath());
+                velocityContext.put("GlobalFunctions", new SnapGraphAdapter.GlobalFunctions(getLogger()));
+
+                scriptGenerator.addScriptResources(conf, parameterSuffix);
+                if (!scriptGenerator.hasStepScript()) {
+                    throw new RuntimeException("No script for step 'worker' available.");
+                }
+                scriptGenerator.writeScriptFiles(cwd, debugScriptGenerator);
+
+                String[] env = new String[] { "HADOOP_USER_NAME=" + conf.get("mapreduce.job.user.name") };
+                worker = new ExecutableWorker(workerName, cwd, env, getMapContext());
+                ExecutableWorker.setTaskWorker(worker);
+            }
+            activeWorker = worker;
+            if (cancelled) {
+                worker.kill();
+            }
+            return worker;
+        }
+    }
+
+    private void addInputParameters(List<String> arguments) {
+        for (int i=0; i<getInputParameters().length; i+=2) {
+            if (!"output".equals(getInputParameters()[i])) {
+                arguments.add(getInputParameters()[i] + "=" + getInputParameters()[i + 1]);
+            }
+        }
+    }
+
+    private static String formatRectangle(Rectangle rectangle) {
+        return rectangle.x + "," + rectangle.y + "," + rectangle.width + "," + rectangle.height;
+    }
+
     private boolean isSentinel2(String filename) {
         return filename.matches("^S2.*_MSIL1C.*zip") ||
                     filename.matches("^S2.*_MSIL2A.*zip");
@@ -352,7 +523,7 @@ public class ExecutableProcessorAdapter extends ProcessorAdapter {
             String user = conf.get("mapreduce.job.user.name");
             String[] env = new String[] { "HADOOP_USER_NAME=" + user };
 
-            Process process = Runtime.getRuntime().exec(cmdArray, env);
+            Process process = startProcess(cmdArray, env);
             String processLogName = executable + "-finalize";
             KeywordHandler keywordHandler = new KeywordHandler(processLogName, getMapContext());
 
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.executable;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.ceres.core.ProgressMonitor;
+import org.apache.hadoop.mapreduce.MapContext;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An executable processor that is started once per task and processes the products one after the other,
+ * instead of starting a process for every product.
+ * <p/>
+ * The worker script {@code ./worker} reads one job per line from stdin. A job line consists of tab-separated
+ * fields, the command {@code CALVALUS_PREPARE} or {@code CALVALUS_PROCESS} followed by the arguments of the
+ * corresponding {@code ./prepare} or {@code ./process} script and {@code name=value} pairs for what the
+ * process script gets from its template, e.g. {@code inputPath} or {@code inputRectangle} as x,y,width,height,
+ * and for the parameters of the input split. For each job
+ * the worker writes the same {@code CALVALUS_} keywords to stdout as the scripts and finishes the job with the line
+ * {@code CALVALUS_JOB_DONE <exitCode>}. A worker replies with exit code 0 to commands it has nothing to do for.
+ * It terminates when stdin is closed.
+ * <p/>
+ * A worker that terminates while processing a job is restarted and the job is repeated once.
+ */
+public class ExecutableWorker {
+
+    public static final String PREPARE = "CALVALUS_PREPARE";
+    public static final String PROCESS = "CALVALUS_PROCESS";
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final Pattern JOB_DONE_PATTERN = Pattern.compile("CALVALUS_JOB_DONE\\s+(-?[0-9]+)\\s*");
+    private static final int MAX_RESTARTS = 1;
+    private static final long TERMINATION_TIMEOUT_SECONDS = 30;
+
+    private static final Map<String, ExecutableWorker> taskWorkers = new HashMap<>();
+    private static String taskAttemptId;
+
+    static {
+        // workers still running a job when the task JVM exits are not waited for
+        Runtime.getRuntime().addShutdownHook(new Thread(ExecutableWorker::destroyAll));
+    }
+
+    private final String name;
+    private final File cwd;
+    private final String[] env;
+    private final MapContext mapContext;
+
+    private volatile Process process;
+    private volatile boolean killed;
+    private Writer stdin;
+    private BufferedReader stdout;
+
+    /**
+     * @return the worker with the given name and working directory started in the task attempt, or null.
+     * The workers of a previous task attempt are closed.
+     */
+    static synchronized ExecutableWorker getTaskWorker(MapContext mapContext, String name, File cwd) throws IOException {
+        String id = String.valueOf(mapContext.getTaskAttemptID());
+        if (!id.equals(taskAttemptId)) {
+            closeAll();
+            taskAttemptId = id;
+        }
+        return taskWorkers.get(getKey(name, cwd));
+    }
+
+    static synchronized void setTaskWorker(ExecutableWorker worker) throws IOException {
+        taskWorkers.put(getKey(worker.name, worker.cwd), worker);
+    }
+
+    /**
+     * Closes the worker with the given name and working directory, if it has been started in the task.
+     */
+    static synchronized void closeTaskWorker(String name, File cwd) throws IOException {
+        ExecutableWorker worker = taskWorkers.remove(getKey(name, cwd));
+        if (worker != null) {
+            worker.close();
+        }
+    }
+
+    private static String getKey(String name, File cwd) throws IOException {
+        return name + "@" + cwd.getCanonicalPath();
+    }
+
+    private static synchronized void closeAll() {
+        for (ExecutableWorker worker : taskWorkers.values()) {
+            worker.close();
+        }
+        taskWorkers.clear();
+    }
+
+    private static synchronized void destroyAll() {
+        for (ExecutableWorker worker : taskWorkers.values()) {
+            Process process = worker.process;
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * @param name the name of the worker, used for logging
+     * @param cwd  the working directory containing the worker script
+     * @param env  the environment of the worker process
+     */
+    public ExecutableWorker(String name, File cwd, String[] env, MapContext mapContext) {
+        this.name = name;
+        this.cwd = cwd;
+        this.env = env;
+        this.mapContext = mapContext;
+    }
+
+    /**
+     * Lets the worker run a job, starts the worker if it is not running.
+     *
+     * @param command   the command of the job
+     * @param arguments the arguments of the job, must not contain tabs or line breaks
+     * @return the handler with the keywords the worker reported for the job
+     */
+    public synchronized KeywordHandler runJob(String command, String[] arguments, ProgressMonitor pm) throws IOException {
+        String jobLine = createJobLine(command, arguments);
+        pm.beginTask(name, 1000);
+        try {
+            for (int restarts = 0; ; restarts++) {
+                if (killed) {
+                    throw new IOException(name + " has been killed");
+                }
+                if (process == null) {
+                    start();
+                }
+                KeywordHandler keywordHandler = new KeywordHandler(name, mapContext);
+                Integer exitCode = null;
+                try {
+                    exitCode = runJob(jobLine, keywordHandler, pm);
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, name + " failed to communicate: " + e.getMessage());
+                }
+                if (exitCode != null) {
+                    keywordHandler.handleExitCode(exitCode);
+                    return keywordHandler;
+                }
+                int processExitCode = terminate();
+                if (killed || restarts >= MAX_RESTARTS) {
+                    throw new IOException(name + " terminated with exit code " + processExitCode + " in job: " + jobLine);
+                }
+                LOG.warning(name + " terminated with exit code " + processExitCode + ", restarting it");
+            }
+        } finally {
+            pm.done();
+        }
+    }
+
+    /**
+     * Closes stdin of the worker so that it terminates, and kills it if it does not terminate in time.
+     */
+    public synchronized void close() {
+        if (process != null) {
+            terminate();
+        }
+    }
+
+    /**
+     * Kills the worker, also while it runs a job. The job fails and the worker is not restarted.
+     */
+    public void kill() {
+        killed = true;
+        Process runningProcess = process;
+        if (runningProcess != null) {
+            runningProcess.destroyForcibly();
+        }
+    }
+
+    static String createJobLine(String command, String[] arguments) {
+        StringBuilder jobLine = new StringBuilder(command);
+        for (String argument : arguments) {
+            if (argument.indexOf('\t') >= 0 || argument.indexOf('\n') >= 0 || argument.indexOf('\r') >= 0) {
+                throw new IllegalArgumentException("job argument must not contain tabs or line breaks: " + argument);
+            }
+            jobLine.append('\t').append(argument);
+        }
+        return jobLine.toString();
+    }
+
+    private void start() throws IOException {
+        LOG.info("starting " + name + " in " + cwd.getCanonicalPath());
+        Process startedProcess = Runtime.getRuntime().exec(new String[]{"./worker"}, env, cwd);
+        stdin = new BufferedWriter(new OutputStreamWriter(startedProcess.getOutputStream()));
+        stdout = new BufferedReader(new InputStreamReader(startedProcess.getInputStream()));
+        Thread stderrThread = new Thread(() -> {
+            try (BufferedReader stderr = new BufferedReader(new InputStreamReader(startedProcess.getErrorStream()))) {
+                String line;
+                while ((line = stderr.readLine()) != null) {
+                    System.err.println(name + ": " + line);
+                    mapContext.progress(); //signal activity to Hadoop
+                }
+            } catch (IOException ignore) {
+            }
+        }, name + "-stderr");
+        stderrThread.setDaemon(true);
+        stderrThread.start();
+        process = startedProcess;
+    }
+
+    /**
+     * @return the exit code the worker reported for the job, or null if the worker terminated before
+     */
+    private Integer runJob(String jobLine, KeywordHandler keywordHandler, ProgressMonitor pm) throws IOException {
+        stdin.write(jobLine);
+        stdin.write('\n');
+        stdin.flush();
+        String line;
+        while ((line = stdout.readLine()) != null) {
+            Matcher jobDoneMatcher = JOB_DONE_PATTERN.matcher(line);
+            if (jobDoneMatcher.matches()) {
+                return Integer.parseInt(jobDoneMatcher.group(1));
+            }
+            System.out.println(name + ": " + line);
+            keywordHandler.handleLine(line, pm);
+        }
+        return null;
+    }
+
+    private int terminate() {
+        Process terminatedProcess = process;
+        process = null;
+        try {
+            stdin.close();
+        } catch (IOException ignore) {
+            // the worker has terminated already
+        }
+        try {
+            stdout.close();
+        } catch (IOException ignore) {
+        }
+        try {
+            if (!terminatedProcess.waitFor(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warning(name + " did not terminate, killing it");
+                terminatedProcess.destroyForcibly().waitFor();
+            }
+        } catch (InterruptedException e) {
+            terminatedProcess.destroyForcibly();
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        return terminatedProcess.exitValue();
+    }
+}
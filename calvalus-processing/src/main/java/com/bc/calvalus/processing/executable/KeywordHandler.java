@@ -77,6 +77,13 @@ public class KeywordHandler extends ProcessObserver.DefaultHandler {
     @Override
     public void onStdoutLineReceived(ProcessObserver.ObservedProcess process, String line, ProgressMonitor pm) {
         super.onStdoutLineReceived(process, line, pm);
+        handleLine(line, pm);
+    }
+
+    /**
+     * Extracts the keywords from a line of the processor output.
+     */
+    void handleLine(String line, ProgressMonitor pm) {
         mapContext.progress(); //signal activity to Hadoop
 
         if (line.startsWith(KEYWORD_PREFIX)) {
@@ -127,6 +134,10 @@ public class KeywordHandler extends ProcessObserver.DefaultHandler {
     public void onObservationEnded(ProcessObserver.ObservedProcess process, Integer exitCode, ProgressMonitor pm) {
         super.onObservationEnded(process, exitCode, pm);
         pm.done();
+        handleExitCode(exitCode);
+    }
+
+    void handleExitCode(Integer exitCode) {
         if (exitCode == null || exitCode != 0) {
             throw new RuntimeException(programName + " failed with exit code " + exitCode + ".\nCheck log for more details.");
         }
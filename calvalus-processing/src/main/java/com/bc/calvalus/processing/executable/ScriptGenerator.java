@@ -64,6 +64,12 @@ public class ScriptGenerator {
             boolean shouldWriteResource(String resourceName) {
                 return resourceName.equals("finalize");
             }
+        },
+        WORKER {
+            @Override
+            boolean shouldWriteResource(String resourceName) {
+                return !resourceName.equals("prepare") && !resourceName.equals("process") && !resourceName.equals("finalize");
+            }
         };
 
         abstract boolean shouldWriteResource(String resourceName);
@@ -21,6 +21,7 @@ import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.beam.CalvalusProductIO;
 import com.bc.calvalus.processing.executable.KeywordHandler;
 import com.bc.calvalus.processing.executable.ScriptGenerator;
+import com.bc.calvalus.processing.utils.GridAggregator;
 import com.bc.ceres.core.ProcessObserver;
 import com.bc.ceres.core.ProgressMonitor;
 import org.apache.hadoop.conf.Configuration;
@@ -28,6 +29,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
@@ -36,8 +38,6 @@ import org.apache.velocity.VelocityContext;
 import org.esa.snap.core.dataio.ProductIO;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.CrsGeoCoding;
-import org.esa.snap.core.datamodel.GeoPos;
-import org.esa.snap.core.datamodel.PixelPos;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
@@ -59,6 +59,7 @@ import java.util.logging.Logger;
 public class FireGridMapper extends Mapper<LongWritable, FileSplit, IntWritable, GridCell> {
 
     private static final float ONE_PIXEL_AREA = 300 * 300;
+    private static final String CALVALUS_FIRE_NUM_THREADS = "calvalus.fire.numThreads";
     private File cwd;
     private static final Logger LOG = CalvalusLogger.getLogger();
 
@@ -88,32 +89,25 @@ public class FireGridMapper extends Mapper<LongWritable, FileSplit, IntWritable,
             throw new IOException(e);
         }
         Band band_1 = product.getBand("band_1");
+        GridAggregator gridAggregator = GridAggregator.create(target.getSceneGeoCoding(), 40, 40,
+                                                              product.getSceneGeoCoding(),
+                                                              product.getSceneRasterWidth(),
+                                                              product.getSceneRasterHeight(),
+                                                              90, 90);
+        int numThreads = context.getConfiguration().getInt(CALVALUS_FIRE_NUM_THREADS,
+                                                           context.getConfiguration().getInt(MRJobConfig.MAP_CPU_VCORES,
+                                                                                             MRJobConfig.DEFAULT_MAP_CPU_VCORES));
+        float[][] burnedArea = gridAggregator.aggregate(band_1, 2, (pixelFloat, cellValues) -> {
+            if (isValidFirstHalfPixel(doyFirstOfMonth, doySecondHalf, pixelFloat)) {
+                cellValues[0] += ONE_PIXEL_AREA;
+            } else if (isValidSecondHalfPixel(doyLastOfMonth, doyFirstHalf, pixelFloat)) {
+                cellValues[1] += ONE_PIXEL_AREA;
+            }
+        }, numThreads);
         Band burnedAreaFirstHalf = target.addBand("burned_area_first_half", ProductData.TYPE_FLOAT32);
         Band burnedAreaSecondHalf = target.addBand("burned_area_second_half", ProductData.TYPE_FLOAT32);
-        PixelPos pixelPos = new PixelPos();
-        GeoPos geoPos = new GeoPos();
-        for (int y = 0; y < 40; y++) {
-            for (int x = 0; x < 40; x++) {
-                pixelPos.x = x;
-                pixelPos.y = y;
-                target.getSceneGeoCoding().getGeoPos(pixelPos, geoPos);
-                product.getSceneGeoCoding().getPixelPos(geoPos, pixelPos);
-                float valueFirstHalf = 0.0F;
-                float valueSecondHalf = 0.0F;
-                float[] pixels = new float[90 * 90];
-                band_1.readPixels((int) (pixelPos.x - 45), (int) (pixelPos.y - 45), 90, 90, pixels);
-                for (int i = 0; i < 90 * 90; i++) {
-                    float pixelFloat = pixels[i];
-                    if (isValidFirstHalfPixel(doyFirstOfMonth, doySecondHalf, pixelFloat)) {
-                        valueFirstHalf += ONE_PIXEL_AREA;
-                    } else if (isValidSecondHalfPixel(doyLastOfMonth, doyFirstHalf, pixelFloat)) {
-                        valueSecondHalf += ONE_PIXEL_AREA;
-                    }
-                }
-                burnedAreaFirstHalf.setPixelFloat(x, y, valueFirstHalf);
-                burnedAreaSecondHalf.setPixelFloat(x, y, valueSecondHalf);
-            }
-        }
+        burnedAreaFirstHalf.setRasterData(ProductData.createInstance(burnedArea[0]));
+        burnedAreaSecondHalf.setRasterData(ProductData.createInstance(burnedArea[1]));
 
         ProductIO.writeProduct(target, "/tmp/deleteme/thomas-ba.nc", "NetCDF4-BEAM");
     }
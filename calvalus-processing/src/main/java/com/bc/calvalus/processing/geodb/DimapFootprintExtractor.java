@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+
+package com.bc.calvalus.processing.geodb;
+
+import com.vividsolutions.jts.geom.Polygon;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.esa.snap.core.dataio.dimap.DimapProductHelpers;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.jdom.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+/**
+ * Reads the footprint of a BEAM-DIMAP product from its header, if the product is map-projected.
+ * The geo-coding of other products needs the tie-point grids in the data directory.
+ */
+public class DimapFootprintExtractor extends FootprintExtractor {
+
+    @Override
+    public boolean canExtract(String fileName) {
+        return fileName.endsWith(".dim");
+    }
+
+    @Override
+    public Footprint extract(Path productPath, Configuration conf) throws IOException {
+        Document dom;
+        try (InputStream inputStream = productPath.getFileSystem(conf).open(productPath)) {
+            dom = DimapProductHelpers.createDom(inputStream);
+        }
+        Product product = DimapProductHelpers.createProduct(dom);
+        try {
+            GeoCoding[] geoCodings = DimapProductHelpers.createGeoCoding(dom, product);
+            if (geoCodings == null || geoCodings.length != 1 || !(geoCodings[0] instanceof CrsGeoCoding)) {
+                return null;
+            }
+            product.setSceneGeoCoding(geoCodings[0]);
+            Polygon polygon = GeodbScanMapper.computeProductGeometryDefault(product);
+            if (polygon == null) {
+                return null;
+            }
+            return new Footprint(polygon, toDate(product.getStartTime()), toDate(product.getEndTime()));
+        } finally {
+            product.dispose();
+        }
+    }
+
+    private static Date toDate(ProductData.UTC utc) {
+        return utc != null ? utc.getAsDate() : null;
+    }
+}
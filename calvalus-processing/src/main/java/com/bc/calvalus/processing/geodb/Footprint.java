@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+
+package com.bc.calvalus.processing.geodb;
+
+import com.bc.calvalus.commons.DateUtils;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+import com.vividsolutions.jts.simplify.TopologyPreservingSimplifier;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The footprint and sensing time of a product, as entered into the product-DB.
+ */
+public class Footprint {
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    private final Polygon polygon;
+    private final Date startTime;
+    private final Date stopTime;
+
+    public Footprint(Polygon polygon, Date startTime, Date stopTime) {
+        this.polygon = polygon;
+        this.startTime = startTime;
+        this.stopTime = stopTime;
+    }
+
+    public Polygon getPolygon() {
+        return polygon;
+    }
+
+    /**
+     * @return the sensing start time, or {@code null} if unknown
+     */
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the sensing stop time, or {@code null} if unknown
+     */
+    public Date getStopTime() {
+        return stopTime;
+    }
+
+    /**
+     * Unions the parts of a footprint, e.g. the detector footprints of a Sentinel-2 product.
+     * The parts are unioned at once (cascaded union), not one after the other.
+     *
+     * @return the simplified union, or {@code null} if it is empty or not a single polygon
+     */
+    public static Polygon union(Collection<Geometry> parts) {
+        if (parts.isEmpty()) {
+            return null;
+        }
+        Geometry union = TopologyPreservingSimplifier.simplify(UnaryUnionOp.union(parts), 0.001);
+        if (union instanceof Polygon && !union.isEmpty()) {
+            return (Polygon) union;
+        }
+        return null;
+    }
+
+    /**
+     * @param posList latitudes and longitudes, alternating, separated by white space or commas
+     * @return the polygon of the positions, closed if the list is not
+     */
+    static Polygon parseLatLonList(String posList) {
+        String[] values = posList.trim().split("[\\s,]+");
+        if (values.length < 6 || values.length % 2 != 0) {
+            throw new IllegalArgumentException("not a list of latitudes and longitudes: " + posList);
+        }
+        List<Coordinate> coordinates = new ArrayList<>(values.length / 2 + 1);
+        for (int i = 0; i < values.length; i += 2) {
+            coordinates.add(new Coordinate(Double.parseDouble(values[i + 1]), Double.parseDouble(values[i])));
+        }
+        if (!coordinates.get(0).equals2D(coordinates.get(coordinates.size() - 1))) {
+            coordinates.add(new Coordinate(coordinates.get(0)));
+        }
+        return GEOMETRY_FACTORY.createPolygon(coordinates.toArray(new Coordinate[coordinates.size()]));
+    }
+
+    /**
+     * @param isoTime a time like 2017-06-01T10:20:21.026Z, fractions of seconds are ignored
+     * @return the time, or {@code null} if it cannot be parsed
+     */
+    static Date parseIsoTime(String isoTime) {
+        if (isoTime == null || isoTime.trim().length() < 19) {
+            return null;
+        }
+        try {
+            return DateUtils.createDateFormat("yyyy-MM-dd'T'HH:mm:ss").parse(isoTime.trim().substring(0, 19));
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+
+package com.bc.calvalus.processing.geodb;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The service provider interface (SPI) for footprint extractors. An extractor reads the footprint
+ * and the sensing time of a product from its metadata only, without opening the product.
+ * Extractors are registered in {@code META-INF/services}.
+ */
+public abstract class FootprintExtractor {
+
+    private static final Logger LOGGER = CalvalusLogger.getLogger();
+
+    /**
+     * A simple test could be to check for known filename patterns.
+     *
+     * @param fileName The file name of a product.
+     * @return {@code true}, if the metadata of products with this name may contain the footprint.
+     */
+    public abstract boolean canExtract(String fileName);
+
+    /**
+     * @param productPath The path of the product.
+     * @param conf        The Hadoop configuration.
+     * @return The footprint, or {@code null} if the metadata of the product does not contain it.
+     * @throws IOException If the metadata cannot be read.
+     */
+    public abstract Footprint extract(Path productPath, Configuration conf) throws IOException;
+
+    /**
+     * Tries the registered extractors that accept the name of the product.
+     *
+     * @param productPath The path of the product.
+     * @param conf        The Hadoop configuration.
+     * @return The footprint, or {@code null} if none of the extractors found it in the metadata.
+     */
+    public static Footprint extractFootprint(Path productPath, Configuration conf) {
+        ServiceLoader<FootprintExtractor> loader = ServiceLoader.load(FootprintExtractor.class, Thread.currentThread().getContextClassLoader());
+        for (FootprintExtractor extractor : loader) {
+            if (extractor.canExtract(productPath.getName())) {
+                try {
+                    Footprint footprint = extractor.extract(productPath, conf);
+                    if (footprint != null) {
+                        return footprint;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, extractor.getClass().getSimpleName() + " failed for " + productPath, e);
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -27,7 +27,6 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LinearRing;
 import com.vividsolutions.jts.geom.Polygon;
-import com.vividsolutions.jts.simplify.TopologyPreservingSimplifier;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -55,6 +54,8 @@ import java.awt.*;
 import java.io.IOException;
 import java.net.URI;
 import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -63,6 +64,7 @@ import java.util.logging.Logger;
 public class GeodbScanMapper extends Mapper<NullWritable, NullWritable, Text, Text> {
 
     private static final Logger LOGGER = CalvalusLogger.getLogger();
+    private static final String CALVALUS_GEODB_METADATA_FOOTPRINTS = "calvalus.geodb.metadataFootprints";
 
     @Override
     public void run(Context context) throws IOException, InterruptedException {
@@ -70,43 +72,62 @@ public class GeodbScanMapper extends Mapper<NullWritable, NullWritable, Text, Te
         ProgressMonitor pm = new ProgressSplitProgressMonitor(context);
         pm.beginTask("Geometry", 100);
         try {
-            Product product = processorAdapter.getInputProduct();
-            if (product != null) {
-                Polygon poylgon = computeProductGeometry(product);
-                if (poylgon != null) {
-                    String wkt = poylgon.toString();
-                    pm.worked(50);
-
-                    DateFormat dateFormat = DateUtils.createDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-                    ProductData.UTC startUTC = product.getStartTime();
-                    String startTime = "null";
-                    if (startUTC != null) {
-                        startTime = dateFormat.format(startUTC.getAsDate());
-                    }
-                    ProductData.UTC endUTC = product.getEndTime();
-                    String endTime = "null";
-                    if (endUTC != null) {
-                        endTime = dateFormat.format(endUTC.getAsDate());
-                    }
-                    String dbPath = getDBPath(processorAdapter.getInputPath(), context.getConfiguration());
-
-                    String result = startTime + "\t" + endTime + "\t" + wkt;
-                    context.write(new Text(dbPath), new Text(result));
+            Footprint footprint = null;
+            if (context.getConfiguration().getBoolean(CALVALUS_GEODB_METADATA_FOOTPRINTS, true)) {
+                footprint = FootprintExtractor.extractFootprint(processorAdapter.getInputPath(), context.getConfiguration());
+                if (footprint != null) {
+                    LOGGER.info("footprint read from metadata: " + footprint.getPolygon());
                 }
             }
+            if (footprint == null) {
+                Product product = processorAdapter.getInputProduct();
+                if (product != null) {
+                    footprint = computeFootprint(product);
+                }
+            }
+            if (footprint != null) {
+                String wkt = footprint.getPolygon().toString();
+                pm.worked(50);
+
+                DateFormat dateFormat = DateUtils.createDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+                String startTime = "null";
+                if (footprint.getStartTime() != null) {
+                    startTime = dateFormat.format(footprint.getStartTime());
+                }
+                String endTime = "null";
+                if (footprint.getStopTime() != null) {
+                    endTime = dateFormat.format(footprint.getStopTime());
+                }
+                String dbPath = getDBPath(processorAdapter.getInputPath(), context.getConfiguration());
+
+                String result = startTime + "\t" + endTime + "\t" + wkt;
+                context.write(new Text(dbPath), new Text(result));
+            }
         } finally {
             pm.done();
             processorAdapter.dispose();
         }
     }
 
+    private Footprint computeFootprint(Product product) {
+        Polygon polygon = computeProductGeometry(product);
+        if (polygon == null) {
+            return null;
+        }
+        ProductData.UTC startUTC = product.getStartTime();
+        ProductData.UTC endUTC = product.getEndTime();
+        return new Footprint(polygon,
+                             startUTC != null ? startUTC.getAsDate() : null,
+                             endUTC != null ? endUTC.getAsDate() : null);
+    }
+
     private Polygon computeProductGeometry(Product product) {
 //        LOGGER.info("compute product geometry using reader " + product.getProductReader().getClass().getSimpleName());
 //        if (product.getProductReader().getClass().getSimpleName().startsWith("Sentinel2OrthoProductReader")) {
 //            LOGGER.info("determine detector footprint of S2 product");
             ProductNodeGroup<Mask> maskGroup = product.getMaskGroup();
             int nodeCount = maskGroup.getNodeCount();
-            Geometry union = new GeometryFactory().createPolygon((Coordinate[]) null);
+            List<Geometry> detectorFootprints = new ArrayList<>();
             for (int i = 0; i < nodeCount; i++) {
                 Mask mask = maskGroup.get(i);
                 Mask.ImageType imageType = mask.getImageType();
@@ -120,7 +141,7 @@ public class GeodbScanMapper extends Mapper<NullWritable, NullWritable, Text, Te
                             Geometry sourceGeom = (Geometry) features.next().getDefaultGeometry();
                             try {
                                 Geometry targetGeom = transformGeometry(sourceGeom, mapCRS, DefaultGeographicCRS.WGS84);
-                                union = union.union(targetGeom);
+                                detectorFootprints.add(targetGeom);
                             } catch (Exception ignore) {
                                 ignore.printStackTrace();
                             }
@@ -128,16 +149,14 @@ public class GeodbScanMapper extends Mapper<NullWritable, NullWritable, Text, Te
                     }
                 }
             }
-            Geometry footprint = TopologyPreservingSimplifier.simplify(union, 0.001);
-            if (!footprint.isEmpty()) {
-                if (footprint instanceof Polygon) {
+            if (!detectorFootprints.isEmpty()) {
+                Polygon footprint = Footprint.union(detectorFootprints);
+                if (footprint != null) {
                     LOGGER.info("S2 detector footprint determined: " + footprint);
-                    return (Polygon) footprint;
+                    return footprint;
                 } else {
-                    LOGGER.warning("S2 detector footprint is not a polygon: " + footprint);
+                    LOGGER.warning("S2 detector footprint is not a polygon");
                 }
-//            } else {
-//                LOGGER.warning("footprint is empty.");
             }
 //        }
         final Polygon productOutline = computeProductGeometryDefault(product);
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+
+package com.bc.calvalus.processing.geodb;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.IOException;
+
+/**
+ * A read-only NetCDF random access file backed by a Hadoop file system.
+ * Only the parts of the file that are accessed are read, by positional reads.
+ */
+class HdfsRandomAccessFile extends RandomAccessFile {
+
+    private final FSDataInputStream inputStream;
+    private final long length;
+
+    HdfsRandomAccessFile(Path path, Configuration conf) throws IOException {
+        super(DEFAULT_BUFFER_SIZE);
+        FileSystem fileSystem = path.getFileSystem(conf);
+        this.length = fileSystem.getFileStatus(path).getLen();
+        this.inputStream = fileSystem.open(path);
+        this.location = path.toString();
+    }
+
+    @Override
+    protected int read_(long pos, byte[] b, int offset, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            int count = inputStream.read(pos + n, b, offset + n, len - n);
+            if (count < 0) {
+                break;
+            }
+            n += count;
+        }
+        return n > 0 ? n : -1;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        inputStream.close();
+    }
+}
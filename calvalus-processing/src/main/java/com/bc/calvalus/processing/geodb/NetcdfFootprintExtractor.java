@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+
+package com.bc.calvalus.processing.geodb;
+
+import com.vividsolutions.jts.geom.CoordinateFilter;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the footprint of NetCDF products from the {@code geospatial_bounds} global attribute of the
+ * Attribute Convention for Data Discovery, and the sensing time from {@code time_coverage_start/end}.
+ * The polygon is interpreted in the {@code geospatial_bounds_crs}, by default EPSG:4326 with latitude
+ * first. Products with only the {@code geospatial_lat/lon_min/max} bounding box are left to their
+ * geo-coding, the box is too coarse for swaths. Only the header is read, directly from the file system.
+ */
+public class NetcdfFootprintExtractor extends FootprintExtractor {
+
+    private static final Set<String> LAT_LON_CRS = new HashSet<>(Arrays.asList(
+            "EPSG:4326", "urn:ogc:def:crs:EPSG::4326", "http://www.opengis.net/def/crs/EPSG/0/4326"));
+    private static final Set<String> LON_LAT_CRS = new HashSet<>(Arrays.asList(
+            "CRS:84", "OGC:CRS84", "urn:ogc:def:crs:OGC:1.3:CRS84", "http://www.opengis.net/def/crs/OGC/1.3/CRS84"));
+
+    @Override
+    public boolean canExtract(String fileName) {
+        return fileName.endsWith(".nc");
+    }
+
+    @Override
+    public Footprint extract(Path productPath, Configuration conf) throws IOException {
+        HdfsRandomAccessFile file = new HdfsRandomAccessFile(productPath, conf);
+        NetcdfFile openedFile;
+        try {
+            openedFile = NetcdfFile.open(file, productPath.toString(), null, null);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        try (NetcdfFile netcdfFile = openedFile) {
+            Polygon polygon = getPolygon(getString(netcdfFile, "geospatial_bounds"), getString(netcdfFile, "geospatial_bounds_crs"));
+            if (polygon == null) {
+                return null;
+            }
+            return new Footprint(polygon,
+                                 Footprint.parseIsoTime(getString(netcdfFile, "time_coverage_start")),
+                                 Footprint.parseIsoTime(getString(netcdfFile, "time_coverage_end")));
+        }
+    }
+
+    /**
+     * @return the bounds as lon/lat polygon, or {@code null} if there are no bounds or they are in another CRS
+     */
+    static Polygon getPolygon(String bounds, String boundsCrs) throws IOException {
+        if (bounds == null) {
+            return null;
+        }
+        String crs = boundsCrs != null ? boundsCrs.trim() : "EPSG:4326";
+        boolean latFirst = LAT_LON_CRS.contains(crs);
+        if (!latFirst && !LON_LAT_CRS.contains(crs)) {
+            return null;
+        }
+        Geometry geometry;
+        try {
+            geometry = new WKTReader().read(bounds);
+        } catch (ParseException e) {
+            throw new IOException("invalid geospatial_bounds " + bounds, e);
+        }
+        if (latFirst) {
+            geometry.apply((CoordinateFilter) coordinate -> {
+                double lat = coordinate.x;
+                coordinate.x = coordinate.y;
+                coordinate.y = lat;
+            });
+            geometry.geometryChanged();
+        }
+        return Footprint.union(Collections.singletonList(geometry));
+    }
+
+    private static String getString(NetcdfFile netcdfFile, String name) {
+        Attribute attribute = netcdfFile.findGlobalAttribute(name);
+        return attribute != null && attribute.isString() ? attribute.getStringValue() : null;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+
+package com.bc.calvalus.processing.geodb;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Reads the footprint of zipped Sentinel-1, -2 and -3 products from the SAFE manifest
+ * or, for Sentinel-2, from the product metadata file. The metadata entry is located by
+ * the central directory at the end of the archive, only this entry is read and inflated.
+ */
+public class SafeFootprintExtractor extends FootprintExtractor {
+
+    private static final Pattern PRODUCT_NAME = Pattern.compile("S[123][AB_]_.*\\.zip");
+    private static final Pattern METADATA_ENTRY = Pattern.compile("(.*/)?(manifest\\.safe|MTD_MSIL(1C|2A)\\.xml)");
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int ZIP64_EXTRA_FIELD = 0x0001;
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+    // metadata files are a few MB at most, larger entries are not inflated into memory
+    private static final long MAX_METADATA_SIZE = 64L * 1024 * 1024;
+
+    @Override
+    public boolean canExtract(String fileName) {
+        return PRODUCT_NAME.matcher(fileName).matches();
+    }
+
+    @Override
+    public Footprint extract(Path productPath, Configuration conf) throws IOException {
+        FileSystem fileSystem = productPath.getFileSystem(conf);
+        long length = fileSystem.getFileStatus(productPath).getLen();
+        try (FSDataInputStream in = fileSystem.open(productPath)) {
+            for (ZipEntryLocation entry : readCentralDirectory(in, length)) {
+                if (METADATA_ENTRY.matcher(entry.name).matches()) {
+                    try (InputStream entryStream = openEntry(in, entry)) {
+                        Footprint footprint = parseMetadata(entryStream);
+                        if (footprint != null) {
+                            return footprint;
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<ZipEntryLocation> readCentralDirectory(FSDataInputStream in, long length) throws IOException {
+        int tailLength = (int) Math.min(length, 22 + MAX_COMMENT_LENGTH);
+        ByteBuffer tail = readAt(in, length - tailLength, tailLength);
+        int endPos = tailLength - 22;
+        while (endPos >= 0 && tail.getInt(endPos) != END_OF_CENTRAL_DIRECTORY) {
+            endPos--;
+        }
+        if (endPos < 0) {
+            throw new IOException("not a zip archive, end of central directory not found");
+        }
+        long numEntries = tail.getShort(endPos + 10) & 0xffffL;
+        long directorySize = tail.getInt(endPos + 12) & 0xffffffffL;
+        long directoryOffset = tail.getInt(endPos + 16) & 0xffffffffL;
+        if (endPos >= 20 && tail.getInt(endPos - 20) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR) {
+            ByteBuffer zip64End = readAt(in, tail.getLong(endPos - 20 + 8), 56);
+            if (zip64End.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                throw new IOException("zip64 end of central directory not found");
+            }
+            numEntries = zip64End.getLong(32);
+            directorySize = zip64End.getLong(40);
+            directoryOffset = zip64End.getLong(48);
+        }
+        if (directorySize > Integer.MAX_VALUE) {
+            throw new IOException("central directory too large: " + directorySize);
+        }
+        ByteBuffer directory = readAt(in, directoryOffset, (int) directorySize);
+        List<ZipEntryLocation> entries = new ArrayList<>();
+        int pos = 0;
+        for (long i = 0; i < numEntries; i++) {
+            if (directory.getInt(pos) != CENTRAL_DIRECTORY_ENTRY) {
+                throw new IOException("corrupt central directory at entry " + i);
+            }
+            int method = directory.getShort(pos + 10) & 0xffff;
+            long compressedSize = directory.getInt(pos + 20) & 0xffffffffL;
+            long size = directory.getInt(pos + 24) & 0xffffffffL;
+            int nameLength = directory.getShort(pos + 28) & 0xffff;
+            int extraLength = directory.getShort(pos + 30) & 0xffff;
+            int commentLength = directory.getShort(pos + 32) & 0xffff;
+            long headerOffset = directory.getInt(pos + 42) & 0xffffffffL;
+            byte[] nameBytes = new byte[nameLength];
+            directory.position(pos + 46);
+            directory.get(nameBytes);
+            // sizes and offset that do not fit into 32 bits are in the zip64 extra field, in this order
+            int extraPos = pos + 46 + nameLength;
+            int extraEnd = extraPos + extraLength;
+            while (extraPos + 4 <= extraEnd) {
+                int headerId = directory.getShort(extraPos) & 0xffff;
+                int dataSize = directory.getShort(extraPos + 2) & 0xffff;
+                if (headerId == ZIP64_EXTRA_FIELD) {
+                    int fieldPos = extraPos + 4;
+                    if (size == 0xffffffffL) {
+                        size = directory.getLong(fieldPos);
+                        fieldPos += 8;
+                    }
+                    if (compressedSize == 0xffffffffL) {
+                        compressedSize = directory.getLong(fieldPos);
+                        fieldPos += 8;
+                    }
+                    if (headerOffset == 0xffffffffL) {
+                        headerOffset = directory.getLong(fieldPos);
+                    }
+                }
+                extraPos += 4 + dataSize;
+            }
+            entries.add(new ZipEntryLocation(new String(nameBytes, StandardCharsets.UTF_8), method, compressedSize, headerOffset));
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static InputStream openEntry(FSDataInputStream in, ZipEntryLocation entry) throws IOException {
+        if (entry.compressedSize > MAX_METADATA_SIZE) {
+            throw new IOException("metadata entry " + entry.name + " too large: " + entry.compressedSize);
+        }
+        ByteBuffer header = readAt(in, entry.headerOffset, 30);
+        if (header.getInt(0) != LOCAL_FILE_HEADER) {
+            throw new IOException("local header of " + entry.name + " not found");
+        }
+        long dataOffset = entry.headerOffset + 30 + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+        byte[] data = new byte[(int) entry.compressedSize + 1];  // with a dummy byte for the inflater without header
+        in.readFully(dataOffset, data, 0, (int) entry.compressedSize);
+        switch (entry.method) {
+            case ZipEntry.STORED:
+                return new ByteArrayInputStream(data, 0, (int) entry.compressedSize);
+            case ZipEntry.DEFLATED:
+                return new InflaterInputStream(new ByteArrayInputStream(data), new Inflater(true)) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inf.end();
+                    }
+                };
+            default:
+                throw new IOException("unsupported compression method " + entry.method + " of " + entry.name);
+        }
+    }
+
+    private static ByteBuffer readAt(FSDataInputStream in, long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(position, bytes, 0, length);
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Collects the footprint lists and the sensing times of the S1 and S3 manifest (gml:coordinates,
+     * gml:posList, safe:startTime, safe:stopTime) and of the S2 metadata (EXT_POS_LIST,
+     * PRODUCT_START_TIME, PRODUCT_STOP_TIME).
+     */
+    static Footprint parseMetadata(InputStream inputStream) throws IOException {
+        List<Geometry> parts = new ArrayList<>();
+        Date startTime = null;
+        Date stopTime = null;
+        try {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamReader.START_ELEMENT) {
+                        switch (reader.getLocalName()) {
+                            case "coordinates":
+                            case "posList":
+                            case "EXT_POS_LIST":
+                                parts.add(Footprint.parseLatLonList(reader.getElementText()));
+                                break;
+                            case "startTime":
+                            case "PRODUCT_START_TIME":
+                                startTime = Footprint.parseIsoTime(reader.getElementText());
+                                break;
+                            case "stopTime":
+                            case "PRODUCT_STOP_TIME":
+                                stopTime = Footprint.parseIsoTime(reader.getElementText());
+                                break;
+                            default:
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        Polygon polygon = Footprint.union(parts);
+        if (polygon == null) {
+            return null;
+        }
+        return new Footprint(polygon, startTime, stopTime);
+    }
+
+    private static class ZipEntryLocation {
+
+        private final String name;
+        private final int method;
+        private final long compressedSize;
+        private final long headerOffset;
+
+        private ZipEntryLocation(String name, int method, long compressedSize, long headerOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.headerOffset = headerOffset;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.commons.shared.BundleFilter;
+import com.bc.calvalus.processing.BundleDescriptor;
+import com.bc.calvalus.processing.ProcessorDescriptor;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.security.AccessControlException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+/**
+ * The catalogue of all bundle descriptors in the system software directory and in the software directories
+ * of all user homes.
+ * <p/>
+ * The catalogue is read once with the identity of the service and kept in memory, indexed by bundle,
+ * processor and owner. Queries are answered from the index, filtered by the access rights of the querying
+ * user. A refresh is due after {@link #REFRESH_INTERVAL}. It only re-lists software directories whose
+ * modification time changed and only re-reads descriptors whose modification time changed.
+ * After {@link #invalidate()} or {@link #FULL_REFRESH_INTERVAL} all software directories are re-listed,
+ * which also detects descriptors replaced within an existing bundle directory.
+ */
+class BundleCatalogue {
+
+    static final long REFRESH_INTERVAL = 30 * 1000;
+    static final long FULL_REFRESH_INTERVAL = 10 * 60 * 1000;
+
+    interface GroupLookup {
+        String[] getGroups(String userName);
+    }
+
+    private final FileSystem fileSystem;
+    private final Path homeDir;
+    private final Path systemSoftwareDir;
+    private final GroupLookup groupLookup;
+    private final Map<String, SoftwareDir> softwareDirs;
+    private volatile Index index;
+    private long lastRefreshTime;
+    private long lastFullRefreshTime;
+    private boolean invalidated;
+
+    /**
+     * @param fileSystem        The file system, accessed with the identity of the service.
+     * @param homeDir           The directory containing the user homes, each of which may have a "software" directory.
+     * @param systemSoftwareDir The directory of the system bundles.
+     * @param groupLookup       Provides the groups of a user for the access check, or {@code null} to skip the check.
+     */
+    BundleCatalogue(FileSystem fileSystem, String homeDir, String systemSoftwareDir, GroupLookup groupLookup) {
+        this.fileSystem = fileSystem;
+        this.homeDir = fileSystem.makeQualified(new Path(homeDir));
+        this.systemSoftwareDir = fileSystem.makeQualified(new Path(systemSoftwareDir));
+        this.groupLookup = groupLookup;
+        this.softwareDirs = new HashMap<>();
+        this.invalidated = true;
+    }
+
+    /**
+     * Makes the next query re-list all software directories.
+     */
+    synchronized void invalidate() {
+        invalidated = true;
+    }
+
+    BundleDescriptor[] getBundles(String userName, BundleFilter filter) throws IOException {
+        refreshIfDue(System.currentTimeMillis());
+        return query(index, userName, filter);
+    }
+
+    synchronized void refreshIfDue(long now) throws IOException {
+        boolean full = invalidated || now - lastFullRefreshTime >= FULL_REFRESH_INTERVAL;
+        if (full || now - lastRefreshTime >= REFRESH_INTERVAL) {
+            refresh(full);
+            lastRefreshTime = now;
+            if (full) {
+                lastFullRefreshTime = now;
+                invalidated = false;
+            }
+        }
+    }
+
+    private void refresh(boolean full) throws IOException {
+        long t0 = System.currentTimeMillis();
+        Map<String, SoftwareDir> oldSoftwareDirs = new HashMap<>(softwareDirs);
+        softwareDirs.clear();
+        int listedCount = 0;
+        int readCount = 0;
+
+        List<SoftwareDirLocation> locations = new ArrayList<>();
+        locations.add(new SoftwareDirLocation(systemSoftwareDir, null, null));
+        for (FileStatus home : listStatus(homeDir)) {
+            if (home.isDirectory()) {
+                locations.add(new SoftwareDirLocation(new Path(home.getPath(), "software"), home.getPath().getName(), home));
+            }
+        }
+        for (SoftwareDirLocation location : locations) {
+            FileStatus dirStatus = getFileStatus(location.path);
+            if (dirStatus == null || !dirStatus.isDirectory()) {
+                continue;
+            }
+            String key = location.path.toString();
+            SoftwareDir oldSoftwareDir = oldSoftwareDirs.get(key);
+            SoftwareDir softwareDir = new SoftwareDir(location.owner, location.homeStatus, dirStatus);
+            if (!full && oldSoftwareDir != null && oldSoftwareDir.status.getModificationTime() == dirStatus.getModificationTime()) {
+                for (Entry oldEntry : oldSoftwareDir.entries) {
+                    softwareDir.entries.add(new Entry(softwareDir, oldEntry.bundleDirStatus, oldEntry.descriptorStatus, oldEntry.descriptor));
+                }
+            } else {
+                listedCount++;
+                Map<String, Entry> oldEntries = new HashMap<>();
+                if (oldSoftwareDir != null) {
+                    for (Entry oldEntry : oldSoftwareDir.entries) {
+                        oldEntries.put(oldEntry.bundleDirStatus.getPath().toString(), oldEntry);
+                    }
+                }
+                for (FileStatus bundleDirStatus : listStatus(location.path)) {
+                    if (!bundleDirStatus.isDirectory()) {
+                        continue;
+                    }
+                    Entry oldEntry = oldEntries.get(bundleDirStatus.getPath().toString());
+                    if (oldEntry != null && oldEntry.bundleDirStatus.getModificationTime() == bundleDirStatus.getModificationTime()) {
+                        softwareDir.entries.add(new Entry(softwareDir, bundleDirStatus, oldEntry.descriptorStatus, oldEntry.descriptor));
+                        continue;
+                    }
+                    Path descriptorPath = new Path(bundleDirStatus.getPath(), HadoopProcessingService.BUNDLE_DESCRIPTOR_XML_FILENAME);
+                    FileStatus descriptorStatus = getFileStatus(descriptorPath);
+                    if (descriptorStatus == null || !descriptorStatus.isFile()) {
+                        continue;
+                    }
+                    BundleDescriptor descriptor;
+                    if (oldEntry != null && oldEntry.descriptorStatus.getModificationTime() == descriptorStatus.getModificationTime()) {
+                        descriptor = oldEntry.descriptor;
+                    } else {
+                        try {
+                            readCount++;
+                            descriptor = HadoopProcessingService.readBundleDescriptor(fileSystem, descriptorPath);
+                        } catch (Exception e) {
+                            CalvalusLogger.getLogger().warning("error reading bundle-descriptor (" + descriptorPath + ") : " + e.getMessage());
+                            continue;
+                        }
+                        descriptor.setBundleLocation(bundleDirStatus.getPath().toString());
+                        if (location.owner != null) {
+                            descriptor.setOwner(location.owner);
+                        }
+                    }
+                    softwareDir.entries.add(new Entry(softwareDir, bundleDirStatus, descriptorStatus, descriptor));
+                }
+            }
+            softwareDirs.put(key, softwareDir);
+        }
+        index = new Index(softwareDirs.values());
+        CalvalusLogger.getLogger().log(Level.FINE, String.format(
+                "bundle catalogue refreshed: %d bundles, %d of %d software directories listed, %d descriptors read, %d ms",
+                index.entries.size(), listedCount, softwareDirs.size(), readCount, System.currentTimeMillis() - t0));
+    }
+
+    private BundleDescriptor[] query(Index index, String userName, BundleFilter filter) {
+        String processorKey = filter.getProcessorName() != null ? key(filter.getProcessorName(), filter.getProcessorVersion()) : null;
+        boolean withUser = filter.isProviderSupported(BundleFilter.PROVIDER_USER) && filter.getUserName() != null;
+        boolean withAllUsers = filter.isProviderSupported(BundleFilter.PROVIDER_ALL_USERS);
+        boolean withSystem = filter.isProviderSupported(BundleFilter.PROVIDER_SYSTEM);
+
+        List<Entry> candidates;
+        if (filter.getBundleName() != null) {
+            candidates = index.byBundle.get(key(filter.getBundleName(), filter.getBundleVersion()));
+        } else if (processorKey != null) {
+            candidates = index.byProcessor.get(processorKey);
+        } else if (withUser && !withAllUsers && !withSystem) {
+            candidates = index.byOwner.get(userName);
+        } else {
+            candidates = index.entries;
+        }
+        if (candidates == null) {
+            return new BundleDescriptor[0];
+        }
+
+        Set<String> groups = null;
+        List<BundleDescriptor> userDescriptors = new ArrayList<>();
+        List<BundleDescriptor> allUserDescriptors = new ArrayList<>();
+        List<BundleDescriptor> systemDescriptors = new ArrayList<>();
+        for (Entry entry : candidates) {
+            if (processorKey != null && !entry.processorKeys.contains(processorKey)) {
+                continue;
+            }
+            String owner = entry.softwareDir.owner;
+            if (owner == null) {
+                if (withSystem) {
+                    systemDescriptors.add(entry.descriptor);
+                }
+            } else if (owner.equals(userName)) {
+                if (withUser) {
+                    userDescriptors.add(entry.descriptor);
+                }
+            } else if (withAllUsers) {
+                if (groupLookup != null) {
+                    if (groups == null) {
+                        String[] groupNames = groupLookup.getGroups(userName);
+                        groups = groupNames != null ? new HashSet<>(Arrays.asList(groupNames)) : Collections.emptySet();
+                    }
+                    if (!entry.isAccessible(userName, groups)) {
+                        continue;
+                    }
+                }
+                allUserDescriptors.add(entry.descriptor);
+            }
+        }
+        List<BundleDescriptor> descriptors = new ArrayList<>(userDescriptors);
+        descriptors.addAll(allUserDescriptors);
+        descriptors.addAll(systemDescriptors);
+        return descriptors.toArray(new BundleDescriptor[descriptors.size()]);
+    }
+
+    private FileStatus[] listStatus(Path path) throws IOException {
+        try {
+            FileStatus[] statuses = fileSystem.listStatus(path);
+            if (statuses == null) {
+                return new FileStatus[0];
+            }
+            Arrays.sort(statuses);
+            return statuses;
+        } catch (FileNotFoundException e) {
+            return new FileStatus[0];
+        } catch (AccessControlException e) {
+            logNotAccessible(path, e);
+            return new FileStatus[0];
+        }
+    }
+
+    private FileStatus getFileStatus(Path path) throws IOException {
+        try {
+            return fileSystem.getFileStatus(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (AccessControlException e) {
+            logNotAccessible(path, e);
+            return null;
+        }
+    }
+
+    /**
+     * The service is expected to read all software directories, bundles it cannot read are missing for every user.
+     */
+    private static void logNotAccessible(Path path, AccessControlException e) {
+        CalvalusLogger.getLogger().warning("bundle catalogue cannot read " + path + ", its bundles are not listed: " + e.getMessage());
+    }
+
+    private static String key(String name, String version) {
+        return name + "-" + version;
+    }
+
+    private static boolean canAccess(FileStatus status, FsAction action, String userName, Set<String> groups) {
+        if (status == null) {
+            return true;
+        }
+        FsPermission permission = status.getPermission();
+        if (userName.equals(status.getOwner())) {
+            return permission.getUserAction().implies(action);
+        } else if (groups.contains(status.getGroup())) {
+            return permission.getGroupAction().implies(action);
+        } else {
+            return permission.getOtherAction().implies(action);
+        }
+    }
+
+    private static class SoftwareDirLocation {
+
+        private final Path path;
+        private final String owner;
+        private final FileStatus homeStatus;
+
+        private SoftwareDirLocation(Path path, String owner, FileStatus homeStatus) {
+            this.path = path;
+            this.owner = owner;
+            this.homeStatus = homeStatus;
+        }
+    }
+
+    private static class SoftwareDir {
+
+        private final String owner;
+        private final FileStatus homeStatus;
+        private final FileStatus status;
+        private final List<Entry> entries;
+
+        private SoftwareDir(String owner, FileStatus homeStatus, FileStatus status) {
+            this.owner = owner;
+            this.homeStatus = homeStatus;
+            this.status = status;
+            this.entries = new ArrayList<>();
+        }
+    }
+
+    private static class Entry {
+
+        private final SoftwareDir softwareDir;
+        private final FileStatus bundleDirStatus;
+        private final FileStatus descriptorStatus;
+        private final BundleDescriptor descriptor;
+        private final Set<String> processorKeys;
+
+        private Entry(SoftwareDir softwareDir, FileStatus bundleDirStatus, FileStatus descriptorStatus, BundleDescriptor descriptor) {
+            this.softwareDir = softwareDir;
+            this.bundleDirStatus = bundleDirStatus;
+            this.descriptorStatus = descriptorStatus;
+            this.descriptor = descriptor;
+            this.processorKeys = new HashSet<>();
+            ProcessorDescriptor[] processorDescriptors = descriptor.getProcessorDescriptors();
+            if (processorDescriptors != null) {
+                for (ProcessorDescriptor processorDescriptor : processorDescriptors) {
+                    processorKeys.add(key(processorDescriptor.getProcessorName(), processorDescriptor.getProcessorVersion()));
+                }
+            }
+        }
+
+        /**
+         * Same rights as needed to find and read the descriptor with the file system of the user.
+         */
+        private boolean isAccessible(String userName, Set<String> groups) {
+            return canAccess(softwareDir.homeStatus, FsAction.EXECUTE, userName, groups)
+                   && canAccess(softwareDir.status, FsAction.READ_EXECUTE, userName, groups)
+                   && canAccess(bundleDirStatus, FsAction.EXECUTE, userName, groups)
+                   && canAccess(descriptorStatus, FsAction.READ, userName, groups);
+        }
+    }
+
+    private static class Index {
+
+        private final List<Entry> entries;
+        private final Map<String, List<Entry>> byBundle;
+        private final Map<String, List<Entry>> byProcessor;
+        private final Map<String, List<Entry>> byOwner;
+
+        private Index(Iterable<SoftwareDir> softwareDirs) {
+            Map<String, Entry> sortedEntries = new TreeMap<>();
+            for (SoftwareDir softwareDir : softwareDirs) {
+                for (Entry entry : softwareDir.entries) {
+                    sortedEntries.put(entry.bundleDirStatus.getPath().toString(), entry);
+                }
+            }
+            this.entries = new ArrayList<>(sortedEntries.values());
+            this.byBundle = new HashMap<>();
+            this.byProcessor = new HashMap<>();
+            this.byOwner = new HashMap<>();
+            for (Entry entry : entries) {
+                // bundles are looked up by their directory name, which is usually the same as name and version
+                Set<String> bundleKeys = new HashSet<>();
+                bundleKeys.add(entry.bundleDirStatus.getPath().getName());
+                bundleKeys.add(key(entry.descriptor.getBundleName(), entry.descriptor.getBundleVersion()));
+                for (String bundleKey : bundleKeys) {
+                    add(byBundle, bundleKey, entry);
+                }
+                for (String processorKey : entry.processorKeys) {
+                    add(byProcessor, processorKey, entry);
+                }
+                if (entry.softwareDir.owner != null) {
+                    add(byOwner, entry.softwareDir.owner, entry);
+                }
+            }
+        }
+
+        private static void add(Map<String, List<Entry>> map, String key, Entry entry) {
+            List<Entry> list = map.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                map.put(key, list);
+            }
+            list.add(entry);
+        }
+    }
+}
@@ -18,7 +18,6 @@ package com.bc.calvalus.processing.hadoop;
 
 
 import com.bc.calvalus.JobClientsMap;
-import com.bc.calvalus.commons.ProcessState;
 import com.bc.calvalus.commons.ProcessStatus;
 import com.bc.calvalus.commons.shared.BundleFilter;
 import com.bc.calvalus.processing.BundleDescriptor;
@@ -37,7 +36,6 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.mapred.JobClient;
-import org.apache.hadoop.mapred.JobStatus;
 import org.apache.hadoop.mapred.RunningJob;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.JobID;
@@ -56,13 +54,10 @@ import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -80,10 +75,11 @@ public class HadoopProcessingService implements ProcessingService<JobID> {
 
     private final JobClientsMap jobClientsMap;
     private final String softwareDir;
-    private final Map<JobID, ProcessStatus> jobStatusMap;
+    private final JobStatusTracker jobStatusTracker;
     private final List<BundleQueryCacheEntry> bundleQueryCache;
     private final Timer bundlesQueryCleaner;
     private final Map<String, BundleCacheEntry> bundleCache;
+    private BundleCatalogue bundleCatalogue;
     private final Map<String, ShapefileCacheEntry> shapeAttributeCache;
     private final Logger logger;
     private final ExecutorService executorService = Executors.newFixedThreadPool(3);
@@ -99,7 +95,7 @@ public class HadoopProcessingService implements ProcessingService<JobID> {
         this.jobClientsMap = jobClientsMap;
         jobClientsMapSingleton = jobClientsMap;
         this.softwareDir = softwareDir;
-        this.jobStatusMap = new WeakHashMap<>();
+        this.jobStatusTracker = new JobStatusTracker((userName, jobId) -> jobClientsMap.getJobClient(userName).getClusterHandle().getJob(jobId));
         this.withExternalAccessControl = Boolean.getBoolean("calvalus.accesscontrol.external");
         this.bundleQueryCache = new ArrayList<>();
         // TODO there should be one Timer for a process that is used for all timer tasks
@@ -126,6 +122,14 @@ public class HadoopProcessingService implements ProcessingService<JobID> {
         logger.fine("HadoopProcessingService.getBundles.start username = [" + username + "], filter = [" + filter + "]");
         long t1 = System.currentTimeMillis();
         try {
+            if (!withExternalAccessControl) {
+                if (filter.getNumSupportedProvider() == 0) {
+                    logger.warning("No bundle provider set in filter. Using SYSTEM as provider.");
+                    filter.withProvider(BundleFilter.PROVIDER_SYSTEM);
+                }
+                return getBundleCatalogue().getBundles(username, filter);
+            }
+            // with external access control the file system of each user has to be asked
             String bundleFilterString = filter.toString();
             Future<BundleDescriptor[]> bundleFuture = null;
             synchronized (bundleQueryCache) {
@@ -161,6 +165,19 @@ public class HadoopProcessingService implements ProcessingService<JobID> {
         }
     }
 
+    private synchronized BundleCatalogue getBundleCatalogue() throws IOException {
+        if (bundleCatalogue == null) {
+            String serviceUserName = UserGroupInformation.getCurrentUser().getShortUserName();
+            FileSystem fileSystem = getFileSystem(serviceUserName, softwareDir);
+            BundleCatalogue.GroupLookup groupLookup = null;
+            if (jobClientsMap.getConfiguration().getBoolean("calvalus.acl", true)) {
+                groupLookup = userName -> UserGroupInformation.createRemoteUser(userName).getGroupNames();
+            }
+            bundleCatalogue = new BundleCatalogue(fileSystem, "/calvalus/home", softwareDir, groupLookup);
+        }
+        return bundleCatalogue;
+    }
+
     @Override
     public MaskDescriptor[] getMasks(final String username) throws IOException {
         Future<MaskDescriptor[]> future = executorService.submit(new Callable<MaskDescriptor[]>() {
@@ -427,33 +444,30 @@ public class HadoopProcessingService implements ProcessingService<JobID> {
         return new HadoopJobIdFormat();
     }
 
+    /**
+     * Queries the status of those jobs that are not yet done. Users whose jobs do not change
+     * are polled less frequently, see {@link JobStatusTracker}.
+     */
     @Override
     public void updateStatuses(String username) throws IOException {
-        JobClient jobClient = jobClientsMap.getJobClient(username);
-        JobStatus[] jobStatuses = jobClient.getAllJobs();
-        synchronized (jobStatusMap) {
-            if (jobStatuses != null && jobStatuses.length > 0) {
-                Set<JobID> allJobs = new HashSet<>(jobStatusMap.keySet());
-                for (JobStatus jobStatus : jobStatuses) {
-                    org.apache.hadoop.mapred.JobID jobID = jobStatus.getJobID();
-                    jobStatusMap.put(jobID, convertStatus(jobID, jobStatus, jobClient));
-                    allJobs.remove(jobID);
-                }
-                for (JobID jobID : allJobs) {
-                    float progress = jobStatusMap.get(jobID).getProgress();
-                    ProcessStatus processStatus = new ProcessStatus(ProcessState.ERROR, progress, "Hadoop job '" + jobID + "' cancelled by backend");
-                    jobStatusMap.put(jobID, processStatus);
-                }
-            }
-        }
+        jobStatusTracker.poll(username);
     }
 
     @Override
     public ProcessStatus getJobStatus(JobID jobId) {
-        synchronized (jobStatusMap) {
-            ProcessStatus jobStatus = jobStatusMap.get(jobId);
-            return jobStatus != null ? jobStatus : ProcessStatus.UNKNOWN;
-        }
+        return jobStatusTracker.getStatus(jobId);
+    }
+
+    @Override
+    public ProcessStatus getJobStatus(String username, JobID jobId) {
+        return jobStatusTracker.getStatus(username, jobId);
+    }
+
+    /**
+     * Starts tracking the status of a newly submitted job.
+     */
+    void trackJob(String username, JobID jobId) {
+        jobStatusTracker.track(username, jobId);
     }
 
     @Override
@@ -495,48 +509,6 @@ public class HadoopProcessingService implements ProcessingService<JobID> {
         throw new FileNotFoundException(url);
     }
 
-    /**
-     * Updates the status. This method is called periodically after a fixed delay period.
-     *
-     * @param jobID
-     * @param jobStatus The hadoop job status. May be null, which is interpreted as the job is being done.
-     * @param jobClient
-     *
-     * @return The process status.
-     */
-    private ProcessStatus convertStatus(org.apache.hadoop.mapred.JobID jobID, JobStatus jobStatus, JobClient jobClient) {
-        ProcessStatus oldProcessStatus = jobStatusMap.get(jobID);
-        float oldProgress = oldProcessStatus != null ? oldProcessStatus.getProgress() : 0f;
-
-        if (jobStatus.getRunState() == JobStatus.FAILED) {
-            return new ProcessStatus(ProcessState.ERROR, oldProgress,
-                                     "Hadoop job '" + jobStatus.getJobID() + "' failed, see logs for details");
-        } else if (jobStatus.getRunState() == JobStatus.KILLED) {
-            return new ProcessStatus(ProcessState.CANCELLED, oldProgress);
-        } else if (jobStatus.getRunState() == JobStatus.PREP) {
-            return new ProcessStatus(ProcessState.SCHEDULED, 0f);
-        } else if (jobStatus.getRunState() == JobStatus.RUNNING) {
-            float progress = getMapReduceProgress(jobStatus, jobClient);
-            return new ProcessStatus(ProcessState.RUNNING, progress);
-        } else if (jobStatus.getRunState() == JobStatus.SUCCEEDED) {
-            return new ProcessStatus(ProcessState.COMPLETED, 1.0f);
-        } else {
-            return ProcessStatus.UNKNOWN;
-        }
-    }
-
-    private float getMapReduceProgress(JobStatus jobStatus, JobClient jobClient) {
-        try {
-            Job job = jobClient.getClusterHandle().getJob(jobStatus.getJobID());
-            if (job != null) {
-                return calculateProgress(job.getStatus(), job.getNumReduceTasks() > 0);
-            }
-        } catch (Throwable e) {
-            e.printStackTrace();
-        }
-        return 0f;
-    }
-
     static float calculateProgress(org.apache.hadoop.mapreduce.JobStatus jobStatus, boolean hasReducer) {
         if (hasReducer) {
             return (9.0F * jobStatus.getMapProgress() + jobStatus.getReduceProgress()) / 10.0F;
@@ -688,5 +660,10 @@ public class HadoopProcessingService implements ProcessingService<JobID> {
         synchronized (bundleQueryCache) {
             bundleQueryCache.clear();
         }
+        synchronized (this) {
+            if (bundleCatalogue != null) {
+                bundleCatalogue.invalidate();
+            }
+        }
     }
 }
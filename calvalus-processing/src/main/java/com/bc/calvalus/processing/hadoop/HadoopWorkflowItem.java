@@ -204,6 +204,7 @@ public abstract class HadoopWorkflowItem extends AbstractWorkflowItem {
                 FileSystem fileSystem = processingService.getFileSystem(userName);
                 ProcessorFactory.installProcessorBundles(userName, job.getConfiguration(), fileSystem);
                 validateJob(job);
+                IntermediateCompression.configure(job);
                 // maybe add calvalus.token parameter
                 if (jobHook != null) {
                     jobHook.beforeSubmit(job.getConfiguration());
@@ -232,6 +233,7 @@ public abstract class HadoopWorkflowItem extends AbstractWorkflowItem {
                 CalvalusLogger.getLogger().info("-------------------------------");
                 
                 setJobId(jobId);
+                processingService.trackJob(userName, jobId);
                 return job;
             });
         } catch (Throwable e) {
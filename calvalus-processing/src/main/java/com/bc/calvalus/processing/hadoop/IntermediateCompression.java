@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.commons.WorkflowException;
+import com.bc.calvalus.processing.JobConfigNames;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.Lz4Codec;
+import org.apache.hadoop.io.compress.SnappyCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The compression of the intermediate data of a job: the map output shuffled to the reducers,
+ * the sequence files written for the next job of a production, and the values that compress themselves.
+ * <ul>
+ * <li>{@code calvalus.intermediate.codec}: none, default (zlib), gzip, bzip2, snappy, lz4 or a codec class name</li>
+ * <li>{@code calvalus.intermediate.sequenceFileCompression}: NONE, RECORD or BLOCK</li>
+ * <li>{@code calvalus.intermediate.writableCompression}: true or false, e.g. for {@link com.bc.calvalus.processing.mosaic.TileDataWritable}</li>
+ * </ul>
+ * The parameters can be given with the production request, the defaults are part of the job config defaults
+ * of the workflow items. If a parameter is not set, the cluster configuration applies.
+ * Snappy and LZ4 need the native Hadoop libraries.
+ */
+public class IntermediateCompression {
+
+    public static final String NONE = "none";
+
+    static final Map<String, Class<? extends CompressionCodec>> CODECS = new LinkedHashMap<>();
+
+    static {
+        CODECS.put(NONE, null);
+        CODECS.put("default", DefaultCodec.class);
+        CODECS.put("gzip", GzipCodec.class);
+        CODECS.put("bzip2", BZip2Codec.class);
+        CODECS.put("snappy", SnappyCodec.class);
+        CODECS.put("lz4", Lz4Codec.class);
+    }
+
+    /**
+     * Translates the intermediate compression parameters of the job into the Hadoop properties.
+     */
+    public static void configure(Job job) throws WorkflowException {
+        Configuration jobConfig = job.getConfiguration();
+        String codecName = jobConfig.get(JobConfigNames.CALVALUS_INTERMEDIATE_CODEC);
+        Class<? extends CompressionCodec> codecClass = getCodecClass(jobConfig, codecName);
+        if (codecName != null) {
+            jobConfig.setBoolean(MRJobConfig.MAP_OUTPUT_COMPRESS, codecClass != null);
+            if (codecClass != null) {
+                jobConfig.setClass(MRJobConfig.MAP_OUTPUT_COMPRESS_CODEC, codecClass, CompressionCodec.class);
+            }
+        }
+        String typeName = jobConfig.get(JobConfigNames.CALVALUS_INTERMEDIATE_SEQUENCE_FILE_COMPRESSION);
+        if (typeName != null && writesSequenceFiles(job)) {
+            SequenceFile.CompressionType type;
+            try {
+                type = SequenceFile.CompressionType.valueOf(typeName.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new WorkflowException("Unknown sequence file compression '" + typeName + "' in job configuration property '" +
+                                            JobConfigNames.CALVALUS_INTERMEDIATE_SEQUENCE_FILE_COMPRESSION + "'");
+            }
+            FileOutputFormat.setCompressOutput(job, type != SequenceFile.CompressionType.NONE);
+            if (type != SequenceFile.CompressionType.NONE) {
+                SequenceFileOutputFormat.setOutputCompressionType(job, type);
+                FileOutputFormat.setOutputCompressorClass(job, codecClass != null ? codecClass : DefaultCodec.class);
+            }
+        }
+    }
+
+    /**
+     * @return whether values that can compress themselves shall do so, true if not configured
+     */
+    public static boolean isWritableCompression(Configuration conf) {
+        return conf.getBoolean(JobConfigNames.CALVALUS_INTERMEDIATE_WRITABLE_COMPRESSION, true);
+    }
+
+    /**
+     * @return the codec class for the name, or null for none
+     */
+    static Class<? extends CompressionCodec> getCodecClass(Configuration conf, String codecName) throws WorkflowException {
+        if (codecName == null) {
+            return null;
+        }
+        String key = codecName.trim().toLowerCase();
+        if (CODECS.containsKey(key)) {
+            return CODECS.get(key);
+        }
+        try {
+            return conf.getClassByName(codecName.trim()).asSubclass(CompressionCodec.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new WorkflowException("Unknown codec '" + codecName + "' in job configuration property '" +
+                                        JobConfigNames.CALVALUS_INTERMEDIATE_CODEC + "'");
+        }
+    }
+
+    private static boolean writesSequenceFiles(Job job) {
+        try {
+            return SequenceFileOutputFormat.class.isAssignableFrom(job.getOutputFormatClass());
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.commons.ProcessState;
+import com.bc.calvalus.commons.ProcessStatus;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.JobStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps the status of Hadoop jobs up to date incrementally.
+ * <p/>
+ * Only jobs that are not yet done are queried, each one by its job ID, instead of listing all jobs known
+ * to the cluster. Jobs are tracked once they are submitted or once their status is requested, and they are
+ * queried with the rights of their owner.
+ * If none of the jobs of a user changed in state or progress, the jobs of this user are polled less
+ * frequently, up to {@link #MAX_POLL_INTERVAL}. The remote calls are made without holding the lock
+ * that guards the status map, so that {@link #getStatus(JobID)} never waits for the cluster.
+ */
+class JobStatusTracker {
+
+    static final long MIN_POLL_INTERVAL = 5 * 1000;
+    static final long MAX_POLL_INTERVAL = 60 * 1000;
+
+    interface JobLookup {
+        /**
+         * @return The job handle, or {@code null} if the cluster does not know the job (anymore).
+         */
+        Job getJob(String userName, JobID jobId) throws IOException, InterruptedException;
+    }
+
+    private final JobLookup jobLookup;
+    private final Map<JobID, ProcessStatus> statusMap;
+    private final Map<JobID, TrackedJob> activeJobs;
+    private final Map<String, UserPollState> userPollStates;
+    private final Object pollLock;
+
+    JobStatusTracker(JobLookup jobLookup) {
+        this.jobLookup = jobLookup;
+        this.statusMap = new WeakHashMap<>();
+        this.activeJobs = new HashMap<>();
+        this.userPollStates = new HashMap<>();
+        this.pollLock = new Object();
+    }
+
+    void track(String userName, JobID jobId) {
+        synchronized (statusMap) {
+            setOwner(jobId, userName);
+            // a new job makes its user active again
+            userPollStates.remove(userName);
+        }
+    }
+
+    ProcessStatus getStatus(JobID jobId) {
+        return getStatus(null, jobId);
+    }
+
+    /**
+     * @param userName The owner of the job, e.g. of a production restored from the production store,
+     *                 or {@code null} if not known.
+     */
+    ProcessStatus getStatus(String userName, JobID jobId) {
+        synchronized (statusMap) {
+            ProcessStatus status = statusMap.get(jobId);
+            if (status == null || !status.isDone()) {
+                setOwner(jobId, userName);
+            }
+            return status != null ? status : ProcessStatus.UNKNOWN;
+        }
+    }
+
+    private void setOwner(JobID jobId, String userName) {
+        TrackedJob trackedJob = activeJobs.get(jobId);
+        if (trackedJob == null) {
+            activeJobs.put(jobId, new TrackedJob(userName));
+        } else if (trackedJob.userName == null) {
+            trackedJob.userName = userName;
+        }
+    }
+
+    int getActiveJobCount() {
+        synchronized (statusMap) {
+            return activeJobs.size();
+        }
+    }
+
+    /**
+     * Queries the status of all jobs that are not yet done and are due for polling.
+     *
+     * @param defaultUserName The user used to query jobs whose owner is not known.
+     */
+    void poll(String defaultUserName) {
+        poll(defaultUserName, System.currentTimeMillis());
+    }
+
+    void poll(String defaultUserName, long now) {
+        synchronized (pollLock) {
+            List<JobID> dueJobIds = new ArrayList<>();
+            List<TrackedJob> dueJobs = new ArrayList<>();
+            synchronized (statusMap) {
+                for (Map.Entry<JobID, TrackedJob> entry : activeJobs.entrySet()) {
+                    String userName = entry.getValue().getUserName(defaultUserName);
+                    UserPollState pollState = userPollStates.get(userName);
+                    if (pollState == null || now >= pollState.nextPollTime) {
+                        dueJobIds.add(entry.getKey());
+                        dueJobs.add(entry.getValue());
+                    }
+                }
+            }
+            if (dueJobIds.isEmpty()) {
+                return;
+            }
+
+            ProcessStatus[] newStatuses = new ProcessStatus[dueJobIds.size()];
+            for (int i = 0; i < dueJobIds.size(); i++) {
+                JobID jobId = dueJobIds.get(i);
+                TrackedJob trackedJob = dueJobs.get(i);
+                try {
+                    newStatuses[i] = queryStatus(jobId, trackedJob, trackedJob.getUserName(defaultUserName));
+                } catch (Exception e) {
+                    CalvalusLogger.getLogger().warning("Failed to retrieve status of job " + jobId + ": " + e.getMessage());
+                }
+            }
+
+            synchronized (statusMap) {
+                Set<String> polledUsers = new HashSet<>();
+                Set<String> changedUsers = new HashSet<>();
+                for (int i = 0; i < dueJobIds.size(); i++) {
+                    JobID jobId = dueJobIds.get(i);
+                    String userName = dueJobs.get(i).getUserName(defaultUserName);
+                    polledUsers.add(userName);
+                    ProcessStatus newStatus = newStatuses[i];
+                    if (newStatus == null) {
+                        continue;
+                    }
+                    ProcessStatus oldStatus = statusMap.put(jobId, newStatus);
+                    if (!newStatus.equals(oldStatus)) {
+                        changedUsers.add(userName);
+                    }
+                    if (newStatus.isDone()) {
+                        activeJobs.remove(jobId);
+                    }
+                }
+                for (String userName : polledUsers) {
+                    if (changedUsers.contains(userName)) {
+                        userPollStates.remove(userName);
+                    } else {
+                        UserPollState pollState = userPollStates.get(userName);
+                        if (pollState == null) {
+                            pollState = new UserPollState();
+                            userPollStates.put(userName, pollState);
+                        }
+                        pollState.idlePollCount++;
+                        long interval = MIN_POLL_INTERVAL << Math.min(pollState.idlePollCount - 1, 4);
+                        pollState.nextPollTime = now + Math.min(interval, MAX_POLL_INTERVAL);
+                    }
+                }
+            }
+        }
+    }
+
+    private ProcessStatus queryStatus(JobID jobId, TrackedJob trackedJob, String userName) throws IOException, InterruptedException {
+        if (trackedJob.job == null) {
+            trackedJob.job = jobLookup.getJob(userName, jobId);
+            if (trackedJob.job == null) {
+                return new ProcessStatus(ProcessState.ERROR, getProgress(jobId), "Hadoop job '" + jobId + "' cancelled by backend");
+            }
+        }
+        // the job handle is kept, so further status queries are a single remote call each
+        Job job = trackedJob.job;
+        return convertStatus(jobId, job.getStatus(), job.getNumReduceTasks() > 0);
+    }
+
+    private ProcessStatus convertStatus(JobID jobId, JobStatus jobStatus, boolean hasReducer) {
+        JobStatus.State state = jobStatus.getState();
+        if (state == JobStatus.State.FAILED) {
+            return new ProcessStatus(ProcessState.ERROR, getProgress(jobId),
+                                     "Hadoop job '" + jobId + "' failed, see logs for details");
+        } else if (state == JobStatus.State.KILLED) {
+            return new ProcessStatus(ProcessState.CANCELLED, getProgress(jobId));
+        } else if (state == JobStatus.State.PREP) {
+            return new ProcessStatus(ProcessState.SCHEDULED, 0f);
+        } else if (state == JobStatus.State.RUNNING) {
+            return new ProcessStatus(ProcessState.RUNNING, HadoopProcessingService.calculateProgress(jobStatus, hasReducer));
+        } else if (state == JobStatus.State.SUCCEEDED) {
+            return new ProcessStatus(ProcessState.COMPLETED, 1.0f);
+        } else {
+            return ProcessStatus.UNKNOWN;
+        }
+    }
+
+    private float getProgress(JobID jobId) {
+        synchronized (statusMap) {
+            ProcessStatus oldStatus = statusMap.get(jobId);
+            return oldStatus != null ? oldStatus.getProgress() : 0f;
+        }
+    }
+
+    private static class TrackedJob {
+
+        private String userName;
+        // only accessed while holding the poll lock
+        private Job job;
+
+        private TrackedJob(String userName) {
+            this.userName = userName;
+        }
+
+        private String getUserName(String defaultUserName) {
+            return userName != null ? userName : defaultUserName;
+        }
+    }
+
+    private static class UserPollState {
+
+        private int idlePollCount;
+        private long nextPollTime;
+    }
+}
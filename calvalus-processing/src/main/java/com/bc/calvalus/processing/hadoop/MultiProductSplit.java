@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A split that contains several products, each given as a {@link ProductSplit}.
+ * <p/>
+ * Workloads over many small products use it to pay the task startup and the processor
+ * initialisation only once per group of products. Products are grouped by the host of their first block,
+ * up to {@link JobConfigNames#CALVALUS_INPUT_PRODUCTS_PER_SPLIT} products and
+ * {@link JobConfigNames#CALVALUS_INPUT_SPLIT_SIZE} bytes per split.
+ * Products are only combined if {@link JobConfigNames#CALVALUS_INPUT_MULTI_PRODUCT_SPLITS} is set,
+ * by the workflows whose mapper handles its input through {@code MultiProductProcessor}.
+ * Jobs that configure such a mapper directly, e.g. the ProcessingMapper, set it together with the mapper.
+ *
+ * @see com.bc.calvalus.processing.MultiProductProcessor
+ */
+public class MultiProductSplit extends InputSplit implements Writable, ProgressSplit {
+
+    private ProductSplit[] productSplits;
+    private String[] locations;
+    private float progress; // not serialized
+
+    /**
+     * For deserialize only!
+     */
+    MultiProductSplit() {
+    }
+
+    /**
+     * @param productSplits the products of this split
+     * @param locations     the hosts the products are local to, possibly empty
+     */
+    public MultiProductSplit(ProductSplit[] productSplits, String[] locations) {
+        this.productSplits = productSplits;
+        this.locations = locations;
+    }
+
+    public int getNumProducts() {
+        return productSplits.length;
+    }
+
+    public ProductSplit getProductSplit(int index) {
+        return productSplits[index];
+    }
+
+    @Override
+    public long getLength() {
+        long length = 0;
+        for (ProductSplit productSplit : productSplits) {
+            length += productSplit.getLength();
+        }
+        return length;
+    }
+
+    @Override
+    public String[] getLocations() {
+        // like FileSplit the locations are not serialized, they are only used for scheduling
+        return locations != null ? locations : new String[0];
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(productSplits.length);
+        for (ProductSplit productSplit : productSplits) {
+            productSplit.write(out);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        productSplits = new ProductSplit[in.readInt()];
+        for (int i = 0; i < productSplits.length; i++) {
+            productSplits[i] = new ProductSplit();
+            productSplits[i].readFields(in);
+        }
+    }
+
+    @Override
+    public void setProgress(float progress) {
+        this.progress = progress;
+    }
+
+    @Override
+    public float getProgress() {
+        return progress;
+    }
+
+    @Override
+    public String toString() {
+        return "MultiProductSplit" + Arrays.toString(productSplits);
+    }
+
+    /**
+     * @return The splits of the products in the given split, the split itself if it is not a {@code MultiProductSplit}.
+     */
+    public static InputSplit[] getProductSplits(InputSplit split) {
+        if (split instanceof MultiProductSplit) {
+            return ((MultiProductSplit) split).productSplits.clone();
+        }
+        return new InputSplit[]{split};
+    }
+
+    /**
+     * Groups the product splits into {@code MultiProductSplit}s if configured. Other splits are kept as they are.
+     */
+    public static List<InputSplit> combine(List<InputSplit> splits, Configuration conf) throws IOException {
+        int maxProducts = conf.getInt(JobConfigNames.CALVALUS_INPUT_PRODUCTS_PER_SPLIT, 1);
+        long maxBytes = conf.getLong(JobConfigNames.CALVALUS_INPUT_SPLIT_SIZE, 0L);
+        if (maxProducts == 1 || (maxProducts <= 0 && maxBytes <= 0)) {
+            return splits;
+        }
+        if (!conf.getBoolean(JobConfigNames.CALVALUS_INPUT_MULTI_PRODUCT_SPLITS, false)) {
+            // the mapper of the job expects one product per split
+            CalvalusLogger.getLogger().warning("products are not combined, the mapper of the job does not support " +
+                                               JobConfigNames.CALVALUS_INPUT_MULTI_PRODUCT_SPLITS);
+            return splits;
+        }
+        return combine(splits, maxProducts > 0 ? maxProducts : Integer.MAX_VALUE, maxBytes > 0 ? maxBytes : Long.MAX_VALUE);
+    }
+
+    static List<InputSplit> combine(List<InputSplit> splits, int maxProducts, long maxBytes) throws IOException {
+        List<InputSplit> combinedSplits = new ArrayList<>();
+        Map<String, List<ProductSplit>> splitsByHost = new LinkedHashMap<>();
+        for (InputSplit split : splits) {
+            if (split instanceof ProductSplit) {
+                String[] hosts = split.getLocations();
+                String host = hosts != null && hosts.length > 0 ? hosts[0] : "";
+                List<ProductSplit> hostSplits = splitsByHost.get(host);
+                if (hostSplits == null) {
+                    hostSplits = new ArrayList<>();
+                    splitsByHost.put(host, hostSplits);
+                }
+                hostSplits.add((ProductSplit) split);
+            } else {
+                combinedSplits.add(split);
+            }
+        }
+        List<ProductSplit> remainder = new ArrayList<>();
+        for (List<ProductSplit> hostSplits : splitsByHost.values()) {
+            List<ProductSplit> group = new ArrayList<>();
+            long groupBytes = 0;
+            for (ProductSplit split : hostSplits) {
+                if (!group.isEmpty() && (group.size() >= maxProducts || groupBytes + split.getLength() > maxBytes)) {
+                    combinedSplits.add(createSplit(group));
+                    group = new ArrayList<>();
+                    groupBytes = 0;
+                }
+                group.add(split);
+                groupBytes += split.getLength();
+            }
+            if (group.size() >= maxProducts || groupBytes >= maxBytes) {
+                combinedSplits.add(createSplit(group));
+            } else {
+                remainder.addAll(group);
+            }
+        }
+        // incomplete groups of different hosts are combined without locality
+        List<ProductSplit> group = new ArrayList<>();
+        long groupBytes = 0;
+        for (ProductSplit split : remainder) {
+            if (!group.isEmpty() && (group.size() >= maxProducts || groupBytes + split.getLength() > maxBytes)) {
+                combinedSplits.add(createSplit(group));
+                group = new ArrayList<>();
+                groupBytes = 0;
+            }
+            group.add(split);
+            groupBytes += split.getLength();
+        }
+        if (!group.isEmpty()) {
+            combinedSplits.add(createSplit(group));
+        }
+        return combinedSplits;
+    }
+
+    private static InputSplit createSplit(List<ProductSplit> group) throws IOException {
+        if (group.size() == 1) {
+            return group.get(0);
+        }
+        Set<String> locations = null;
+        for (ProductSplit split : group) {
+            List<String> hosts = Arrays.asList(split.getLocations());
+            if (locations == null) {
+                locations = new LinkedHashSet<>(hosts);
+            } else {
+                locations.retainAll(hosts);
+            }
+        }
+        if (locations.isEmpty()) {
+            locations.addAll(Arrays.asList(group.get(0).getLocations()));
+        }
+        return new MultiProductSplit(group.toArray(new ProductSplit[group.size()]),
+                                     locations.toArray(new String[locations.size()]));
+    }
+}
@@ -164,6 +164,11 @@ public class PatternBasedInputFormat extends InputFormat {
                                       JobConfigNames.CALVALUS_INPUT_GEO_INVENTORY));
         }
         LOG.info("Total files to process : " + splits.size());
+        int numProducts = splits.size();
+        splits = MultiProductSplit.combine(splits, conf);
+        if (splits.size() != numProducts) {
+            LOG.info(String.format("%d products combined into %d splits.", numProducts, splits.size()));
+        }
         return splits;
     }
 
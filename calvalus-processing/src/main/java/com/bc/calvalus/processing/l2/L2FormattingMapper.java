@@ -23,6 +23,7 @@ import com.bc.calvalus.processing.ProcessorAdapter;
 import com.bc.calvalus.processing.ProcessorFactory;
 import com.bc.calvalus.processing.analysis.QLMapper;
 import com.bc.calvalus.processing.analysis.Quicklooks;
+import com.bc.calvalus.processing.beam.StreamingProductWriter;
 import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
@@ -37,8 +38,10 @@ import org.esa.snap.core.gpf.GPF;
 import org.esa.snap.core.util.StringUtils;
 import org.esa.snap.core.util.io.FileUtils;
 
+import java.awt.Dimension;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.DateFormat;
 import java.util.*;
 import java.util.logging.Level;
@@ -53,6 +56,7 @@ import java.util.regex.Pattern;
 public class L2FormattingMapper extends Mapper<NullWritable, NullWritable, NullWritable, NullWritable> {
 
     private static final String COUNTER_GROUP_NAME_PRODUCTS = "Products";
+    private static final int DEFAULT_SLICE_HEIGHT = 64;
     private static final Logger LOG = CalvalusLogger.getLogger();
 
     @Override
@@ -146,6 +150,18 @@ public class L2FormattingMapper extends Mapper<NullWritable, NullWritable, NullW
             targetProduct = GPF.createProduct("Subset", bandSubsetParameter, targetProduct);
         }
 
+        if (productFormatter.canWriteToStream()) {
+            LOG.info("Start writing product to HDFS: " + productFormatter.getOutputFilename());
+            Dimension tileSize = targetProduct.getPreferredTileSize();
+            try (OutputStream outputStream = productFormatter.createProductOutputStream(context)) {
+                StreamingProductWriter.writeProductInSlices(targetProduct, outputStream, outputFormat,
+                                                            tileSize != null ? tileSize.height : DEFAULT_SLICE_HEIGHT, pm);
+            }
+            context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product formatted").increment(1);
+            LOG.info("Formatted product written to HDFS");
+            return targetProduct;
+        }
+
         File productFile = productFormatter.createTemporaryProductFile();
         LOG.info("Start writing product to file: " + productFile.getName());
 
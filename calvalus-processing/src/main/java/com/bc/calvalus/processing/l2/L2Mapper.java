@@ -18,11 +18,11 @@ package com.bc.calvalus.processing.l2;
 
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.MultiProductProcessor;
 import com.bc.calvalus.processing.ProcessorAdapter;
 import com.bc.calvalus.processing.ProcessorFactory;
 import com.bc.calvalus.processing.beam.SnapGraphAdapter;
 import com.bc.calvalus.processing.hadoop.HDFSSimpleFileSystem;
-import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
 import com.bc.ceres.metadata.MetadataResourceEngine;
@@ -83,9 +83,13 @@ public class L2Mapper extends Mapper<NullWritable, NullWritable, Text /*N1 input
      */
     @Override
     public void run(Context context) throws IOException, InterruptedException {
-        Configuration jobConfig = context.getConfiguration();
         ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
-        ProgressMonitor pm = new ProgressSplitProgressMonitor(context);
+        // each product is written to a product file of its own
+        MultiProductProcessor.process(context, processorAdapter, (adapter, pm) -> processProduct(context, adapter, pm), true);
+    }
+
+    private void processProduct(Context context, ProcessorAdapter processorAdapter, ProgressMonitor pm) throws IOException {
+        Configuration jobConfig = context.getConfiguration();
         LOG.info("processing input " + processorAdapter.getInputPath() + " ...");
         final int progressForProcessing = processorAdapter.supportsPullProcessing() ? 5 : 95;
         final int progressForSaving = processorAdapter.supportsPullProcessing() ? 95 : 5;
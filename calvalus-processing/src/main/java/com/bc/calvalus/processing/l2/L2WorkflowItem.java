@@ -68,6 +68,8 @@ public class L2WorkflowItem extends HadoopWorkflowItem {
 
         job.setInputFormatClass(getInputFormatClass(jobConfig));
         job.setMapperClass(L2Mapper.class);
+        // the mapper processes its input through MultiProductProcessor
+        jobConfig.setBoolean(JobConfigNames.CALVALUS_INPUT_MULTI_PRODUCT_SPLITS, true);
         job.setNumReduceTasks(0);
         job.setOutputFormatClass(SimpleOutputFormat.class);
 
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a raw deflate stream, compressing blocks of the input concurrently.
+ * <p/>
+ * Each block is deflated independently and ended with a sync flush, only the last block is finished.
+ * The concatenation of the compressed blocks is a single valid deflate stream, as written by pigz.
+ * The output is written in order by the calling thread, at most {@code maxPendingBlocks} blocks are kept in memory.
+ * The stream does not own the executor and does not close the underlying stream on {@link #finish()}.
+ */
+class ParallelDeflaterOutputStream extends OutputStream {
+
+    static final int BLOCK_SIZE = 1024 * 1024;
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int maxPendingBlocks;
+    private final int level;
+    private final Deque<Future<byte[]>> pendingBlocks;
+    private final CRC32 crc;
+    private byte[] block;
+    private int blockLength;
+    private long bytesRead;
+    private long bytesWritten;
+    private boolean finished;
+
+    ParallelDeflaterOutputStream(OutputStream out, ExecutorService executor, int maxPendingBlocks, int level) {
+        this.out = out;
+        this.executor = executor;
+        this.maxPendingBlocks = maxPendingBlocks;
+        this.level = level;
+        this.pendingBlocks = new ArrayDeque<>();
+        this.crc = new CRC32();
+        this.block = new byte[BLOCK_SIZE];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("write beyond end of deflate stream");
+        }
+        crc.update(b, off, len);
+        bytesRead += len;
+        while (len > 0) {
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == block.length) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Compresses the remaining input and writes the end of the deflate stream.
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            submitBlock(true);
+            while (!pendingBlocks.isEmpty()) {
+                writeBlock(pendingBlocks.removeFirst());
+            }
+            finished = true;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    public long getCrc() {
+        return crc.getValue();
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        final byte[] data = block;
+        final int length = blockLength;
+        pendingBlocks.addLast(executor.submit(() -> deflate(data, length, last, level)));
+        block = last ? null : new byte[BLOCK_SIZE];
+        blockLength = 0;
+        while (pendingBlocks.size() > maxPendingBlocks) {
+            writeBlock(pendingBlocks.removeFirst());
+        }
+    }
+
+    private void writeBlock(Future<byte[]> future) throws IOException {
+        try {
+            byte[] compressed = future.get();
+            out.write(compressed);
+            bytesWritten += compressed.length;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("compression interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("compression failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    static byte[] deflate(byte[] data, int length, boolean last, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
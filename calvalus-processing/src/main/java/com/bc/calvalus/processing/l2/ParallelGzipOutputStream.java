@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip output stream that compresses with several threads.
+ * The result is a single gzip member readable by gunzip and {@link java.util.zip.GZIPInputStream}.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final ParallelDeflaterOutputStream deflaterStream;
+    private boolean closed;
+
+    public ParallelGzipOutputStream(OutputStream out, int numThreads) throws IOException {
+        this.out = out;
+        this.executor = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread thread = new Thread(r, "gzip-deflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deflaterStream = new ParallelDeflaterOutputStream(out, executor, 2 * numThreads, Deflater.DEFAULT_COMPRESSION);
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        deflaterStream.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        deflaterStream.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            deflaterStream.finish();
+            writeIntLE(deflaterStream.getCrc());
+            writeIntLE(deflaterStream.getBytesRead());
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void writeIntLE(long value) throws IOException {
+        out.write((int) value & 0xff);
+        out.write((int) (value >> 8) & 0xff);
+        out.write((int) (value >> 16) & 0xff);
+        out.write((int) (value >> 24) & 0xff);
+    }
+}
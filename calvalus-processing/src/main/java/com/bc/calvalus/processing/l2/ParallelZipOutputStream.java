@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+/**
+ * A zip output stream that deflates the content of each entry with several threads.
+ * <p/>
+ * Entries are written like {@link java.util.zip.ZipOutputStream} writes deflated entries of unknown size:
+ * a local header, the data, a data descriptor, and Zip64 extensions where sizes or offsets require them.
+ * Entries are written one after the other, only the blocks of an entry are compressed concurrently.
+ */
+public class ParallelZipOutputStream extends OutputStream {
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int FLAGS = 0x0808;  // data descriptor, UTF-8 names
+
+    private final CountingOutputStream out;
+    private final ExecutorService executor;
+    private final int maxPendingBlocks;
+    private final List<Entry> entries;
+    private Entry currentEntry;
+    private ParallelDeflaterOutputStream entryStream;
+    private boolean closed;
+
+    public ParallelZipOutputStream(OutputStream out, int numThreads) {
+        this.out = new CountingOutputStream(out);
+        this.executor = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread thread = new Thread(r, "zip-deflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxPendingBlocks = 2 * numThreads;
+        this.entries = new ArrayList<>();
+    }
+
+    public void putNextEntry(String name) throws IOException {
+        closeEntry();
+        currentEntry = new Entry(name.getBytes(StandardCharsets.UTF_8), out.count, toDosTime(System.currentTimeMillis()));
+        writeLocalHeader(currentEntry);
+        entryStream = new ParallelDeflaterOutputStream(out, executor, maxPendingBlocks, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public void closeEntry() throws IOException {
+        if (currentEntry != null) {
+            entryStream.finish();
+            currentEntry.crc = entryStream.getCrc();
+            currentEntry.size = entryStream.getBytesRead();
+            currentEntry.compressedSize = entryStream.getBytesWritten();
+            writeDataDescriptor(currentEntry);
+            entries.add(currentEntry);
+            currentEntry = null;
+            entryStream = null;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (entryStream == null) {
+            throw new IOException("no current zip entry");
+        }
+        entryStream.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            closeEntry();
+            writeCentralDirectory();
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        writeInt(0x04034b50L);
+        writeShort(20);
+        writeShort(FLAGS);
+        writeShort(Deflater.DEFLATED);
+        writeInt(entry.dosTime);
+        writeInt(0);  // crc and sizes follow in the data descriptor
+        writeInt(0);
+        writeInt(0);
+        writeShort(entry.name.length);
+        writeShort(0);
+        out.write(entry.name);
+    }
+
+    private void writeDataDescriptor(Entry entry) throws IOException {
+        writeInt(0x08074b50L);
+        writeInt(entry.crc);
+        if (entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC) {
+            writeLong(entry.compressedSize);
+            writeLong(entry.size);
+        } else {
+            writeInt(entry.compressedSize);
+            writeInt(entry.size);
+        }
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long offset = out.count;
+        for (Entry entry : entries) {
+            boolean zip64Size = entry.size >= ZIP64_MAGIC;
+            boolean zip64CompressedSize = entry.compressedSize >= ZIP64_MAGIC;
+            boolean zip64Offset = entry.offset >= ZIP64_MAGIC;
+            int extraLength = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+            int version = extraLength > 0 ? 45 : 20;
+            writeInt(0x02014b50L);
+            writeShort(version);
+            writeShort(version);
+            writeShort(FLAGS);
+            writeShort(Deflater.DEFLATED);
+            writeInt(entry.dosTime);
+            writeInt(entry.crc);
+            writeInt(zip64CompressedSize ? ZIP64_MAGIC : entry.compressedSize);
+            writeInt(zip64Size ? ZIP64_MAGIC : entry.size);
+            writeShort(entry.name.length);
+            writeShort(extraLength > 0 ? extraLength + 4 : 0);
+            writeShort(0);  // comment
+            writeShort(0);  // disk
+            writeShort(0);  // internal attributes
+            writeInt(0);    // external attributes
+            writeInt(zip64Offset ? ZIP64_MAGIC : entry.offset);
+            out.write(entry.name);
+            if (extraLength > 0) {
+                writeShort(0x0001);
+                writeShort(extraLength);
+                if (zip64Size) {
+                    writeLong(entry.size);
+                }
+                if (zip64CompressedSize) {
+                    writeLong(entry.compressedSize);
+                }
+                if (zip64Offset) {
+                    writeLong(entry.offset);
+                }
+            }
+        }
+        long length = out.count - offset;
+        int count = entries.size();
+        if (count >= ZIP64_MAGIC_COUNT || offset >= ZIP64_MAGIC || length >= ZIP64_MAGIC) {
+            long zip64EndOffset = out.count;
+            writeInt(0x06064b50L);
+            writeLong(44);
+            writeShort(45);
+            writeShort(45);
+            writeInt(0);
+            writeInt(0);
+            writeLong(count);
+            writeLong(count);
+            writeLong(length);
+            writeLong(offset);
+            writeInt(0x07064b50L);
+            writeInt(0);
+            writeLong(zip64EndOffset);
+            writeInt(1);
+        }
+        writeInt(0x06054b50L);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+        writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+        writeInt(Math.min(length, ZIP64_MAGIC));
+        writeInt(Math.min(offset, ZIP64_MAGIC));
+        writeShort(0);
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xffff));
+        writeShort((int) ((value >> 16) & 0xffff));
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt(value & ZIP64_MAGIC);
+        writeInt(value >>> 32);
+    }
+
+    private static long toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (long) (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 |
+               calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11 |
+               calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static class Entry {
+
+        private final byte[] name;
+        private final long offset;
+        private final long dosTime;
+        private long crc;
+        private long size;
+        private long compressedSize;
+
+        private Entry(byte[] name, long offset, long dosTime) {
+            this.name = name;
+            this.offset = offset;
+            this.dosTime = dosTime;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -19,16 +19,21 @@ package com.bc.calvalus.processing.l2;
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.commons.DateUtils;
 import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.MultiProductProcessor;
 import com.bc.calvalus.processing.ProcessorAdapter;
 import com.bc.calvalus.processing.ProcessorFactory;
+import com.bc.calvalus.processing.analysis.QLMapper;
 import com.bc.calvalus.processing.analysis.QuicklookGenerator;
 import com.bc.calvalus.processing.analysis.Quicklooks;
+import com.bc.calvalus.processing.beam.FusedProductWriter;
+import com.bc.calvalus.processing.beam.PathConfiguration;
 import com.bc.calvalus.processing.beam.SimpleOutputFormat;
 import com.bc.calvalus.processing.beam.SnapGraphAdapter;
+import com.bc.calvalus.processing.beam.StreamingProductPlugin;
+import com.bc.calvalus.processing.beam.StreamingProductWriter;
 import com.bc.calvalus.processing.hadoop.HDFSSimpleFileSystem;
 import com.bc.calvalus.processing.hadoop.NoRecordReader;
 import com.bc.calvalus.processing.hadoop.ProductSplit;
-import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
 import com.bc.ceres.metadata.MetadataResourceEngine;
@@ -56,6 +61,7 @@ import org.apache.hadoop.mapreduce.task.MapContextImpl;
 import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
 import org.apache.velocity.VelocityContext;
 import org.esa.snap.core.dataio.ProductIO;
+import org.esa.snap.core.dataio.ProductWriter;
 import org.esa.snap.core.datamodel.GeoCoding;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
@@ -72,6 +78,7 @@ import org.opengis.util.InternationalString;
 
 import javax.imageio.ImageIO;
 import javax.measure.unit.Unit;
+import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.image.RenderedImage;
 import java.io.BufferedOutputStream;
@@ -103,6 +110,7 @@ import java.util.regex.Pattern;
 public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*N1 input name*/, Text /*split output name*/> {
 
     private static final String COUNTER_GROUP_NAME_PRODUCTS = "Products";
+    private static final int DEFAULT_SLICE_HEIGHT = 64;
     private static final Logger LOG = CalvalusLogger.getLogger();
     private static final TypeReference<Map<String, Object>> VALUE_TYPE_REF = new TypeReference<Map<String, Object>>() {};
 
@@ -167,6 +175,7 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
      *   replaceNanValue
      *   regionGeometry
      *   outputBands
+     *   outputFused
      * + the parameters listed in translateParameters
      *
      * @param context  the task, a Hadoop "configuration"
@@ -177,11 +186,16 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
     public void run(Context context) throws IOException, InterruptedException {
 
         translateParameters(context);
+        final ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
+        // each product is written to a product file of its own
+        MultiProductProcessor.process(context, processorAdapter, (adapter, pm) -> processProduct(context, adapter, pm), true);
+    }
+
+    private void processProduct(Context context, ProcessorAdapter processorAdapter, ProgressMonitor pm) throws IOException {
         final Configuration jobConfig = context.getConfiguration();
         final String outputFormat = jobConfig.get(JobConfigNames.OUTPUT_FORMAT);
         final String outputCompression = jobConfig.get(JobConfigNames.OUTPUT_COMPRESSION);
 
-        final ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
         String inputName = processorAdapter.getInputPath().getName();
         String productName;
         if (! "MTD_MSIL1C.xml".equals(inputName)) {  // TODO
@@ -191,7 +205,6 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
         }
         final ProductFormatter productFormatter = outputFormat != null ? new ProductFormatter(productName, outputFormat, outputCompression) : null;
 
-        final ProgressMonitor pm = new ProgressSplitProgressMonitor(context);
         final int progressForProcessing = processorAdapter.supportsPullProcessing() ? 5 : 95;
         final int progressForSaving = processorAdapter.supportsPullProcessing() ? 95 : 5;
 
@@ -217,6 +230,12 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
                 return;
             }
 
+            if (productFormatter != null && jobConfig.getBoolean(JobConfigNames.OUTPUT_FUSED, false) &&
+                writeFused(context, jobConfig, processorAdapter, productFormatter, productName,
+                           SubProgressMonitor.create(pm, progressForSaving))) {
+                return;
+            }
+
             if (jobConfig.getBoolean("outputNative", false) || productFormatter == null) {
                 LOG.info(context.getTaskAttemptID() + " target product created");
                 processorAdapter.saveProcessedProducts(SubProgressMonitor.create(pm, progressForSaving));
@@ -518,6 +537,10 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
 
     protected void createQuicklook(Product product, String imageFileName, Mapper.Context context,
                                        Quicklooks.QLConfig config) throws IOException, InterruptedException {
+        if (config.getTileSize() > 0) {
+            QLMapper.createQuicklookTiles(product, imageFileName, context, config);
+            return;
+        }
         RenderedImage quicklookImage = new QuicklookGenerator(context, product, config).createImage();
         if (quicklookImage != null) {
             OutputStream outputStream = createOutputStream(context, imageFileName + "." + config.getImageType());
@@ -608,6 +631,18 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
             targetProduct = GPF.createProduct("Subset", bandSubsetParameter, targetProduct);
         }
 
+        if (productFormatter.canWriteToStream()) {
+            LOG.info("Start writing product to HDFS: " + productFormatter.getOutputFilename());
+            Dimension tileSize = targetProduct.getPreferredTileSize();
+            try (OutputStream outputStream = productFormatter.createProductOutputStream(context)) {
+                StreamingProductWriter.writeProductInSlices(targetProduct, outputStream, outputFormat,
+                                                            tileSize != null ? tileSize.height : DEFAULT_SLICE_HEIGHT, pm);
+            }
+            context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product formatted").increment(1);
+            LOG.info("Formatted product written to HDFS");
+            return targetProduct;
+        }
+
         File productFile = productFormatter.createTemporaryProductFile();
         LOG.info("Start writing product to file: " + productFile.getName());
 
@@ -622,6 +657,114 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
     }
 
 
+    /**
+     * Writes the native product and the formatted product from a single computation of the processed product.
+     * Each slice is computed once and written concurrently by the native and the format writer.
+     * Quicklooks are rendered afterwards, because their colour stretch needs the statistics of the complete bands.
+     * They are read from the formatted product file if it contains all bands, and computed again otherwise.
+     *
+     * @return {@code false} if the product cannot be written this way, e.g. because it shall be reprojected
+     * or because the formatted product is a spatial subset of the native one or needs times copied from the input
+     */
+    protected boolean writeFused(Context context, Configuration jobConfig, ProcessorAdapter processorAdapter,
+                                 ProductFormatter productFormatter, String productName, ProgressMonitor pm)
+            throws IOException, InterruptedException {
+        if (StringUtils.isNotNullAndNotEmpty(jobConfig.get(JobConfigNames.OUTPUT_CRS))) {
+            return false;
+        }
+        Product processedProduct = processorAdapter.openProcessedProduct();
+        if (processedProduct == null || !FusedProductWriter.canWrite(processedProduct)) {
+            return false;
+        }
+        PathConfiguration nativeOutput = null;
+        if (jobConfig.getBoolean("outputNative", false)) {
+            nativeOutput = processorAdapter.getProcessedProductOutput();
+            if (nativeOutput == null) {
+                return false;
+            }
+        }
+        if (checkProductEmpty(context, processedProduct)) {
+            return true;
+        }
+        // the native product is written as processed, the formatted one with the customisations,
+        // which must neither change the raster size nor the processed product itself
+        if (nativeOutput != null && ProcessorAdapter.hasInvalidStartAndStopTime(processedProduct)) {
+            return false;
+        }
+        Product targetProduct = customiseTargetProduct(jobConfig, processorAdapter, processedProduct);
+        if (nativeOutput != null &&
+            (targetProduct.getSceneRasterWidth() != processedProduct.getSceneRasterWidth() ||
+             targetProduct.getSceneRasterHeight() != processedProduct.getSceneRasterHeight())) {
+            return false;
+        }
+        LOG.info("writing native and formatted product in a single pass");
+
+        Map<String, Object> bandSubsetParameter = createBandSubsetParameter(targetProduct, jobConfig);
+        Product formattedProduct = targetProduct;
+        if (!bandSubsetParameter.isEmpty()) {
+            formattedProduct = GPF.createProduct("Subset", bandSubsetParameter, targetProduct);
+        }
+        ProductWriter formatWriter = ProductIO.getProductWriter(productFormatter.getOutputFormat());
+        if (formatWriter == null) {
+            throw new IllegalArgumentException("No product writer found for format " + productFormatter.getOutputFormat());
+        }
+        formatWriter.setIncrementalMode(false);
+        File productFile = productFormatter.createTemporaryProductFile();
+
+        FusedProductWriter fusedWriter = new FusedProductWriter(targetProduct);
+        if (nativeOutput != null) {
+            fusedWriter.addTarget(ProductIO.getProductWriter(StreamingProductPlugin.FORMAT_NAME), processedProduct, nativeOutput);
+        }
+        fusedWriter.addTarget(formatWriter, formattedProduct, productFile);
+
+        if (jobConfig.get(JobConfigNames.METADATA_TEMPLATE) != null) {
+            context.setStatus("Metadata");
+            processMetadata(context,
+                            processorAdapter.getInputPath().toString(),
+                            processorAdapter.getInputProduct(),
+                            processorAdapter.getOutputProductPath().toString(),
+                            targetProduct);
+            LOG.info("metadata template " + jobConfig.get(JobConfigNames.METADATA_TEMPLATE) + " applied");
+        }
+
+        context.setStatus("Writing");
+        Dimension tileSize = targetProduct.getPreferredTileSize();
+        fusedWriter.write(tileSize != null ? tileSize.height : DEFAULT_SLICE_HEIGHT, pm);
+        if (nativeOutput != null) {
+            context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product processed").increment(1);
+        }
+        LOG.info("Formatted product file " + productFile.getName() + " written");
+
+        if (jobConfig.get(JobConfigNames.QL_PARAMETERS) != null) {
+            context.setStatus("Quicklooks");
+            // the written file contains the computed rasters, unless a band subset has dropped bands used by the quicklooks
+            Product writtenProduct = bandSubsetParameter.isEmpty() ? readProductQuietly(productFile) : null;
+            try {
+                writeQuicklooks(context, jobConfig, productName, writtenProduct != null ? writtenProduct : targetProduct);
+            } finally {
+                if (writtenProduct != null) {
+                    writtenProduct.dispose();
+                }
+            }
+        }
+
+        context.setStatus("Copying");
+        productFormatter.compressToHDFS(context, productFile);
+        context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product formatted").increment(1);
+        LOG.info("Formatted product " + productFile.getName() + " archived in " + FileOutputFormat.getWorkOutputPath(context));
+        return true;
+    }
+
+    private static Product readProductQuietly(File productFile) {
+        try {
+            return ProductIO.readProduct(productFile);
+        } catch (IOException e) {
+            LOG.warning("cannot re-read " + productFile.getName() + " for quicklooks: " + e.getMessage());
+            return null;
+        }
+    }
+
+
     private static class BytesCountingOutputStream extends OutputStream {
 
         private static final String FILE_SYSTEM_COUNTERS = "FileSystemCounters";
@@ -17,9 +17,12 @@
 package com.bc.calvalus.processing.l2;
 
 import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.ceres.core.runtime.internal.DirScanner;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.Progressable;
@@ -52,6 +55,7 @@ public class ProductFormatter {
     private final String outputFilename;
     private final String productFilename;
     private final String outputCompression;
+    private final ProductWriterPlugIn writerPlugIn;
     private File tmpDir;
 
     public ProductFormatter(String productName, String outputFormat, String outputCompression) {
@@ -85,8 +89,9 @@ public class ProductFormatter {
         // test if writer for output format exists
         ProductIOPlugInManager registry = ProductIOPlugInManager.getInstance();
         Iterator it = registry.getWriterPlugIns(outputFormat);
+        ProductWriterPlugIn plugIn;
         if(it.hasNext()) {
-            ProductWriterPlugIn plugIn = (ProductWriterPlugIn) it.next();
+            plugIn = (ProductWriterPlugIn) it.next();
             if (outputExtension.isEmpty()) {
                 // get output extension from writer
                 String[] defaultFileExtensions = plugIn.getDefaultFileExtensions();
@@ -109,6 +114,7 @@ public class ProductFormatter {
         this.outputFormat = outputFormat;
         this.outputCompression = outputCompression;
         this.productFilename = productName + outputExtension;
+        this.writerPlugIn = plugIn;
     }
 
     public String getOutputFilename() {
@@ -127,6 +133,34 @@ public class ProductFormatter {
         return outputCompression;
     }
 
+    /**
+     * @return {@code true} if the product writer accepts an output stream and the output is a single file,
+     * so that the product can be written to HDFS without a local copy, see {@link #createProductOutputStream}
+     */
+    public boolean canWriteToStream() {
+        if (!"gz".equals(outputCompression) && outputCompression != null && !outputCompression.isEmpty()) {
+            return false;
+        }
+        for (Class outputType : writerPlugIn.getOutputTypes()) {
+            if (outputType.isAssignableFrom(OutputStream.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the output stream for writing the product directly to its HDFS output file, compressed if requested.
+     */
+    public OutputStream createProductOutputStream(TaskInputOutputContext<?, ?, ?, ?> context) throws IOException {
+        OutputStream outputStream = createOutputStream(context, outputFilename);
+        if ("gz".equals(outputCompression)) {
+            int numThreads = getCompressionThreads(context);
+            return numThreads > 1 ? new ParallelGzipOutputStream(outputStream, numThreads) : new GZIPOutputStream(outputStream);
+        }
+        return new BufferedOutputStream(outputStream);
+    }
+
     public File createTemporaryProductFile() throws IOException {
         tmpDir = new File(System.getProperty("java.io.tmpdir"), "tmpProductDir");
         if (tmpDir.exists()) {
@@ -146,15 +180,16 @@ public class ProductFormatter {
 
     public void compressToHDFS(TaskInputOutputContext<?, ?, ?, ?> context, File productFile) throws IOException {
 
+        int numThreads = getCompressionThreads(context);
         if ("zip".equals(outputCompression)) {
-            LOG.info("Creating ZIP archive on HDFS.");
+            LOG.info("Creating ZIP archive on HDFS with " + numThreads + " threads.");
             OutputStream outputStream = createOutputStream(context, outputFilename);
-            zip(tmpDir, outputStream, context);
+            zip(tmpDir, outputStream, numThreads, context);
         } else if ("gz".equals(outputCompression)) {
-            LOG.info("Creating GZ file on HDFS.");
+            LOG.info("Creating GZ file on HDFS with " + numThreads + " threads.");
             InputStream inputStream = new BufferedInputStream(new FileInputStream(productFile));
             OutputStream outputStream = createOutputStream(context, outputFilename);
-            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+            OutputStream gzipOutputStream = numThreads > 1 ? new ParallelGzipOutputStream(outputStream, numThreads) : new GZIPOutputStream(outputStream);
             copyAndClose(inputStream, gzipOutputStream, context);
         } else if ("dir".equals(outputCompression)) {
             // currently unused, but might be useful in the future
@@ -190,6 +225,39 @@ public class ProductFormatter {
         }
     }
 
+    private static int getCompressionThreads(TaskInputOutputContext<?, ?, ?, ?> context) {
+        Configuration conf = context.getConfiguration();
+        return Math.max(1, conf.getInt(JobConfigNames.CALVALUS_OUTPUT_COMPRESSION_THREADS,
+                                       conf.getInt(MRJobConfig.MAP_CPU_VCORES, MRJobConfig.DEFAULT_MAP_CPU_VCORES)));
+    }
+
+    /**
+     * Zips the content of the directory, deflating each entry with the given number of threads.
+     */
+    public static void zip(File sourceDir, OutputStream outputStream, int numThreads, Progressable progressable) throws IOException {
+        if (numThreads <= 1) {
+            zip(sourceDir, outputStream, progressable);
+            return;
+        }
+        if (!sourceDir.exists()) {
+            throw new FileNotFoundException(sourceDir.getPath());
+        }
+        DirScanner dirScanner = new DirScanner(sourceDir, true, true);
+        String[] entryNames = dirScanner.scan();
+        ParallelZipOutputStream zipOutputStream = new ParallelZipOutputStream(new BufferedOutputStream(outputStream), numThreads);
+        try {
+            for (String entryName : entryNames) {
+                try (FileInputStream inputStream = new FileInputStream(new File(sourceDir, entryName))) {
+                    zipOutputStream.putNextEntry(entryName.replace('\\', '/'));
+                    copy(inputStream, zipOutputStream, progressable);
+                    zipOutputStream.closeEntry();
+                }
+            }
+        } finally {
+            zipOutputStream.close();
+        }
+    }
+
     // copied from Staging
     public static void zip(File sourceDir, OutputStream outputStream, Progressable progressable) throws IOException {
         if (!sourceDir.exists()) {
@@ -18,10 +18,10 @@ package com.bc.calvalus.processing.l3;
 
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.MultiProductProcessor;
 import com.bc.calvalus.processing.ProcessorAdapter;
 import com.bc.calvalus.processing.ProcessorFactory;
 import com.bc.calvalus.processing.hadoop.MetadataSerializer;
-import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
 import com.bc.calvalus.processing.utils.GeometryUtils;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
@@ -72,8 +72,22 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
         final SpatialBinEmitter spatialBinEmitter = new SpatialBinEmitter(context);
         final SpatialBinner spatialBinner = new SpatialBinner(binningContext, spatialBinEmitter);
         final ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
+        MultiProductProcessor.process(context, processorAdapter, (adapter, pm) -> processProduct(context, adapter, pm, spatialBinner));
+
+        final Exception[] exceptions = spatialBinner.getExceptions();
+        for (Exception exception : exceptions) {
+            String m = MessageFormat.format("Failed to process input slice of {0}", processorAdapter.getInputPath());
+            LOG.log(Level.SEVERE, m, exception);
+        }
+        LOG.info(MessageFormat.format("Finishes processing of {0}  ({1} observations seen, {2} bins produced)",
+                                      processorAdapter.getInputPath(),
+                                      spatialBinEmitter.numObsTotal,
+                                      spatialBinEmitter.numBinsTotal));
+    }
+
+    private void processProduct(Context context, ProcessorAdapter processorAdapter, ProgressMonitor pm,
+                                SpatialBinner spatialBinner) throws IOException, InterruptedException {
         LOG.info("processing input " + processorAdapter.getInputPath() + " ...");
-        ProgressMonitor pm = new ProgressSplitProgressMonitor(context);
         final int progressForProcessing = processorAdapter.supportsPullProcessing() ? 5 : 90;
         final int progressForBinning = processorAdapter.supportsPullProcessing() ? 90 : 20;
         pm.beginTask("Level 3", progressForProcessing + progressForBinning);
@@ -105,16 +119,6 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
             pm.done();
             processorAdapter.dispose();
         }
-
-        final Exception[] exceptions = spatialBinner.getExceptions();
-        for (Exception exception : exceptions) {
-            String m = MessageFormat.format("Failed to process input slice of {0}", processorAdapter.getInputPath());
-            LOG.log(Level.SEVERE, m, exception);
-        }
-        LOG.info(MessageFormat.format("Finishes processing of {0}  ({1} observations seen, {2} bins produced)",
-                                      processorAdapter.getInputPath(),
-                                      spatialBinEmitter.numObsTotal,
-                                      spatialBinEmitter.numBinsTotal));
     }
 
     static String extractProcessingGraphXml(Product product) {
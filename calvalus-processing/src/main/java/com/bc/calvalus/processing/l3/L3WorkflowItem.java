@@ -62,7 +62,10 @@ public class L3WorkflowItem extends HadoopWorkflowItem {
                 {JobConfigNames.CALVALUS_L3_PARAMETERS, NO_DEFAULT},
                 {JobConfigNames.CALVALUS_REGION_GEOMETRY, NO_DEFAULT},
                 {JobConfigNames.CALVALUS_MIN_DATE, NO_DEFAULT},
-                {JobConfigNames.CALVALUS_MAX_DATE, NO_DEFAULT}
+                {JobConfigNames.CALVALUS_MAX_DATE, NO_DEFAULT},
+                // bins compress well, the shuffle is the bottleneck of large productions
+                {JobConfigNames.CALVALUS_INTERMEDIATE_CODEC, "default"},
+                {JobConfigNames.CALVALUS_INTERMEDIATE_SEQUENCE_FILE_COMPRESSION, "BLOCK"}
         };
     }
 
@@ -79,6 +82,8 @@ public class L3WorkflowItem extends HadoopWorkflowItem {
         job.setInputFormatClass(getInputFormatClass(jobConfig));
         job.setNumReduceTasks(jobConfig.getInt(JobConfigNames.CALVALUS_L3_REDUCERS, 8));
         job.setMapperClass(L3Mapper.class);
+        // the mapper processes its input through MultiProductProcessor
+        jobConfig.setBoolean(JobConfigNames.CALVALUS_INPUT_MULTI_PRODUCT_SPLITS, true);
         job.setMapOutputKeyClass(LongWritable.class);
         job.setMapOutputValueClass(L3SpatialBin.class);
         if (jobConfig.get("mapreduce.job.partitioner.class") == null) {
@@ -88,4 +88,9 @@ public class L3MultiRegionBinIndex implements WritableComparable {
                 ", binIndex=" + binIndex +
                 '}';
     }
+
+    // register the sort comparator
+    static {
+        WritableComparator.define(L3MultiRegionBinIndex.class, new L3MultiRegionSortingComparator());
+    }
 }
@@ -11,6 +11,7 @@ import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.esa.snap.binning.operator.BinningConfig;
@@ -24,13 +25,22 @@ import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Deque;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -61,6 +71,7 @@ public class SeasonalCompositingMapper extends Mapper<NullWritable, NullWritable
     public static final int DEBUG_Y2 = 5342 % 10800;
     public static final boolean DEBUG = true;
     private static final float EPS = 1.0E-6f;
+    private static final String CALVALUS_SEASONAL_NUM_THREADS = "calvalus.seasonal.numThreads";
 
     @Override
     public void run(Context context) throws IOException, InterruptedException {
@@ -159,307 +170,458 @@ public class SeasonalCompositingMapper extends Mapper<NullWritable, NullWritable
             products.add(product);
         }
 
-        float[][] accu = new float[numTargetBands][microTileSize * microTileSize];
-        final short[][] bandDataB = new short[numSourceBands][];
-        final short[][] bandDataS = new short[numSourceBands][];
-        final float[][] bandDataF = new float[numSourceBands][];
-
-        // prepare arrays for and in case of ndvi/mndvi for best pixels aggregation
-        float[][] ndviSum = null;
-        float[][] ndviSqrSum = null;
-        int[][] ndviCount = null;
-        float[][] ndxiMax = null;
-        float[] ndviMean = null;
-        float[] ndviSdev = null;
-        if (withBestPixels) {
-            ndviSum = new float[7][microTileSize*microTileSize];
-            ndviSqrSum = new float[7][microTileSize*microTileSize];
-            ndviCount = new int[8][microTileSize*microTileSize];
-            ndxiMax = new float[3][microTileSize*microTileSize];
-            ndviMean = new float[microTileSize*microTileSize];
-            ndviSdev = new float[microTileSize*microTileSize];
+        // composite micro-tiles concurrently, each worker with its own accumulation buffers
+        final int numThreads = Math.max(1, Math.min(numMicroTiles * numMicroTiles,
+                                                    conf.getInt(CALVALUS_SEASONAL_NUM_THREADS, conf.getInt(MRJobConfig.MAP_CPU_VCORES,
+                                                                                                           MRJobConfig.DEFAULT_MAP_CPU_VCORES))));
+        try {
+            compositeMicroTiles(context, bandImages, numThreads, microTileSize, numMicroTiles,
+                                numSourceBands, numTargetBands, withMaxNdvi, withBestPixels,
+                                b1BandIndex, b3BandIndex, b11BandIndex, ndviBandIndex,
+                                sensorBands.length, targetBandIndex, tileRow, tileColumn);
+        } finally {
+            for (Product product : products) {
+                product.dispose();
+            }
+        }
+    }
+
+    /**
+     * Composites the micro-tiles of a tile with the given number of threads and emits them in micro-tile order.
+     * The band data of the next period is read ahead by at most one read per thread.
+     */
+    static void compositeMicroTiles(Context context, List<MultiLevelImage[]> bandImages, int numThreads,
+                                    int microTileSize, int numMicroTiles, int numSourceBands, int numTargetBands,
+                                    boolean withMaxNdvi, boolean withBestPixels,
+                                    int b1BandIndex, int b3BandIndex, int b11BandIndex, int ndviBandIndex,
+                                    int numSensorBands, int[] targetBandIndex, int tileRow, int tileColumn)
+            throws IOException, InterruptedException {
+        LOG.info("compositing " + numMicroTiles * numMicroTiles + " micro-tiles with " + numThreads + " threads");
+        final ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+        // each compositor has at most one read-ahead pending, a full queue lets the compositor read itself
+        final ExecutorService readers = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                                                               new ArrayBlockingQueue<>(numThreads),
+                                                               new ThreadPoolExecutor.CallerRunsPolicy());
+        final Deque<MicroTileCompositor> idleCompositors = new ArrayDeque<>();
+        for (int t = 0; t < numThreads; ++t) {
+            idleCompositors.add(new MicroTileCompositor(bandImages, readers, microTileSize, numMicroTiles,
+                                                        numSourceBands, numTargetBands, withMaxNdvi, withBestPixels,
+                                                        b1BandIndex, b3BandIndex, b11BandIndex, ndviBandIndex));
+        }
+        final Deque<Future<MicroTileCompositor>> pendingMicroTiles = new ArrayDeque<>();
+        try {
+            for (int microTileY = 0; microTileY < numMicroTiles; ++microTileY) {
+                for (int microTileX = 0; microTileX < numMicroTiles; ++microTileX) {
+                    while (idleCompositors.isEmpty()) {
+                        idleCompositors.add(writeMicroTile(context, pendingMicroTiles.removeFirst(),
+                                                           numSensorBands, targetBandIndex, tileRow, tileColumn, numMicroTiles));
+                    }
+                    final MicroTileCompositor compositor = idleCompositors.removeFirst();
+                    final int x = microTileX;
+                    final int y = microTileY;
+                    pendingMicroTiles.addLast(workers.submit(() -> compositor.composite(x, y)));
+                }
+            }
+            while (!pendingMicroTiles.isEmpty()) {
+                writeMicroTile(context, pendingMicroTiles.removeFirst(),
+                               numSensorBands, targetBandIndex, tileRow, tileColumn, numMicroTiles);
+            }
+        } finally {
+            workers.shutdownNow();
+            readers.shutdownNow();
+        }
+    }
+
+    private static MicroTileCompositor writeMicroTile(Context context, Future<MicroTileCompositor> pendingMicroTile,
+                                                      int numSensorBands, int[] targetBandIndex,
+                                                      int tileRow, int tileColumn, int numMicroTiles)
+            throws IOException, InterruptedException {
+        final MicroTileCompositor compositor = getResult(pendingMicroTile);
+        if (! compositor.hasContent) {
+            return compositor;
+        }
+        final int microTileX = compositor.microTileX;
+        final int microTileY = compositor.microTileY;
+        // stream results, one per band
+        for (int b = 0; b < compositor.numTargetBands; ++b) {
+            // compose key from band and tile
+            final int bandAndTile = ((numSensorBands - 3) << 27) + (targetBandIndex[b] << 22) + ((tileRow * numMicroTiles + microTileY) << 11) + (tileColumn * numMicroTiles + microTileX);
+            LOG.info("streaming band " + targetBandIndex[b] + " tile row " + (tileRow * numMicroTiles + microTileY) + " tile column " + (tileColumn * numMicroTiles + microTileX) + " key " + bandAndTile);
+            // write tile, it is serialised by write, the buffer is reused for the next micro-tile afterwards
+            final IntWritable key = new IntWritable(bandAndTile);
+            final BandTileWritable value = new BandTileWritable(compositor.accu[b]);
+            context.write(key, value);
+        }
+        return compositor;
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("micro-tile compositing failed: " + e.getCause(), e.getCause());
         }
+    }
 
-        for (int microTileY = 0; microTileY < numMicroTiles; ++microTileY) {
-            for (int microTileX = 0; microTileX < numMicroTiles; ++microTileX) {
-                final Rectangle microTileArea = new Rectangle(microTileX * microTileSize, microTileY * microTileSize, microTileSize, microTileSize);
-                for (int b = 0; b < numTargetBands; b++) {
-                    Arrays.fill(accu[b], 0.0f);
+    /**
+     * Composites one micro-tile at a time with its own accumulation buffers.
+     * While the bands of one period are aggregated the bands of the next period are read ahead.
+     */
+    private static class MicroTileCompositor {
+
+        private final List<MultiLevelImage[]> bandImages;
+        private final ExecutorService readers;
+        private final int microTileSize;
+        private final int numMicroTiles;
+        private final int numSourceBands;
+        private final int numTargetBands;
+        private final boolean withMaxNdvi;
+        private final boolean withBestPixels;
+        private final int b1BandIndex;
+        private final int b3BandIndex;
+        private final int b11BandIndex;
+        private final int ndviBandIndex;
+
+        private final float[][] accu;
+        // arrays for and in case of ndvi/mndvi for best pixels aggregation
+        private final float[][] ndviSum;
+        private final float[][] ndviSqrSum;
+        private final int[][] ndviCount;
+        private final float[][] ndxiMax;
+        private final float[] ndviMean;
+        private final float[] ndviSdev;
+
+        private Rectangle microTileArea;
+        private Future<BandData> nextBandData;
+        private int microTileX;
+        private int microTileY;
+        private boolean hasContent;
+
+        MicroTileCompositor(List<MultiLevelImage[]> bandImages, ExecutorService readers, int microTileSize, int numMicroTiles,
+                            int numSourceBands, int numTargetBands, boolean withMaxNdvi, boolean withBestPixels,
+                            int b1BandIndex, int b3BandIndex, int b11BandIndex, int ndviBandIndex) {
+            this.bandImages = bandImages;
+            this.readers = readers;
+            this.microTileSize = microTileSize;
+            this.numMicroTiles = numMicroTiles;
+            this.numSourceBands = numSourceBands;
+            this.numTargetBands = numTargetBands;
+            this.withMaxNdvi = withMaxNdvi;
+            this.withBestPixels = withBestPixels;
+            this.b1BandIndex = b1BandIndex;
+            this.b3BandIndex = b3BandIndex;
+            this.b11BandIndex = b11BandIndex;
+            this.ndviBandIndex = ndviBandIndex;
+            accu = new float[numTargetBands][microTileSize * microTileSize];
+            if (withBestPixels) {
+                ndviSum = new float[7][microTileSize*microTileSize];
+                ndviSqrSum = new float[7][microTileSize*microTileSize];
+                ndviCount = new int[8][microTileSize*microTileSize];
+                ndxiMax = new float[3][microTileSize*microTileSize];
+                ndviMean = new float[microTileSize*microTileSize];
+                ndviSdev = new float[microTileSize*microTileSize];
+            } else {
+                ndviSum = null;
+                ndviSqrSum = null;
+                ndviCount = null;
+                ndxiMax = null;
+                ndviMean = null;
+                ndviSdev = null;
+            }
+        }
+
+        MicroTileCompositor composite(int microTileX, int microTileY) throws IOException, InterruptedException {
+            this.microTileX = microTileX;
+            this.microTileY = microTileY;
+            microTileArea = new Rectangle(microTileX * microTileSize, microTileY * microTileSize, microTileSize, microTileSize);
+            hasContent = aggregate();
+            return this;
+        }
+
+        /**
+         * @return false if the micro-tile contains no valid pixel
+         */
+        private boolean aggregate() throws IOException, InterruptedException {
+            for (int b = 0; b < numTargetBands; b++) {
+                Arrays.fill(accu[b], 0.0f);
+            }
+            // count status and average ndvi (or ndwi) for each status separately
+            if (withBestPixels) {
+                for (int j=0; j<7; ++j) {
+                    Arrays.fill(ndviSum[j], 0.0f);
+                    Arrays.fill(ndviSqrSum[j], 0.0f);
+                    Arrays.fill(ndviCount[j], 0);
                 }
-                // count status and average ndvi (or ndwi) for each status separately
-                if (withBestPixels) {
-                    for (int j=0; j<7; ++j) {
-                        Arrays.fill(ndviSum[j], 0.0f);
-                        Arrays.fill(ndviSqrSum[j], 0.0f);
-                        Arrays.fill(ndviCount[j], 0);
+                Arrays.fill(ndxiMax[0], -1.0f);
+                Arrays.fill(ndxiMax[1], -1.0f);
+                Arrays.fill(ndxiMax[2], 1.0f);
+                for (int week = 0; week < bandImages.size(); ++week) {
+                    final BandData bandData = readWeek(week);
+                    final short[][] bandDataB = bandData.shorts;
+                    final float[][] bandDataF = bandData.floats;
+                    // pixel loop
+                    for (int i = 0; i < microTileSize * microTileSize; ++i) {
+                        final int state = (int) bandDataB[0][i];
+                        final int index = index(state);
+                        if (index < 0) {
+                            continue;
+                        }
+                        ndviCount[index][i]++;
+                        switch (state) {
+                            case 1:
+                            case 15:
+                            case 12:
+                            case 11:
+                            case 5:
+                                float ndvi = bandDataF[ndviBandIndex][i];
+                                ndviSum[index][i] += ndvi;
+                                ndviSqrSum[index][i] += ndvi * ndvi;
+                                if (ndvi > ndxiMax[0][i]) {
+                                    ndxiMax[0][i] = ndvi;
+                                }
+                                if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
+                                    LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " index=" + index + " count=" + ndviCount[index][i] + " ndvi=" + ndvi);
+                                }
+                                if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
+                                    LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " index=" + index + " count=" + ndviCount[index][i] + " ndvi=" + ndvi);
+                                }
+                                break;
+                            case 2:
+                            case 3:  // TODO TBC whether to use water index for snow as well
+                                float ndwi = (bandDataF[b11BandIndex][i] - bandDataF[b3BandIndex][i]) / (bandDataF[b11BandIndex][i] + bandDataF[b3BandIndex][i]);
+                                ndviSum[index][i] += ndwi;
+                                ndviSqrSum[index][i] += ndwi * ndwi;
+                                if (ndwi > ndxiMax[1][i]) {
+                                    ndxiMax[1][i] = ndwi;
+                                }
+                                if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
+                                    LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " index=" + index + " count=" + ndviCount[index][i] + " ndwi=" + ndwi);
+                                }
+                                if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
+                                    LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " index=" + index + " count=" + ndviCount[index][i] + " ndwi=" + ndwi);
+                                }
+                                break;
+                            case 4:
+                            case 14:
+                                float b1Value = bandDataF[b1BandIndex][i];
+                                if (b1Value < ndxiMax[2][i]) {
+                                    ndxiMax[2][i] = b1Value;
+                                }
+                        }
                     }
-                    Arrays.fill(ndxiMax[0], -1.0f);
-                    Arrays.fill(ndxiMax[1], -1.0f);
-                    Arrays.fill(ndxiMax[2], 1.0f);
-                    for (MultiLevelImage[] bandImage : bandImages) {
-                        for (int b = 0; b < numSourceBands; b++) {
-                            if (b == 0) {
-                                bandDataB[b] = (short[]) ImageUtils.getPrimitiveArray(bandImage[b].getData(microTileArea).getDataBuffer());
-                            } else if (b < 6) {
-                                bandDataS[b] = (short[]) ImageUtils.getPrimitiveArray(bandImage[b].getData(microTileArea).getDataBuffer());
-                            } else {
-                                bandDataF[b] = (float[]) ImageUtils.getPrimitiveArray(bandImage[b].getData(microTileArea).getDataBuffer());
-                            }
+                }
+                // we have counted the different stati over time, and summed up ndvi per status,
+                // ... determine majority/priority
+                for (int i = 0; i < microTileSize * microTileSize; ++i) {
+                    int state = majorityPriorityStatusOf(ndviCount, i);
+                    int index = index(state);
+                    if (index < 0) {
+                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
+                            LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " ignored for ndvi, state=" + state + " index=" + index);
                         }
-                        // pixel loop
-                        for (int i = 0; i < microTileSize * microTileSize; ++i) {
-                            final int state = (int) bandDataB[0][i];
-                            final int index = index(state);
-                            if (index < 0) {
-                                continue;
-                            }
-                            ndviCount[index][i]++;
+                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
+                            LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " ignored for ndvi, state=" + state + " index=" + index);
+                        }
+                        continue;
+                    }
+                    accu[0][i] = state;
+                    if (index < 7) {
+                        ndviMean[i] = ndviSum[index][i] / ndviCount[index][i];
+                        ndviSdev[i] = (float) Math.sqrt(ndviSqrSum[index][i] / ndviCount[index][i] - ndviMean[i] * ndviMean[i]);
+                    } else {  // cloud or temporal cloud
+                        ndviMean[i] = Float.NaN;
+                        ndviSdev[i] = Float.NaN;
+                    }
+                    if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
+                        LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " majostate=" + state + " majoindex=" + index + " mean=" + ndviMean[i] + " sigma=" + ndviSdev[i]);
+                    }
+                    if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
+                        LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " majostate=" + state + " majoindex=" + index + " mean=" + ndviMean[i] + " sigma=" + ndviSdev[i]);
+                    }
+                }
+                // we have determined the majority/priority status and ndvi mean and sigma for it
+            }
+            for (int week = 0; week < bandImages.size(); ++week) {
+                final BandData bandData = readWeek(week);
+                final short[][] bandDataB = bandData.shorts;
+                final short[][] bandDataS = bandData.shorts;
+                final float[][] bandDataF = bandData.floats;
+
+                // pixel loop
+                for (int i = 0; i < microTileSize * microTileSize; ++i) {
+
+                    // aggregate pixel-wise using aggregation rules
+                    final int state = (int) bandDataB[0][i];
+                    if (state <= 0) {
+                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
+                            LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " ignored, state=" + state);
+                        }
+                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
+                            LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " ignored, state=" + state);
+                        }
+                        continue;
+                    }
+                    if (withBestPixels) {
+                        accu[2][i] += count(bandDataS, i);
+                        if (state == accu[0][i]) {
                             switch (state) {
                                 case 1:
                                 case 15:
                                 case 12:
                                 case 11:
                                 case 5:
-                                    float ndvi = bandDataF[ndviBandIndex][i];
-                                    ndviSum[index][i] += ndvi;
-                                    ndviSqrSum[index][i] += ndvi * ndvi;
-                                    if (ndvi > ndxiMax[0][i]) {
-                                        ndxiMax[0][i] = ndvi;
-                                    }
-                                    if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
-                                        LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " index=" + index + " count=" + ndviCount[index][i] + " ndvi=" + ndvi);
-                                    }
-                                    if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
-                                        LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " index=" + index + " count=" + ndviCount[index][i] + " ndvi=" + ndvi);
+                                    // if (bandDataF[ndviBandIndex][i] >= ndxiMax[0][i] - ndviSdev[i] - EPS) {
+                                    if (bandDataF[ndviBandIndex][i] >= ndviMean[i] - ndviSdev[i] - EPS && bandDataF[ndviBandIndex][i] <= ndviMean[i] + ndviSdev[i] + EPS) {
+                                        final int stateCount = count(state == 1 ? state : STATUS_CLOUD_SHADOW, bandDataS, i);  // cloud shadow count abused for dark, bright, haze
+                                        accu[1][i] += stateCount;
+                                        for (int b = 3; b < numTargetBands; ++b) {
+                                            accu[b][i] += stateCount * bandDataF[b + 3][i];
+                                        }
+                                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
+                                            LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " count=" + stateCount + " ndvi=" + bandDataF[ndviBandIndex][i] + " high. aggregated");
+                                        }
+                                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
+                                            LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " count=" + stateCount + " ndvi=" + bandDataF[ndviBandIndex][i] + " high. aggregated");
+                                        }
+                                    } else {
+                                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
+                                            LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " ndvi=" + bandDataF[ndviBandIndex][i] + " low or high. skipped");
+                                        }
+                                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
+                                            LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " ndvi=" + bandDataF[ndviBandIndex][i] + " low or high. skipped");
+                                        }
                                     }
                                     break;
                                 case 2:
                                 case 3:  // TODO TBC whether to use water index for snow as well
                                     float ndwi = (bandDataF[b11BandIndex][i] - bandDataF[b3BandIndex][i]) / (bandDataF[b11BandIndex][i] + bandDataF[b3BandIndex][i]);
-                                    ndviSum[index][i] += ndwi;
-                                    ndviSqrSum[index][i] += ndwi * ndwi;
-                                    if (ndwi > ndxiMax[1][i]) {
-                                        ndxiMax[1][i] = ndwi;
-                                    }
-                                    if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
-                                        LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " index=" + index + " count=" + ndviCount[index][i] + " ndwi=" + ndwi);
-                                    }
-                                    if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
-                                        LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " index=" + index + " count=" + ndviCount[index][i] + " ndwi=" + ndwi);
+                                    //if (ndwi >= ndxiMax[1][i] - ndviSdev[i] - EPS) {
+                                    if (ndwi >= ndviMean[i] - ndviSdev[i] - EPS && ndwi <= ndviMean[i] + ndviSdev[i] + EPS) {
+                                        final int stateCount = count(state, bandDataS, i);
+                                        accu[1][i] += stateCount;
+                                        for (int b = 3; b < numTargetBands; ++b) {
+                                            accu[b][i] += stateCount * bandDataF[b + 3][i];
+                                        }
+                                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
+                                            LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " count=" + stateCount + " ndwi=" + ndwi + " high. aggregated");
+                                        }
+                                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
+                                            LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " count=" + stateCount + " ndwi=" + ndwi + " high. aggregated");
+                                        }
+                                    } else {
+                                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
+                                            LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " ndwi=" + ndwi + " low.or high skipped");
+                                        }
+                                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
+                                            LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " ndwi=" + ndwi + " low or high. skipped");
+                                        }
                                     }
                                     break;
                                 case 4:
                                 case 14:
-                                    float b1Value = bandDataF[b1BandIndex][i];
-                                    if (b1Value < ndxiMax[2][i]) {
-                                        ndxiMax[2][i] = b1Value;
-                                    }
+                                    final int stateCount = count(state, bandDataS, i);
+                                    accu[1][i] += stateCount;
+                                    break;
                             }
                         }
-                    }
-                    // we have counted the different stati over time, and summed up ndvi per status,
-                    // ... determine majority/priority
-                    for (int i = 0; i < microTileSize * microTileSize; ++i) {
-                        int state = majorityPriorityStatusOf(ndviCount, i);
-                        int index = index(state);
-                        if (index < 0) {
-                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
-                                LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " ignored for ndvi, state=" + state + " index=" + index);
-                            }
-                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
-                                LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " ignored for ndvi, state=" + state + " index=" + index);
+                    } else if (state == accu[0][i]) {
+                        // same state as before, aggregate ...
+                        final int stateCount = count(state, bandDataS, i);
+                        accu[1][i] += stateCount;
+                        accu[2][i] += count(bandDataS, i);
+                        if (withMaxNdvi) {
+                            if (bandDataF[ndviBandIndex][i] > accu[numTargetBands - 1][i]) {
+                                for (int b = 3; b < numTargetBands; ++b) {
+                                    accu[b][i] = bandDataF[b + 3][i];
+                                }
                             }
-                            continue;
-                        }
-                        accu[0][i] = state;
-                        if (index < 7) {
-                            ndviMean[i] = ndviSum[index][i] / ndviCount[index][i];
-                            ndviSdev[i] = (float) Math.sqrt(ndviSqrSum[index][i] / ndviCount[index][i] - ndviMean[i] * ndviMean[i]);
-                        } else {  // cloud or temporal cloud
-                            ndviMean[i] = Float.NaN;
-                            ndviSdev[i] = Float.NaN;
-                        }
-                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
-                            LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " majostate=" + state + " majoindex=" + index + " mean=" + ndviMean[i] + " sigma=" + ndviSdev[i]);
-                        }
-                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
-                            LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " majostate=" + state + " majoindex=" + index + " mean=" + ndviMean[i] + " sigma=" + ndviSdev[i]);
-                        }
-                    }
-                    // we have determined the majority/priority status and ndvi mean and sigma for it
-                }
-                for (MultiLevelImage[] bandImage : bandImages) {
-                    for (int b = 0; b < numSourceBands; b++) {
-                        if (b == 0) {
-                            bandDataB[b] = (short[]) ImageUtils.getPrimitiveArray(bandImage[b].getData(microTileArea).getDataBuffer());
-                        } else if (b < 6) {
-                            bandDataS[b] = (short[]) ImageUtils.getPrimitiveArray(bandImage[b].getData(microTileArea).getDataBuffer());
                         } else {
-                            bandDataF[b] = (float[]) ImageUtils.getPrimitiveArray(bandImage[b].getData(microTileArea).getDataBuffer());
-                        }
-                    }
-
-                    // pixel loop
-                    for (int i = 0; i < microTileSize * microTileSize; ++i) {
-
-                        // aggregate pixel-wise using aggregation rules
-                        final int state = (int) bandDataB[0][i];
-                        if (state <= 0) {
-                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
-                                LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " ignored, state=" + state);
-                            }
-                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
-                                LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " ignored, state=" + state);
+                            for (int b = 3; b < numTargetBands; ++b) {
+                                accu[b][i] += stateCount * bandDataF[b + 3][i];
                             }
-                            continue;
                         }
-                        if (withBestPixels) {
-                            accu[2][i] += count(bandDataS, i);
-                            if (state == accu[0][i]) {
-                                switch (state) {
-                                    case 1:
-                                    case 15:
-                                    case 12:
-                                    case 11:
-                                    case 5:
-                                        // if (bandDataF[ndviBandIndex][i] >= ndxiMax[0][i] - ndviSdev[i] - EPS) {
-                                        if (bandDataF[ndviBandIndex][i] >= ndviMean[i] - ndviSdev[i] - EPS && bandDataF[ndviBandIndex][i] <= ndviMean[i] + ndviSdev[i] + EPS) {
-                                            final int stateCount = count(state == 1 ? state : STATUS_CLOUD_SHADOW, bandDataS, i);  // cloud shadow count abused for dark, bright, haze
-                                            accu[1][i] += stateCount;
-                                            for (int b = 3; b < numTargetBands; ++b) {
-                                                accu[b][i] += stateCount * bandDataF[b + 3][i];
-                                            }
-                                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
-                                                LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " count=" + stateCount + " ndvi=" + bandDataF[ndviBandIndex][i] + " high. aggregated");
-                                            }
-                                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
-                                                LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " count=" + stateCount + " ndvi=" + bandDataF[ndviBandIndex][i] + " high. aggregated");
-                                            }
-                                        } else {
-                                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
-                                                LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " ndvi=" + bandDataF[ndviBandIndex][i] + " low or high. skipped");
-                                            }
-                                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
-                                                LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " ndvi=" + bandDataF[ndviBandIndex][i] + " low or high. skipped");
-                                            }
-                                        }
-                                        break;
-                                    case 2:
-                                    case 3:  // TODO TBC whether to use water index for snow as well
-                                        float ndwi = (bandDataF[b11BandIndex][i] - bandDataF[b3BandIndex][i]) / (bandDataF[b11BandIndex][i] + bandDataF[b3BandIndex][i]);
-                                        //if (ndwi >= ndxiMax[1][i] - ndviSdev[i] - EPS) {
-                                        if (ndwi >= ndviMean[i] - ndviSdev[i] - EPS && ndwi <= ndviMean[i] + ndviSdev[i] + EPS) {
-                                            final int stateCount = count(state, bandDataS, i);
-                                            accu[1][i] += stateCount;
-                                            for (int b = 3; b < numTargetBands; ++b) {
-                                                accu[b][i] += stateCount * bandDataF[b + 3][i];
-                                            }
-                                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
-                                                LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " count=" + stateCount + " ndwi=" + ndwi + " high. aggregated");
-                                            }
-                                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
-                                                LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " count=" + stateCount + " ndwi=" + ndwi + " high. aggregated");
-                                            }
-                                        } else {
-                                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
-                                                LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " state=" + state + " ndwi=" + ndwi + " low.or high skipped");
-                                            }
-                                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
-                                                LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " state=" + state + " ndwi=" + ndwi + " low or high. skipped");
-                                            }
-                                        }
-                                        break;
-                                    case 4:
-                                    case 14:
-                                        final int stateCount = count(state, bandDataS, i);
-                                        accu[1][i] += stateCount;
-                                        break;
-                                }
-                            }
-                        } else if (state == accu[0][i]) {
-                            // same state as before, aggregate ...
-                            final int stateCount = count(state, bandDataS, i);
-                            accu[1][i] += stateCount;
-                            accu[2][i] += count(bandDataS, i);
-                            if (withMaxNdvi) {
-                                if (bandDataF[ndviBandIndex][i] > accu[numTargetBands - 1][i]) {
-                                    for (int b = 3; b < numTargetBands; ++b) {
-                                        accu[b][i] = bandDataF[b + 3][i];
-                                    }
-                                }
-                            } else {
-                                for (int b = 3; b < numTargetBands; ++b) {
-                                    accu[b][i] += stateCount * bandDataF[b + 3][i];
-                                }
+                    } else if (rank(state) > rank(accu[0][i])) {
+                        // better state, e.g. land instead of snow: restart counting ...
+                        final int stateCount = count(state, bandDataS, i);
+                        accu[0][i] = state;
+                        accu[1][i] = stateCount;
+                        accu[2][i] = count(bandDataS, i);
+                        if (withMaxNdvi) {
+                            for (int b = 3; b < numTargetBands; ++b) {
+                                accu[b][i] = bandDataF[b + 3][i];
                             }
-                        } else if (rank(state) > rank(accu[0][i])) {
-                            // better state, e.g. land instead of snow: restart counting ...
-                            final int stateCount = count(state, bandDataS, i);
-                            accu[0][i] = state;
-                            accu[1][i] = stateCount;
-                            accu[2][i] = count(bandDataS, i);
-                            if (withMaxNdvi) {
-                                for (int b = 3; b < numTargetBands; ++b) {
-                                    accu[b][i] = bandDataF[b + 3][i];
-                                }
-                            } else {
-                                for (int b = 3; b < numTargetBands; ++b) {
-                                    accu[b][i] = stateCount * bandDataF[b + 3][i];
-                                }
+                        } else {
+                            for (int b = 3; b < numTargetBands; ++b) {
+                                accu[b][i] = stateCount * bandDataF[b + 3][i];
                             }
                         }
                     }
                 }
+            }
 
-                // finish aggregation, divide by stateCount
-                if (!withMaxNdvi) {
-                    for (int i = 0; i < microTileSize * microTileSize; ++i) {
-                        final float stateCount = accu[1][i];
-                        for (int b = 3; b < numTargetBands; ++b) {
-                            accu[b][i] /= stateCount;
-                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
-                                LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " count=" + stateCount + " b=" + b + " bandvalue=" + accu[b][i]);
-                            }
-                            if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
-                                LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " count=" + stateCount + " b=" + b + " bandvalue=" + accu[b][i]);
-                            }
+            // finish aggregation, divide by stateCount
+            if (!withMaxNdvi) {
+                for (int i = 0; i < microTileSize * microTileSize; ++i) {
+                    final float stateCount = accu[1][i];
+                    for (int b = 3; b < numTargetBands; ++b) {
+                        accu[b][i] /= stateCount;
+                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X, DEBUG_Y)) {
+                            LOG.info("x=" + DEBUG_X + " y=" + DEBUG_Y + " i=" + i + " count=" + stateCount + " b=" + b + " bandvalue=" + accu[b][i]);
+                        }
+                        if (DEBUG && isAtPosition(i, microTileX, microTileY, microTileSize, numMicroTiles, DEBUG_X2, DEBUG_Y2)) {
+                            LOG.info("x=" + DEBUG_X2 + " y=" + DEBUG_Y2 + " i=" + i + " count=" + stateCount + " b=" + b + " bandvalue=" + accu[b][i]);
                         }
                     }
                 }
+            }
 
-                // statistics for logging
-                final int[] counts = new int[16];
-                for (float state : accu[0]) {
-                    ++counts[rank(state)];
-                }
-                LOG.info((counts[14]+counts[10]+counts[9]+counts[8]) + " land, " + (counts[15]) + " water, " + counts[13] + " snow, " + counts[5] + " shadow, " + (counts[1]+counts[2]) + " cloud");
-                if (counts[14]+counts[10]+counts[9]+counts[8] == 0 && counts[15] == 0 && counts[13] == 0 && counts[5] == 0 && counts[1]+counts[2] == 0) {
-                    continue;
-                }
+            // statistics for logging
+            final int[] counts = new int[16];
+            for (float state : accu[0]) {
+                ++counts[rank(state)];
+            }
+            LOG.info((counts[14]+counts[10]+counts[9]+counts[8]) + " land, " + (counts[15]) + " water, " + counts[13] + " snow, " + counts[5] + " shadow, " + (counts[1]+counts[2]) + " cloud");
+            if (counts[14]+counts[10]+counts[9]+counts[8] == 0 && counts[15] == 0 && counts[13] == 0 && counts[5] == 0 && counts[1]+counts[2] == 0) {
+                return false;
+            }
+            return true;
+        }
 
-                // stream results, one per band
-                for (int b = 0; b < numTargetBands; ++b) {
-                    // compose key from band and tile
-                    final int bandAndTile = ((sensorBands.length - 3) << 27) + (targetBandIndex[b] << 22) + ((tileRow * numMicroTiles + microTileY) << 11) + (tileColumn * numMicroTiles + microTileX);
-                    LOG.info("streaming band " + targetBandIndex[b] + " tile row " + (tileRow * numMicroTiles + microTileY) + " tile column " + (tileColumn * numMicroTiles + microTileX) + " key " + bandAndTile);
-                    // write tile
-                    final IntWritable key = new IntWritable(bandAndTile);
-                    final BandTileWritable value = new BandTileWritable(accu[b]);
-                    context.write(key, value);
-                }
+        /**
+         * Returns the band data of the period and starts reading the next period.
+         */
+        private BandData readWeek(int week) throws IOException, InterruptedException {
+            if (week == 0 && nextBandData != null) {
+                // read-ahead left over from a pass that has not been finished
+                nextBandData.cancel(true);
+                nextBandData = null;
             }
+            final Future<BandData> bandData = nextBandData == null ? readers.submit(() -> readBands(bandImages.get(week))) : nextBandData;
+            nextBandData = week + 1 < bandImages.size() ? readers.submit(() -> readBands(bandImages.get(week + 1))) : null;
+            return getResult(bandData);
         }
 
-        for (Product product : products) {
-            product.dispose();
+        private BandData readBands(MultiLevelImage[] bandImage) {
+            final BandData bandData = new BandData(numSourceBands);
+            for (int b = 0; b < numSourceBands; b++) {
+                if (b < 6) {
+                    bandData.shorts[b] = (short[]) ImageUtils.getPrimitiveArray(bandImage[b].getData(microTileArea).getDataBuffer());
+                } else {
+                    bandData.floats[b] = (float[]) ImageUtils.getPrimitiveArray(bandImage[b].getData(microTileArea).getDataBuffer());
+                }
+            }
+            return bandData;
         }
     }
 
-    private boolean isAtPosition(int i, int microTileX, int microTileY, int microTileSize, int numMicroTiles, int x, int y) {
+    private static boolean isAtPosition(int i, int microTileX, int microTileY, int microTileSize, int numMicroTiles, int x, int y) {
         return x == microTileX * microTileSize + (i % microTileSize) && y == microTileY * microTileSize + (i / microTileSize);
     }
 
-    private int majorityPriorityStatusOf(int[][] ndviCount, int i) {
+    private static int majorityPriorityStatusOf(int[][] ndviCount, int i) {
         return (ndviCount[1][i] > 0 && ndviCount[1][i] >= ndviCount[0][i] && ndviCount[1][i] >= ndviCount[2][i]) ? 2 :
                (ndviCount[0][i] > 0 && ndviCount[0][i] >= ndviCount[2][i]) ? 1 :
                ndviCount[2][i] > 0 ? 3 :
@@ -618,4 +780,18 @@ public class SeasonalCompositingMapper extends Mapper<NullWritable, NullWritable
             default: return -1;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Band data of one period and micro-tile, status and counts as shorts, reflectances and ndvi as floats
+     */
+    private static class BandData {
+
+        private final short[][] shorts;
+        private final float[][] floats;
+
+        BandData(int numSourceBands) {
+            shorts = new short[numSourceBands][];
+            floats = new float[numSourceBands][];
+        }
+    }
+}
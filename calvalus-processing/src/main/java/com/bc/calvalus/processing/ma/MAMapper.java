@@ -18,9 +18,9 @@ package com.bc.calvalus.processing.ma;
 
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.MultiProductProcessor;
 import com.bc.calvalus.processing.ProcessorAdapter;
 import com.bc.calvalus.processing.ProcessorFactory;
-import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
 import com.bc.calvalus.processing.utils.GeometryUtils;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
@@ -29,8 +29,8 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.util.io.FileUtils;
 
@@ -61,8 +61,7 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
 
         context.progress();
 
-        final FileSplit split = (FileSplit) context.getInputSplit();
-        final Path inputPath = split.getPath();
+        final InputSplit split = context.getInputSplit();
 
         final long mapperStartTime = now();
 
@@ -74,16 +73,29 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
         LOG.info(String.format("%s starts processing of split %s (%s MiB)",
                                context.getTaskAttemptID(), split, (MiB / 2 + split.getLength()) / MiB));
 
+        ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
+        MultiProductProcessor.process(context, processorAdapter,
+                                      (adapter, pm) -> processProduct(context, adapter, pm, maConfig, regionGeometry));
+
+        // write final log entry for runtime measurements
+        long mapperTotalTime = (now() - mapperStartTime);
+        LOG.info(String.format("%s stops processing of split %s after %s sec",
+                               context.getTaskAttemptID(), split, mapperTotalTime / 1E3));
+
+    }
+
+    private void processProduct(Context context, ProcessorAdapter processorAdapter, ProgressMonitor pm,
+                                MAConfig maConfig, Geometry regionGeometry) throws IOException, InterruptedException {
+        final Configuration conf = context.getConfiguration();
+        final Path inputPath = processorAdapter.getInputPath();
 
         long t0;
 
         t0 = now();
-        ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
         boolean pullProcessing = processorAdapter.supportsPullProcessing();
         final int progressForProcessing = pullProcessing ? 20 : 80;
         final int progressForSaving = maConfig.getSaveProcessedProducts() ? (pullProcessing ? 80 : 20) : 0;
         final int progressForExtraction = pullProcessing ? 80 : 20;
-        ProgressMonitor pm = new ProgressSplitProgressMonitor(context);
         pm.beginTask("Match-Up analysis", progressForProcessing + progressForSaving + progressForExtraction);
         ProgressMonitor extractionPM = SubProgressMonitor.create(pm, progressForExtraction);
         try {
@@ -222,12 +234,6 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
 
         long productCloseTime = (now() - t0);
         LOG.info(String.format("closed input product, took %s sec", productCloseTime / 1E3));
-
-        // write final log entry for runtime measurements
-        long mapperTotalTime = (now() - mapperStartTime);
-        LOG.info(String.format("%s stops processing of split %s after %s sec",
-                               context.getTaskAttemptID(), split, mapperTotalTime / 1E3));
-
     }
 
     private RecordSource getReferenceRecordSource(MAConfig maConfig, Geometry regionGeometry, Configuration conf) {
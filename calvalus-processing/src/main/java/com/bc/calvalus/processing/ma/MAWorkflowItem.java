@@ -86,6 +86,8 @@ public class MAWorkflowItem extends HadoopWorkflowItem {
 
         job.setInputFormatClass(getInputFormatClass(jobConfig));
         job.setMapperClass(MAMapper.class);
+        // the mapper processes its input through MultiProductProcessor
+        jobConfig.setBoolean(JobConfigNames.CALVALUS_INPUT_MULTI_PRODUCT_SPLITS, true);
         job.setMapOutputKeyClass(Text.class);
         job.setMapOutputValueClass(RecordWritable.class);
         job.setReducerClass(MAReducer.class);
@@ -64,6 +64,7 @@ public class MACompareWorkflowItem extends HadoopWorkflowItem {
         job.setMapOutputKeyClass(MAKey.class);
         job.setMapOutputValueClass(IndexedRecordWritable.class);
 
+        job.setSortComparatorClass(MAKey.SortComparator.class);
         job.setGroupingComparatorClass(MAKey.GroupingComparator.class);
 
         job.setReducerClass(MACompareReducer.class);
@@ -20,6 +20,7 @@ import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -102,10 +103,42 @@ public class MAKey implements WritableComparable<MAKey> {
         }
     }
 
+    /**
+     * Sorts by reference id, product name and identifier order, on the serialised keys.
+     */
+    public static class SortComparator extends WritableComparator {
+
+        public SortComparator() {
+            super(MAKey.class);
+        }
+
+        @Override
+        public int compare(WritableComparable key1, WritableComparable key2) {
+            return ((MAKey) key1).compareTo((MAKey) key2);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int compare = compareInts(readInt(b1, s1), readInt(b2, s2));
+            if (compare == 0) {
+                compare = compareProductNames(b1, s1 + 4, b2, s2 + 4);
+                if (compare == 0) {
+                    // equal names have the same length
+                    int nameLength = productNameLength(b1, s1 + 4);
+                    compare = compareInts(readInt(b1, s1 + 4 + nameLength), readInt(b2, s2 + 4 + nameLength));
+                }
+            }
+            return compare;
+        }
+    }
+
+    /**
+     * Groups by reference id and product name, on the serialised keys.
+     */
     public static class GroupingComparator extends WritableComparator {
 
         protected GroupingComparator() {
-            super(MAKey.class, true);
+            super(MAKey.class);
         }
 
         @Override
@@ -118,5 +151,60 @@ public class MAKey implements WritableComparable<MAKey> {
             }
             return compare;
         }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int compare = compareInts(readInt(b1, s1), readInt(b2, s2));
+            if (compare == 0) {
+                compare = compareProductNames(b1, s1 + 4, b2, s2 + 4);
+            }
+            return compare;
+        }
+    }
+
+    /**
+     * @return the number of bytes of the serialised product name, including its length
+     */
+    private static int productNameLength(byte[] b, int s) {
+        try {
+            return WritableUtils.decodeVIntSize(b[s]) + WritableComparator.readVInt(b, s);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Compares two serialised product names in the order of {@link String#compareTo}.
+     * The UTF-8 bytes are in code point order, which is the order of the UTF-16 chars except for supplementary
+     * characters: their surrogates sort before the chars U+E000 to U+FFFF. Only in this case are the names decoded.
+     */
+    private static int compareProductNames(byte[] b1, int s1, byte[] b2, int s2) {
+        try {
+            int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+            int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+            int length1 = WritableComparator.readVInt(b1, s1);
+            int length2 = WritableComparator.readVInt(b2, s2);
+            int minLength = Math.min(length1, length2);
+            for (int i = 0; i < minLength; i++) {
+                int byte1 = b1[s1 + n1 + i] & 0xff;
+                int byte2 = b2[s2 + n2 + i] & 0xff;
+                if (byte1 != byte2) {
+                    if (byte1 >= 0xee && byte2 >= 0xee && (byte1 >= 0xf0) != (byte2 >= 0xf0)) {
+                        String name1 = Text.decode(b1, s1 + n1, length1);
+                        String name2 = Text.decode(b2, s2 + n2, length2);
+                        return name1.compareTo(name2);
+                    }
+                    return byte1 - byte2;
+                }
+            }
+            return length1 - length2;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    // register the sort comparator
+    static {
+        WritableComparator.define(MAKey.class, new SortComparator());
     }
 }
@@ -19,6 +19,7 @@ package com.bc.calvalus.processing.mosaic;
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.ProcessorAdapter;
 import com.bc.calvalus.processing.ProcessorFactory;
+import com.bc.calvalus.processing.hadoop.IntermediateCompression;
 import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
 import com.bc.calvalus.processing.utils.GeometryUtils;
 import com.bc.ceres.core.ProgressMonitor;
@@ -170,11 +171,12 @@ public class MosaicMapper extends Mapper<NullWritable, NullWritable, TileIndexWr
         int numTilesTotal = tileIndices.length;
         LOG.info("Product covers #tiles : " + numTilesTotal);
         int numTilesProcessed = 0;
-        TileFactory tileFactory = new TileFactory(maskImage, varImages, mapContext, mosaicGrid.getTileSize());
+        TileFactory tileFactory = new TileFactory(maskImage, varImages, mosaicGrid.getTileSize(),
+                                                  IntermediateCompression.isWritableCompression(mapContext.getConfiguration()));
         pm.beginTask("Tile processing", numTilesTotal);
         int tileCounter = 0;
         for (TileIndexWritable tileIndex : tileIndices) {
-            if (tileFactory.processTile(tileIndex)) {
+            if (tileFactory.processTile(tileIndex, mapContext)) {
                 numTilesProcessed++;
             }
             tileCounter++;
@@ -229,25 +231,39 @@ public class MosaicMapper extends Mapper<NullWritable, NullWritable, TileIndexWr
     }
 
 
-    private static class TileFactory {
+    /**
+     * Creates the tiles of the mosaic from the mask and variable images of the gridded product.
+     */
+    static class TileFactory {
 
         private final MultiLevelImage maskImage;
         private final MultiLevelImage[] varImages;
-        private final Context context;
         private final int tileSize;
+        private final boolean writableCompression;
 
-        public TileFactory(MultiLevelImage maskImage, MultiLevelImage[] varImages, Context context, int tileSize) {
+        TileFactory(MultiLevelImage maskImage, MultiLevelImage[] varImages, int tileSize, boolean writableCompression) {
             this.maskImage = maskImage;
             this.varImages = varImages;
-            this.context = context;
             this.tileSize = tileSize;
+            this.writableCompression = writableCompression;
         }
 
-        private boolean processTile(TileIndexWritable tileIndex) throws IOException, InterruptedException {
+        private boolean processTile(TileIndexWritable tileIndex, Context context) throws IOException, InterruptedException {
+            TileDataWritable value = createTile(tileIndex);
+            if (value != null) {
+                context.write(tileIndex, value);
+            }
+            return value != null;
+        }
+
+        /**
+         * @return the tile, or null if it contains no data
+         */
+        TileDataWritable createTile(TileIndexWritable tileIndex) {
             Raster maskRaster = maskImage.getTile(tileIndex.getTileX(), tileIndex.getTileY());
             if (maskRaster == null) {
                 LOG.info("Mask raster is null: " + tileIndex);
-                return false;
+                return null;
             }
             byte[] byteBuffer = getRawMaskData(maskRaster);
             boolean containsData = containsData(byteBuffer);
@@ -259,18 +275,16 @@ public class MosaicMapper extends Mapper<NullWritable, NullWritable, TileIndexWr
                     Raster raster = varImages[i].getTile(tileIndex.getTileX(), tileIndex.getTileY());
                     if (raster == null) {
                         LOG.fine("Image[" + i + "] raster is null: " + tileIndex);
-                        return false;
+                        return null;
                     }
                     float[] samples = sampleValues[i];
                     raster.getPixels(raster.getMinX(), raster.getMinY(), raster.getWidth(), raster.getHeight(), samples);
                 }
-
-                TileDataWritable value = new TileDataWritable(sampleValues);
-                context.write(tileIndex, value);
+                return new TileDataWritable(sampleValues, writableCompression);
             } else {
                 LOG.fine("Tile contains NO data: " + tileIndex);
+                return null;
             }
-            return containsData;
         }
 
         private static byte[] getRawMaskData(Raster mask) {
@@ -16,6 +16,7 @@
 
 package com.bc.calvalus.processing.mosaic;
 
+import com.bc.calvalus.processing.hadoop.IntermediateCompression;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -31,6 +32,7 @@ public class MosaicReducer extends Reducer<TileIndexWritable, TileDataWritable,
 
     private Configuration jobConf;
     private MosaicAlgorithm algorithm;
+    private boolean writableCompression;
 
     @Override
     protected void reduce(TileIndexWritable tileIndex, Iterable<TileDataWritable> spatialTiles, Context context) throws IOException, InterruptedException {
@@ -41,7 +43,7 @@ public class MosaicReducer extends Reducer<TileIndexWritable, TileDataWritable,
         }
 
         float[][] result = algorithm.getTemporalResult();
-        TileDataWritable value = new TileDataWritable(result);
+        TileDataWritable value = new TileDataWritable(result, writableCompression);
         context.write(tileIndex, value);
     }
 
@@ -49,6 +51,7 @@ public class MosaicReducer extends Reducer<TileIndexWritable, TileDataWritable,
     public void setConf(Configuration jobConf) {
         this.jobConf = jobConf;
         algorithm = MosaicConfig.createAlgorithm(jobConf);
+        writableCompression = IntermediateCompression.isWritableCompression(jobConf);
     }
 
     @Override
@@ -54,7 +54,8 @@ public class MosaicWorkflowItem extends HadoopWorkflowItem {
                 {JobConfigNames.CALVALUS_L2_OPERATOR, null},
                 {JobConfigNames.CALVALUS_L2_PARAMETERS, "<parameters/>"},
                 {JobConfigNames.CALVALUS_MOSAIC_PARAMETERS, NO_DEFAULT},
-                {JobConfigNames.CALVALUS_REGION_GEOMETRY, NO_DEFAULT}
+                {JobConfigNames.CALVALUS_REGION_GEOMETRY, NO_DEFAULT},
+                {JobConfigNames.CALVALUS_INTERMEDIATE_WRITABLE_COMPRESSION, "true"}
         };
     }
 
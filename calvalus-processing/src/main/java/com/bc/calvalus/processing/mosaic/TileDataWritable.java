@@ -17,28 +17,49 @@
 package com.bc.calvalus.processing.mosaic;
 
 import com.bc.calvalus.processing.hadoop.WritableUtils;
-import org.apache.hadoop.io.CompressedWritable;
+import org.apache.hadoop.io.Writable;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * A Hadoop writable for a bunch of {@link org.esa.snap.core.gpf.Tile}s.
+ * <p/>
+ * The samples are deflated like a {@link org.apache.hadoop.io.CompressedWritable}, and inflated on first access.
+ * If the job compresses its intermediate data with a codec, they can be written uncompressed instead,
+ * marked by a negative length (see {@link com.bc.calvalus.processing.hadoop.IntermediateCompression}).
  *
  * @author MarcoZ
  */
-public class TileDataWritable extends CompressedWritable {
+public class TileDataWritable implements Writable {
+
+    private static final int UNCOMPRESSED = -1;
 
     // an array of databuffers
     private float[][] sampleValues;
+    private boolean compress = true;
+    // the deflated samples as read, until they are inflated
+    private byte[] compressed;
 
 
     public TileDataWritable() {
     }
 
     public TileDataWritable(float[][] sampleValues) {
+        this(sampleValues, true);
+    }
+
+    public TileDataWritable(float[][] sampleValues, boolean compress) {
         this.sampleValues = sampleValues;
+        this.compress = compress;
     }
 
     public float[][] getSamples() {
@@ -47,7 +68,54 @@ public class TileDataWritable extends CompressedWritable {
     }
 
     @Override
-    public void writeCompressed(DataOutput out) throws IOException {
+    public void write(DataOutput out) throws IOException {
+        if (!compress) {
+            ensureInflated();
+            out.writeInt(UNCOMPRESSED);
+            writeSamples(out);
+            return;
+        }
+        if (compressed == null) {
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DataOutputStream dout = new DataOutputStream(new DeflaterOutputStream(deflated, deflater))) {
+                writeSamples(dout);
+            } finally {
+                deflater.end();
+            }
+            compressed = deflated.toByteArray();
+        }
+        out.writeInt(compressed.length);
+        out.write(compressed);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == UNCOMPRESSED) {
+            compress = false;
+            compressed = null;
+            readSamples(in);
+        } else {
+            // a value read is written again the way it was read
+            compress = true;
+            compressed = new byte[length];
+            in.readFully(compressed);
+        }
+    }
+
+    private void ensureInflated() {
+        if (compressed != null) {
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+                readSamples(in);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            compressed = null;
+        }
+    }
+
+    private void writeSamples(DataOutput out) throws IOException {
         float[][] array2D = sampleValues;
         int numBands = array2D.length;
         int numElems = array2D[0].length;
@@ -60,8 +128,7 @@ public class TileDataWritable extends CompressedWritable {
         }
     }
 
-    @Override
-    public void readFieldsCompressed(DataInput in) throws IOException {
+    private void readSamples(DataInput in) throws IOException {
         int numBands = in.readInt();
         int numElems = in.readInt();
         float[][] array2D = this.sampleValues;
@@ -24,19 +24,25 @@ import com.bc.calvalus.processing.ma.Record;
 import com.bc.calvalus.processing.ma.RecordSource;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
+import com.vividsolutions.jts.geom.Envelope;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.esa.snap.core.dataio.ProductIO;
 import org.esa.snap.core.dataio.ProductWriter;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoCoding;
 import org.esa.snap.core.datamodel.GeoPos;
 import org.esa.snap.core.datamodel.PixelPos;
 import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.gpf.common.SubsetOp;
 import org.esa.snap.core.gpf.common.reproject.ReprojectionOp;
+import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.core.util.math.MathUtils;
 import org.geotools.geometry.DirectPosition2D;
 import org.geotools.referencing.CRS;
@@ -61,18 +67,40 @@ import org.opengis.referencing.operation.CoordinateOperationFactory;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.OperationMethod;
 
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * For "Prevue", does data extraction in a special way...
+ * <p/>
+ * For each reference record inside of the product a patch of 49x49 pixels around the record is
+ * reprojected and written as BEAM-ASCII. The patches are reprojected from small subsets of the
+ * product and written concurrently.
  */
 public class PrevueMapper extends Mapper<NullWritable, NullWritable, NullWritable, NullWritable> {
 
     private static final String COUNTER_GROUP_NAME_PRODUCTS = "Products";
+    private static final String CALVALUS_PREVUE_NUM_THREADS = "calvalus.prevue.numThreads";
+
+    private static final int PATCH_SIZE = 49;
+    private static final double REFERENCE_PIXEL = 25.5;
+    private static final double LAT_LON_PIXEL_SIZE = 1.0 / 112.0;
+    private static final double UTM_PIXEL_SIZE = 260.0;
+    private static final int OUTLINE_STEPS = 8;
+    private static final int SOURCE_WINDOW_MARGIN = 4;
+    private static final double ENVELOPE_MARGIN = 0.5;
 
     @Override
     public void run(Context context) throws IOException, InterruptedException {
@@ -103,41 +131,217 @@ public class PrevueMapper extends Mapper<NullWritable, NullWritable, NullWritabl
     }
 
     private void handleProduct(Product product, RecordSource recordSource, Context context) throws Exception {
+        List<Patch> patches = findPatches(product, recordSource, context);
+        if (patches.isEmpty()) {
+            return;
+        }
+        Configuration conf = context.getConfiguration();
+        Path workOutputPath = FileOutputFormat.getWorkOutputPath(context);
+        int numThreads = Math.max(1, Math.min(patches.size(),
+                                              conf.getInt(CALVALUS_PREVUE_NUM_THREADS, conf.getInt(MRJobConfig.MAP_CPU_VCORES,
+                                                                                                   MRJobConfig.DEFAULT_MAP_CPU_VCORES))));
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(patches.size());
+            for (Patch patch : patches) {
+                Path outputPath = new Path(new Path(workOutputPath, patch.id), product.getName() + ".txt");
+                futures.add(executor.submit(() -> {
+                    writePatch(product, patch.location, outputPath, conf);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                context.setStatus("ID " + patches.get(i).id);
+                getResult(futures.get(i), context);
+                context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Written ASCII products").increment(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the reference records inside of the product. Records outside of the geographic
+     * envelope of the product are sorted out before they are geo-coded.
+     */
+    private List<Patch> findPatches(Product product, RecordSource recordSource, Context context) throws Exception {
         DecimalFormat decimalFormat = new DecimalFormat("000");
+        GeoCoding geoCoding = product.getSceneGeoCoding();
+        Envelope envelope = getGeoEnvelope(product);
+        List<Patch> patches = new ArrayList<>();
+        PixelPos pixelPos = new PixelPos();
         for (Record record : recordSource.getRecords()) {
             context.progress();
             GeoPos location = record.getLocation();
-            PixelPos pixelPos = product.getSceneGeoCoding().getPixelPos(location, null);
+            if (envelope != null && !envelope.contains(location.getLon(), location.getLat())) {
+                continue;
+            }
+            geoCoding.getPixelPos(location, pixelPos);
             if (product.containsPixel(pixelPos)) {
                 Double id = (Double) record.getAttributeValues()[0];
-                String idAsString = decimalFormat.format(id);
-                context.setStatus("ID " + idAsString);
-
-                ReprojectionOp reprojectionOp;
-                if (product.getProductType().contains("_FSG_")) {
-                    reprojectionOp = getUtmReprojectionOp(product, location);
-                } else {
-                    reprojectionOp = getLatLonReprojectionOp(product, location);
+                patches.add(new Patch(decimalFormat.format(id), location));
+            }
+        }
+        return patches;
+    }
+
+    /**
+     * @return the lat/lon envelope of the product boundary with a margin,
+     * or null if the product crosses the anti-meridian or a pole and records cannot be filtered this way
+     */
+    static Envelope getGeoEnvelope(Product product) {
+        Rectangle region = new Rectangle(0, 0, product.getSceneRasterWidth(), product.getSceneRasterHeight());
+        int step = Math.max(1, Math.min(region.width, region.height) / 8);
+        GeoPos[] geoPoints = ProductUtils.createGeoBoundary(product, region, step, true);
+        Envelope envelope = new Envelope();
+        for (GeoPos geoPoint : geoPoints) {
+            if (!geoPoint.isValid()) {
+                return null;
+            }
+            envelope.expandToInclude(geoPoint.getLon(), geoPoint.getLat());
+        }
+        if (envelope.isNull() || envelope.getWidth() > 180.0 || envelope.getMinX() < -180.0 || envelope.getMaxX() > 180.0) {
+            return null;
+        }
+        // the boundary is sampled, its edges may bulge out between the samples
+        envelope.expandBy(ENVELOPE_MARGIN);
+        return envelope;
+    }
+
+    private void writePatch(Product product, GeoPos location, Path outputPath, Configuration conf) throws Exception {
+        boolean utm = product.getProductType().contains("_FSG_");
+        ReprojectionOp reprojectionOp = null;
+        SubsetOp subsetOp = null;
+        try {
+            Product sourceProduct = product;
+            // the reprojection only needs the pixels around the patch. A subset keeps a map geo-coding unchanged,
+            // but approximates a tie-point geo-coding anew, which would shift the patches of MERIS RR and the like.
+            if (product.getSceneGeoCoding() instanceof CrsGeoCoding) {
+                double[] outline = utm ? getUtmPatchOutline(location) : getLatLonPatchOutline(location);
+                Rectangle sourceWindow = getSourceWindow(product.getSceneGeoCoding(), outline,
+                                                         product.getSceneRasterWidth(), product.getSceneRasterHeight());
+                if (sourceWindow != null) {
+                    subsetOp = new SubsetOp();
+                    subsetOp.setSourceProduct(product);
+                    subsetOp.setRegion(sourceWindow);
+                    subsetOp.setCopyMetadata(false);
+                    sourceProduct = subsetOp.getTargetProduct();
+                    sourceProduct.setName(product.getName());
                 }
-                Product targetProduct = reprojectionOp.getTargetProduct();
+            }
+            if (utm) {
+                reprojectionOp = getUtmReprojectionOp(sourceProduct, location);
+            } else {
+                reprojectionOp = getLatLonReprojectionOp(sourceProduct, location);
+            }
+            Product targetProduct = reprojectionOp.getTargetProduct();
+
+            // NO metadata
+            targetProduct.getMetadataRoot().getElementGroup().removeAll();
 
-                // NO metadata
-                targetProduct.getMetadataRoot().getElementGroup().removeAll();
+            FileSystem fileSystem = outputPath.getFileSystem(conf);
+            FSDataOutputStream outputStream = fileSystem.create(outputPath);
+            Writer writer = new OutputStreamWriter(outputStream);
 
-                Path outputDir = new Path(FileOutputFormat.getWorkOutputPath(context), idAsString);
-                Path outputPath = new Path(outputDir, product.getName() + ".txt");
+            ProductWriter ascii = ProductIO.getProductWriter("BEAM-ASCII");
+            ascii.writeProductNodes(targetProduct, writer);
+            ascii.close();
+        } finally {
+            if (reprojectionOp != null) {
+                reprojectionOp.dispose();
+            }
+            if (subsetOp != null) {
+                subsetOp.dispose();
+            }
+        }
+    }
 
-                FileSystem fileSystem = outputPath.getFileSystem(context.getConfiguration());
-                FSDataOutputStream outputStream = fileSystem.create(outputPath);
-                Writer writer = new OutputStreamWriter(outputStream);
+    /**
+     * @return the lon/lat positions along the border of the lat/lon patch, as pairs of lon and lat
+     */
+    static double[] getLatLonPatchOutline(GeoPos location) {
+        return getPatchOutline(location.getLon(), location.getLat(), LAT_LON_PIXEL_SIZE);
+    }
 
-                ProductWriter ascii = ProductIO.getProductWriter("BEAM-ASCII");
-                ascii.writeProductNodes(targetProduct, writer);
-                ascii.close();
+    /**
+     * @return the lon/lat positions along the border of the UTM patch, as pairs of lon and lat
+     */
+    static double[] getUtmPatchOutline(GeoPos location) throws Exception {
+        CoordinateReferenceSystem crsUtmAutomatic = getCRSUtmAutomatic(location);
+        MathTransform transform = CRS.findMathTransform(DefaultGeographicCRS.WGS84, crsUtmAutomatic);
+        double[] center = new double[2];
+        transform.transform(new double[]{location.getLon(), location.getLat()}, 0, center, 0, 1);
+        double[] outline = getPatchOutline(center[0], center[1], UTM_PIXEL_SIZE);
+        transform.inverse().transform(outline, 0, outline, 0, outline.length / 2);
+        return outline;
+    }
 
-                context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Written ASCII products").increment(1);
+    /**
+     * @return the positions along the border of a patch of PATCH_SIZE pixels, in patch coordinates
+     */
+    private static double[] getPatchOutline(double easting, double northing, double pixelSize) {
+        // the reference pixel is at the given easting and northing, see the reprojection parameters
+        double minX = easting - REFERENCE_PIXEL * pixelSize;
+        double maxY = northing + REFERENCE_PIXEL * pixelSize;
+        double size = PATCH_SIZE * pixelSize;
+        double[] outline = new double[4 * OUTLINE_STEPS * 2];
+        int i = 0;
+        for (int step = 0; step < OUTLINE_STEPS; step++) {
+            double offset = size * step / OUTLINE_STEPS;
+            outline[i++] = minX + offset;
+            outline[i++] = maxY;
+            outline[i++] = minX + size;
+            outline[i++] = maxY - offset;
+            outline[i++] = minX + size - offset;
+            outline[i++] = maxY - size;
+            outline[i++] = minX;
+            outline[i++] = maxY - size + offset;
+        }
+        return outline;
+    }
 
-                reprojectionOp.dispose();
+    /**
+     * @param outline pairs of lon and lat along the border of the patch
+     * @return the source pixels covering the patch with a margin,
+     * or null if the patch is not completely geo-coded and the whole product is needed
+     */
+    static Rectangle getSourceWindow(GeoCoding geoCoding, double[] outline, int width, int height) {
+        int x0 = Integer.MAX_VALUE;
+        int y0 = Integer.MAX_VALUE;
+        int x1 = Integer.MIN_VALUE;
+        int y1 = Integer.MIN_VALUE;
+        GeoPos geoPos = new GeoPos();
+        PixelPos pixelPos = new PixelPos();
+        for (int i = 0; i < outline.length; i += 2) {
+            geoPos.setLocation(outline[i + 1], outline[i]);
+            geoCoding.getPixelPos(geoPos, pixelPos);
+            if (!pixelPos.isValid()) {
+                return null;
+            }
+            x0 = Math.min(x0, (int) Math.floor(pixelPos.x));
+            y0 = Math.min(y0, (int) Math.floor(pixelPos.y));
+            x1 = Math.max(x1, (int) Math.floor(pixelPos.x));
+            y1 = Math.max(y1, (int) Math.floor(pixelPos.y));
+        }
+        Rectangle window = new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+        window.grow(SOURCE_WINDOW_MARGIN, SOURCE_WINDOW_MARGIN);
+        Rectangle sourceWindow = window.intersection(new Rectangle(width, height));
+        return sourceWindow.isEmpty() ? null : sourceWindow;
+    }
+
+    private static void getResult(Future<?> future, Context context) throws Exception {
+        while (true) {
+            try {
+                future.get(1, TimeUnit.MINUTES);
+                return;
+            } catch (TimeoutException e) {
+                // keep the task alive while the patches are written
+                context.progress();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
             }
         }
     }
@@ -146,12 +350,12 @@ public class PrevueMapper extends Mapper<NullWritable, NullWritable, NullWritabl
         ReprojectionOp reprojectionOp = new ReprojectionOp();
         reprojectionOp.setSourceProduct(product);
         reprojectionOp.setParameter("crs", DefaultGeographicCRS.WGS84.toWKT());
-        reprojectionOp.setParameter("referencePixelX", 25.5);
-        reprojectionOp.setParameter("referencePixelY", 25.5);
-        reprojectionOp.setParameter("pixelSizeX", 1.0 / 112.0);
-        reprojectionOp.setParameter("pixelSizeY", 1.0 / 112.0);
-        reprojectionOp.setParameter("width", 49);
-        reprojectionOp.setParameter("height", 49);
+        reprojectionOp.setParameter("referencePixelX", REFERENCE_PIXEL);
+        reprojectionOp.setParameter("referencePixelY", REFERENCE_PIXEL);
+        reprojectionOp.setParameter("pixelSizeX", LAT_LON_PIXEL_SIZE);
+        reprojectionOp.setParameter("pixelSizeY", LAT_LON_PIXEL_SIZE);
+        reprojectionOp.setParameter("width", PATCH_SIZE);
+        reprojectionOp.setParameter("height", PATCH_SIZE);
         reprojectionOp.setParameter("easting", (double) location.getLon());
         reprojectionOp.setParameter("northing", (double) location.getLat());
         return reprojectionOp;
@@ -168,12 +372,12 @@ public class PrevueMapper extends Mapper<NullWritable, NullWritable, NullWritabl
         ReprojectionOp reprojectionOp = new ReprojectionOp();
         reprojectionOp.setSourceProduct(product);
         reprojectionOp.setParameter("crs", crsUtmAutomatic.toWKT());
-        reprojectionOp.setParameter("referencePixelX", 25.5);
-        reprojectionOp.setParameter("referencePixelY", 25.5);
-        reprojectionOp.setParameter("pixelSizeX", 260.0);
-        reprojectionOp.setParameter("pixelSizeY", 260.0);
-        reprojectionOp.setParameter("width", 49);
-        reprojectionOp.setParameter("height", 49);
+        reprojectionOp.setParameter("referencePixelX", REFERENCE_PIXEL);
+        reprojectionOp.setParameter("referencePixelY", REFERENCE_PIXEL);
+        reprojectionOp.setParameter("pixelSizeX", UTM_PIXEL_SIZE);
+        reprojectionOp.setParameter("pixelSizeY", UTM_PIXEL_SIZE);
+        reprojectionOp.setParameter("width", PATCH_SIZE);
+        reprojectionOp.setParameter("height", PATCH_SIZE);
         reprojectionOp.setParameter("easting", centerUTM.getOrdinate(0));
         reprojectionOp.setParameter("northing", centerUTM.getOrdinate(1));
         return reprojectionOp;
@@ -238,6 +442,17 @@ public class PrevueMapper extends Mapper<NullWritable, NullWritable, NullWritabl
         return "UTM Zone " + zoneIndex + (south ? ", South" : "");
     }
 
+    private static class Patch {
+
+        private final String id;
+        private final GeoPos location;
+
+        private Patch(String id, GeoPos location) {
+            this.id = id;
+            this.location = location;
+        }
+    }
+
     private RecordSource getReferenceRecordSource(MAConfig maConfig, Configuration conf) {
         final RecordSource referenceRecordSource;
         try {
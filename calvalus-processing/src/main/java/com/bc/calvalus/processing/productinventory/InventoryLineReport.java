@@ -19,6 +19,7 @@ package com.bc.calvalus.processing.productinventory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.esa.snap.core.datamodel.ProductData;
 
 import java.io.BufferedReader;
 import java.io.FileOutputStream;
@@ -48,10 +49,8 @@ public class InventoryLineReport {
         fileOutputStream.close();
     }
     private static void process(String year, String res, PrintStream out) throws IOException {
-        ProductInventory amorgosInventory = createInventory(getURL(year, res, "amorgos"));
-        int[][] amorgosLines = countLines(amorgosInventory);
-        ProductInventory l1bInventory = createInventory(getURL(year, res, "l1b"));
-        int[][] l1bLines = countLines(l1bInventory);
+        int[][] amorgosLines = countLines(getURL(year, res, "amorgos"));
+        int[][] l1bLines = countLines(getURL(year, res, "l1b"));
 
         out.println("DayOfYear\tL1B available\tL1B toProcess\tAmorgos available\tAmorgos toProcess");
         for (int doy = 0; doy < l1bLines[0].length; doy++) {
@@ -60,12 +59,24 @@ public class InventoryLineReport {
         }
     }
 
-    private static int[][] countLines(ProductInventory l1bInventory) {
+    /**
+     * Sums up the lines per day of year while reading the inventory, the entries are not kept.
+     */
+    private static int[][] countLines(String inventoryPath) throws IOException {
         int[][] lines = new int[2][367];
-        for (ProductInventoryEntry productInventoryEntry : l1bInventory.getAll()) {
-            int dayOfYear = productInventoryEntry.getStartTime().getAsCalendar().get(Calendar.DAY_OF_YEAR);
-            lines[0][dayOfYear] += productInventoryEntry.getLength();
-            lines[1][dayOfYear] += productInventoryEntry.getProcessLength();
+        Path path = new Path(inventoryPath);
+        FileSystem fileSystem = path.getFileSystem(new Configuration());
+        if (!fileSystem.exists(path)) {
+            return lines;
+        }
+        Calendar calendar = ProductData.UTC.createCalendar();
+        try (Reader reader = new BufferedReader(new InputStreamReader(fileSystem.open(path)))) {
+            ProductInventory.readEntries(reader, productInventoryEntry -> {
+                calendar.setTime(productInventoryEntry.getStartTime().getAsDate());
+                int dayOfYear = calendar.get(Calendar.DAY_OF_YEAR);
+                lines[0][dayOfYear] += productInventoryEntry.getLength();
+                lines[1][dayOfYear] += productInventoryEntry.getProcessLength();
+            });
         }
         return lines;
     }
@@ -81,18 +92,4 @@ public class InventoryLineReport {
         }
         return String.format("hdfs://master00:9000/calvalus/inventory/%s/%s/part-r-00000", typeAndVersion, year);
     }
-
-    private static ProductInventory createInventory(String inventoryPath) throws IOException {
-        Path path = new Path(inventoryPath);
-        FileSystem fileSystem = path.getFileSystem(new Configuration());
-        if (!fileSystem.exists(path)) {
-            return null;
-        }
-        Reader reader = new BufferedReader(new InputStreamReader(fileSystem.open(path)));
-        try {
-            return ProductInventory.createInventory(reader);
-        } finally {
-            reader.close();
-        }
-    }
 }
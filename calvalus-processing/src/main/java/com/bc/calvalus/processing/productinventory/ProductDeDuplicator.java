@@ -34,7 +34,7 @@ public class ProductDeDuplicator {
 
     private static class ProductInventoryEntryComparator implements Comparator<ProductInventoryEntry> {
         public int compare(ProductInventoryEntry e1, ProductInventoryEntry e2) {
-            return e1.getStartTime().getAsDate().compareTo(e2.getStartTime().getAsDate());
+            return Long.compare(getMJDMicros(e1.getStartTime()), getMJDMicros(e2.getStartTime()));
         }
     }
 
@@ -45,10 +45,33 @@ public class ProductDeDuplicator {
         Collections.sort(inventory, new ProductInventoryEntryComparator());
     }
 
+    /**
+     * Determines the entries of the source inventory that have no counterpart in the target inventory.
+     * An entry is found if a target entry starts at its start time or at the start of the tile row
+     * (64 lines) containing its first line to process, or if a target entry stops at the end of the
+     * tile row containing its last line to process.
+     * <p/>
+     * The start and stop times of the target are parsed once into sorted arrays,
+     * so that each source entry is looked up in logarithmic time.
+     *
+     * @return the missing entries, in the order of the source inventory
+     */
     public static List<ProductInventoryEntry> missing(List<ProductInventoryEntry> src, List<ProductInventoryEntry> target) {
+        long[] targetStartMicros = new long[target.size()];
+        long[] targetStopMicros = new long[target.size()];
+        int numTargets = 0;
+        for (ProductInventoryEntry e : target) {
+            if (e.getProcessLength() != 0) {
+                targetStartMicros[numTargets] = getMJDMicros(e.getStartTime());
+                targetStopMicros[numTargets] = getMJDMicros(e.getStopTime());
+                numTargets++;
+            }
+        }
+        Arrays.sort(targetStartMicros, 0, numTargets);
+        Arrays.sort(targetStopMicros, 0, numTargets);
+
         List<ProductInventoryEntry> missing = new ArrayList<ProductInventoryEntry>();
         for (ProductInventoryEntry srcEntry : src) {
-            boolean found = false;
             int processLength = srcEntry.getProcessLength();
             int processStartLine = srcEntry.getProcessStartLine();
 
@@ -62,27 +85,10 @@ public class ProductDeDuplicator {
                 long perLineMicros = (endMicros - startMicros) / (srcEntry.getLength() - 1);
 
                 long newStartTime = startMicros + a0 * perLineMicros;
-                for (ProductInventoryEntry e : target) {
-                    if (e.getProcessLength() != 0) {
-                        long targetStartMicros = getMJDMicros(e.getStartTime());
-                        if (targetStartMicros == newStartTime || targetStartMicros == startMicros) {
-                            found = true;
-                            break;
-                        }
-                    }
-                }
-                if (!found) {
-                    long newStopTime = startMicros + a1 * perLineMicros;
-                    for (ProductInventoryEntry e : target) {
-                        if (e.getProcessLength() != 0) {
-                            long targetStopMicros = getMJDMicros(e.getStopTime());
-                            if (targetStopMicros == newStopTime) {
-                                found = true;
-                                break;
-                            }
-                        }
-                    }
-                }
+                long newStopTime = startMicros + a1 * perLineMicros;
+                boolean found = Arrays.binarySearch(targetStartMicros, 0, numTargets, newStartTime) >= 0 ||
+                                Arrays.binarySearch(targetStartMicros, 0, numTargets, startMicros) >= 0 ||
+                                Arrays.binarySearch(targetStopMicros, 0, numTargets, newStopTime) >= 0;
                 if (!found) {
                     missing.add(srcEntry);
                 }
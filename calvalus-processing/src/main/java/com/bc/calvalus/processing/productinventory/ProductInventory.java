@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * An inventory for products. Contains only star/stop time and first and last line to be processed.
@@ -60,14 +61,25 @@ public class ProductInventory {
     }
 
     public static ProductInventory createInventory(Reader reader) throws IOException {
+        ProductInventory productInventory = new ProductInventory();
+        readEntries(reader, entry -> productInventory.map.put(entry.getProductName(), entry));
+        return productInventory;
+    }
+
+    /**
+     * Passes the entries of an inventory to the consumer one by one while reading,
+     * without keeping them. Records that cannot be parsed are skipped.
+     */
+    public static void readEntries(Reader reader, Consumer<ProductInventoryEntry> consumer) throws IOException {
         CsvReader csvReader = new CsvReader(reader, new char[]{'\t'});
         String[] strings = csvReader.readRecord();
-        ProductInventory productInventory = new ProductInventory();
         while (strings != null) {
-            productInventory.addEntry(strings);
+            ProductInventoryEntry entry = parseEntry(strings);
+            if (entry != null) {
+                consumer.accept(entry);
+            }
             strings = csvReader.readRecord();
         }
-        return productInventory;
     }
 
     public ProductInventory() {
@@ -75,15 +87,23 @@ public class ProductInventory {
     }
 
     void addEntry(String[] strings) {
+        ProductInventoryEntry entry = parseEntry(strings);
+        if (entry != null) {
+            map.put(entry.getProductName(), entry);
+        }
+    }
+
+    private static ProductInventoryEntry parseEntry(String[] strings) {
         if (strings.length == ProductInventoryEntry.NUM_ENTRIES) {
             String productName = strings[0];
             try {
                 ProductInventoryEntry entry = ProductInventoryEntry.create(strings[1], strings[2], strings[3], strings[4], strings[5], strings[6]);
                 entry.setProductName(productName);
-                map.put(productName, entry);
+                return entry;
             } catch (ParseException ignore) {
             }
         }
+        return null;
     }
 
     public ProductInventoryEntry getEntry(String productName) {
@@ -85,10 +85,37 @@ public class RAKey implements WritableComparable<RAKey> {
     }
 
 
+    /**
+     * Sorts by region id and time, on the serialised keys. The region id is written after the time.
+     */
+    public static class SortComparator extends WritableComparator {
+
+        public SortComparator() {
+            super(RAKey.class);
+        }
+
+        @Override
+        public int compare(WritableComparable key1, WritableComparable key2) {
+            return ((RAKey) key1).compareTo((RAKey) key2);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int compare = Integer.compare(readInt(b1, s1 + 8), readInt(b2, s2 + 8));
+            if (compare == 0) {
+                compare = Long.compare(readLong(b1, s1), readLong(b2, s2));
+            }
+            return compare;
+        }
+    }
+
+    /**
+     * Groups by region id, on the serialised keys.
+     */
     public static class GroupComparator extends WritableComparator {
 
         protected GroupComparator() {
-            super(RAKey.class, true);
+            super(RAKey.class);
         }
 
         @Override
@@ -97,6 +124,15 @@ public class RAKey implements WritableComparable<RAKey> {
             RAKey thatKey = (RAKey) key2;
             return Integer.compare(thisKey.getRegionId(), thatKey.getRegionId());
         }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            return Integer.compare(readInt(b1, s1 + 8), readInt(b2, s2 + 8));
+        }
     }
 
+    // register the sort comparator
+    static {
+        WritableComparator.define(RAKey.class, new SortComparator());
+    }
 }
@@ -72,6 +72,7 @@ public class RAWorkflowItem extends HadoopWorkflowItem {
         job.setMapOutputValueClass(RAValue.class);
 
         job.setPartitionerClass(RAPartitioner.class);
+        job.setSortComparatorClass(RAKey.SortComparator.class);
         job.setGroupingComparatorClass(RAKey.GroupComparator.class);
 
         job.setNumReduceTasks(1); // TODO
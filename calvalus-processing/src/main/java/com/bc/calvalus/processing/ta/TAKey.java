@@ -94,22 +94,40 @@ public class TAKey implements WritableComparable {
         return "TAKey(" + getRegionId() + "," + getTime() + "," + getBinIndex() + ")";
     }
 
+    /**
+     * Sorts by region, time and bin index, on the serialised keys.
+     */
     static class TAKeyComparator extends WritableComparator {
 
         protected TAKeyComparator() {
-            super(TAKey.class, true);
+            super(TAKey.class);
         }
 
         @Override
         public int compare(WritableComparable key1, WritableComparable key2) {
             return ((TAKey) key1).compareTo(key2);
         }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int compare = TAKey.compare(readInt(b1, s1), readInt(b2, s2));
+            if (compare == 0) {
+                compare = TAKey.compare(readLong(b1, s1 + 4), readLong(b2, s2 + 4));
+                if (compare == 0) {
+                    compare = TAKey.compare(readLong(b1, s1 + 12), readLong(b2, s2 + 12));
+                }
+            }
+            return compare;
+        }
     }
 
+    /**
+     * Groups by region, on the serialised keys.
+     */
     static class TAKeyRegionComparator extends WritableComparator {
 
         protected TAKeyRegionComparator() {
-            super(TAKey.class, true);
+            super(TAKey.class);
         }
 
         @Override
@@ -117,6 +135,15 @@ public class TAKey implements WritableComparable {
             //return Integer.compare(((TAKey) key1).getRegionId(), ((TAKey) key2).getRegionId());
             return TAKey.compare(((TAKey) key1).getRegionId(), ((TAKey) key2).getRegionId());
         }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            return TAKey.compare(readInt(b1, s1), readInt(b2, s2));
+        }
     }
 
+    // register the sort comparator
+    static {
+        WritableComparator.define(TAKey.class, new TAKeyComparator());
+    }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.utils;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.PixelPos;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Aggregates the pixels of a source band into the cells of a coarse target grid.
+ * <p/>
+ * Each cell covers a fixed size window of source pixels. The windows are determined once,
+ * the source band is read in one strip per row of cells, and the rows are aggregated concurrently.
+ * The strips are read from the geophysical image of the band, which can be read concurrently,
+ * unlike the product reader behind {@link Band#readPixels}.
+ * Parts of a window outside of the source raster do not contribute to the cell.
+ */
+public class GridAggregator {
+
+    /**
+     * Adds the contribution of a source pixel to the values of the cell that contains it.
+     * Must not keep state, it is called concurrently for different cells.
+     */
+    public interface PixelAccumulator {
+
+        void accumulate(float sample, float[] cellValues);
+    }
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final int[] x0;
+    private final int[] y0;
+    private final int[] x1;
+    private final int[] y1;
+
+    /**
+     * @param gridGeoCoding   the geo-coding of the target grid, one pixel per cell
+     * @param sourceGeoCoding the geo-coding of the source raster
+     * @param windowWidth     the width of the source window centred at the upper left corner of each cell
+     * @param windowHeight    the height of the source window centred at the upper left corner of each cell
+     */
+    public static GridAggregator create(GeoCoding gridGeoCoding, int gridWidth, int gridHeight,
+                                        GeoCoding sourceGeoCoding, int sourceWidth, int sourceHeight,
+                                        int windowWidth, int windowHeight) {
+        int[] windowX = new int[gridWidth * gridHeight];
+        int[] windowY = new int[gridWidth * gridHeight];
+        PixelPos pixelPos = new PixelPos();
+        GeoPos geoPos = new GeoPos();
+        for (int cellY = 0; cellY < gridHeight; cellY++) {
+            for (int cellX = 0; cellX < gridWidth; cellX++) {
+                int cellIndex = cellY * gridWidth + cellX;
+                pixelPos.setLocation(cellX, cellY);
+                gridGeoCoding.getGeoPos(pixelPos, geoPos);
+                sourceGeoCoding.getPixelPos(geoPos, pixelPos);
+                if (pixelPos.isValid()) {
+                    windowX[cellIndex] = (int) Math.floor(pixelPos.x - windowWidth / 2.0);
+                    windowY[cellIndex] = (int) Math.floor(pixelPos.y - windowHeight / 2.0);
+                } else {
+                    // an empty window
+                    windowX[cellIndex] = sourceWidth;
+                    windowY[cellIndex] = sourceHeight;
+                }
+            }
+        }
+        return new GridAggregator(gridWidth, gridHeight, windowX, windowY, windowWidth, windowHeight,
+                                  sourceWidth, sourceHeight);
+    }
+
+    GridAggregator(int gridWidth, int gridHeight, int[] windowX, int[] windowY, int windowWidth, int windowHeight,
+                   int sourceWidth, int sourceHeight) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        int numCells = gridWidth * gridHeight;
+        x0 = new int[numCells];
+        y0 = new int[numCells];
+        x1 = new int[numCells];
+        y1 = new int[numCells];
+        for (int i = 0; i < numCells; i++) {
+            x0[i] = Math.max(0, windowX[i]);
+            y0[i] = Math.max(0, windowY[i]);
+            x1[i] = Math.max(x0[i], Math.min(sourceWidth, windowX[i] + windowWidth));
+            y1[i] = Math.max(y0[i], Math.min(sourceHeight, windowY[i] + windowHeight));
+        }
+    }
+
+    /**
+     * @param numValues the number of values aggregated per cell
+     * @param numThreads the number of rows of cells aggregated concurrently
+     * @return the aggregated values, for each value the cells in row-major order
+     */
+    public float[][] aggregate(Band band, int numValues, PixelAccumulator accumulator, int numThreads) throws IOException {
+        float[][] cellValues = new float[numValues][gridWidth * gridHeight];
+        if (numThreads <= 1) {
+            for (int cellY = 0; cellY < gridHeight; cellY++) {
+                aggregateRow(band, cellY, accumulator, cellValues);
+            }
+            return cellValues;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, gridHeight));
+        try {
+            List<Future<?>> rows = new ArrayList<>(gridHeight);
+            for (int cellY = 0; cellY < gridHeight; cellY++) {
+                final int y = cellY;
+                rows.add(executor.submit(() -> {
+                    aggregateRow(band, y, accumulator, cellValues);
+                    return null;
+                }));
+            }
+            for (Future<?> row : rows) {
+                row.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return cellValues;
+    }
+
+    private void aggregateRow(Band band, int cellY, PixelAccumulator accumulator, float[][] cellValues) {
+        int rowOffset = cellY * gridWidth;
+        int stripX0 = Integer.MAX_VALUE;
+        int stripY0 = Integer.MAX_VALUE;
+        int stripX1 = Integer.MIN_VALUE;
+        int stripY1 = Integer.MIN_VALUE;
+        for (int i = rowOffset; i < rowOffset + gridWidth; i++) {
+            if (x0[i] < x1[i] && y0[i] < y1[i]) {
+                stripX0 = Math.min(stripX0, x0[i]);
+                stripY0 = Math.min(stripY0, y0[i]);
+                stripX1 = Math.max(stripX1, x1[i]);
+                stripY1 = Math.max(stripY1, y1[i]);
+            }
+        }
+        if (stripX0 >= stripX1) {
+            return;
+        }
+        int stripWidth = stripX1 - stripX0;
+        int stripHeight = stripY1 - stripY0;
+        Raster raster = band.getGeophysicalImage().getData(new Rectangle(stripX0, stripY0, stripWidth, stripHeight));
+        float[] strip = raster.getSamples(stripX0, stripY0, stripWidth, stripHeight, 0, new float[stripWidth * stripHeight]);
+
+        float[] values = new float[cellValues.length];
+        for (int i = rowOffset; i < rowOffset + gridWidth; i++) {
+            Arrays.fill(values, 0.0F);
+            for (int y = y0[i]; y < y1[i]; y++) {
+                int lineOffset = (y - stripY0) * stripWidth - stripX0;
+                for (int x = x0[i]; x < x1[i]; x++) {
+                    accumulator.accumulate(strip[lineOffset + x], values);
+                }
+            }
+            for (int v = 0; v < values.length; v++) {
+                cellValues[v][i] = values[v];
+            }
+        }
+    }
+}
@@ -44,7 +44,9 @@ import com.vividsolutions.jts.geom.Geometry;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.util.Progressable;
 import org.esa.snap.core.dataio.ProductIO;
 import org.esa.snap.core.datamodel.Product;
 
@@ -57,8 +59,21 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -77,6 +92,10 @@ public class VCMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
     private static final String COUNTER_GROUP_NAME_PRODUCTS = "Products";
     private static final Logger LOG = CalvalusLogger.getLogger();
     private static final AffineTransform IDENTITY = new AffineTransform();
+    private static final String CALVALUS_VC_NUM_THREADS = "calvalus.vc.numThreads";
+    private static final String WORKING_DIR_PREFIX = "vc-differentiation-";
+    private static final int DIFFERENTIATION_WORK = 5 + 30 + 5 + 1 + 1;
+    private static final int TERMINATION_TIMEOUT_SECONDS = 60;
 
     @Override
     public void run(Context context) throws IOException, InterruptedException {
@@ -171,68 +190,32 @@ public class VCMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
 
                 // handle all product produced by the differentiation processor
                 ProgressMonitor mainLoopPM = SubProgressMonitor.create(pm, progressForProcessing);
-                mainLoopPM.beginTask("Level 2", namedOutputs.length * (1 + 5 + 30 + 5 + 1) + (30 + 5 + 1));
-                for (KeywordHandler.NamedOutput namedOutput : namedOutputs) {
-                    context.progress();
-
-                    // save differentiation product
-                    File l1DiffFile = saveDifferentiationProduct(namedOutput, context);
-                    mainLoopPM.worked(1);
-
-                    Product l1DiffProduct = ProductIO.readProduct(namedOutput.getFile());
-
-                    // extract differentiation match-ups
-                    String diffPrefix = namedOutput.getName() + "_";
-                    NamedRecordSource differentiationMatchups = extractMatchups(context, maConfigWithoutExpression, referenceRecordHeader, pixelPosRecords, l1DiffProduct, diffPrefix, IDENTITY);
-                    mainLoopPM.worked(5);
-                    if (differentiationMatchups == null) {
-                        return;
-                    } else {
-                        namedRecordSources.add(differentiationMatchups);
-                    }
-                    l1DiffProduct.dispose();
-
-                    //  Level 2 processing
-                    LOG.info("Processing to Level 2: " + l1DiffFile);
-                    l2ProcessorAdapter.closeInputProduct();
-                    l2ProcessorAdapter.setInputFile(l1DiffFile);
-                    l2ProcessorAdapter.processSourceProduct(ProcessorAdapter.MODE.TARGET, SubProgressMonitor.create(mainLoopPM, 30));
-                    Product l2DiffProduct = l2ProcessorAdapter.openProcessedProduct();
-
-                    // extract Level 2 match-ups
-                    List<PixelPosProvider.PixelPosRecord> pixelPosRecords4L2 = pixelPosRecords;
-                    AffineTransform i2oTransform4L2 = l2ProcessorAdapter.getInput2OutputTransform();
-                    if (i2oTransform4L2 == null) {
-                        i2oTransform4L2 = new AffineTransform();
-                        referenceRecordSource = getReferenceRecordSource(maConfigWithoutExpression, regionGeometry, conf);
-
-                        try {
-                            PixelPosProvider pixelPosProvider = new PixelPosProvider(l2DiffProduct,
-                                                                                     PixelTimeProvider.create(l2DiffProduct),
-                                                                                     maConfigWithoutExpression.getMaxTimeDifference(),
-                                                                                     referenceRecordHeader.hasTime());
-                            pixelPosRecords4L2 = pixelPosProvider.computePixelPosRecords(referenceRecordSource.getRecords());
-                        } catch (Exception e) {
-                            throw new RuntimeException("Failed to retrieve input records.", e);
+                mainLoopPM.beginTask("Level 2", namedOutputs.length * DIFFERENTIATION_WORK + (30 + 5 + 1));
+                int numThreads = Math.min(namedOutputs.length,
+                                          conf.getInt(CALVALUS_VC_NUM_THREADS, conf.getInt(MRJobConfig.MAP_CPU_VCORES,
+                                                                                           MRJobConfig.DEFAULT_MAP_CPU_VCORES)));
+                if (numThreads <= 1) {
+                    for (KeywordHandler.NamedOutput namedOutput : namedOutputs) {
+                        context.progress();
+                        Differentiation differentiation = processDifferentiation(conf, namedOutput, l2ProcessorAdapter,
+                                                                                 maConfigWithoutExpression, referenceRecordHeader,
+                                                                                 pixelPosRecords, regionGeometry, mainLoopPM);
+                        NamedRecordSource[] matchups = saveDifferentiation(context, differentiation, l2ProcessorAdapter, mainLoopPM);
+                        if (matchups == null) {
+                            return;
                         }
+                        Collections.addAll(namedRecordSources, matchups);
                     }
-                    String l2Prefix = "L2_" + namedOutput.getName() + "_";
-                    NamedRecordSource l2Matchups = extractMatchups(context, maConfigWithoutExpression, referenceRecordHeader, pixelPosRecords4L2, l2DiffProduct, l2Prefix, i2oTransform4L2);
-                    mainLoopPM.worked(5);
-                    if (l2Matchups == null) {
+                } else {
+                    List<NamedRecordSource[]> matchupsList = processDifferentiationsConcurrently(context, namedOutputs, numThreads,
+                                                                                                 l2ProcessorAdapter, processingRectangle,
+                                                                                                 maConfigWithoutExpression, referenceRecordHeader,
+                                                                                                 pixelPosRecords, regionGeometry, mainLoopPM);
+                    if (matchupsList == null) {
                         return;
-                    } else {
-                        namedRecordSources.add(l2Matchups);
-                    }
-
-                    if (conf.getBoolean("calvalus.vc.outputL2", false)) {
-                        // TODO handle operators and graphs
-                        l2ProcessorAdapter.saveProcessedProducts(SubProgressMonitor.create(mainLoopPM, 1));
-                    } else {
-                        mainLoopPM.worked(1);
                     }
-                    if (l2DiffProduct != null) {
-                        l2DiffProduct.dispose();
+                    for (NamedRecordSource[] matchups : matchupsList) {
+                        Collections.addAll(namedRecordSources, matchups);
                     }
                 }
                 //  Level 2 processing of primary product
@@ -325,12 +308,24 @@ public class VCMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
                                               Product product,
                                               String prefix,
                                               AffineTransform i2oTransform) {
+        context.progress();
+        NamedRecordSource matchups = extractMatchups(maConfig, referenceRecordHeader, pixelPosRecords, product, prefix, i2oTransform);
+        if (matchups == null) {
+            context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Unused products").increment(1);
+        }
+        return matchups;
+    }
+
+    private NamedRecordSource extractMatchups(MAConfig maConfig,
+                                              Header referenceRecordHeader,
+                                              Iterable<PixelPosProvider.PixelPosRecord> pixelPosRecords,
+                                              Product product,
+                                              String prefix,
+                                              AffineTransform i2oTransform) {
         if (product == null) {
             LOG.info("Product is null: " + prefix);
-            context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Unused products").increment(1);
         } else {
             try {
-                context.progress();
                 return getMatchups(prefix, maConfig, referenceRecordHeader, pixelPosRecords, product, i2oTransform);
             } catch (Exception e) {
                 throw new RuntimeException("Failed to retrieve records from product: " + prefix + ".\n" + e.getMessage(), e);
@@ -339,6 +334,247 @@ public class VCMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
         return null;
     }
 
+    /**
+     * Processes one differentiation product to Level 2 and extracts the match-ups of both.
+     * Does not use the task context, so that it can run concurrently. Counting and writing to the
+     * task output is left to {@link #saveDifferentiation}.
+     */
+    private Differentiation processDifferentiation(Configuration conf,
+                                                   KeywordHandler.NamedOutput namedOutput,
+                                                   ProcessorAdapter l2ProcessorAdapter,
+                                                   MAConfig maConfigWithoutExpression,
+                                                   Header referenceRecordHeader,
+                                                   List<PixelPosProvider.PixelPosRecord> pixelPosRecords,
+                                                   Geometry regionGeometry,
+                                                   ProgressMonitor pm) throws IOException {
+        File l1DiffFile = new File(namedOutput.getFile());
+        Product l1DiffProduct = ProductIO.readProduct(l1DiffFile);
+
+        // extract differentiation match-ups
+        String diffPrefix = namedOutput.getName() + "_";
+        NamedRecordSource differentiationMatchups = extractMatchups(maConfigWithoutExpression, referenceRecordHeader, pixelPosRecords, l1DiffProduct, diffPrefix, IDENTITY);
+        pm.worked(5);
+        if (differentiationMatchups == null) {
+            return new Differentiation(namedOutput, null, null);
+        }
+        l1DiffProduct.dispose();
+
+        //  Level 2 processing
+        LOG.info("Processing to Level 2: " + l1DiffFile);
+        l2ProcessorAdapter.closeInputProduct();
+        l2ProcessorAdapter.setInputFile(l1DiffFile);
+        l2ProcessorAdapter.processSourceProduct(ProcessorAdapter.MODE.TARGET, SubProgressMonitor.create(pm, 30));
+        Product l2DiffProduct = l2ProcessorAdapter.openProcessedProduct();
+
+        // extract Level 2 match-ups
+        List<PixelPosProvider.PixelPosRecord> pixelPosRecords4L2 = pixelPosRecords;
+        AffineTransform i2oTransform4L2 = l2ProcessorAdapter.getInput2OutputTransform();
+        if (i2oTransform4L2 == null) {
+            i2oTransform4L2 = new AffineTransform();
+            RecordSource referenceRecordSource = getReferenceRecordSource(maConfigWithoutExpression, regionGeometry, conf);
+
+            try {
+                PixelPosProvider pixelPosProvider = new PixelPosProvider(l2DiffProduct,
+                                                                         PixelTimeProvider.create(l2DiffProduct),
+                                                                         maConfigWithoutExpression.getMaxTimeDifference(),
+                                                                         referenceRecordHeader.hasTime());
+                pixelPosRecords4L2 = pixelPosProvider.computePixelPosRecords(referenceRecordSource.getRecords());
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to retrieve input records.", e);
+            }
+        }
+        String l2Prefix = "L2_" + namedOutput.getName() + "_";
+        NamedRecordSource l2Matchups = extractMatchups(maConfigWithoutExpression, referenceRecordHeader, pixelPosRecords4L2, l2DiffProduct, l2Prefix, i2oTransform4L2);
+        pm.worked(5);
+        if (l2Matchups == null) {
+            return new Differentiation(namedOutput, null, null);
+        }
+        return new Differentiation(namedOutput, l2DiffProduct, new NamedRecordSource[]{differentiationMatchups, l2Matchups});
+    }
+
+    /**
+     * Saves the differentiation product and its Level 2 product, if requested, and counts a missing product.
+     * Runs on the task thread, because it writes to the task output.
+     *
+     * @return the differentiation and the Level 2 match-ups, or {@code null} if one of the products is missing
+     */
+    private NamedRecordSource[] saveDifferentiation(Context context,
+                                                    Differentiation differentiation,
+                                                    ProcessorAdapter l2ProcessorAdapter,
+                                                    ProgressMonitor pm) throws IOException {
+        saveDifferentiationProduct(differentiation.namedOutput, context);
+        pm.worked(1);
+        if (differentiation.matchups == null) {
+            context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Unused products").increment(1);
+            return null;
+        }
+        if (context.getConfiguration().getBoolean("calvalus.vc.outputL2", false)) {
+            // TODO handle operators and graphs
+            l2ProcessorAdapter.saveProcessedProducts(SubProgressMonitor.create(pm, 1));
+        } else {
+            pm.worked(1);
+        }
+        differentiation.l2Product.dispose();
+        return differentiation.matchups;
+    }
+
+    /**
+     * Processes the differentiation products on a bounded pool, each with its own Level 2 processor adapter.
+     * Executable processors run in separate working directories, so that their scripts and outputs do not collide.
+     * The workers only compute; the products are saved and counted here on the task thread, in the order of the
+     * differentiation outputs. If one differentiation fails, the processes of the others are killed.
+     *
+     * @return the match-ups per differentiation product, or {@code null} if one of the products is missing
+     */
+    private List<NamedRecordSource[]> processDifferentiationsConcurrently(Context context,
+                                                                          KeywordHandler.NamedOutput[] namedOutputs,
+                                                                          int numThreads,
+                                                                          ProcessorAdapter l2ProcessorAdapter,
+                                                                          Rectangle processingRectangle,
+                                                                          MAConfig maConfigWithoutExpression,
+                                                                          Header referenceRecordHeader,
+                                                                          List<PixelPosProvider.PixelPosRecord> pixelPosRecords,
+                                                                          Geometry regionGeometry,
+                                                                          ProgressMonitor pm) throws IOException, InterruptedException {
+        LOG.info("processing " + namedOutputs.length + " differentiation products with " + numThreads + " threads");
+        final Configuration conf = context.getConfiguration();
+        final boolean executable = l2ProcessorAdapter instanceof ExecutableProcessorAdapter;
+        final List<ProcessorAdapter> processorAdapters = new ArrayList<>(namedOutputs.length);
+        List<Differentiation> differentiations = Collections.emptyList();
+        try {
+            List<Callable<Differentiation>> tasks = new ArrayList<>(namedOutputs.length);
+            for (int i = 0; i < namedOutputs.length; i++) {
+                final KeywordHandler.NamedOutput namedOutput = namedOutputs[i];
+                final ProcessorAdapter processorAdapter = executable
+                        ? new ExecutableProcessorAdapter(context, "", createWorkingDir(WORKING_DIR_PREFIX + i))
+                        : ProcessorFactory.createAdapter(context);
+                processorAdapters.add(processorAdapter);
+                processorAdapter.setProcessingRectangle(processingRectangle);
+                // progress of the workers is reported by the waiting task thread
+                tasks.add(() -> processDifferentiation(conf, namedOutput, processorAdapter, maConfigWithoutExpression,
+                                                       referenceRecordHeader, pixelPosRecords, regionGeometry, ProgressMonitor.NULL));
+            }
+            differentiations = runConcurrently(tasks, numThreads, context, () -> {
+                for (ProcessorAdapter processorAdapter : processorAdapters) {
+                    if (processorAdapter instanceof ExecutableProcessorAdapter) {
+                        ((ExecutableProcessorAdapter) processorAdapter).cancel();
+                    }
+                }
+            });
+            pm.worked(namedOutputs.length * (DIFFERENTIATION_WORK - 2));
+            List<NamedRecordSource[]> matchupsList = new ArrayList<>(namedOutputs.length);
+            for (int i = 0; i < differentiations.size(); i++) {
+                NamedRecordSource[] matchups = saveDifferentiation(context, differentiations.get(i), processorAdapters.get(i), pm);
+                differentiations.set(i, null);
+                if (matchups == null) {
+                    return null;
+                }
+                matchupsList.add(matchups);
+            }
+            return matchupsList;
+        } finally {
+            for (Differentiation differentiation : differentiations) {
+                if (differentiation != null && differentiation.l2Product != null) {
+                    differentiation.l2Product.dispose();
+                }
+            }
+            for (ProcessorAdapter processorAdapter : processorAdapters) {
+                processorAdapter.dispose();
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks on a pool of the given number of threads and returns their results in the order of the tasks.
+     * The calling thread keeps the task alive while waiting. When a task fails, the {@code cancellation} is run
+     * to stop what the other tasks have started, and the failure is rethrown once all workers have terminated.
+     */
+    static <T> List<T> runConcurrently(List<Callable<T>> tasks,
+                                       int numThreads,
+                                       Progressable progressable,
+                                       Runnable cancellation) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<T>, Integer> indexes = new HashMap<>();
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                indexes.put(completionService.submit(tasks.get(i)), i);
+            }
+            List<T> results = new ArrayList<>(Collections.<T>nCopies(tasks.size(), null));
+            for (int done = 0; done < tasks.size(); ) {
+                Future<T> future = completionService.poll(1, TimeUnit.MINUTES);
+                if (future == null) {
+                    // keep the task alive while the processors are running
+                    progressable.progress();
+                } else {
+                    results.set(indexes.get(future), getResult(future));
+                    done++;
+                }
+            }
+            return results;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            cancellation.run();
+            throw e;
+        } finally {
+            executor.shutdownNow();
+            if (!executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warning("differentiation processing did not terminate within " + TERMINATION_TIMEOUT_SECONDS + " seconds");
+            }
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("differentiation processing failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * The outcome of processing one differentiation product. Without match-ups one of the products is missing.
+     */
+    private static class Differentiation {
+
+        private final KeywordHandler.NamedOutput namedOutput;
+        private final Product l2Product;
+        private final NamedRecordSource[] matchups;
+
+        private Differentiation(KeywordHandler.NamedOutput namedOutput, Product l2Product, NamedRecordSource[] matchups) {
+            this.namedOutput = namedOutput;
+            this.l2Product = l2Product;
+            this.matchups = matchups;
+        }
+    }
+
+    /**
+     * Creates a working directory below the task directory that links all entries of the task directory,
+     * in particular the localised processor archives, so that processor scripts find them relative to it.
+     */
+    private static File createWorkingDir(String name) throws IOException {
+        File taskDir = new File(".").getCanonicalFile();
+        File workingDir = new File(taskDir, name);
+        if (!workingDir.isDirectory() && !workingDir.mkdir()) {
+            throw new IOException("Failed to create working directory " + workingDir);
+        }
+        File[] entries = taskDir.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                java.nio.file.Path link = new File(workingDir, entry.getName()).toPath();
+                if (!entry.getName().startsWith(WORKING_DIR_PREFIX) && !Files.exists(link, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.createSymbolicLink(link, entry.toPath());
+                }
+            }
+        }
+        return workingDir;
+    }
+
     private void saveLevel1Product(File l1LocalFile, Context context) throws IOException {
         if (context.getConfiguration().getBoolean("calvalus.vc.outputL1", false)) {
             System.out.println("Saving l1 product = " + l1LocalFile.getName());
@@ -346,13 +582,12 @@ public class VCMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
         }
     }
 
-    private File saveDifferentiationProduct(KeywordHandler.NamedOutput namedOutput, Context context) throws IOException {
+    private void saveDifferentiationProduct(KeywordHandler.NamedOutput namedOutput, Context context) throws IOException {
         File l1DiffFile = new File(namedOutput.getFile());
         if (context.getConfiguration().getBoolean("calvalus.vc.outputL1Diff", false)) {
             System.out.println("Saving l1-diff product = " + l1DiffFile.getName());
             saveProduct(context, l1DiffFile);
         }
-        return l1DiffFile;
     }
 
     private void saveProduct(Context context, File l1DiffFile) throws IOException {
@@ -0,0 +1,78 @@
+package com.bc.calvalus.processing;
+
+import com.bc.calvalus.processing.hadoop.MultiProductSplit;
+import com.bc.calvalus.processing.hadoop.ProductSplit;
+import com.bc.ceres.core.ProgressMonitor;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.MapContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MultiProductProcessorTest {
+
+    private Configuration conf;
+    private MapContext context;
+    private ProcessorAdapter processorAdapter;
+    private List<String> processed;
+
+    @Before
+    public void setUp() throws Exception {
+        conf = new Configuration();
+        context = mock(MapContext.class);
+        when(context.getConfiguration()).thenReturn(conf);
+        when(context.getCounter(anyString(), anyString())).thenReturn(mock(Counter.class));
+        ProductSplit[] productSplits = new ProductSplit[3];
+        for (int i = 0; i < productSplits.length; i++) {
+            productSplits[i] = new ProductSplit(new Path("/in/p" + i), 10, new String[]{"hostA"});
+        }
+        when(context.getInputSplit()).thenReturn(new MultiProductSplit(productSplits, new String[]{"hostA"}));
+        processorAdapter = mock(ProcessorAdapter.class);
+        processed = new ArrayList<>();
+    }
+
+    @Test
+    public void testFailedProductFailsTheTask() throws Exception {
+        conf.setBoolean(JobConfigNames.CALVALUS_INPUT_TOLERATE_FAILED_PRODUCTS, true);
+        try {
+            MultiProductProcessor.process(context, processorAdapter, this::failSecondProduct);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertEquals("product 2 failed", expected.getMessage());
+        }
+        assertEquals(2, processed.size());
+    }
+
+    @Test
+    public void testFailedProductIsToleratedOnlyIfAllowed() throws Exception {
+        try {
+            MultiProductProcessor.process(context, processorAdapter, this::failSecondProduct, true);
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+        assertEquals(2, processed.size());
+
+        processed.clear();
+        conf.setBoolean(JobConfigNames.CALVALUS_INPUT_TOLERATE_FAILED_PRODUCTS, true);
+        MultiProductProcessor.process(context, processorAdapter, this::failSecondProduct, true);
+        assertEquals(3, processed.size());
+    }
+
+    private void failSecondProduct(ProcessorAdapter adapter, ProgressMonitor pm) throws IOException {
+        processed.add("product " + (processed.size() + 1));
+        if (processed.size() == 2) {
+            throw new IOException("product 2 failed");
+        }
+    }
+}
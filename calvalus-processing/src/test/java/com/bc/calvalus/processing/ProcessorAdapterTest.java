@@ -21,6 +21,9 @@ import org.apache.hadoop.fs.Path;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.File;
+import java.nio.file.Files;
+
 import static org.junit.Assert.*;
 
 public class ProcessorAdapterTest {
@@ -38,6 +41,29 @@ public class ProcessorAdapterTest {
         assertNull(ProcessorAdapter.getDatePart(new Path("MER.N1")));
     }
 
+    @Test
+    public void testDeleteLocalFile() throws Exception {
+        File dir = Files.createTempDirectory("processor-adapter").toFile();
+        File subDir = new File(dir, "sub");
+        try {
+            File file = new File(dir, "MER.N1");
+            File otherFile = new File(subDir, "MER.N1");
+            assertTrue(file.createNewFile());
+            assertTrue(subDir.mkdir());
+            assertTrue(otherFile.createNewFile());
+
+            ProcessorAdapter.deleteLocalFile(otherFile, dir);
+            assertTrue(otherFile.exists());
+            ProcessorAdapter.deleteLocalFile(file, dir);
+            assertFalse(file.exists());
+            ProcessorAdapter.deleteLocalFile(null, dir);
+        } finally {
+            new File(subDir, "MER.N1").delete();
+            subDir.delete();
+            dir.delete();
+        }
+    }
+
     @Ignore
     @Test
     public void testShallowCopyPatches() throws Exception {
@@ -0,0 +1,97 @@
+package com.bc.calvalus.processing.analysis;
+
+import org.apache.hadoop.conf.Configuration;
+import org.esa.snap.core.datamodel.ColorPaletteDef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class QuicklookAssetsTest {
+
+    private File assetDir;
+    private QuicklookAssets assets;
+
+    @Before
+    public void setUp() throws Exception {
+        assetDir = Files.createTempDirectory("quicklook-assets").toFile();
+        assets = new QuicklookAssets(new Configuration());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = assetDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        assetDir.delete();
+    }
+
+    @Test
+    public void testImageIsLoadedOnce() throws Exception {
+        File imageFile = new File(assetDir, "overlay.png");
+        ImageIO.write(new BufferedImage(4, 3, BufferedImage.TYPE_INT_ARGB), "png", imageFile);
+        String url = imageFile.toURI().toString();
+
+        BufferedImage image = assets.getImage(url);
+        assertEquals(4, image.getWidth());
+        assertSame(image, assets.getImage(url));
+    }
+
+    @Test
+    public void testChangedImageIsLoadedAgain() throws Exception {
+        File imageFile = new File(assetDir, "overlay.png");
+        ImageIO.write(new BufferedImage(4, 3, BufferedImage.TYPE_INT_ARGB), "png", imageFile);
+        String url = imageFile.toURI().toString();
+        BufferedImage image = assets.getImage(url);
+
+        ImageIO.write(new BufferedImage(8, 6, BufferedImage.TYPE_INT_ARGB), "png", imageFile);
+        imageFile.setLastModified(imageFile.lastModified() + 10000);
+
+        BufferedImage changedImage = assets.getImage(url);
+        assertNotSame(image, changedImage);
+        assertEquals(8, changedImage.getWidth());
+    }
+
+    @Test
+    public void testColorPaletteIsCopied() throws Exception {
+        File cpdFile = new File(assetDir, "chl.cpd");
+        try (Writer writer = new FileWriter(cpdFile)) {
+            writer.write("numPoints=3\n" +
+                         "color0=0,0,0\nsample0=0.0\n" +
+                         "color1=0,255,0\nsample1=5.0\n" +
+                         "color2=255,255,255\nsample2=10.0\n");
+        }
+        String url = cpdFile.toURI().toString();
+
+        ColorPaletteDef colorPalette = assets.getColorPalette(url);
+        assertEquals(3, colorPalette.getNumPoints());
+        colorPalette.getPointAt(1).setSample(7.0);
+
+        ColorPaletteDef otherColorPalette = assets.getColorPalette(url);
+        assertNotSame(colorPalette, otherColorPalette);
+        assertEquals(5.0, otherColorPalette.getPointAt(1).getSample(), 1e-6);
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingShapefile() throws Exception {
+        File zipFile = new File(assetDir, "empty.zip");
+        new ZipOutputStream(new FileOutputStream(zipFile)).close();
+        assets.getShapefile(zipFile.toURI().toString());
+    }
+}
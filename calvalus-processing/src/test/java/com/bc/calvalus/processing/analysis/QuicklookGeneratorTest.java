@@ -0,0 +1,102 @@
+package com.bc.calvalus.processing.analysis;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.esa.snap.core.datamodel.Product;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuicklookGeneratorTest {
+
+    private TaskAttemptContext context;
+    private Product product;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty("com.sun.media.jai.disableMediaLib", "true");
+        context = new TaskAttemptContextImpl(new Configuration(), new TaskAttemptID());
+        product = new Product("synthetic", "type", 1000, 500);
+        product.addBand("a", "X / 1000");
+        product.addBand("b", "Y / 500");
+        product.addBand("c", "(X + Y) / 1500");
+    }
+
+    @Test
+    public void testGetMaxLevel() throws Exception {
+        assertEquals(0, QuicklookGenerator.getMaxLevel(200, 100, 256));
+        assertEquals(0, QuicklookGenerator.getMaxLevel(256, 256, 256));
+        assertEquals(1, QuicklookGenerator.getMaxLevel(257, 10, 256));
+        assertEquals(2, QuicklookGenerator.getMaxLevel(1000, 500, 256));
+        assertEquals(8, QuicklookGenerator.getMaxLevel(50000, 25000, 256));
+    }
+
+    @Test
+    public void testCreateTiles() throws Exception {
+        Map<String, RenderedImage> tiles = new ConcurrentHashMap<>();
+        QuicklookGenerator generator = new QuicklookGenerator(context, product, createConfig());
+
+        int numLevels = generator.createTiles(256, 4, (level, tileX, tileY, tile) -> tiles.put(level + "/" + tileX + "/" + tileY, tile));
+
+        assertEquals(3, numLevels);
+        assertEquals(1 + 2 + 8, tiles.size());
+        assertTrue(tiles.containsKey("0/0/0"));
+        assertTrue(tiles.containsKey("1/1/0"));
+        assertTrue(tiles.containsKey("2/3/1"));
+        assertEquals(256, tiles.get("2/3/1").getWidth());
+        assertEquals(256, tiles.get("2/3/1").getHeight());
+    }
+
+    @Test
+    public void testFullResolutionTilesMatchTheImage() throws Exception {
+        Map<String, RenderedImage> tiles = new ConcurrentHashMap<>();
+        QuicklookGenerator generator = new QuicklookGenerator(context, product, createConfig());
+        BufferedImage image = (BufferedImage) generator.createImage();
+        generator.createTiles(256, 2, (level, tileX, tileY, tile) -> tiles.put(level + "/" + tileX + "/" + tileY, tile));
+
+        BufferedImage tile = (BufferedImage) tiles.get("2/1/1");
+        assertEquals(image.getRGB(300, 300), tile.getRGB(300 - 256, 300 - 256));
+        assertEquals(image.getRGB(511, 257), tile.getRGB(255, 1));
+    }
+
+    @Test
+    public void testTilesOfExpressionsWithSeveralLayerTrees() throws Exception {
+        Map<String, RenderedImage> tiles = new ConcurrentHashMap<>();
+        QuicklookGenerator generator = new QuicklookGenerator(context, product, createConfig("a * 1,b,c"));
+        BufferedImage image = (BufferedImage) generator.createImage();
+        // each thread gets a layer tree of its own, the virtual band of the expression is added once
+        generator.createTiles(256, 3, (level, tileX, tileY, tile) -> tiles.put(level + "/" + tileX + "/" + tileY, tile));
+
+        assertEquals(1 + 2 + 8, tiles.size());
+        BufferedImage tile = (BufferedImage) tiles.get("2/1/1");
+        assertEquals(image.getRGB(300, 300), tile.getRGB(300 - 256, 300 - 256));
+    }
+
+    private static Quicklooks.QLConfig createConfig() {
+        return createConfig("a,b,c");
+    }
+
+    private static Quicklooks.QLConfig createConfig(String rgbaExpressions) {
+        String xml = "<quicklooks>\n" +
+                     "  <configs>\n" +
+                     "    <config>\n" +
+                     "      <RGBAExpressions>" + rgbaExpressions + "</RGBAExpressions>\n" +
+                     "      <RGBAMinSamples>0,0,0</RGBAMinSamples>\n" +
+                     "      <RGBAMaxSamples>1,1,1</RGBAMaxSamples>\n" +
+                     "      <imageType>png</imageType>\n" +
+                     "      <tileSize>256</tileSize>\n" +
+                     "    </config>\n" +
+                     "  </configs>\n" +
+                     "</quicklooks>\n";
+        return Quicklooks.fromXml(xml).getConfigs()[0];
+    }
+}
@@ -0,0 +1,66 @@
+package com.bc.calvalus.processing.analysis;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.gpf.GPF;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders a tile pyramid of a synthetic 50000 x 25000 product to check that the memory used
+ * does not depend on the product size, e.g. with {@code -Xmx512m}. The heap in use is printed
+ * for every 1000 tiles.
+ * <p/>
+ * Usage: QuicklookPyramidMain [targetDir [tileSize]]
+ */
+public class QuicklookPyramidMain {
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("com.sun.media.jai.disableMediaLib", "true");  // disable native libraries for JAI
+        GPF.getDefaultInstance().getOperatorSpiRegistry().loadOperatorSpis();
+
+        File targetDir = new File(args.length > 0 ? args[0] : "ql-pyramid");
+        int tileSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+
+        Product product = new Product("synthetic", "type", 50000, 25000);
+        product.setPreferredTileSize(512, 512);
+        product.addBand("a", "sin(X * 0.001) * 0.5 + 0.5");
+        product.addBand("b", "cos(Y * 0.002) * 0.5 + 0.5");
+        product.addBand("c", "(X + Y) % 1000 / 1000");
+
+        String xml = "<quicklooks><configs><config>" +
+                     "<RGBAExpressions>a,b,c</RGBAExpressions>" +
+                     "<RGBAMinSamples>0,0,0</RGBAMinSamples>" +
+                     "<RGBAMaxSamples>1,1,1</RGBAMaxSamples>" +
+                     "<imageType>png</imageType>" +
+                     "<tileSize>" + tileSize + "</tileSize>" +
+                     "</config></configs></quicklooks>";
+        Quicklooks.QLConfig qlConfig = Quicklooks.fromXml(xml).getConfigs()[0];
+
+        TaskAttemptContextImpl context = new TaskAttemptContextImpl(new Configuration(), new TaskAttemptID());
+        AtomicInteger tileCount = new AtomicInteger();
+        long startTime = System.currentTimeMillis();
+        int numLevels = new QuicklookGenerator(context, product, qlConfig).createTiles(
+                qlConfig.getTileSize(), Runtime.getRuntime().availableProcessors(), (level, tileX, tileY, tile) -> {
+                    File tileFile = new File(targetDir, level + "/" + tileX + "/" + tileY + "." + qlConfig.getImageType());
+                    if (!tileFile.getParentFile().isDirectory() && !tileFile.getParentFile().mkdirs()) {
+                        throw new IOException("cannot create " + tileFile.getParentFile());
+                    }
+                    ImageIO.write(tile, qlConfig.getImageType(), tileFile);
+                    if (tileCount.incrementAndGet() % 1000 == 0) {
+                        Runtime runtime = Runtime.getRuntime();
+                        System.out.printf("%d tiles, level %d, heap used %d MB of %d MB%n", tileCount.get(), level,
+                                          (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024),
+                                          runtime.maxMemory() / (1024 * 1024));
+                    }
+                });
+        System.out.printf("%d tiles in %d levels written to %s in %d s%n", tileCount.get(), numLevels, targetDir,
+                          (System.currentTimeMillis() - startTime) / 1000);
+        product.dispose();
+    }
+}
@@ -114,4 +114,15 @@ public class QuicklooksTest {
 
     }
 
+    @Test
+    public void testReadTileSize() throws Exception {
+        String xml = "<quicklooks><configs>" +
+                     "<config><bandName>chl_conc</bandName><tileSize>256</tileSize></config>" +
+                     "<config><bandName>alpha</bandName></config>" +
+                     "</configs></quicklooks>";
+        Quicklooks.QLConfig[] configs = Quicklooks.fromXml(xml).getConfigs();
+        assertEquals(256, configs[0].getTileSize());
+        assertEquals(0, configs[1].getTileSize());
+    }
+
 }
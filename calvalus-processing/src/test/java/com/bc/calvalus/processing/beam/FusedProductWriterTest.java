@@ -0,0 +1,135 @@
+package com.bc.calvalus.processing.beam;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.dataio.AbstractProductWriter;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FusedProductWriterTest {
+
+    @Test
+    public void testWritesEachSliceToAllTargets() throws Exception {
+        Product product = createProduct();
+        Product subset = new Product("subset", "subsetType", 10, 10);
+        subset.addBand(new Band("band2", ProductData.TYPE_FLOAT32, 10, 10));
+
+        RecordingWriter nativeWriter = new RecordingWriter();
+        RecordingWriter formatWriter = new RecordingWriter();
+        FusedProductWriter fusedWriter = new FusedProductWriter(product);
+        fusedWriter.addTarget(nativeWriter, product, "native");
+        fusedWriter.addTarget(formatWriter, subset, "formatted");
+        fusedWriter.write(4, ProgressMonitor.NULL);
+
+        assertEquals("[band1(0), band1(4), band1(8), band2(0), band2(4), band2(8)]", nativeWriter.slices.keySet().toString());
+        assertEquals("[band2(0), band2(4), band2(8)]", formatWriter.slices.keySet().toString());
+        assertArrayEquals(new float[]{10000 - 80, 10000 - 81}, slice(formatWriter, "band2(8)", 2), 1E-5F);
+        assertArrayEquals(new float[]{40, 41}, slice(nativeWriter, "band1(4)", 2), 1E-5F);
+        assertTrue(nativeWriter.closed);
+        assertTrue(formatWriter.closed);
+    }
+
+    @Test
+    public void testWriterFailure() throws Exception {
+        Product product = createProduct();
+        RecordingWriter failingWriter = new RecordingWriter() {
+            @Override
+            public void writeBandRasterData(Band band, int x, int y, int w, int h, ProductData data, ProgressMonitor pm) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        RecordingWriter otherWriter = new RecordingWriter();
+        FusedProductWriter fusedWriter = new FusedProductWriter(product);
+        fusedWriter.addTarget(failingWriter, product, "native");
+        fusedWriter.addTarget(otherWriter, product, "formatted");
+        try {
+            fusedWriter.write(4, ProgressMonitor.NULL);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertEquals("disk full", expected.getMessage());
+        }
+        assertTrue(failingWriter.closed);
+        assertTrue(failingWriter.deleted);
+        assertTrue(otherWriter.closed);
+        assertTrue(otherWriter.deleted);
+    }
+
+    @Test
+    public void testCanWrite() throws Exception {
+        Product product = createProduct();
+        assertTrue(FusedProductWriter.canWrite(product));
+        product.addBand(new Band("small", ProductData.TYPE_FLOAT32, 3, 3));
+        assertFalse(FusedProductWriter.canWrite(product));
+    }
+
+    private static Product createProduct() {
+        Product product = new Product("productName", "productType", 10, 10);
+        float[] band1Data = new float[100];
+        float[] band2Data = new float[100];
+        for (int i = 0; i < 100; i++) {
+            band1Data[i] = i;
+            band2Data[i] = 10000 - i;
+        }
+        Band band1 = new Band("band1", ProductData.TYPE_FLOAT32, 10, 10);
+        band1.setData(new ProductData.Float(band1Data));
+        Band band2 = new Band("band2", ProductData.TYPE_FLOAT32, 10, 10);
+        band2.setData(new ProductData.Float(band2Data));
+        product.addBand(band1);
+        product.addBand(band2);
+        return product;
+    }
+
+    private static float[] slice(RecordingWriter writer, String key, int length) {
+        float[] elems = writer.slices.get(key);
+        float[] head = new float[length];
+        System.arraycopy(elems, 0, head, 0, length);
+        return head;
+    }
+
+    private static class RecordingWriter extends AbstractProductWriter {
+
+        private final Map<String, float[]> slices = new TreeMap<>();
+        private boolean closed;
+        private boolean deleted;
+
+        RecordingWriter() {
+            super(null);
+        }
+
+        @Override
+        protected void writeProductNodesImpl() {
+        }
+
+        @Override
+        public void writeBandRasterData(Band band, int x, int y, int w, int h, ProductData data, ProgressMonitor pm) throws IOException {
+            synchronized (slices) {
+                slices.put(band.getName() + "(" + y + ")", (float[]) data.getElems());
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public void deleteOutput() {
+            deleted = true;
+        }
+    }
+}
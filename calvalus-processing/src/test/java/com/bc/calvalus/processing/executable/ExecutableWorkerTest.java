@@ -0,0 +1,135 @@
+package com.bc.calvalus.processing.executable;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.apache.hadoop.mapreduce.MapContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+public class ExecutableWorkerTest {
+
+    // reports its process id so that restarts can be recognised
+    private static final String WORKER_SCRIPT =
+            "#!/bin/sh\n" +
+            "while IFS='\t' read -r command file rest; do\n" +
+            "  case \"$command\" in\n" +
+            "    CALVALUS_PROCESS)\n" +
+            "      if [ \"$file\" = crash ] && [ ! -f crashed ]; then : > crashed; exit 3; fi\n" +
+            "      if [ \"$file\" = fail ]; then echo 'CALVALUS_JOB_DONE 2'; continue; fi\n" +
+            "      echo 'CALVALUS_PROGRESS 0.5'\n" +
+            "      echo \"CALVALUS_OUTPUT_PRODUCT $file.out\"\n" +
+            "      echo \"CALVALUS_OUTPUT_PRODUCT $$\"\n" +
+            "      echo 'CALVALUS_JOB_DONE 0';;\n" +
+            "    *)\n" +
+            "      echo 'CALVALUS_JOB_DONE 0';;\n" +
+            "  esac\n" +
+            "done\n";
+
+    private File cwd;
+    private ExecutableWorker worker;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(new File("/bin/sh").canExecute());
+        cwd = Files.createTempDirectory("executable-worker").toFile();
+        File workerScript = new File(cwd, "worker");
+        try (Writer writer = new FileWriter(workerScript)) {
+            writer.write(WORKER_SCRIPT);
+        }
+        workerScript.setExecutable(true);
+        worker = new ExecutableWorker("test-worker", cwd, new String[0], mock(MapContext.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (worker != null) {
+            worker.close();
+        }
+        if (cwd != null) {
+            File[] files = cwd.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            cwd.delete();
+        }
+    }
+
+    @Test
+    public void testJobsAreRunByTheSameProcess() throws Exception {
+        String[] outputFiles1 = worker.runJob(ExecutableWorker.PROCESS, new String[]{"a", "inputPath=/in/a"}, ProgressMonitor.NULL).getOutputFiles();
+        String[] outputFiles2 = worker.runJob(ExecutableWorker.PROCESS, new String[]{"b"}, ProgressMonitor.NULL).getOutputFiles();
+
+        assertEquals("a.out", outputFiles1[0]);
+        assertEquals("b.out", outputFiles2[0]);
+        assertEquals(outputFiles1[1], outputFiles2[1]);
+    }
+
+    @Test
+    public void testUnknownCommandIsAcknowledged() throws Exception {
+        KeywordHandler keywordHandler = worker.runJob(ExecutableWorker.PREPARE, new String[]{"in", "out"}, ProgressMonitor.NULL);
+        assertArrayEquals(new String[0], keywordHandler.getOutputFiles());
+    }
+
+    @Test
+    public void testWorkerIsRestartedAfterCrash() throws Exception {
+        String[] outputFiles1 = worker.runJob(ExecutableWorker.PROCESS, new String[]{"a"}, ProgressMonitor.NULL).getOutputFiles();
+        String[] outputFiles2 = worker.runJob(ExecutableWorker.PROCESS, new String[]{"crash"}, ProgressMonitor.NULL).getOutputFiles();
+        String[] outputFiles3 = worker.runJob(ExecutableWorker.PROCESS, new String[]{"c"}, ProgressMonitor.NULL).getOutputFiles();
+
+        assertEquals("crash.out", outputFiles2[0]);
+        assertNotEquals(outputFiles1[1], outputFiles2[1]);
+        assertEquals(outputFiles2[1], outputFiles3[1]);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testFailedJob() throws Exception {
+        worker.runJob(ExecutableWorker.PROCESS, new String[]{"fail"}, ProgressMonitor.NULL);
+    }
+
+    @Test
+    public void testWorkerCanContinueAfterFailedJob() throws Exception {
+        try {
+            worker.runJob(ExecutableWorker.PROCESS, new String[]{"fail"}, ProgressMonitor.NULL);
+        } catch (RuntimeException expected) {
+        }
+        String[] outputFiles = worker.runJob(ExecutableWorker.PROCESS, new String[]{"a"}, ProgressMonitor.NULL).getOutputFiles();
+        assertEquals("a.out", outputFiles[0]);
+    }
+
+    @Test
+    public void testCloseTaskWorker() throws Exception {
+        MapContext mapContext = mock(MapContext.class);
+        assertNull(ExecutableWorker.getTaskWorker(mapContext, "test-worker", cwd));
+        ExecutableWorker.setTaskWorker(worker);
+        assertSame(worker, ExecutableWorker.getTaskWorker(mapContext, "test-worker", cwd));
+
+        ExecutableWorker.closeTaskWorker("test-worker", cwd);
+        assertNull(ExecutableWorker.getTaskWorker(mapContext, "test-worker", cwd));
+    }
+
+    @Test
+    public void testCreateJobLine() throws Exception {
+        assertEquals("CALVALUS_PROCESS\t/tmp/in.N1\tinputRectangle=0,0,10,20",
+                     ExecutableWorker.createJobLine(ExecutableWorker.PROCESS, new String[]{"/tmp/in.N1", "inputRectangle=0,0,10,20"}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateJobLineRejectsLineBreaks() throws Exception {
+        ExecutableWorker.createJobLine(ExecutableWorker.PROCESS, new String[]{"in\nCALVALUS_PROCESS"});
+    }
+}
@@ -166,6 +166,23 @@ public class ScriptGeneratorTest {
         assertEquals("This is the finalize script", scriptGenerator.resources.get(0).getContent());
     }
 
+    @Test
+    public void testWriteScriptFiles_Worker() throws Exception {
+        TracingScriptGenerator scriptGenerator = new TracingScriptGenerator(ScriptGenerator.Step.WORKER, "foo");
+        scriptGenerator.addResource(new StringResource("foo-prepare.vm", "This is the prepare script"));
+        scriptGenerator.addResource(new StringResource("foo-process.vm", "This is the process script"));
+        scriptGenerator.addResource(new StringResource("foo-worker.vm", "This is the worker script"));
+        scriptGenerator.addResource(new StringResource("foo-misc.txt", "misc data"));
+        assertTrue(scriptGenerator.hasStepScript());
+
+        scriptGenerator.writeScriptFiles(new File("."), false);
+
+        assertEquals(2, scriptGenerator.fileNames.size());
+        assertEquals("worker", scriptGenerator.fileNames.get(0));
+        assertEquals("This is the worker script", scriptGenerator.resources.get(0).getContent());
+        assertEquals("misc.txt", scriptGenerator.fileNames.get(1));
+    }
+
     private static class TracingScriptGenerator extends ScriptGenerator {
         List<String> fileNames = new ArrayList<>();
         List<Resource> resources = new ArrayList<>();
@@ -0,0 +1,55 @@
+package com.bc.calvalus.processing.geodb;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.WKTReader;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FootprintTest {
+
+    @Test
+    public void testUnionOfAdjacentParts() throws Exception {
+        WKTReader wktReader = new WKTReader();
+        List<Geometry> parts = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            // overlapping detector stripes
+            parts.add(wktReader.read(String.format("POLYGON((%d 0, %d 0, %d 10, %d 10, %d 0))", i, i + 2, i + 2, i, i)));
+        }
+        Polygon union = Footprint.union(parts);
+        assertEquals(130.0, union.getArea(), 1e-6);
+        assertEquals(5, union.getNumPoints());
+    }
+
+    @Test
+    public void testUnionOfDisjointPartsIsNotAFootprint() throws Exception {
+        WKTReader wktReader = new WKTReader();
+        List<Geometry> parts = new ArrayList<>();
+        parts.add(wktReader.read("POLYGON((0 0, 1 0, 1 1, 0 1, 0 0))"));
+        parts.add(wktReader.read("POLYGON((5 0, 6 0, 6 1, 5 1, 5 0))"));
+        assertNull(Footprint.union(parts));
+        assertNull(Footprint.union(Collections.<Geometry>emptyList()));
+    }
+
+    @Test
+    public void testParseLatLonList() throws Exception {
+        assertEquals("POLYGON ((10 50, 11 50, 11 51, 10 50))",
+                     Footprint.parseLatLonList("50 10 50 11 51 11").toString());
+        assertEquals("POLYGON ((10 50, 11 50, 11 51, 10 50))",
+                     Footprint.parseLatLonList(" 50,10 50,11\n51,11 50,10 ").toString());
+    }
+
+    @Test
+    public void testParseIsoTime() throws Exception {
+        assertEquals(1496312421000L, Footprint.parseIsoTime("2017-06-01T10:20:21.026Z").getTime());
+        assertEquals(1496312421000L, Footprint.parseIsoTime("2017-06-01T10:20:21").getTime());
+        assertNull(Footprint.parseIsoTime("2017-06-01"));
+        assertNull(Footprint.parseIsoTime(null));
+    }
+}
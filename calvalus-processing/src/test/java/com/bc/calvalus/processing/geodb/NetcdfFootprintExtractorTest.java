@@ -0,0 +1,47 @@
+package com.bc.calvalus.processing.geodb;
+
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.WKTReader;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NetcdfFootprintExtractorTest {
+
+    private static final String LON_LAT_WKT = "POLYGON ((10 50, 12 50, 12 52, 10 52, 10 50))";
+
+    @Test
+    public void testCanExtract() throws Exception {
+        NetcdfFootprintExtractor extractor = new NetcdfFootprintExtractor();
+        assertTrue(extractor.canExtract("ESACCI-LC-L3-SR-MERIS-300m-P7D-h36v08-20100101-v1.0.nc"));
+        assertFalse(extractor.canExtract("MER_RR__1PRACR20080601_092024_000026322069_00093_32671_0000.N1"));
+    }
+
+    @Test
+    public void testBoundsAreLatLonByDefault() throws Exception {
+        assertPolygon(LON_LAT_WKT, NetcdfFootprintExtractor.getPolygon("POLYGON ((50 10, 50 12, 52 12, 52 10, 50 10))", null));
+        assertPolygon(LON_LAT_WKT, NetcdfFootprintExtractor.getPolygon("POLYGON ((50 10, 50 12, 52 12, 52 10, 50 10))", "EPSG:4326"));
+    }
+
+    @Test
+    public void testBoundsInCrs84() throws Exception {
+        assertPolygon(LON_LAT_WKT, NetcdfFootprintExtractor.getPolygon(LON_LAT_WKT, "urn:ogc:def:crs:OGC:1.3:CRS84"));
+    }
+
+    @Test
+    public void testBoundsInOtherCrsAreLeftToGeoCoding() throws Exception {
+        assertNull(NetcdfFootprintExtractor.getPolygon("POLYGON ((500000 5500000, 600000 5500000, 600000 5600000, 500000 5500000))", "EPSG:32632"));
+    }
+
+    @Test
+    public void testMissingBounds() throws Exception {
+        assertNull(NetcdfFootprintExtractor.getPolygon(null, null));
+    }
+
+    private static void assertPolygon(String expectedWkt, Polygon polygon) throws Exception {
+        Polygon expected = (Polygon) new WKTReader().read(expectedWkt);
+        assertTrue(polygon.toString(), expected.equalsTopo(polygon));
+    }
+}
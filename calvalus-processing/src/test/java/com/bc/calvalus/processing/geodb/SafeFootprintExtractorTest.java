@@ -0,0 +1,137 @@
+package com.bc.calvalus.processing.geodb;
+
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.WKTReader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SafeFootprintExtractorTest {
+
+    private static final String S3_MANIFEST =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<xfdu:XFDU xmlns:xfdu=\"urn:ccsds:schema:xfdu:1\" xmlns:sentinel-safe=\"http://www.esa.int/safe/sentinel/1.1\"" +
+            " xmlns:gml=\"http://www.opengis.net/gml\">\n" +
+            "  <metadataSection>\n" +
+            "    <sentinel-safe:acquisitionPeriod>\n" +
+            "      <sentinel-safe:startTime>2017-06-01T10:20:21.026512Z</sentinel-safe:startTime>\n" +
+            "      <sentinel-safe:stopTime>2017-06-01T10:23:21.026512Z</sentinel-safe:stopTime>\n" +
+            "    </sentinel-safe:acquisitionPeriod>\n" +
+            "    <sentinel-safe:footPrint>\n" +
+            "      <gml:posList>50 10 50 12 52 12 52 10 50 10</gml:posList>\n" +
+            "    </sentinel-safe:footPrint>\n" +
+            "  </metadataSection>\n" +
+            "</xfdu:XFDU>\n";
+
+    private static final String S2_METADATA =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<n1:Level-1C_User_Product xmlns:n1=\"https://psd-14.sentinel2.eo.esa.int/PSD/User_Product_Level-1C.xsd\">\n" +
+            "  <n1:General_Info>\n" +
+            "    <Product_Info>\n" +
+            "      <PRODUCT_START_TIME>2017-06-01T10:20:21.026Z</PRODUCT_START_TIME>\n" +
+            "      <PRODUCT_STOP_TIME>2017-06-01T10:20:21.026Z</PRODUCT_STOP_TIME>\n" +
+            "    </Product_Info>\n" +
+            "  </n1:General_Info>\n" +
+            "  <n1:Geometric_Info>\n" +
+            "    <Product_Footprint><Product_Footprint><Global_Footprint>\n" +
+            "      <EXT_POS_LIST>50 10 50 11 51 11 51 10 50 10 </EXT_POS_LIST>\n" +
+            "    </Global_Footprint></Product_Footprint></Product_Footprint>\n" +
+            "  </n1:Geometric_Info>\n" +
+            "</n1:Level-1C_User_Product>\n";
+
+    @Test
+    public void testCanExtract() throws Exception {
+        SafeFootprintExtractor extractor = new SafeFootprintExtractor();
+        assertTrue(extractor.canExtract("S2A_MSIL1C_20170601T102021_N0205_R065_T32UNE_20170601T102021.zip"));
+        assertTrue(extractor.canExtract("S3A_OL_1_EFR____20170601T102021_20170601T102321_20170602T150123_0179_018_222_2160_LN1_O_NT_002.zip"));
+        assertFalse(extractor.canExtract("MER_RR__1PRACR20080601_092024_000026322069_00093_32671_0000.N1"));
+        assertFalse(extractor.canExtract("S2A_MSIL1C_20170601T102021_N0205_R065_T32UNE_20170601T102021.SAFE"));
+    }
+
+    @Test
+    public void testParseS3Manifest() throws Exception {
+        Footprint footprint = SafeFootprintExtractor.parseMetadata(toStream(S3_MANIFEST));
+        assertFootprint("POLYGON ((10 50, 12 50, 12 52, 10 52, 10 50))", footprint);
+        assertEquals(1496312421000L, footprint.getStartTime().getTime());
+        assertEquals(1496312601000L, footprint.getStopTime().getTime());
+    }
+
+    @Test
+    public void testParseS2Metadata() throws Exception {
+        Footprint footprint = SafeFootprintExtractor.parseMetadata(toStream(S2_METADATA));
+        assertFootprint("POLYGON ((10 50, 11 50, 11 51, 10 51, 10 50))", footprint);
+        assertEquals(1496312421000L, footprint.getStartTime().getTime());
+    }
+
+    @Test
+    public void testMetadataWithoutFootprint() throws Exception {
+        assertNull(SafeFootprintExtractor.parseMetadata(toStream("<xfdu:XFDU xmlns:xfdu=\"urn:ccsds:schema:xfdu:1\"/>")));
+    }
+
+    @Test
+    public void testExtractFromZip() throws Exception {
+        File zipFile = File.createTempFile("S2A_MSIL1C_20170601T102021_N0205_R065_T32UNE_20170601T102021", ".zip");
+        try {
+            String safeDir = "S2A_MSIL1C_20170601T102021_N0205_R065_T32UNE_20170601T102021.SAFE/";
+            try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zipFile))) {
+                zipOutputStream.putNextEntry(new ZipEntry(safeDir + "manifest.safe"));
+                zipOutputStream.write("<xfdu:XFDU xmlns:xfdu=\"urn:ccsds:schema:xfdu:1\"/>".getBytes(StandardCharsets.UTF_8));
+                zipOutputStream.putNextEntry(new ZipEntry(safeDir + "GRANULE/L1C_T32UNE/IMG_DATA/T32UNE_B01.jp2"));
+                zipOutputStream.write(new byte[1000]);
+                zipOutputStream.putNextEntry(new ZipEntry(safeDir + "MTD_MSIL1C.xml"));
+                zipOutputStream.write(S2_METADATA.getBytes(StandardCharsets.UTF_8));
+            }
+            Footprint footprint = new SafeFootprintExtractor().extract(new Path(zipFile.toURI()), new Configuration());
+            assertFootprint("POLYGON ((10 50, 11 50, 11 51, 10 51, 10 50))", footprint);
+        } finally {
+            zipFile.delete();
+        }
+    }
+
+    @Test
+    public void testExtractStoredEntryFromZip() throws Exception {
+        File zipFile = File.createTempFile("S3A_OL_1_EFR____20170601T102021_20170601T102321_20170602T150123_0179_018_222_2160_LN1_O_NT_002", ".zip");
+        try {
+            byte[] manifest = S3_MANIFEST.getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(manifest);
+            try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zipFile))) {
+                zipOutputStream.putNextEntry(new ZipEntry("S3A_OL_1_EFR.SEN3/Oa01_radiance.nc"));
+                zipOutputStream.write(new byte[1000]);
+                ZipEntry entry = new ZipEntry("S3A_OL_1_EFR.SEN3/manifest.safe");
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(manifest.length);
+                entry.setCrc(crc.getValue());
+                zipOutputStream.putNextEntry(entry);
+                zipOutputStream.write(manifest);
+                zipOutputStream.setComment("archive comment");
+            }
+            Footprint footprint = new SafeFootprintExtractor().extract(new Path(zipFile.toURI()), new Configuration());
+            assertFootprint("POLYGON ((10 50, 12 50, 12 52, 10 52, 10 50))", footprint);
+        } finally {
+            zipFile.delete();
+        }
+    }
+
+    private static void assertFootprint(String expectedWkt, Footprint footprint) throws Exception {
+        Polygon expected = (Polygon) new WKTReader().read(expectedWkt);
+        assertTrue(footprint.getPolygon().toString(), expected.equalsTopo(footprint.getPolygon()));
+    }
+
+    private static ByteArrayInputStream toStream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
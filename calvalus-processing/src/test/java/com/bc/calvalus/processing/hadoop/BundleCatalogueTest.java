@@ -0,0 +1,147 @@
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.commons.shared.BundleFilter;
+import com.bc.calvalus.processing.BundleDescriptor;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.security.AccessControlException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class BundleCatalogueTest {
+
+    private FileSystem fs;
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        fs = FileSystem.getLocal(new Configuration());
+        root = new Path(Files.createTempDirectory("bundles").toUri());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fs.delete(root, true);
+    }
+
+    @Test
+    public void testQueriesAndIncrementalRefresh() throws Exception {
+        writeDescriptor("home/ewa/software/ewa-bundle-1.0", "ewa-bundle", "1.0", "ewa-proc");
+        writeDescriptor("home/bob/software/bob-bundle-2.0", "bob-bundle", "2.0", "bob-proc");
+        writeDescriptor("system/sys-bundle-1.0", "sys-bundle", "1.0", "sys-proc");
+        BundleCatalogue catalogue = new BundleCatalogue(fs, new Path(root, "home").toString(),
+                                                        new Path(root, "system").toString(), null);
+
+        long now = System.currentTimeMillis();
+        catalogue.refreshIfDue(now);
+        BundleFilter all = BundleFilter.fromString("provider=SYSTEM,USER,ALL_USER").withTheUser("ewa");
+        assertNames(catalogue.getBundles("ewa", all), "ewa-bundle", "bob-bundle", "sys-bundle");
+        assertEquals("ewa", catalogue.getBundles("ewa", all)[0].getOwner());
+        assertEquals("bob", catalogue.getBundles("ewa", all)[1].getOwner());
+
+        BundleFilter user = BundleFilter.fromString("provider=USER").withTheUser("ewa");
+        assertNames(catalogue.getBundles("ewa", user), "ewa-bundle");
+        BundleFilter allUsers = BundleFilter.fromString("provider=ALL_USER");
+        assertNames(catalogue.getBundles("ewa", allUsers), "bob-bundle");
+        BundleFilter processor = BundleFilter.fromString("provider=SYSTEM,ALL_USER").withTheProcessor("sys-proc", "1.0");
+        assertNames(catalogue.getBundles("ewa", processor), "sys-bundle");
+        BundleFilter bundle = BundleFilter.fromString("provider=SYSTEM,ALL_USER").withTheBundle("bob-bundle", "2.0");
+        assertNames(catalogue.getBundles("ewa", bundle), "bob-bundle");
+
+        Path newBundleDir = writeDescriptor("home/bob/software/bob-bundle-3.0", "bob-bundle", "3.0", "bob-proc");
+        fs.setTimes(newBundleDir.getParent(), now + 1, -1);
+        catalogue.refreshIfDue(now + 1000);
+        assertNames(catalogue.getBundles("ewa", allUsers), "bob-bundle");
+        catalogue.refreshIfDue(now + BundleCatalogue.REFRESH_INTERVAL);
+        assertNames(catalogue.getBundles("ewa", allUsers), "bob-bundle", "bob-bundle");
+
+        fs.delete(newBundleDir, true);
+        catalogue.invalidate();
+        catalogue.refreshIfDue(now + BundleCatalogue.REFRESH_INTERVAL + 1);
+        assertNames(catalogue.getBundles("ewa", allUsers), "bob-bundle");
+    }
+
+    @Test
+    public void testAccessCheck() throws Exception {
+        writeDescriptor("home/bob/software/bob-bundle-2.0", "bob-bundle", "2.0", "bob-proc");
+        fs.setPermission(new Path(root, "home/bob/software"), new FsPermission((short) 0750));
+        BundleCatalogue catalogue = new BundleCatalogue(fs, new Path(root, "home").toString(),
+                                                        new Path(root, "system").toString(),
+                                                        userName -> userName.equals("ewa") ? new String[]{"nobody"} : new String[0]);
+        String group = fs.getFileStatus(new Path(root, "home/bob/software")).getGroup();
+
+        BundleFilter allUsers = BundleFilter.fromString("provider=ALL_USER");
+        assertNames(catalogue.getBundles("ewa", allUsers));
+        BundleCatalogue groupCatalogue = new BundleCatalogue(fs, new Path(root, "home").toString(),
+                                                             new Path(root, "system").toString(),
+                                                             userName -> new String[]{group});
+        assertNames(groupCatalogue.getBundles("ewa", allUsers), "bob-bundle");
+    }
+
+    @Test
+    public void testDirectoriesNotAccessibleForTheServiceAreSkipped() throws Exception {
+        writeDescriptor("home/ewa/software/ewa-bundle-1.0", "ewa-bundle", "1.0", "ewa-proc");
+        writeDescriptor("home/bob/software/bob-bundle-2.0", "bob-bundle", "2.0", "bob-proc");
+        Path bobSoftwareDir = fs.makeQualified(new Path(root, "home/bob/software"));
+        FileSystem serviceFs = new FilterFileSystem(fs) {
+            @Override
+            public FileStatus[] listStatus(Path path) throws IOException {
+                checkAccess(path);
+                return super.listStatus(path);
+            }
+
+            @Override
+            public FileStatus getFileStatus(Path path) throws IOException {
+                checkAccess(path);
+                return super.getFileStatus(path);
+            }
+
+            private void checkAccess(Path path) throws AccessControlException {
+                if (path.toString().startsWith(bobSoftwareDir.toString())) {
+                    throw new AccessControlException("Permission denied: " + path);
+                }
+            }
+        };
+        BundleCatalogue catalogue = new BundleCatalogue(serviceFs, new Path(root, "home").toString(),
+                                                        new Path(root, "system").toString(), null);
+
+        BundleFilter all = BundleFilter.fromString("provider=SYSTEM,USER,ALL_USER").withTheUser("ewa");
+        assertNames(catalogue.getBundles("ewa", all), "ewa-bundle");
+    }
+
+    private Path writeDescriptor(String dir, String bundleName, String bundleVersion, String processorName) throws IOException {
+        Path bundleDir = new Path(root, dir);
+        fs.mkdirs(bundleDir);
+        try (Writer writer = new OutputStreamWriter(fs.create(new Path(bundleDir, HadoopProcessingService.BUNDLE_DESCRIPTOR_XML_FILENAME)))) {
+            writer.write("<bundleDescriptor>" +
+                         "<bundleName>" + bundleName + "</bundleName>" +
+                         "<bundleVersion>" + bundleVersion + "</bundleVersion>" +
+                         "<processorDescriptors><processorDescriptor>" +
+                         "<processorName>" + processorName + "</processorName>" +
+                         "<processorVersion>" + bundleVersion + "</processorVersion>" +
+                         "</processorDescriptor></processorDescriptors>" +
+                         "</bundleDescriptor>");
+        }
+        return bundleDir;
+    }
+
+    private static void assertNames(BundleDescriptor[] descriptors, String... expectedNames) {
+        String[] names = new String[descriptors.length];
+        for (int i = 0; i < descriptors.length; i++) {
+            names[i] = descriptors[i].getBundleName();
+        }
+        assertEquals(String.join(",", expectedNames), String.join(",", names));
+    }
+}
@@ -0,0 +1,104 @@
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.processing.l3.L3SpatialBin;
+import com.bc.calvalus.processing.mosaic.TileDataWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Reports the shuffle bytes and the CPU time of the intermediate codecs for sample L3 bins and mosaic tiles.
+ * Not a unit test, run it with the native Hadoop libraries on the library path to include snappy and lz4.
+ */
+public class IntermediateCompressionBenchmark {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        System.out.printf("%-26s %-8s %14s %8s %12s %12s%n", "data", "codec", "bytes", "ratio", "compress ms", "inflate ms");
+        report("L3 bins", createBins(200000));
+        report("mosaic tiles, deflated", createTiles(200, true));
+        report("mosaic tiles, raw", createTiles(200, false));
+    }
+
+    private static void report(String dataName, byte[] data) throws IOException {
+        Configuration conf = new Configuration();
+        for (Map.Entry<String, Class<? extends CompressionCodec>> entry : IntermediateCompression.CODECS.entrySet()) {
+            if (entry.getValue() == null) {
+                System.out.printf("%-26s %-8s %14d %8.2f %12s %12s%n", dataName, entry.getKey(), data.length, 1.0, "-", "-");
+                continue;
+            }
+            try {
+                CompressionCodec codec = ReflectionUtils.newInstance(entry.getValue(), conf);
+                long start = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (CompressionOutputStream out = codec.createOutputStream(compressed)) {
+                    out.write(data);
+                }
+                long compressTime = THREAD_MX_BEAN.getCurrentThreadCpuTime() - start;
+                start = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+                try (CompressionInputStream in = codec.createInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+                    IOUtils.copyBytes(in, new ByteArrayOutputStream(data.length), 65536);
+                }
+                long inflateTime = THREAD_MX_BEAN.getCurrentThreadCpuTime() - start;
+                System.out.printf("%-26s %-8s %14d %8.2f %12d %12d%n", dataName, entry.getKey(), compressed.size(),
+                                  (double) data.length / compressed.size(), compressTime / 1000000, inflateTime / 1000000);
+            } catch (RuntimeException | UnsatisfiedLinkError e) {
+                System.out.printf("%-26s %-8s not available: %s%n", dataName, entry.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the map output of L3 bins with smoothly varying mean, sigma and count features
+     */
+    private static byte[] createBins(int numBins) throws IOException {
+        Random random = new Random(42);
+        DataOutputBuffer out = new DataOutputBuffer();
+        for (int i = 0; i < numBins; i++) {
+            L3SpatialBin bin = new L3SpatialBin(i, 6, 0);
+            bin.setNumObs(1 + random.nextInt(4));
+            float[] featureValues = bin.getFeatureValues();
+            for (int f = 0; f < featureValues.length; f++) {
+                featureValues[f] = (float) (Math.sin(i * 0.001 + f) + random.nextGaussian() * 0.01);
+            }
+            out.writeLong(i);
+            bin.write(out);
+        }
+        return Arrays.copyOf(out.getData(), out.getLength());
+    }
+
+    /**
+     * @return the map output of 370x370 pixel tiles with 10 bands, a fourth of the pixels no-data
+     */
+    private static byte[] createTiles(int numTiles, boolean writableCompression) throws IOException {
+        Random random = new Random(42);
+        int tileSize = 370;
+        DataOutputBuffer out = new DataOutputBuffer();
+        for (int t = 0; t < numTiles; t++) {
+            float[][] samples = new float[10][tileSize * tileSize];
+            for (int b = 0; b < samples.length; b++) {
+                for (int p = 0; p < samples[b].length; p++) {
+                    boolean noData = (p % tileSize) < tileSize / 4;
+                    samples[b][p] = noData ? Float.NaN : (float) (0.1 * b + 0.05 * Math.sin(p * 0.01) + random.nextGaussian() * 0.002);
+                }
+            }
+            out.writeInt(t);
+            new TileDataWritable(samples, writableCompression).write(out);
+        }
+        return Arrays.copyOf(out.getData(), out.getLength());
+    }
+}
@@ -0,0 +1,106 @@
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.commons.WorkflowException;
+import com.bc.calvalus.processing.JobConfigNames;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.Lz4Codec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IntermediateCompressionTest {
+
+    @Test
+    public void testMapOutputAndSequenceFileCompression() throws Exception {
+        Job job = createJob(SequenceFileOutputFormat.class);
+        job.getConfiguration().set(JobConfigNames.CALVALUS_INTERMEDIATE_CODEC, "lz4");
+        job.getConfiguration().set(JobConfigNames.CALVALUS_INTERMEDIATE_SEQUENCE_FILE_COMPRESSION, "block");
+
+        IntermediateCompression.configure(job);
+
+        Configuration conf = job.getConfiguration();
+        assertTrue(conf.getBoolean(MRJobConfig.MAP_OUTPUT_COMPRESS, false));
+        assertSame(Lz4Codec.class, conf.getClass(MRJobConfig.MAP_OUTPUT_COMPRESS_CODEC, null));
+        assertTrue(FileOutputFormat.getCompressOutput(job));
+        assertEquals(SequenceFile.CompressionType.BLOCK, SequenceFileOutputFormat.getOutputCompressionType(job));
+        assertSame(Lz4Codec.class, FileOutputFormat.getOutputCompressorClass(job, null));
+    }
+
+    @Test
+    public void testSequenceFileCompressionWithoutCodec() throws Exception {
+        Job job = createJob(SequenceFileOutputFormat.class);
+        job.getConfiguration().set(JobConfigNames.CALVALUS_INTERMEDIATE_CODEC, IntermediateCompression.NONE);
+        job.getConfiguration().set(JobConfigNames.CALVALUS_INTERMEDIATE_SEQUENCE_FILE_COMPRESSION, "RECORD");
+
+        IntermediateCompression.configure(job);
+
+        assertFalse(job.getConfiguration().getBoolean(MRJobConfig.MAP_OUTPUT_COMPRESS, true));
+        assertEquals(SequenceFile.CompressionType.RECORD, SequenceFileOutputFormat.getOutputCompressionType(job));
+        assertSame(DefaultCodec.class, FileOutputFormat.getOutputCompressorClass(job, null));
+    }
+
+    @Test
+    public void testOtherOutputFormatsAreNotCompressed() throws Exception {
+        Job job = createJob(TextOutputFormat.class);
+        job.getConfiguration().set(JobConfigNames.CALVALUS_INTERMEDIATE_CODEC, GzipCodec.class.getName());
+        job.getConfiguration().set(JobConfigNames.CALVALUS_INTERMEDIATE_SEQUENCE_FILE_COMPRESSION, "BLOCK");
+
+        IntermediateCompression.configure(job);
+
+        assertSame(GzipCodec.class, job.getConfiguration().getClass(MRJobConfig.MAP_OUTPUT_COMPRESS_CODEC, null));
+        assertFalse(FileOutputFormat.getCompressOutput(job));
+    }
+
+    @Test
+    public void testClusterConfigurationAppliesWithoutParameters() throws Exception {
+        Job job = createJob(SequenceFileOutputFormat.class);
+        String mapOutputCompress = job.getConfiguration().get(MRJobConfig.MAP_OUTPUT_COMPRESS);
+        String mapOutputCodec = job.getConfiguration().get(MRJobConfig.MAP_OUTPUT_COMPRESS_CODEC);
+
+        IntermediateCompression.configure(job);
+
+        assertEquals(mapOutputCompress, job.getConfiguration().get(MRJobConfig.MAP_OUTPUT_COMPRESS));
+        assertEquals(mapOutputCodec, job.getConfiguration().get(MRJobConfig.MAP_OUTPUT_COMPRESS_CODEC));
+        assertFalse(FileOutputFormat.getCompressOutput(job));
+        assertTrue(IntermediateCompression.isWritableCompression(job.getConfiguration()));
+    }
+
+    @Test
+    public void testUnknownValues() throws Exception {
+        Job job = createJob(SequenceFileOutputFormat.class);
+        job.getConfiguration().set(JobConfigNames.CALVALUS_INTERMEDIATE_CODEC, "zstd");
+        try {
+            IntermediateCompression.configure(job);
+            fail("WorkflowException expected");
+        } catch (WorkflowException e) {
+            assertTrue(e.getMessage().contains("zstd"));
+        }
+
+        job = createJob(SequenceFileOutputFormat.class);
+        job.getConfiguration().set(JobConfigNames.CALVALUS_INTERMEDIATE_SEQUENCE_FILE_COMPRESSION, "FILE");
+        try {
+            IntermediateCompression.configure(job);
+            fail("WorkflowException expected");
+        } catch (WorkflowException e) {
+            assertTrue(e.getMessage().contains("FILE"));
+        }
+    }
+
+    private static Job createJob(Class<? extends FileOutputFormat> outputFormatClass) throws Exception {
+        Job job = Job.getInstance(new Configuration());
+        job.setOutputFormatClass(outputFormatClass);
+        return job;
+    }
+}
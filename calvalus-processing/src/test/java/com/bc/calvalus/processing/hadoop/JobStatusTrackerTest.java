@@ -0,0 +1,124 @@
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.commons.ProcessState;
+import com.bc.calvalus.commons.ProcessStatus;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.JobStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JobStatusTrackerTest {
+
+    private Map<JobID, Job> clusterJobs;
+    private Map<JobID, String> lookupUsers;
+    private int lookupCount;
+    private JobStatusTracker tracker;
+
+    @Before
+    public void setUp() throws Exception {
+        clusterJobs = new HashMap<>();
+        lookupUsers = new HashMap<>();
+        lookupCount = 0;
+        tracker = new JobStatusTracker((userName, jobId) -> {
+            lookupCount++;
+            lookupUsers.put(jobId, userName);
+            return clusterJobs.get(jobId);
+        });
+    }
+
+    @Test
+    public void testOnlyActiveJobsAreQueried() throws Exception {
+        JobID jobId1 = new JobID("4711", 1);
+        JobID jobId2 = new JobID("4711", 2);
+        Job job1 = mockJob(JobStatus.State.RUNNING, 0.5f);
+        Job job2 = mockJob(JobStatus.State.SUCCEEDED, 1.0f);
+        clusterJobs.put(jobId1, job1);
+        clusterJobs.put(jobId2, job2);
+
+        tracker.track("ewa", jobId1);
+        assertEquals(ProcessStatus.UNKNOWN, tracker.getStatus(jobId2));
+        assertEquals(2, tracker.getActiveJobCount());
+
+        tracker.poll("anonymous", 0L);
+        assertEquals(new ProcessStatus(ProcessState.RUNNING, 0.5f), tracker.getStatus(jobId1));
+        assertEquals(new ProcessStatus(ProcessState.COMPLETED), tracker.getStatus(jobId2));
+        assertEquals(1, tracker.getActiveJobCount());
+        assertEquals(2, lookupCount);
+
+        // job handles are reused
+        JobStatus status = job1.getStatus();
+        when(status.getState()).thenReturn(JobStatus.State.SUCCEEDED);
+        tracker.poll("anonymous", 1L);
+        assertEquals(new ProcessStatus(ProcessState.COMPLETED), tracker.getStatus(jobId1));
+        assertEquals(0, tracker.getActiveJobCount());
+        assertEquals(2, lookupCount);
+    }
+
+    @Test
+    public void testUnknownJobIsCancelledByBackend() throws Exception {
+        JobID jobId = new JobID("4711", 3);
+        tracker.track("ewa", jobId);
+        tracker.poll("anonymous", 0L);
+        assertEquals(ProcessState.ERROR, tracker.getStatus(jobId).getState());
+        assertEquals(0, tracker.getActiveJobCount());
+    }
+
+    @Test
+    public void testJobsArePolledWithTheirOwner() throws Exception {
+        JobID restoredJobId = new JobID("4711", 5);
+        JobID submittedJobId = new JobID("4711", 6);
+        JobID unownedJobId = new JobID("4711", 7);
+        clusterJobs.put(restoredJobId, mockJob(JobStatus.State.RUNNING, 0.5f));
+        clusterJobs.put(submittedJobId, mockJob(JobStatus.State.RUNNING, 0.5f));
+        clusterJobs.put(unownedJobId, mockJob(JobStatus.State.RUNNING, 0.5f));
+
+        // e.g. restored from the production store at start-up
+        tracker.getStatus("ewa", restoredJobId);
+        tracker.track("norman", submittedJobId);
+        tracker.getStatus(unownedJobId);
+
+        tracker.poll("marco", 0L);
+        assertEquals("ewa", lookupUsers.get(restoredJobId));
+        assertEquals("norman", lookupUsers.get(submittedJobId));
+        assertEquals("marco", lookupUsers.get(unownedJobId));
+    }
+
+    @Test
+    public void testIdleUsersArePolledLessFrequently() throws Exception {
+        JobID jobId = new JobID("4711", 4);
+        clusterJobs.put(jobId, mockJob(JobStatus.State.PREP, 0f));
+        tracker.track("ewa", jobId);
+
+        tracker.poll("anonymous", 0L);
+        assertEquals(new ProcessStatus(ProcessState.SCHEDULED), tracker.getStatus(jobId));
+
+        // first unchanged poll
+        tracker.poll("anonymous", 1000L);
+        Job job = clusterJobs.get(jobId);
+        when(job.getStatus().getState()).thenReturn(JobStatus.State.RUNNING);
+
+        // backed off, not yet queried again
+        tracker.poll("anonymous", 1000L + JobStatusTracker.MIN_POLL_INTERVAL - 1);
+        assertEquals(new ProcessStatus(ProcessState.SCHEDULED), tracker.getStatus(jobId));
+
+        tracker.poll("anonymous", 1000L + JobStatusTracker.MIN_POLL_INTERVAL);
+        assertEquals(new ProcessStatus(ProcessState.RUNNING, 0f), tracker.getStatus(jobId));
+    }
+
+    private static Job mockJob(JobStatus.State state, float mapProgress) throws Exception {
+        JobStatus jobStatus = mock(JobStatus.class);
+        when(jobStatus.getState()).thenReturn(state);
+        when(jobStatus.getMapProgress()).thenReturn(mapProgress);
+        Job job = mock(Job.class);
+        when(job.getStatus()).thenReturn(jobStatus);
+        return job;
+    }
+}
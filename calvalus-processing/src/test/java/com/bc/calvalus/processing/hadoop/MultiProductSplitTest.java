@@ -0,0 +1,92 @@
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.processing.JobConfigNames;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MultiProductSplitTest {
+
+    @Test
+    public void testCombineByHost() throws Exception {
+        List<InputSplit> splits = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            splits.add(new ProductSplit(new Path("/in/a" + i), 10, new String[]{"hostA", "hostC"}));
+        }
+        splits.add(new ProductSplit(new Path("/in/b0"), 10, new String[]{"hostB", "hostC"}));
+
+        List<InputSplit> combined = MultiProductSplit.combine(splits, 2, Long.MAX_VALUE);
+        assertEquals(3, combined.size());
+        MultiProductSplit first = (MultiProductSplit) combined.get(0);
+        assertEquals(2, first.getNumProducts());
+        assertEquals(20, first.getLength());
+        assertArrayEquals(new String[]{"hostA", "hostC"}, first.getLocations());
+        // the remaining a4 and b0 only share hostC
+        MultiProductSplit last = (MultiProductSplit) combined.get(2);
+        assertEquals("/in/a4", last.getProductSplit(0).getPath().toString());
+        assertEquals("/in/b0", last.getProductSplit(1).getPath().toString());
+        assertArrayEquals(new String[]{"hostC"}, last.getLocations());
+    }
+
+    @Test
+    public void testCombineBySize() throws Exception {
+        List<InputSplit> splits = new ArrayList<>();
+        splits.add(new ProductSplit(new Path("/in/a0"), 60, new String[]{"hostA"}));
+        splits.add(new ProductSplit(new Path("/in/a1"), 60, new String[]{"hostA"}));
+        splits.add(new ProductSplit(new Path("/in/a2"), 30, new String[]{"hostA"}));
+
+        List<InputSplit> combined = MultiProductSplit.combine(splits, Integer.MAX_VALUE, 100);
+        assertEquals(2, combined.size());
+        assertSame(splits.get(0), combined.get(0));
+        assertEquals(2, ((MultiProductSplit) combined.get(1)).getNumProducts());
+    }
+
+    @Test
+    public void testCombineOnlyForMultiProductMappers() throws Exception {
+        List<InputSplit> splits = new ArrayList<>();
+        splits.add(new ProductSplit(new Path("/in/a0"), 10, new String[]{"hostA"}));
+        splits.add(new ProductSplit(new Path("/in/a1"), 10, new String[]{"hostA"}));
+        Configuration conf = new Configuration();
+        conf.setInt(JobConfigNames.CALVALUS_INPUT_PRODUCTS_PER_SPLIT, 2);
+
+        assertSame(splits, MultiProductSplit.combine(splits, conf));
+
+        conf.setBoolean(JobConfigNames.CALVALUS_INPUT_MULTI_PRODUCT_SPLITS, true);
+        assertEquals(1, MultiProductSplit.combine(splits, conf).size());
+    }
+
+    @Test
+    public void testSerialisation() throws Exception {
+        MultiProductSplit split = new MultiProductSplit(new ProductSplit[]{
+                new ProductSplit(new Path("/in/a0"), 60, null),
+                new ProductSplit(new Path("/in/a1"), 70, null, 10, 20)
+        }, new String[]{"hostA"});
+        DataOutputBuffer out = new DataOutputBuffer();
+        split.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        MultiProductSplit copy = new MultiProductSplit();
+        copy.readFields(in);
+
+        assertEquals(2, copy.getNumProducts());
+        assertEquals(130, copy.getLength());
+        assertEquals("/in/a1", copy.getProductSplit(1).getPath().toString());
+        assertEquals(10, copy.getProductSplit(1).getProcessStartLine());
+        assertEquals(20, copy.getProductSplit(1).getProcessLength());
+
+        InputSplit[] productSplits = MultiProductSplit.getProductSplits(copy);
+        assertEquals(2, productSplits.length);
+        assertTrue(productSplits[0] instanceof ProductSplit);
+    }
+}
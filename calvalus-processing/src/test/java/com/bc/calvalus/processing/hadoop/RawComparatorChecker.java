@@ -0,0 +1,57 @@
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Writable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that a raw comparator orders serialised keys like the corresponding object comparison.
+ * The keys are drawn at random and written at random offsets into larger buffers.
+ */
+public class RawComparatorChecker {
+
+    private static final int NUM_KEYS = 200;
+
+    public static <K extends Writable> void assertSameOrder(RawComparator<?> rawComparator,
+                                                            Comparator<K> objectComparator,
+                                                            Function<Random, K> keyGenerator) throws IOException {
+        Random random = new Random(5);
+        List<K> keys = new ArrayList<>();
+        List<byte[]> buffers = new ArrayList<>();
+        List<int[]> ranges = new ArrayList<>();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            K key = keyGenerator.apply(random);
+            DataOutputBuffer out = new DataOutputBuffer();
+            int offset = random.nextInt(8);
+            for (int b = 0; b < offset; b++) {
+                out.writeByte(random.nextInt(256));
+            }
+            key.write(out);
+            int length = out.getLength() - offset;
+            for (int b = random.nextInt(8); b > 0; b--) {
+                out.writeByte(random.nextInt(256));
+            }
+            keys.add(key);
+            buffers.add(Arrays.copyOf(out.getData(), out.getLength()));
+            ranges.add(new int[]{offset, length});
+        }
+        for (int i = 0; i < NUM_KEYS; i++) {
+            for (int j = 0; j < NUM_KEYS; j++) {
+                int expected = Integer.signum(objectComparator.compare(keys.get(i), keys.get(j)));
+                int actual = Integer.signum(rawComparator.compare(buffers.get(i), ranges.get(i)[0], ranges.get(i)[1],
+                                                                  buffers.get(j), ranges.get(j)[0], ranges.get(j)[1]));
+                assertEquals(keys.get(i) + " <> " + keys.get(j), expected, actual);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.bc.calvalus.processing.l2;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ParallelCompressionTest {
+
+    @Test
+    public void testGzipIsReadableAsSingleStream() throws Exception {
+        byte[] data = createData(3 * ParallelDeflaterOutputStream.BLOCK_SIZE + 12345);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzipOutputStream = new ParallelGzipOutputStream(compressed, 3)) {
+            gzipOutputStream.write(data, 0, 1000);
+            gzipOutputStream.write(data, 1000, data.length - 1000);
+        }
+        assertArrayEquals(data, readFully(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))));
+    }
+
+    @Test
+    public void testGzipOfEmptyInput() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(compressed, 2).close();
+        assertEquals(0, readFully(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))).length);
+    }
+
+    @Test
+    public void testZipEntries() throws Exception {
+        byte[] large = createData(2 * ParallelDeflaterOutputStream.BLOCK_SIZE + 7);
+        byte[] small = "header".getBytes();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelZipOutputStream zipOutputStream = new ParallelZipOutputStream(compressed, 4)) {
+            zipOutputStream.putNextEntry("product.dim");
+            zipOutputStream.write(small);
+            zipOutputStream.putNextEntry("product.data/band_1.img");
+            zipOutputStream.write(large);
+            zipOutputStream.putNextEntry("product.data/empty.hdr");
+            zipOutputStream.closeEntry();
+        }
+
+        ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+        ZipEntry entry = zipInputStream.getNextEntry();
+        assertEquals("product.dim", entry.getName());
+        assertArrayEquals(small, readFully(zipInputStream));
+        assertEquals("product.data/band_1.img", zipInputStream.getNextEntry().getName());
+        assertArrayEquals(large, readFully(zipInputStream));
+        assertEquals("product.data/empty.hdr", zipInputStream.getNextEntry().getName());
+        assertEquals(0, readFully(zipInputStream).length);
+        assertNull(zipInputStream.getNextEntry());
+    }
+
+    private static byte[] createData(int length) {
+        // compressible, but not trivially
+        byte[] data = new byte[length];
+        Random random = new Random(42);
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 251 < 200 ? i % 17 : random.nextInt());
+        }
+        return data;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = inputStream.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,36 @@
+package com.bc.calvalus.processing.l3.multiregion;
+
+import com.bc.calvalus.processing.hadoop.RawComparatorChecker;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class L3MultiRegionBinIndexTest {
+
+    @Test
+    public void testSortComparatorIsRegistered() throws Exception {
+        assertTrue(WritableComparator.get(L3MultiRegionBinIndex.class) instanceof L3MultiRegionSortingComparator);
+    }
+
+    @Test
+    public void testRawSortOrder() throws Exception {
+        RawComparatorChecker.assertSameOrder(new L3MultiRegionSortingComparator(),
+                                             L3MultiRegionBinIndex::compareTo,
+                                             L3MultiRegionBinIndexTest::randomKey);
+    }
+
+    @Test
+    public void testRawGroupOrder() throws Exception {
+        RawComparatorChecker.assertSameOrder(new L3MultiRegionGroupingComparator(),
+                                             (L3MultiRegionBinIndex k1, L3MultiRegionBinIndex k2) ->
+                                                     Integer.compare(k1.getRegionIndex(), k2.getRegionIndex()),
+                                             L3MultiRegionBinIndexTest::randomKey);
+    }
+
+    private static L3MultiRegionBinIndex randomKey(Random random) {
+        return new L3MultiRegionBinIndex(random.nextInt(5), random.nextInt(9) * 1000000000L - 4);
+    }
+}
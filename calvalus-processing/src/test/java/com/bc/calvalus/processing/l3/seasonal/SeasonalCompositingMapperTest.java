@@ -1,15 +1,29 @@
 package com.bc.calvalus.processing.l3.seasonal;
 
 import com.bc.calvalus.commons.DateUtils;
+import com.bc.ceres.glevel.MultiLevelImage;
+import com.bc.ceres.glevel.support.DefaultMultiLevelImage;
+import com.bc.ceres.glevel.support.DefaultMultiLevelSource;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.util.ImageUtils;
 import org.junit.Test;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 
 /**
  * TODO add API doc
@@ -77,4 +91,64 @@ public class SeasonalCompositingMapperTest {
         assertEquals("targetBandIndex", 10, targetBandIndex[7]);
         assertEquals("sourceBandIndex", 20, sourceBandIndex[10]);
     }
+
+    @Test
+    public void testCompositeMicroTilesConcurrently() throws Exception {
+        final List<MultiLevelImage[]> bandImages = createSyntheticPeriods(4, 2 * 5, 9);
+        for (boolean withBestPixels : new boolean[]{false, true}) {
+            final List<String> expected = compositeMicroTiles(bandImages, 1, withBestPixels);
+            final List<String> actual = compositeMicroTiles(bandImages, 3, withBestPixels);
+            assertEquals(2 * 2 * 6, expected.size());
+            assertArrayEquals(expected.toArray(), actual.toArray());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> compositeMicroTiles(List<MultiLevelImage[]> bandImages, int numThreads, boolean withBestPixels) throws Exception {
+        final List<String> records = new ArrayList<>();
+        final Mapper.Context context = mock(Mapper.Context.class);
+        // the tile buffers are reused, so the records are formatted when written
+        doAnswer(invocation -> {
+            final IntWritable key = (IntWritable) invocation.getArguments()[0];
+            final BandTileWritable value = (BandTileWritable) invocation.getArguments()[1];
+            final StringBuilder record = new StringBuilder(String.valueOf(key.get()));
+            for (float f : value.getTileData()) {
+                record.append(' ').append(Float.floatToIntBits(f));
+            }
+            records.add(record.toString());
+            return null;
+        }).when(context).write(any(), any());
+        SeasonalCompositingMapper.compositeMicroTiles(context, bandImages, numThreads, 5, 2, 9, 6,
+                                                      false, withBestPixels, 6, 7, 6, 8,
+                                                      9, new int[]{0, 1, 2, 3, 4, 5}, 1, 2);
+        return records;
+    }
+
+    private static List<MultiLevelImage[]> createSyntheticPeriods(int numPeriods, int size, int numSourceBands) {
+        final int[] states = {0, 1, 2, 3, 4, 5, 11, 12, 14, 15};
+        final Random random = new Random(4711);
+        final List<MultiLevelImage[]> bandImages = new ArrayList<>();
+        for (int period = 0; period < numPeriods; ++period) {
+            final MultiLevelImage[] bandImage = new MultiLevelImage[numSourceBands];
+            for (int b = 0; b < numSourceBands; ++b) {
+                final ProductData data;
+                if (b < 6) {
+                    final short[] values = new short[size * size];
+                    for (int i = 0; i < values.length; ++i) {
+                        values[i] = (short) (b == 0 ? states[random.nextInt(states.length)] : random.nextInt(3));
+                    }
+                    data = ProductData.createInstance(values);
+                } else {
+                    final float[] values = new float[size * size];
+                    for (int i = 0; i < values.length; ++i) {
+                        values[i] = random.nextFloat();
+                    }
+                    data = ProductData.createInstance(values);
+                }
+                bandImage[b] = new DefaultMultiLevelImage(new DefaultMultiLevelSource(ImageUtils.createRenderedImage(size, size, data), 1));
+            }
+            bandImages.add(bandImage);
+        }
+        return bandImages;
+    }
 }
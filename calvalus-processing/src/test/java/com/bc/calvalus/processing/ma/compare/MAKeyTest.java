@@ -0,0 +1,60 @@
+package com.bc.calvalus.processing.ma.compare;
+
+import com.bc.calvalus.processing.hadoop.RawComparatorChecker;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class MAKeyTest {
+
+    // includes chars whose UTF-8 order differs from their UTF-16 order
+    private static final String[] NAME_PARTS = {"", "a", "b", "ab", "\u00e4", "\u20ac", "\ue000", "\uffef",
+                                                "\ud83d\ude00", "\ud800\udc00"};
+
+    @Test
+    public void testSortComparatorIsRegistered() throws Exception {
+        assertTrue(WritableComparator.get(MAKey.class) instanceof MAKey.SortComparator);
+    }
+
+    @Test
+    public void testRawSortOrder() throws Exception {
+        RawComparatorChecker.assertSameOrder(new MAKey.SortComparator(), MAKey::compareTo, MAKeyTest::randomKey);
+    }
+
+    @Test
+    public void testRawGroupOrder() throws Exception {
+        RawComparatorChecker.assertSameOrder(new MAKey.GroupingComparator(), (MAKey k1, MAKey k2) -> {
+            int compare = Integer.compare(k1.getReferenceId(), k2.getReferenceId());
+            return compare != 0 ? compare : k1.getProductName().compareTo(k2.getProductName());
+        }, MAKeyTest::randomKey);
+    }
+
+    @Test
+    public void testLongProductNames() throws Exception {
+        // names of more than 127 bytes have a multi-byte length prefix
+        RawComparatorChecker.assertSameOrder(new MAKey.SortComparator(), MAKey::compareTo, random -> {
+            MAKey key = randomKey(random);
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 100; i++) {
+                name.append("MER_RR__1P");
+            }
+            key.setProductName(name + key.getProductName());
+            return key;
+        });
+    }
+
+    private static MAKey randomKey(Random random) {
+        MAKey key = new MAKey();
+        key.setReferenceId(random.nextInt(4) - 1);
+        StringBuilder name = new StringBuilder();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            name.append(NAME_PARTS[random.nextInt(NAME_PARTS.length)]);
+        }
+        key.setProductName(name.toString());
+        key.setIdentifierOrder(random.nextInt(5) - 2);
+        return key;
+    }
+}
@@ -0,0 +1,96 @@
+package com.bc.calvalus.processing.mosaic;
+
+import com.bc.calvalus.processing.hadoop.WritableUtils;
+import org.apache.hadoop.io.CompressedWritable;
+import org.apache.hadoop.io.Writable;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TileDataWritableTest {
+
+    private static final float[][] SAMPLES = {{1.0F, 2.0F, Float.NaN, 4.0F}, {0.5F, 0.5F, 0.5F, 0.5F}};
+
+    @Test
+    public void testCompressed() throws Exception {
+        byte[] bytes = serialize(new TileDataWritable(SAMPLES));
+        TileDataWritable tile = deserialize(bytes);
+        assertSamples(tile.getSamples());
+        // written again the way it was read
+        assertArrayEquals(bytes, serialize(tile));
+    }
+
+    @Test
+    public void testUncompressed() throws Exception {
+        byte[] bytes = serialize(new TileDataWritable(SAMPLES, false));
+        assertEquals(4 + 8 + 2 * 4 * 4, bytes.length);
+        TileDataWritable tile = deserialize(bytes);
+        assertSamples(tile.getSamples());
+        assertArrayEquals(bytes, serialize(tile));
+    }
+
+    @Test
+    public void testReadsCompressedWritableFormat() throws Exception {
+        byte[] bytes = serialize(new CompressedWritable() {
+            @Override
+            protected void writeCompressed(DataOutput out) throws IOException {
+                out.writeInt(SAMPLES.length);
+                out.writeInt(SAMPLES[0].length);
+                byte[] byteBuffer = new byte[SAMPLES[0].length * 4];
+                for (float[] samples : SAMPLES) {
+                    WritableUtils.convertFloatToByte(samples, byteBuffer);
+                    out.write(byteBuffer);
+                }
+            }
+
+            @Override
+            protected void readFieldsCompressed(DataInput in) {
+            }
+        });
+        assertSamples(deserialize(bytes).getSamples());
+        assertArrayEquals(bytes, serialize(new TileDataWritable(SAMPLES)));
+    }
+
+    @Test
+    public void testReuseForDifferentForms() throws Exception {
+        TileDataWritable tile = new TileDataWritable();
+        tile.readFields(input(serialize(new TileDataWritable(SAMPLES, false))));
+        assertSamples(tile.getSamples());
+        tile.readFields(input(serialize(new TileDataWritable(new float[][]{{7.0F}}))));
+        assertEquals(7.0F, tile.getSamples()[0][0], 0.0F);
+        assertTrue(tile.toString().startsWith("TileDataWritable(1,1"));
+    }
+
+    private static void assertSamples(float[][] samples) {
+        assertEquals(SAMPLES.length, samples.length);
+        for (int i = 0; i < SAMPLES.length; i++) {
+            assertArrayEquals(SAMPLES[i], samples[i], 0.0F);
+        }
+    }
+
+    private static byte[] serialize(Writable writable) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writable.write(new DataOutputStream(out));
+        return out.toByteArray();
+    }
+
+    private static TileDataWritable deserialize(byte[] bytes) throws IOException {
+        TileDataWritable tile = new TileDataWritable();
+        tile.readFields(input(bytes));
+        return tile;
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
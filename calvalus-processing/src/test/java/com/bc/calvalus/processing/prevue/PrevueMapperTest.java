@@ -0,0 +1,83 @@
+package com.bc.calvalus.processing.prevue;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.Product;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PrevueMapperTest {
+
+    private Product product;
+
+    @Before
+    public void setUp() throws Exception {
+        // lon 10 to 20, lat 50 to 55
+        product = new Product("product", "MER_RR__1P", 100, 50);
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, 100, 50, 10.0, 55.0, 0.1, 0.1, 0.0, 0.0));
+    }
+
+    @Test
+    public void testGetGeoEnvelope() throws Exception {
+        Envelope envelope = PrevueMapper.getGeoEnvelope(product);
+
+        assertNotNull(envelope);
+        assertEquals(9.55, envelope.getMinX(), 1e-6);
+        assertEquals(20.45, envelope.getMaxX(), 1e-6);
+        assertEquals(49.55, envelope.getMinY(), 1e-6);
+        assertEquals(55.45, envelope.getMaxY(), 1e-6);
+        assertTrue(envelope.contains(15.0, 52.0));
+        assertFalse(envelope.contains(25.0, 52.0));
+    }
+
+    @Test
+    public void testGetGeoEnvelopeAcrossAntiMeridian() throws Exception {
+        Product dateLineProduct = new Product("product", "MER_RR__1P", 200, 50);
+        dateLineProduct.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, 200, 50, 170.0, 55.0, 0.1, 0.1, 0.0, 0.0));
+
+        assertNull(PrevueMapper.getGeoEnvelope(dateLineProduct));
+    }
+
+    @Test
+    public void testGetSourceWindow() throws Exception {
+        double[] outline = PrevueMapper.getLatLonPatchOutline(new GeoPos(52.5, 15.0));
+
+        Rectangle sourceWindow = PrevueMapper.getSourceWindow(product.getSceneGeoCoding(), outline, 100, 50);
+
+        assertEquals(new Rectangle(43, 18, 14, 14), sourceWindow);
+    }
+
+    @Test
+    public void testGetSourceWindowIsClipped() throws Exception {
+        double[] outline = PrevueMapper.getLatLonPatchOutline(new GeoPos(52.5, 10.0));
+
+        Rectangle sourceWindow = PrevueMapper.getSourceWindow(product.getSceneGeoCoding(), outline, 100, 50);
+
+        assertEquals(new Rectangle(0, 18, 7, 14), sourceWindow);
+    }
+
+    @Test
+    public void testGetUtmPatchOutline() throws Exception {
+        double[] outline = PrevueMapper.getUtmPatchOutline(new GeoPos(52.5, 15.0));
+
+        // 49 pixels of 260 m are about 0.19 degrees of latitude
+        double minLat = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        for (int i = 0; i < outline.length; i += 2) {
+            minLat = Math.min(minLat, outline[i + 1]);
+            maxLat = Math.max(maxLat, outline[i + 1]);
+        }
+        assertEquals(52.5 - 23.5 * 260.0 / 111300.0, minLat, 0.01);
+        assertEquals(52.5 + 25.5 * 260.0 / 111300.0, maxLat, 0.01);
+    }
+}
@@ -49,6 +49,64 @@ public class ProductDeDuplicatorTest {
 //        assertSame(deduplicate.get(1), inventory.get(1));
     }
 
+    @Test
+    public void testSort() throws Exception {
+        ProductInventoryEntry late = ProductInventoryEntry.create("2001-10-02-13-12-15.456789",
+                                                                  "2001-10-02-13-16-14.456789",
+                                                                  "200", "0", "200", "Good");
+        ProductInventoryEntry early = ProductInventoryEntry.create("2001-10-02-13-10-11.123400",
+                                                                   "2001-10-02-13-12-14.456789",
+                                                                   "100", "0", "100", "Good");
+        List<ProductInventoryEntry> inventory = new ArrayList<ProductInventoryEntry>();
+        inventory.add(late);
+        inventory.add(early);
+
+        ProductDeDuplicator.sort(inventory);
+        assertSame(early, inventory.get(0));
+        assertSame(late, inventory.get(1));
+    }
+
+    @Test
+    public void testMissing() throws Exception {
+        // 101 lines, one line per second
+        ProductInventoryEntry sameStart = ProductInventoryEntry.create("2001-10-02-10-00-00.000000",
+                                                                       "2001-10-02-10-01-40.000000",
+                                                                       "101", "0", "101", "Good");
+        ProductInventoryEntry shortenedStart = ProductInventoryEntry.create("2001-10-02-11-00-00.000000",
+                                                                            "2001-10-02-11-01-40.000000",
+                                                                            "101", "70", "31", "Good");
+        ProductInventoryEntry shortenedStop = ProductInventoryEntry.create("2001-10-02-12-00-00.000000",
+                                                                           "2001-10-02-12-01-40.000000",
+                                                                           "101", "0", "20", "Good");
+        ProductInventoryEntry notProcessed = ProductInventoryEntry.create("2001-10-02-13-00-00.000000",
+                                                                          "2001-10-02-13-01-40.000000",
+                                                                          "101", "0", "101", "Good");
+        ProductInventoryEntry skipped = ProductInventoryEntry.create("2001-10-02-14-00-00.000000",
+                                                                     "2001-10-02-14-01-40.000000",
+                                                                     "101", "0", "0", "Good");
+        List<ProductInventoryEntry> src = new ArrayList<ProductInventoryEntry>();
+        src.add(notProcessed);
+        src.add(sameStart);
+        src.add(shortenedStart);
+        src.add(skipped);
+        src.add(shortenedStop);
+
+        List<ProductInventoryEntry> target = new ArrayList<ProductInventoryEntry>();
+        target.add(ProductInventoryEntry.create("2001-10-02-11-59-30.000000", "2001-10-02-12-01-04.000000",
+                                                "95", "0", "95", "Good"));
+        target.add(ProductInventoryEntry.create("2001-10-02-11-01-04.000000", "2001-10-02-11-01-40.000000",
+                                                "37", "0", "37", "Good"));
+        target.add(ProductInventoryEntry.create("2001-10-02-10-00-00.000000", "2001-10-02-10-01-40.000000",
+                                                "101", "0", "101", "Good"));
+        // not processed in the target, does not count
+        target.add(ProductInventoryEntry.create("2001-10-02-13-00-00.000000", "2001-10-02-13-01-40.000000",
+                                                "101", "0", "0", "Good"));
+
+        List<ProductInventoryEntry> missing = ProductDeDuplicator.missing(src, target);
+        assertEquals(1, missing.size());
+        assertSame(notProcessed, missing.get(0));
+    }
+
     public static void main(String[] args) throws IOException {
         List<ProductInventoryEntry> l1b = load("inv_fr_l1b").getAll();
         List<ProductInventoryEntry> amorgos = load("inv_fr_amo").getAll();
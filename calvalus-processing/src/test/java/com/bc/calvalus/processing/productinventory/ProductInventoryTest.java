@@ -19,6 +19,8 @@ package com.bc.calvalus.processing.productinventory;
 import org.junit.Test;
 
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -44,4 +46,19 @@ public class ProductInventoryTest {
         assertEquals(3, entry.getProcessStartLine());
         assertEquals(42, entry.getProcessLength());
     }
+
+    @Test
+    public void testReadEntries() throws Exception {
+        String content = "first\t2001-07-02-13-10-11.123400\t2001-07-02-13-12-14.567800\t45\t3\t42\tbar\n" +
+                         "broken\tnot-a-date\t2001-07-02-13-12-14.567800\t45\t3\t42\tbar\n" +
+                         "second\t2001-07-02-13-20-11.123400\t2001-07-02-13-22-14.567800\t50\t0\t50\tGood";
+
+        List<ProductInventoryEntry> entries = new ArrayList<ProductInventoryEntry>();
+        ProductInventory.readEntries(new StringReader(content), entries::add);
+
+        assertEquals(2, entries.size());
+        assertEquals("first", entries.get(0).getProductName());
+        assertEquals("second", entries.get(1).getProductName());
+        assertEquals(50, entries.get(1).getProcessLength());
+    }
 }
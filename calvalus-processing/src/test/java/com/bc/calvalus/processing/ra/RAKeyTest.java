@@ -0,0 +1,34 @@
+package com.bc.calvalus.processing.ra;
+
+import com.bc.calvalus.processing.hadoop.RawComparatorChecker;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class RAKeyTest {
+
+    @Test
+    public void testSortComparatorIsRegistered() throws Exception {
+        assertTrue(WritableComparator.get(RAKey.class) instanceof RAKey.SortComparator);
+    }
+
+    @Test
+    public void testRawSortOrder() throws Exception {
+        RawComparatorChecker.assertSameOrder(new RAKey.SortComparator(), RAKey::compareTo, RAKeyTest::randomKey);
+    }
+
+    @Test
+    public void testRawGroupOrder() throws Exception {
+        RawComparatorChecker.assertSameOrder(new RAKey.GroupComparator(),
+                                             (RAKey k1, RAKey k2) -> Integer.compare(k1.getRegionId(), k2.getRegionId()),
+                                             RAKeyTest::randomKey);
+    }
+
+    private static RAKey randomKey(Random random) {
+        int regionId = random.nextInt(7) - 3;
+        return new RAKey(regionId, "region" + regionId, 1483228800000L + (random.nextInt(9) - 4) * 86400000L);
+    }
+}
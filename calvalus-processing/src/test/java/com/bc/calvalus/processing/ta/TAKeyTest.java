@@ -0,0 +1,33 @@
+package com.bc.calvalus.processing.ta;
+
+import com.bc.calvalus.processing.hadoop.RawComparatorChecker;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class TAKeyTest {
+
+    @Test
+    public void testSortComparatorIsRegistered() throws Exception {
+        assertTrue(WritableComparator.get(TAKey.class) instanceof TAKey.TAKeyComparator);
+    }
+
+    @Test
+    public void testRawSortOrder() throws Exception {
+        RawComparatorChecker.assertSameOrder(new TAKey.TAKeyComparator(), TAKey::compareTo, TAKeyTest::randomKey);
+    }
+
+    @Test
+    public void testRawGroupOrder() throws Exception {
+        RawComparatorChecker.assertSameOrder(new TAKey.TAKeyRegionComparator(),
+                                             (TAKey k1, TAKey k2) -> Integer.compare(k1.getRegionId(), k2.getRegionId()),
+                                             TAKeyTest::randomKey);
+    }
+
+    private static TAKey randomKey(Random random) {
+        return new TAKey(random.nextInt(7) - 3, random.nextInt(5) * (long) Integer.MAX_VALUE - 1, random.nextInt(9) - 4);
+    }
+}
@@ -0,0 +1,81 @@
+package com.bc.calvalus.processing.utils;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GridAggregatorTest {
+
+    private static final GridAggregator.PixelAccumulator SUM_AND_COUNT = (sample, cellValues) -> {
+        cellValues[0] += sample;
+        cellValues[1]++;
+    };
+
+    private Product product;
+    private Band band;
+
+    @Before
+    public void setUp() throws Exception {
+        product = new Product("source", "type", 6, 4);
+        band = product.addBand("band_1", ProductData.TYPE_FLOAT32);
+        float[] samples = new float[6 * 4];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = i;
+        }
+        band.setRasterData(ProductData.createInstance(samples));
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+        GridAggregator gridAggregator = new GridAggregator(2, 2, new int[]{0, 3, 0, 3}, new int[]{0, 0, 2, 2}, 3, 2, 6, 4);
+
+        float[][] cellValues = gridAggregator.aggregate(band, 2, SUM_AND_COUNT, 1);
+
+        assertArrayEquals(new float[]{0 + 1 + 2 + 6 + 7 + 8, 3 + 4 + 5 + 9 + 10 + 11,
+                                      12 + 13 + 14 + 18 + 19 + 20, 15 + 16 + 17 + 21 + 22 + 23}, cellValues[0], 1e-6F);
+        assertArrayEquals(new float[]{6, 6, 6, 6}, cellValues[1], 1e-6F);
+    }
+
+    @Test
+    public void testWindowsAreClippedToTheSourceRaster() throws Exception {
+        GridAggregator gridAggregator = new GridAggregator(2, 1, new int[]{-1, 5}, new int[]{-1, 3}, 2, 2, 6, 4);
+
+        float[][] cellValues = gridAggregator.aggregate(band, 2, SUM_AND_COUNT, 1);
+
+        assertArrayEquals(new float[]{0, 23}, cellValues[0], 1e-6F);
+        assertArrayEquals(new float[]{1, 1}, cellValues[1], 1e-6F);
+    }
+
+    @Test
+    public void testConcurrentAggregationIsEqual() throws Exception {
+        GridAggregator gridAggregator = new GridAggregator(3, 4, new int[]{0, 2, 4, 0, 2, 4, 0, 2, 4, 0, 2, 4},
+                                                           new int[]{0, 0, 0, 1, 1, 1, 2, 2, 2, 3, 3, 3}, 2, 1, 6, 4);
+
+        float[][] sequential = gridAggregator.aggregate(band, 2, SUM_AND_COUNT, 1);
+        float[][] concurrent = gridAggregator.aggregate(band, 2, SUM_AND_COUNT, 4);
+
+        assertArrayEquals(sequential[0], concurrent[0], 1e-6F);
+        assertArrayEquals(sequential[1], concurrent[1], 1e-6F);
+        assertEquals(0 + 1, concurrent[0][0], 1e-6F);
+        assertEquals(22 + 23, concurrent[0][11], 1e-6F);
+    }
+
+    @Test
+    public void testCreateCentresTheWindowsOnTheCellCorners() throws Exception {
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, 6, 4, 0.0, 4.0, 1.0, 1.0, 0.0, 0.0));
+        CrsGeoCoding gridGeoCoding = new CrsGeoCoding(DefaultGeographicCRS.WGS84, 2, 2, 0.0, 4.0, 3.0, 2.0, 0.0, 0.0);
+
+        GridAggregator gridAggregator = GridAggregator.create(gridGeoCoding, 2, 2, product.getSceneGeoCoding(), 6, 4, 3, 2);
+        float[][] cellValues = gridAggregator.aggregate(band, 2, SUM_AND_COUNT, 2);
+
+        assertArrayEquals(new float[]{0 + 1, 1 + 2 + 3, 6 + 7 + 12 + 13, 7 + 8 + 9 + 13 + 14 + 15}, cellValues[0], 1e-6F);
+        assertArrayEquals(new float[]{2, 3, 4, 6}, cellValues[1], 1e-6F);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2026 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.vc;
+
+import org.apache.hadoop.util.Progressable;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class VCMapperTest {
+
+    @Test
+    public void testRunConcurrentlyReturnsResultsInTaskOrder() throws Exception {
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int index = i;
+            tasks.add(() -> {
+                Thread.sleep(40 - 10 * index);
+                return "diff" + index;
+            });
+        }
+
+        List<String> results = VCMapper.runConcurrently(tasks, 4, mock(Progressable.class), () -> fail("not cancelled"));
+
+        assertEquals(Arrays.asList("diff0", "diff1", "diff2", "diff3"), results);
+    }
+
+    @Test
+    public void testFailedDifferentiationCancelsTheOthers() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final AtomicBoolean terminated = new AtomicBoolean();
+        List<Callable<String>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            try {
+                started.countDown();
+                // stands for a processor that only stops when it is killed
+                cancelled.await();
+                return "diff0";
+            } finally {
+                terminated.set(true);
+            }
+        });
+        tasks.add(() -> {
+            started.await();
+            throw new IOException("diff1 failed");
+        });
+
+        try {
+            VCMapper.runConcurrently(tasks, 2, mock(Progressable.class), cancelled::countDown);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertEquals("diff1 failed", expected.getMessage());
+        }
+        assertEquals(0, cancelled.getCount());
+        assertTrue(terminated.get());
+    }
+}
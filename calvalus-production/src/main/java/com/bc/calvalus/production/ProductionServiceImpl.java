@@ -297,40 +297,50 @@ public class ProductionServiceImpl extends Observable implements ProductionServi
         productionStagingsMap.put(production.getId(), staging);
     }
 
+    /**
+     * Updates the job statuses from the processing service, then the statuses of all productions
+     * that are not yet done. The remote calls to the processing system are made without holding
+     * the lock of this service.
+     */
     @Override
-    public synchronized void updateStatuses(String username) {
+    public void updateStatuses(String username) {
         try {
             processingService.updateStatuses(username);
         } catch (Exception e) {
             logger.warning("Failed to update job statuses: " + e.getMessage());
         }
 
-        // Update state of all registered productions
-        Production[] productions = productionStore.getProductions();
-        for (Production production : productions) {
-            production.getWorkflow().updateStatus();
-        }
+        synchronized (this) {
+            // Update state of all registered productions that may still change,
+            // the workflows fire status events only for jobs that have changed
+            Production[] productions = productionStore.getProductions();
+            for (Production production : productions) {
+                if (!production.getProcessingStatus().isDone()) {
+                    production.getWorkflow().updateStatus();
+                }
+            }
 
-        // Now try to delete productions
-        for (Production production : productions) {
-            if (production.getProcessingStatus().isDone()) {
-                Action action = productionActionMap.get(production.getId());
-                if (action == Action.DELETE) {
-                    removeProduction(production);
+            // Now try to delete productions
+            for (Production production : productions) {
+                if (production.getProcessingStatus().isDone()) {
+                    Action action = productionActionMap.get(production.getId());
+                    if (action == Action.DELETE) {
+                        removeProduction(production);
+                    }
                 }
             }
-        }
 
-        // Copy result to staging area
-        for (Production production : productions) {
-            if (production.isAutoStaging()
-                && production.getProcessingStatus().getState() == ProcessState.COMPLETED
-                && production.getStagingStatus().getState() == ProcessState.UNKNOWN
-                && productionStagingsMap.get(production.getId()) == null) {
-                try {
-                    stageProductionResults(production);
-                } catch (ProductionException e) {
-                    logger.warning("Failed to stage production: " + e.getMessage());
+            // Copy result to staging area
+            for (Production production : productions) {
+                if (production.isAutoStaging()
+                    && production.getProcessingStatus().getState() == ProcessState.COMPLETED
+                    && production.getStagingStatus().getState() == ProcessState.UNKNOWN
+                    && productionStagingsMap.get(production.getId()) == null) {
+                    try {
+                        stageProductionResults(production);
+                    } catch (ProductionException e) {
+                        logger.warning("Failed to stage production: " + e.getMessage());
+                    }
                 }
             }
         }
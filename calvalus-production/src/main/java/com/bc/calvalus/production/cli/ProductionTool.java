@@ -863,6 +863,16 @@ public class ProductionTool {
                 .withLongOpt("verify")
                 .withDescription("Verify existence and size to avoid double copying, defaults to false")
                 .create());
+        options.addOption(OptionBuilder
+                .withLongOpt("threads")
+                .hasArg()
+                .withDescription("Number of files copied concurrently during ingestion, defaults to 1")
+                .create());  // (sub) commands don't have short options
+        options.addOption(OptionBuilder
+                .withLongOpt("manifest")
+                .hasArg()
+                .withDescription("File recording ingested files with size and MD5, ingestion skips files already recorded")
+                .create());  // (sub) commands don't have short options
         options.addOption(OptionBuilder
                 .withLongOpt("test-auth")
                 .withDescription("Test authentication by SAML token. Print SAML token on success.")
@@ -23,21 +23,41 @@ import com.bc.calvalus.processing.ProcessingService;
 import com.bc.calvalus.production.Production;
 import com.bc.calvalus.production.ProductionStaging;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileChecksum;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.mapred.JobClient;
 import org.esa.snap.core.util.io.FileUtils;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * The staging job for match-up analysis (MA) results.
+ * <p/>
+ * Output files are copied concurrently. If a zip is produced, each file is added to it as soon as it has been
+ * copied, while the remaining files are still being copied. Files already staged by an interrupted attempt are
+ * skipped if their size and the checksum of their source still match.
  *
  * @author Norman
  */
@@ -45,10 +65,14 @@ class CopyStaging extends ProductionStaging {
 
     private static final Logger LOG = CalvalusLogger.getLogger();
     private static final long GIGABYTE = 1024L * 1024L * 1024L;
+    private static final String STAGED_FILES_NAME = ".staged.properties";
+    private static final int MAX_ATTEMPTS = 3;
 
     private final Configuration hadoopConfiguration;
     private final FileSystem fileSystem;
     private final File stagingDir;
+    private final AtomicLong bytesCopied;
+    private FileStatus[] fileStatuses;
 
     public CopyStaging(Production production,
                        Configuration hadoopConfiguration,
@@ -58,6 +82,17 @@ class CopyStaging extends ProductionStaging {
         this.hadoopConfiguration = hadoopConfiguration;
         this.fileSystem = fileSystem;
         this.stagingDir = new File(stagingAreaPath, production.getStagingPath());
+        this.bytesCopied = new AtomicLong();
+    }
+
+    @Override
+    public long getStagingSize() {
+        try {
+            return getTotalFilesSize(getFileStatuses());
+        } catch (IOException e) {
+            LOG.warning("Failed to determine size of " + getProduction().getOutputPath() + ": " + e.getMessage());
+            return 0L;
+        }
     }
 
     @Override
@@ -69,44 +104,45 @@ class CopyStaging extends ProductionStaging {
         }
         LOG.info("staging dir is: " + stagingDir);
 
-        Path remoteOutputDir = new Path(production.getOutputPath());
-        //FileSystem fileSystem = FileSystem.get(remoteOutputDir.toUri(), hadoopConfiguration, production.getProductionRequest().getUserName());
-
         // Simply copy entire content of remoteOutputDir
-        FileStatus[] fileStatuses = fileSystem.globStatus(new Path(remoteOutputDir, "*.*"));
-        long totalFilesSize = 0L;
-        if (fileStatuses != null) {
-            for (int i = 0; i < fileStatuses.length; i++) {
-                FileStatus fileStatus = fileStatuses[i];
-                Path path = fileStatus.getPath();
-                LOG.info("copying: " + path);
-                int attemptNo = 0;
-                boolean copySuccess = false;
-                while (!copySuccess && attemptNo < 3) {
-                    File dst = new File(stagingDir, path.getName());
-                    try {
-                        FileUtil.copy(fileSystem, path, dst, false, hadoopConfiguration);
-                        copySuccess = true;
-                    } catch (IOException ioe) {
-                        String msg = String.format("Attempt(%d) Problem while staging: %s: %s", attemptNo, path, ioe.getMessage());
-                        LogRecord logRecord = new LogRecord(Level.FINE, msg);
-                        logRecord.setThrown(ioe);
-                        LOG.log(logRecord);
-                        if (dst.exists()) {
-                            dst.delete();
-                        }
-                    } finally {
-                        attemptNo++;
-                    }
+        FileStatus[] fileStatuses = getFileStatuses();
+        long totalFilesSize = getTotalFilesSize(fileStatuses);
+        String zipFilename = getSafeFilename(production.getName() + ".zip");
+        ZipOutputStream zipOutputStream = null;
+        if (fileStatuses.length > 0 && totalFilesSize < 2L * GIGABYTE) {
+            zipOutputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(new File(stagingDir, zipFilename))));
+            zipOutputStream.setMethod(ZipEntry.DEFLATED);
+        }
+
+        StagedFiles stagedFiles = new StagedFiles(new File(stagingDir, STAGED_FILES_NAME));
+        int numThreads = Math.max(1, Math.min(fileStatuses.length, hadoopConfiguration.getInt("calvalus.staging.copyThreads", 4)));
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        bytesCopied.set(0L);
+        long startTime = System.currentTimeMillis();
+        try {
+            List<Future<File>> futures = new ArrayList<>(fileStatuses.length);
+            for (FileStatus fileStatus : fileStatuses) {
+                futures.add(executorService.submit(() -> copy(fileStatus, stagedFiles)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                File file = waitForCopy(futures.get(i), i, futures.size(), totalFilesSize, startTime);
+                if (isCancelled()) {
+                    return;
+                }
+                if (zipOutputStream != null && file != null && !file.getName().equals(zipFilename)) {
+                    addToZip(file, zipOutputStream);
                 }
-                totalFilesSize += fileStatus.getLen();
-                production.setStagingStatus(new ProcessStatus(ProcessState.RUNNING, (i + 1.0F) / fileStatuses.length, path.getName()));
+            }
+        } finally {
+            executorService.shutdownNow();
+            if (zipOutputStream != null) {
+                zipOutputStream.close();
             }
         }
-        if (totalFilesSize < 2L * GIGABYTE) {
-            String zipFilename = getSafeFilename(production.getName() + ".zip");
-            zip(stagingDir, new File(stagingDir, zipFilename));
-        }
+        LOG.info(String.format("staged %d files with %d bytes in %d s", fileStatuses.length, totalFilesSize,
+                               (System.currentTimeMillis() - startTime) / 1000));
+        // the staging directory is published, it only keeps the staged files
+        stagedFiles.delete();
 
         production.setStagingStatus(new ProcessStatus(ProcessState.COMPLETED, 1.0F, ""));
     }
@@ -117,4 +153,152 @@ class CopyStaging extends ProductionStaging {
         FileUtils.deleteTree(stagingDir);
         getProduction().setStagingStatus(new ProcessStatus(ProcessState.CANCELLED));
     }
+
+    private synchronized FileStatus[] getFileStatuses() throws IOException {
+        if (fileStatuses == null) {
+            Path remoteOutputDir = new Path(getProduction().getOutputPath());
+            FileStatus[] globStatus = fileSystem.globStatus(new Path(remoteOutputDir, "*.*"));
+            fileStatuses = globStatus != null ? globStatus : new FileStatus[0];
+        }
+        return fileStatuses;
+    }
+
+    private static long getTotalFilesSize(FileStatus[] fileStatuses) {
+        long totalFilesSize = 0L;
+        for (FileStatus fileStatus : fileStatuses) {
+            totalFilesSize += fileStatus.getLen();
+        }
+        return totalFilesSize;
+    }
+
+    /**
+     * Waits for a copy to complete and reports the transfer rate meanwhile.
+     */
+    private File waitForCopy(Future<File> future, int fileIndex, int numFiles, long totalFilesSize, long startTime) throws Throwable {
+        while (true) {
+            try {
+                File file = future.get(1, TimeUnit.SECONDS);
+                updateStagingStatus(fileIndex + 1, numFiles, totalFilesSize, startTime);
+                return file;
+            } catch (TimeoutException e) {
+                updateStagingStatus(fileIndex, numFiles, totalFilesSize, startTime);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private void updateStagingStatus(int filesDone, int numFiles, long totalFilesSize, long startTime) {
+        long bytes = bytesCopied.get();
+        double seconds = Math.max(0.001, (System.currentTimeMillis() - startTime) / 1000.0);
+        float progress = totalFilesSize > 0 ? (float) bytes / totalFilesSize : (float) filesDone / numFiles;
+        String message = String.format("%d of %d files, %.1f MB/s", filesDone, numFiles, bytes / seconds / (1024 * 1024));
+        getProduction().setStagingStatus(new ProcessStatus(ProcessState.RUNNING, Math.min(progress, 1.0F), message));
+    }
+
+    /**
+     * Copies one output file into the staging directory, with retries.
+     *
+     * @return the staged file, or {@code null} if all attempts failed
+     */
+    private File copy(FileStatus fileStatus, StagedFiles stagedFiles) throws IOException {
+        Path path = fileStatus.getPath();
+        File dst = new File(stagingDir, path.getName());
+        String sourceId = getSourceId(fileStatus);
+        if (dst.length() == fileStatus.getLen() && sourceId.equals(stagedFiles.get(dst.getName()))) {
+            LOG.info("already staged: " + path);
+            bytesCopied.addAndGet(fileStatus.getLen());
+            return dst;
+        }
+        LOG.info("copying: " + path);
+        for (int attemptNo = 0; attemptNo < MAX_ATTEMPTS; attemptNo++) {
+            long attemptBytes = 0L;
+            try (InputStream inputStream = fileSystem.open(path);
+                 OutputStream outputStream = new FileOutputStream(dst)) {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = inputStream.read(buffer)) > 0) {
+                    outputStream.write(buffer, 0, n);
+                    attemptBytes += n;
+                    bytesCopied.addAndGet(n);
+                    if (isCancelled()) {
+                        return null;
+                    }
+                }
+            } catch (IOException ioe) {
+                String msg = String.format("Attempt(%d) Problem while staging: %s: %s", attemptNo, path, ioe.getMessage());
+                LogRecord logRecord = new LogRecord(Level.FINE, msg);
+                logRecord.setThrown(ioe);
+                LOG.log(logRecord);
+                bytesCopied.addAndGet(-attemptBytes);
+                if (dst.exists()) {
+                    dst.delete();
+                }
+                continue;
+            }
+            stagedFiles.put(dst.getName(), sourceId);
+            return dst;
+        }
+        LOG.warning("Failed to stage " + path + " after " + MAX_ATTEMPTS + " attempts");
+        return null;
+    }
+
+    /**
+     * Identifies the content of a source file by its size, modification time and checksum, if the file system provides one.
+     */
+    private String getSourceId(FileStatus fileStatus) throws IOException {
+        FileChecksum checksum = fileSystem.getFileChecksum(fileStatus.getPath());
+        return fileStatus.getLen() + ":" + fileStatus.getModificationTime() + ":" + (checksum != null ? checksum.toString() : "");
+    }
+
+    private static void addToZip(File file, ZipOutputStream zipOutputStream) throws IOException {
+        LOG.info("Adding " + file.getName() + " to zip ...");
+        try (InputStream inputStream = new FileInputStream(file)) {
+            zipOutputStream.putNextEntry(new ZipEntry(file.getName()));
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = inputStream.read(buffer)) > 0) {
+                zipOutputStream.write(buffer, 0, n);
+            }
+            zipOutputStream.closeEntry();
+        }
+    }
+
+    /**
+     * The source identities of the files staged so far, kept in the staging directory until staging completes.
+     */
+    private static class StagedFiles {
+
+        private final File file;
+        private final Properties properties;
+
+        private StagedFiles(File file) {
+            this.file = file;
+            this.properties = new Properties();
+            if (file.exists()) {
+                try (InputStream inputStream = new FileInputStream(file)) {
+                    properties.load(inputStream);
+                } catch (IOException e) {
+                    LOG.warning("Ignoring unreadable " + file + ": " + e.getMessage());
+                }
+            }
+        }
+
+        private synchronized String get(String name) {
+            return properties.getProperty(name);
+        }
+
+        private synchronized void put(String name, String sourceId) throws IOException {
+            properties.setProperty(name, sourceId);
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                properties.store(outputStream, null);
+            }
+        }
+
+        private synchronized void delete() {
+            if (file.exists() && !file.delete()) {
+                LOG.warning("Failed to delete " + file);
+            }
+        }
+    }
 }
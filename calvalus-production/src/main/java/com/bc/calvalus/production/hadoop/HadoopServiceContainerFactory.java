@@ -73,7 +73,9 @@ public class HadoopServiceContainerFactory implements ServiceContainerFactory {
                                                             "SA", "",
                                                             !databaseExists);
             }
-            StagingService stagingService = new SimpleStagingService(stagingDir, 3);
+            int maxParallelStagings = Integer.parseInt(serviceConfiguration.getOrDefault("calvalus.staging.maxParallelJobs", "8"));
+            long maxMegabytesInFlight = Long.parseLong(serviceConfiguration.getOrDefault("calvalus.staging.maxMegabytesInFlight", "16384"));
+            StagingService stagingService = new SimpleStagingService(stagingDir, maxParallelStagings, maxMegabytesInFlight * 1024L * 1024L);
             ProductionType[] productionTypes = getProductionTypes(hdfsFileSystemService, processingService, stagingService);
             ProductionService productionService = new ProductionServiceImpl(hdfsFileSystemService,
                                                                             processingService,
@@ -67,6 +67,11 @@ class LocalProcessingService implements ProcessingService<String> {
         }
     }
 
+    @Override
+    public ProcessStatus getJobStatus(String username, String jobId) {
+        return getJobStatus(jobId);
+    }
+
     @Override
     public ProcessStatus getJobStatus(String jobId) {
         synchronized (jobStatuses) {
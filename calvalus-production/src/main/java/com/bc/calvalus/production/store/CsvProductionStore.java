@@ -1,5 +1,6 @@
 package com.bc.calvalus.production.store;
 
+import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.commons.ProcessState;
 import com.bc.calvalus.commons.ProcessStatus;
 import com.bc.calvalus.commons.WorkflowItem;
@@ -10,29 +11,57 @@ import com.bc.calvalus.production.ProductionRequest;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A plain text database for productions.
+ * <p/>
+ * The database consists of a snapshot file holding one line per production and an append-only
+ * journal file ({@code <databaseFile>.journal}) which records the productions added, removed or
+ * changed in their status since the snapshot was written. {@link #persist()} only appends the
+ * changes of the current cycle to the journal. Once the journal has grown beyond the size of the
+ * snapshot, it is compacted into a new snapshot, which is written to a temporary file and atomically
+ * renamed. On {@link #update()}, the snapshot is read and the journal is replayed on top of it;
+ * an incomplete trailing journal record, e.g. left by a crash, is ignored.
  *
  * @author Norman
  */
 public class CsvProductionStore implements ProductionStore {
 
+    static final String JOURNAL_ADD = "ADD";
+    static final String JOURNAL_REMOVE = "REMOVE";
+    static final String JOURNAL_STATUS = "STATUS";
+    private static final String END_OF_RECORD = "EoR";
+    private static final int MIN_COMPACTION_RECORD_COUNT = 1000;
+
     private final File databaseFile;
+    private final File journalFile;
     private final List<Production> productionsList;
     private final Map<String, Production> productionsMap;
     private final ProcessingService processingService;
 
+    // status part of every production as last written to snapshot or journal, by production ID
+    private final Map<String, String> persistedStatusRecords;
+    private final Set<String> removedProductionIds;
+    private int journalRecordCount;
+    private boolean loaded;
+
     public CsvProductionStore(ProcessingService processingService, File databaseFile) {
         if (processingService == null) {
             throw new NullPointerException("processingService");
@@ -41,21 +70,32 @@ public class CsvProductionStore implements ProductionStore {
             throw new NullPointerException("databaseFile");
         }
         this.databaseFile = databaseFile;
+        this.journalFile = new File(databaseFile.getParentFile(), databaseFile.getName() + ".journal");
         this.processingService = processingService;
         this.productionsList = new ArrayList<Production>();
         this.productionsMap = new HashMap<String, Production>();
+        this.persistedStatusRecords = new HashMap<String, String>();
+        this.removedProductionIds = new HashSet<String>();
     }
 
     @Override
     public synchronized void addProduction(Production production) {
+        Production oldProduction = productionsMap.put(production.getId(), production);
+        if (oldProduction != null) {
+            productionsList.remove(oldProduction);
+        }
         productionsList.add(production);
-        productionsMap.put(production.getId(), production);
     }
 
     @Override
-    public synchronized void removeProduction(String  productionId) {
-        productionsList.remove(productionId);
-        productionsMap.remove(productionId);
+    public synchronized void removeProduction(String productionId) {
+        Production production = productionsMap.remove(productionId);
+        if (production != null) {
+            productionsList.remove(production);
+            if (persistedStatusRecords.containsKey(productionId)) {
+                removedProductionIds.add(productionId);
+            }
+        }
     }
 
     @Override
@@ -68,15 +108,39 @@ public class CsvProductionStore implements ProductionStore {
         return productionsMap.get(productionId);
     }
 
+    /**
+     * Reads the snapshot and replays the journal. Productions already known to this store are kept,
+     * since the only source of status information is the processing system.
+     *
+     * @throws ProductionException If an error occurred.
+     */
     @Override
     public synchronized void update() throws ProductionException {
-        load(databaseFile);
+        try {
+            recover();
+        } catch (IOException e) {
+            String message = String.format("Failed to load production store from: %s\n%s",
+                                           databaseFile.getPath(), e.getMessage());
+            throw new ProductionException(message, e);
+        }
     }
 
+    /**
+     * Appends the productions added, removed or changed in status since the last call to the journal.
+     * Compacts the journal into a new snapshot if it has grown too large.
+     *
+     * @throws ProductionException If an error occurred.
+     */
     @Override
     public synchronized void persist() throws ProductionException {
         try {
-            store(databaseFile);
+            if (!loaded) {
+                recover();
+            }
+            appendJournal();
+            if (journalRecordCount > Math.max(MIN_COMPACTION_RECORD_COUNT, productionsList.size())) {
+                compact();
+            }
         } catch (IOException e) {
             String message = String.format("Failed to store productions in: %s\n%s",
                                            databaseFile.getPath(), e.getMessage());
@@ -84,91 +148,249 @@ public class CsvProductionStore implements ProductionStore {
         }
     }
 
-    private void load(File databaseFile) throws ProductionException {
-        if (databaseFile.exists()) {
-            try {
-                BufferedReader reader = new BufferedReader(new FileReader(databaseFile));
-                try {
-                    load(reader);
-                } finally {
-                    reader.close();
+    @Override
+    public void close() throws ProductionException {
+    }
+
+    int getJournalRecordCount() {
+        return journalRecordCount;
+    }
+
+    private void recover() throws IOException {
+        File snapshotFile = databaseFile;
+        if (!snapshotFile.exists()) {
+            // a crash during compaction may have left the previous snapshot as backup only
+            File bakFile = getSiblingFile(".bak");
+            if (bakFile.exists()) {
+                snapshotFile = bakFile;
+            }
+        }
+
+        Map<String, String> records = new LinkedHashMap<String, String>();
+        Map<String, String> statusRecords = new HashMap<String, String>();
+        if (snapshotFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(snapshotFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    records.put(decodeTSV(line.substring(0, line.indexOf('\t'))), line);
                 }
-            } catch (IOException e) {
-                String message = String.format("Failed to load production store from: %s\n%s",
-                                               databaseFile.getPath(), e.getMessage());
-                throw new ProductionException(message, e);
             }
         }
+        int replayedRecordCount = 0;
+        if (journalFile.exists()) {
+            replayedRecordCount = replayJournal(records, statusRecords);
+        }
+
+        for (Map.Entry<String, String> entry : records.entrySet()) {
+            String id = entry.getKey();
+            String[] tokens = entry.getValue().split("\t");
+            String statusRecord = statusRecords.get(id);
+            Production production = decodeProduction(tokens, statusRecord != null ? statusRecord.split("\t") : null);
+            if (removedProductionIds.contains(id)) {
+                continue;
+            }
+            if (!productionsMap.containsKey(id)) {
+                addProduction(production);
+            }
+            persistedStatusRecords.put(id, encodeStatusRecord(production));
+        }
+        loaded = true;
+
+        if (replayedRecordCount > 0) {
+            // start with a clean journal, this also drops a possibly incomplete trailing record
+            compact();
+        }
     }
 
-    @Override
-    public void close() throws ProductionException {
+    private int replayJournal(Map<String, String> records, Map<String, String> statusRecords) throws IOException {
+        int recordCount = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.endsWith("\t" + END_OF_RECORD)) {
+                    CalvalusLogger.getLogger().warning("Ignoring incomplete record in production journal " + journalFile.getPath());
+                    break;
+                }
+                int typeEnd = line.indexOf('\t');
+                String type = line.substring(0, typeEnd);
+                String record = line.substring(typeEnd + 1);
+                int idEnd = record.indexOf('\t');
+                String id = decodeTSV(record.substring(0, idEnd));
+                if (JOURNAL_ADD.equals(type)) {
+                    records.put(id, record);
+                    statusRecords.remove(id);
+                } else if (JOURNAL_REMOVE.equals(type)) {
+                    records.remove(id);
+                    statusRecords.remove(id);
+                } else if (JOURNAL_STATUS.equals(type)) {
+                    if (records.containsKey(id)) {
+                        statusRecords.put(id, record.substring(idEnd + 1));
+                    }
+                } else {
+                    throw new IOException("Unknown record type in production journal: " + type);
+                }
+                recordCount++;
+            }
+        }
+        return recordCount;
+    }
+
+    private void appendJournal() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int recordCount = 0;
+        for (String productionId : removedProductionIds) {
+            sb.append(JOURNAL_REMOVE).append('\t').append(encodeTSV(productionId)).append('\t').append(END_OF_RECORD).append('\n');
+            recordCount++;
+        }
+        Map<String, String> changedStatusRecords = new HashMap<String, String>();
+        for (Production production : productionsList) {
+            String statusRecord = encodeStatusRecord(production);
+            String persistedStatusRecord = persistedStatusRecords.get(production.getId());
+            if (persistedStatusRecord == null) {
+                sb.append(JOURNAL_ADD).append('\t').append(encodeProduction(production)).append('\n');
+                changedStatusRecords.put(production.getId(), statusRecord);
+                recordCount++;
+            } else if (!persistedStatusRecord.equals(statusRecord)) {
+                sb.append(JOURNAL_STATUS).append('\t').append(encodeTSV(production.getId())).append('\t')
+                        .append(statusRecord).append('\t').append(END_OF_RECORD).append('\n');
+                changedStatusRecords.put(production.getId(), statusRecord);
+                recordCount++;
+            }
+        }
+        if (recordCount == 0) {
+            return;
+        }
+
+        File parentFile = journalFile.getParentFile();
+        if (parentFile != null && !parentFile.exists()) {
+            parentFile.mkdirs();
+        }
+        try (FileOutputStream stream = new FileOutputStream(journalFile, true)) {
+            Writer writer = new OutputStreamWriter(stream);
+            writer.write(sb.toString());
+            writer.flush();
+            stream.getFD().sync();
+        }
+
+        for (String productionId : removedProductionIds) {
+            persistedStatusRecords.remove(productionId);
+        }
+        removedProductionIds.clear();
+        persistedStatusRecords.putAll(changedStatusRecords);
+        journalRecordCount += recordCount;
     }
 
-    private void store(File databaseFile) throws IOException {
-        // System.out.printf("%s: Storing %d production(s) to %s%n", this, productionsList.size(), databaseFile.getAbsolutePath());
+    /**
+     * Writes all persisted productions into a new snapshot and truncates the journal.
+     * Replaying an old journal on top of the new snapshot (crash before truncation) yields the same state.
+     */
+    private void compact() throws IOException {
         File parentFile = databaseFile.getParentFile();
         if (parentFile != null && !parentFile.exists()) {
             parentFile.mkdirs();
         }
-        File bakFile = new File(parentFile, databaseFile.getName() + ".bak");
-        bakFile.delete();
-        databaseFile.renameTo(bakFile);
-        PrintWriter writer = new PrintWriter(new FileWriter(databaseFile));
-        try {
-            store(writer);
-        } finally {
-            writer.close();
+        File tmpFile = getSiblingFile(".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmpFile)) {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(stream));
+            for (Production production : productionsList) {
+                if (persistedStatusRecords.containsKey(production.getId())) {
+                    writer.print(encodeProduction(production));
+                    writer.print('\n');
+                }
+            }
+            writer.flush();
+            if (writer.checkError()) {
+                throw new IOException("Failed to write snapshot " + tmpFile.getPath());
+            }
+            stream.getFD().sync();
+        }
+        if (databaseFile.exists()) {
+            Files.copy(databaseFile.toPath(), getSiblingFile(".bak").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(tmpFile.toPath(), databaseFile.toPath(),
+                   StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if (journalFile.exists() && !journalFile.delete()) {
+            throw new IOException("Failed to truncate production journal " + journalFile.getPath());
         }
+        journalRecordCount = 0;
+    }
+
+    private File getSiblingFile(String suffix) {
+        return new File(databaseFile.getParentFile(), databaseFile.getName() + suffix);
     }
 
     void load(BufferedReader reader) throws IOException {
         String line;
         while ((line = reader.readLine()) != null) {
-            String[] tokens = line.split("\t");
-            String id = decodeTSV(tokens[0]);
-            String name = decodeTSV(tokens[1]);
-            String outputPath = decodeTSV(tokens[2]);
-            String[] intermediatePathes = new String[0];
-            if (outputPath != null && outputPath.contains(";")) {
-                String[] elems = outputPath.split(";");
-                outputPath = elems[0];
-                intermediatePathes = Arrays.copyOfRange(elems, 1, elems.length);
-            }
-            String stagingPath = decodeTSV(tokens[3]);
-            int[] offpt = new int[]{4};
-            ProductionRequest productionRequest = decodeProductionRequestTSV(tokens, offpt);
-            Object[] jobIDs = decodeJobIdsTSV(tokens, offpt);
-            Date[] dates = decodeTimesTSV(tokens, offpt);
-            ProcessStatus processStatus = decodeProductionStatusTSV(tokens, offpt);
-            ProcessStatus stagingStatus = decodeProductionStatusTSV(tokens, offpt);
-            WorkflowItem workflow = createWorkflow(jobIDs, dates, processStatus);
-            boolean autoStaging = Boolean.parseBoolean(productionRequest.getString("autoStaging", "false"));
-            Production production = new Production(id, name,
-                                                   outputPath,
-                                                   intermediatePathes,
-                                                   stagingPath,
-                                                   autoStaging,
-                                                   productionRequest,
-                                                   workflow);
-            production.setStagingStatus(stagingStatus);
-            addProduction(production);
+            addProduction(decodeProduction(line.split("\t"), null));
         }
     }
 
     void store(PrintWriter writer) {
         for (Production production : productionsList) {
-            writer.printf("%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s\t%s\tEoR\n",
-                          encodeTSV(production.getId()),
-                          encodeTSV(production.getName()),
-                          encodeTSVArray(production.getOutputPath(), production.getIntermediateDataPath()),
-                          encodeTSV(production.getStagingPath()),
-                          encodeProductionRequestTSV(production.getProductionRequest()),
-                          encodeJobIdsTSV(production.getJobIds()),
-                          encodeTimesTSV(production.getWorkflow()),
-                          encodeProductionStatusTSV(production.getProcessingStatus()),
-                          encodeProductionStatusTSV(production.getStagingStatus()));
+            writer.print(encodeProduction(production));
+            writer.print('\n');
+        }
+    }
+
+    private String encodeProduction(Production production) {
+        return String.format("%s\t%s\t%s\t%s\t%s\t%s\t%s",
+                             encodeTSV(production.getId()),
+                             encodeTSV(production.getName()),
+                             encodeTSVArray(production.getOutputPath(), production.getIntermediateDataPath()),
+                             encodeTSV(production.getStagingPath()),
+                             encodeProductionRequestTSV(production.getProductionRequest()),
+                             encodeStatusRecord(production),
+                             END_OF_RECORD);
+    }
+
+    /**
+     * @return The part of a production record that changes while the production is processed and staged.
+     */
+    private String encodeStatusRecord(Production production) {
+        return String.format("%s\t%s\t%s\t%s",
+                             encodeJobIdsTSV(production.getJobIds()),
+                             encodeTimesTSV(production.getWorkflow()),
+                             encodeProductionStatusTSV(production.getProcessingStatus()),
+                             encodeProductionStatusTSV(production.getStagingStatus()));
+    }
+
+    /**
+     * @param tokens       The tokens of a complete production record.
+     * @param statusTokens The tokens of a more recent status record, or {@code null}.
+     */
+    private Production decodeProduction(String[] tokens, String[] statusTokens) {
+        String id = decodeTSV(tokens[0]);
+        String name = decodeTSV(tokens[1]);
+        String outputPath = decodeTSV(tokens[2]);
+        String[] intermediatePathes = new String[0];
+        if (outputPath != null && outputPath.contains(";")) {
+            String[] elems = outputPath.split(";");
+            outputPath = elems[0];
+            intermediatePathes = Arrays.copyOfRange(elems, 1, elems.length);
+        }
+        String stagingPath = decodeTSV(tokens[3]);
+        int[] offpt = new int[]{4};
+        ProductionRequest productionRequest = decodeProductionRequestTSV(tokens, offpt);
+        if (statusTokens != null) {
+            tokens = statusTokens;
+            offpt[0] = 0;
         }
+        Object[] jobIDs = decodeJobIdsTSV(tokens, offpt);
+        Date[] dates = decodeTimesTSV(tokens, offpt);
+        ProcessStatus processStatus = decodeProductionStatusTSV(tokens, offpt);
+        ProcessStatus stagingStatus = decodeProductionStatusTSV(tokens, offpt);
+        WorkflowItem workflow = createWorkflow(productionRequest.getUserName(), jobIDs, dates, processStatus);
+        boolean autoStaging = Boolean.parseBoolean(productionRequest.getString("autoStaging", "false"));
+        Production production = new Production(id, name,
+                                               outputPath,
+                                               intermediatePathes,
+                                               stagingPath,
+                                               autoStaging,
+                                               productionRequest,
+                                               workflow);
+        production.setStagingStatus(stagingStatus);
+        return production;
     }
 
     private String encodeTSVArray(String outputPath, String[] intermediateDataPath) {
@@ -299,12 +521,13 @@ public class CsvProductionStore implements ProductionStore {
      * The default implementation creates a proxy workflow that can neither be submitted, killed nor
      * updated.
      *
+     * @param userName      The owner of the jobs
      * @param jobIds        Array of job identifiers
      * @param dates
      * @param processStatus
      * @return The workflow.
      */
-    protected WorkflowItem createWorkflow(Object[] jobIds, Date[] dates, ProcessStatus processStatus) {
-        return new ProxyWorkflow(processingService, jobIds, dates[0], dates[1], dates[2], processStatus);
+    protected WorkflowItem createWorkflow(String userName, Object[] jobIds, Date[] dates, ProcessStatus processStatus) {
+        return new ProxyWorkflow(processingService, userName, jobIds, dates[0], dates[1], dates[2], processStatus);
     }
 }
@@ -19,9 +19,11 @@ import java.util.Date;
  */
 public class ProxyWorkflow extends AbstractWorkflowItem {
     private final ProcessingService processingService;
+    private final String userName;
     private final Object[] jobIds;
 
     ProxyWorkflow(ProcessingService processingService,
+                         String userName,
                          Object[] jobIds,
                          Date submitTime,
                          Date startTime,
@@ -29,6 +31,7 @@ public class ProxyWorkflow extends AbstractWorkflowItem {
                          ProcessStatus status) {
         super(status);
         this.processingService = processingService;
+        this.userName = userName;
         this.jobIds = jobIds;
         setSubmitTime(submitTime);
         setStartTime(startTime);
@@ -53,7 +56,8 @@ public class ProxyWorkflow extends AbstractWorkflowItem {
         ProcessStatus[] processStatuses = new ProcessStatus[jobIds.length];
         for (int i = 0; i < jobIds.length; i++) {
             Object jobId = jobIds[i];
-            processStatuses[i] = processingService.getJobStatus(jobId);
+            // the jobs are queried with the rights of their owner
+            processStatuses[i] = processingService.getJobStatus(userName, jobId);
         }
         setStatus(ProcessStatus.aggregate(processStatuses));
     }
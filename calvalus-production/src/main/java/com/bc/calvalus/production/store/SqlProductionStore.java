@@ -255,6 +255,7 @@ public class SqlProductionStore implements ProductionStore {
                                                         stagingProgress,
                                                         stagingMessage);
         ProxyWorkflow workflow = new ProxyWorkflow(processingService,
+                                                   productionRequest.getUserName(),
                                                    jobIds,
                                                    submitTime,
                                                    startTime,
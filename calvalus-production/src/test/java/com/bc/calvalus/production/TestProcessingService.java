@@ -42,6 +42,11 @@ public class TestProcessingService implements ProcessingService<String> {
     public void updateStatuses(String username) throws IOException {
     }
 
+    @Override
+    public ProcessStatus getJobStatus(String username, String jobId) {
+        return getJobStatus(jobId);
+    }
+
     @Override
     public ProcessStatus getJobStatus(String jobId) {
         ProcessStatus status = jobStatusMap.get(jobId);
@@ -0,0 +1,61 @@
+package com.bc.calvalus.production.hadoop;
+
+import com.bc.calvalus.commons.ProcessState;
+import com.bc.calvalus.commons.ProcessStatus;
+import com.bc.calvalus.production.Production;
+import com.bc.calvalus.production.ProductionRequest;
+import com.bc.calvalus.production.TestWorkflowItem;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.esa.snap.core.util.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CopyStagingTest {
+
+    private File tmpDir;
+    private File outputDir;
+    private File stagingArea;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("calvalus-copy-staging").toFile();
+        outputDir = new File(tmpDir, "output");
+        stagingArea = new File(tmpDir, "staging");
+        Files.createDirectories(outputDir.toPath());
+        Files.write(new File(outputDir, "part-r-00000.csv").toPath(), "a\tb\n1\t2\n".getBytes(StandardCharsets.US_ASCII));
+        Files.write(new File(outputDir, "ma-report.html").toPath(), "<html/>".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteTree(tmpDir);
+    }
+
+    @Test
+    public void testOnlyStagedFilesArePublished() throws Throwable {
+        Configuration conf = new Configuration();
+        Production production = new Production("id1", "ma test", outputDir.getAbsolutePath(), "ewa/ma-test", false,
+                                                new ProductionRequest("MA", "ewa"),
+                                                new TestWorkflowItem<String>("job1", new ProcessStatus(ProcessState.COMPLETED),
+                                                                             new Date(1), new Date(2), new Date(3)));
+        CopyStaging staging = new CopyStaging(production, conf, FileSystem.getLocal(conf), stagingArea);
+
+        staging.performStaging();
+
+        assertEquals(ProcessState.COMPLETED, production.getStagingStatus().getState());
+        String[] stagedNames = new File(stagingArea, "ewa/ma-test").list();
+        Arrays.sort(stagedNames);
+        assertArrayEquals(new String[]{"ma-report.html", "ma_test.zip", "part-r-00000.csv"}, stagedNames);
+    }
+}
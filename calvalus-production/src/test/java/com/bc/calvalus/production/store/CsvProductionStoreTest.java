@@ -11,10 +11,12 @@ import org.junit.Test;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.file.Files;
 import java.util.Date;
 
 import static org.junit.Assert.*;
@@ -129,4 +131,65 @@ public class CsvProductionStoreTest {
         assertEquals("1", restoredProd3.getProductionRequest().getString("a", null));
         assertEquals("0", restoredProd3.getProductionRequest().getString("b", null));
     }
+
+    @Test
+    public void testJournalAndRecovery() throws Exception {
+        File dir = Files.createTempDirectory("calvalus-csv-store").toFile();
+        File dbFile = new File(dir, "productions.csv");
+        File journalFile = new File(dir, "productions.csv.journal");
+        try {
+            CsvProductionStore db = new CsvProductionStore(new TestProcessingService(), dbFile);
+            db.update();
+            TestWorkflowItem<String> workflow1 = new TestWorkflowItem<String>("job1",
+                                                                              new ProcessStatus(ProcessState.RUNNING, 0.2f),
+                                                                              new Date(1), new Date(2), null);
+            db.addProduction(new Production("id1", "name1", "opath1", "spath1", false,
+                                            new ProductionRequest("test", "marco", "a", "5"), workflow1));
+            db.addProduction(new Production("id2", "name2", "opath2", "spath2", false,
+                                            new ProductionRequest("test", "martin", "a", "9"),
+                                            new TestWorkflowItem<String>("job2", new ProcessStatus(ProcessState.COMPLETED),
+                                                                         new Date(1), new Date(2), new Date(3))));
+            db.persist();
+            assertEquals(2, db.getJournalRecordCount());
+            assertFalse(dbFile.exists());
+
+            db.persist();
+            assertEquals(2, db.getJournalRecordCount());
+
+            workflow1.setStatus(new ProcessStatus(ProcessState.COMPLETED));
+            workflow1.setStopTime(new Date(7));
+            db.removeProduction("id2");
+            db.persist();
+            assertEquals(4, db.getJournalRecordCount());
+
+            // simulate a crash while appending a record
+            FileWriter writer = new FileWriter(journalFile, true);
+            writer.write("ADD\tid3\tname3");
+            writer.close();
+
+            CsvProductionStore db2 = new CsvProductionStore(new TestProcessingService(), dbFile);
+            db2.update();
+            Production[] productions = db2.getProductions();
+            assertEquals(1, productions.length);
+            assertEquals("id1", productions[0].getId());
+            assertEquals("job1", productions[0].getJobIds()[0]);
+            assertEquals(new ProcessStatus(ProcessState.COMPLETED), productions[0].getProcessingStatus());
+            assertEquals(7, productions[0].getWorkflow().getStopTime().getTime());
+
+            // recovery compacts the journal into a new snapshot
+            assertEquals(0, db2.getJournalRecordCount());
+            assertTrue(dbFile.exists());
+            assertFalse(journalFile.exists());
+
+            CsvProductionStore db3 = new CsvProductionStore(new TestProcessingService(), dbFile);
+            db3.update();
+            assertEquals(1, db3.getProductions().length);
+            assertEquals(new ProcessStatus(ProcessState.COMPLETED), db3.getProduction("id1").getProcessingStatus());
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
 }
@@ -186,6 +186,7 @@ public class SqlProductionStoreTest {
                                                "/out/spath1", true,
                                                new ProductionRequest("X", "eva", "a", "1"),
                                                new ProxyWorkflow(new TestProcessingService(),
+                                                                 "eva",
                                                                  new Object[]{"job1", "job2"},
                                                                  new Date(1315153761000L),
                                                                  new Date(1315153764000L),
@@ -200,6 +201,7 @@ public class SqlProductionStoreTest {
         Production production = new Production("pid2", "pname2", null, "/out/spath2", true,
                                                new ProductionRequest("X", "eva", "a", "6"),
                                                new ProxyWorkflow(new TestProcessingService(),
+                                                                 "eva",
                                                                  new Object[]{"job4", "job5"},
                                                                  new Date(1315153961000L),
                                                                  new Date(1315153964000L),
@@ -214,6 +216,7 @@ public class SqlProductionStoreTest {
         Production production = new Production("pid3", "pname3", "home/ewa/tmp6457", "/out/spath3", true,
                                                new ProductionRequest("X", "eva", "a", "3"),
                                                new ProxyWorkflow(new TestProcessingService(),
+                                                                 "eva",
                                                                  new Object[]{"job6", "job7"},
                                                                  new Date(1315153961000L),
                                                                  new Date(1315153964000L),
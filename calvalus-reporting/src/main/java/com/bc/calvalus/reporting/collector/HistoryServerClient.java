@@ -7,12 +7,18 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.logging.Logger;
 
 /**
+ * Client of the REST API of the job history server. The client may be used by several threads,
+ * connections are pooled and released as soon as a response has been read.
+ *
  * @author hans
  */
 class HistoryServerClient {
@@ -23,6 +29,19 @@ class HistoryServerClient {
 
     private static final Logger LOGGER = CalvalusLogger.getLogger();
 
+    private final CloseableHttpClient httpClient;
+
+    HistoryServerClient() {
+        this(1);
+    }
+
+    HistoryServerClient(int maxConnections) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        this.httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+    }
+
     InputStream getAllJobs() throws ServerConnectionException {
         try {
             LOGGER.info("Retrieving all jobs from '" + RETRIEVE_ALL_JOBS_URL + "'");
@@ -32,6 +51,20 @@ class HistoryServerClient {
         }
     }
 
+    /**
+     * Lists only the jobs finished at or after the given time instead of the complete history.
+     */
+    InputStream getJobsFinishedSince(long finishedTimeBegin) throws ServerConnectionException {
+        try {
+            String separator = RETRIEVE_ALL_JOBS_URL.contains("?") ? "&" : "?";
+            String jobsUrl = RETRIEVE_ALL_JOBS_URL + separator + "finishedTimeBegin=" + finishedTimeBegin;
+            LOGGER.info("Retrieving jobs from '" + jobsUrl + "'");
+            return getContentInputStream(jobsUrl);
+        } catch (IOException exception) {
+            throw new ServerConnectionException(exception);
+        }
+    }
+
     InputStream getConf(String jobId) throws ServerConnectionException {
         try {
             String confUrl = String.format(RETRIEVE_CONF_URL_TEMPLATE, jobId);
@@ -53,11 +86,11 @@ class HistoryServerClient {
     }
 
     private InputStream getContentInputStream(String url) throws IOException {
-        CloseableHttpClient httpclient = HttpClients.createDefault();
         HttpGet httpGet = new HttpGet(url);
         httpGet.setHeader("Accept", "application/xml");
-        CloseableHttpResponse response = httpclient.execute(httpGet);
-        return response.getEntity().getContent();
+        try (CloseableHttpResponse response = this.httpClient.execute(httpGet)) {
+            return new ByteArrayInputStream(EntityUtils.toByteArray(response.getEntity()));
+        }
     }
 
 }
@@ -15,9 +15,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
@@ -36,35 +39,56 @@ public class JobReports {
 
     private HashSet<String> knownJobIdSet = new HashSet<>();
     private Map<String, BufferedWriter> writers;
+    private long lastFinishTime;
     private String reportingDirectory = PropertiesWrapper.get("reporting.folder.path");
 
     public void add(String jobId, long finishTime, String jobDetailJson) throws JobReportsException {
-        LOGGER.info("Add job '" + jobId + "' to the job reports file.");
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(finishTime);
-        String writerKey = String.format(REPORT_KEY_PATTERN, calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1);
-        this.knownJobIdSet.add(jobId);
+        addAll(Collections.singletonList(new Entry(jobId, finishTime, jobDetailJson)));
+    }
+
+    /**
+     * Appends a batch of jobs, the report files are flushed once per batch.
+     */
+    void addAll(List<Entry> entries) throws JobReportsException {
+        Set<BufferedWriter> touchedWriters = new HashSet<>();
+        String jobId = null;
         try {
-            if (!this.writers.containsKey(writerKey)) {
-                String dateInfo = generateDateInfoString(calendar);
-                String reportName = REPORT_FILE_PREFIX + dateInfo + REPORT_FILE_EXTENSION;
-                Path reportPath = Paths.get(this.reportingDirectory, reportName);
-                if (!Files.exists(reportPath)) {
-                    Files.createFile(reportPath);
-                }
-                FileWriter fileWriter = new FileWriter(reportPath.toFile(), true);
-                this.writers.put(writerKey, new BufferedWriter(fileWriter));
+            for (Entry entry : entries) {
+                jobId = entry.jobId;
+                LOGGER.info("Add job '" + jobId + "' to the job reports file.");
+                BufferedWriter currentWriter = getWriter(entry.finishTime);
+                currentWriter.write(entry.jobDetailJson);
+                currentWriter.write("," + "\n");
+                touchedWriters.add(currentWriter);
+                this.knownJobIdSet.add(jobId);
+                this.lastFinishTime = Math.max(this.lastFinishTime, entry.finishTime);
+            }
+            for (BufferedWriter writer : touchedWriters) {
+                writer.flush();
             }
-            BufferedWriter currentWriter = this.writers.get(writerKey);
-            currentWriter.write(jobDetailJson);
-            currentWriter.write("," + "\n");
-            currentWriter.flush();
         } catch (IOException exception) {
             LOGGER.log(Level.SEVERE, "Unable to write job '" + jobId + "' to job reports file.", exception);
             throw new JobReportsException("Unable to write job '" + jobId + "' to job reports file.", exception);
         }
     }
 
+    private BufferedWriter getWriter(long finishTime) throws IOException {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(finishTime);
+        String writerKey = String.format(REPORT_KEY_PATTERN, calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1);
+        if (!this.writers.containsKey(writerKey)) {
+            String dateInfo = generateDateInfoString(calendar);
+            String reportName = REPORT_FILE_PREFIX + dateInfo + REPORT_FILE_EXTENSION;
+            Path reportPath = Paths.get(this.reportingDirectory, reportName);
+            if (!Files.exists(reportPath)) {
+                Files.createFile(reportPath);
+            }
+            FileWriter fileWriter = new FileWriter(reportPath.toFile(), true);
+            this.writers.put(writerKey, new BufferedWriter(fileWriter));
+        }
+        return this.writers.get(writerKey);
+    }
+
     void init(String reportingDirectory) throws JobReportsException {
         this.reportingDirectory = reportingDirectory;
         this.writers = new HashMap<>();
@@ -94,6 +118,9 @@ public class JobReports {
                     String formattedEntry = formatToJson(line);
                     JobDetailType jobDetail = gson.fromJson(formattedEntry, JobDetailType.class);
                     this.knownJobIdSet.add(jobDetail.getJobId());
+                    if (jobDetail.getFinishTime() != null) {
+                        this.lastFinishTime = Math.max(this.lastFinishTime, Long.parseLong(jobDetail.getFinishTime()));
+                    }
                 });
                 stream.close();
             }
@@ -107,6 +134,13 @@ public class JobReports {
         return this.knownJobIdSet.contains(jobId);
     }
 
+    /**
+     * @return the latest finish time of all jobs in the report files, or 0 if there are none
+     */
+    long getLastFinishTime() {
+        return this.lastFinishTime;
+    }
+
     HashSet<String> getKnownJobIdSet() {
         return this.knownJobIdSet;
     }
@@ -152,4 +186,17 @@ public class JobReports {
             return line;
         }
     }
+
+    static class Entry {
+
+        private final String jobId;
+        private final long finishTime;
+        private final String jobDetailJson;
+
+        Entry(String jobId, long finishTime, String jobDetailJson) {
+            this.jobId = jobId;
+            this.finishTime = finishTime;
+            this.jobDetailJson = jobDetailJson;
+        }
+    }
 }
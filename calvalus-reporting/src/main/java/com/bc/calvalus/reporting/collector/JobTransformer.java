@@ -4,7 +4,7 @@ import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.reporting.collector.exception.JobTransformerException;
 import com.bc.wps.utilities.PropertiesWrapper;
 
-import javax.xml.transform.Transformer;
+import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -20,6 +20,9 @@ import java.nio.file.Paths;
 import java.util.logging.Logger;
 
 /**
+ * Applies the conf and counters stylesheets. The stylesheets are compiled once, the transformer
+ * is safe to be used by several threads.
+ *
  * @author hans
  */
 class JobTransformer {
@@ -29,14 +32,14 @@ class JobTransformer {
 
     private static final Logger LOGGER = CalvalusLogger.getLogger();
 
-    private Transformer confTransformer;
-    private Transformer counterTransformer;
+    private final Templates confTemplates;
+    private final Templates counterTemplates;
 
     JobTransformer() throws JobTransformerException {
         TransformerFactory transformerFactory = TransformerFactory.newInstance();
         try {
-            this.confTransformer = getTransformer(transformerFactory, CONF_XSL);
-            this.counterTransformer = getTransformer(transformerFactory, COUNTER_XSL);
+            this.confTemplates = getTemplates(transformerFactory, CONF_XSL);
+            this.counterTemplates = getTemplates(transformerFactory, COUNTER_XSL);
         } catch (IOException | TransformerConfigurationException exception) {
             throw new JobTransformerException(exception);
         }
@@ -45,7 +48,7 @@ class JobTransformer {
     StringReader applyConfXslt(InputStream stream) throws JobTransformerException {
         StringWriter stringWriter = new StringWriter();
         try {
-            this.confTransformer.transform(new StreamSource(stream), new StreamResult(stringWriter));
+            this.confTemplates.newTransformer().transform(new StreamSource(stream), new StreamResult(stringWriter));
         } catch (TransformerException exception) {
             throw new JobTransformerException(exception);
         }
@@ -55,18 +58,19 @@ class JobTransformer {
     StringReader applyCountersXslt(InputStream stream) throws JobTransformerException {
         StringWriter stringWriter = new StringWriter();
         try {
-            this.counterTransformer.transform(new StreamSource(stream), new StreamResult(stringWriter));
+            this.counterTemplates.newTransformer().transform(new StreamSource(stream), new StreamResult(stringWriter));
         } catch (TransformerException exception) {
             throw new JobTransformerException(exception);
         }
         return new StringReader(stringWriter.toString());
     }
 
-    private Transformer getTransformer(TransformerFactory transformerFactory, String xslFileName)
+    private Templates getTemplates(TransformerFactory transformerFactory, String xslFileName)
                 throws IOException, TransformerConfigurationException {
-        BufferedReader reader = Files.newBufferedReader(Paths.get(xslFileName));
-        StreamSource xsltSource = new StreamSource(reader);
-        return transformerFactory.newTransformer(xsltSource);
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(xslFileName))) {
+            StreamSource xsltSource = new StreamSource(reader);
+            return transformerFactory.newTemplates(xsltSource);
+        }
     }
 
 }
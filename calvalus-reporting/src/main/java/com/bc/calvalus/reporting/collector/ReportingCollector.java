@@ -17,27 +17,57 @@ import javax.xml.bind.JAXBException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Harvests the jobs of the history server into the job reports.
+ * <p/>
+ * Only jobs finished since the last harvested one (minus an overlap for jobs that reach the history
+ * server late) are listed. Configuration and counters of new jobs are fetched by a bounded pool of
+ * threads and appended in batches in the order of their finish time.
+ *
  * @author hans
  */
 public class ReportingCollector<T> {
 
     private static final Logger LOGGER = CalvalusLogger.getLogger();
     private static final String REPORTING_COLLECTOR_PROPERTIES = "reporting-collector.properties";
+    private static final int DEFAULT_FETCH_THREADS = 8;
+    private static final long DEFAULT_LISTING_OVERLAP = 60 * 60 * 1000L;
+    private static final int DEFAULT_APPEND_BATCH_SIZE = 100;
     private static JobReports jobReports;
 
     private final HistoryServerClient historyServerClient;
     private final JobTransformer jobTransformer;
     private final StatusHandler statusHandler;
+    private final ExecutorService fetchExecutor;
+    private final int fetchThreads;
+    private final JAXBContext jobsContext;
+    private final JAXBContext confContext;
+    private final JAXBContext countersContext;
+    private final Gson gson = new Gson();
 
-    private ReportingCollector(String propertiesName) throws IOException, JobTransformerException {
+    private ReportingCollector(String propertiesName) throws IOException, JobTransformerException, JAXBException {
         PropertiesWrapper.loadConfigFile(propertiesName);
-        this.historyServerClient = new HistoryServerClient();
+        this.fetchThreads = (int) PropertiesWrapper.getLong("history.server.fetch.threads", DEFAULT_FETCH_THREADS);
+        this.historyServerClient = new HistoryServerClient(fetchThreads);
         this.jobTransformer = new JobTransformer();
         this.statusHandler = new StatusHandler();
+        this.fetchExecutor = Executors.newFixedThreadPool(fetchThreads);
+        this.jobsContext = JAXBContext.newInstance(Jobs.class);
+        this.confContext = JAXBContext.newInstance(JobConf.class);
+        this.countersContext = JAXBContext.newInstance(JobCounters.class);
         jobReports = new JobReports();
     }
 
@@ -60,7 +90,9 @@ public class ReportingCollector<T> {
             LOGGER.log(Level.SEVERE, "Problem when dealing with XSL transformation.", exception);
             System.exit(1);
         } finally {
-            jobReports.closeBufferedWriters();
+            if (jobReports != null) {
+                jobReports.closeBufferedWriters();
+            }
         }
     }
 
@@ -70,20 +102,7 @@ public class ReportingCollector<T> {
         boolean firstCycle = true;
         while (true) {
             try {
-                Jobs jobs = retrieveAllJobs();
-                Gson gson = new Gson();
-                int counter = 0;
-                for (Job job : jobs.getJob()) {
-                    if (!jobReports.contains(job.getId())) {
-                        JobConf conf = getConf(job);
-                        JobCounters counters = getCounters(job);
-                        JobDetailType jobDetailType = createJobDetailType(conf, counters, job);
-                        String jobJsonString = gson.toJson(jobDetailType);
-                        long finishTime = Long.parseLong(job.getFinishTime());
-                        jobReports.add(job.getId(), finishTime, jobJsonString);
-                        counter++;
-                    }
-                }
+                int counter = harvestNewJobs();
                 if (counter > 0) {
                     LOGGER.info("Successfully added " + counter + " new job(s) to the reports file.");
                     this.statusHandler.updateNewJobNumber(jobReports.getKnownJobIdSet().size());
@@ -106,16 +125,93 @@ public class ReportingCollector<T> {
         }
     }
 
+    private int harvestNewJobs() throws JobReportsException, ServerConnectionException, JAXBException, JobTransformerException {
+        List<Job> newJobs = new ArrayList<>();
+        for (Job job : retrieveJobs().getJob()) {
+            if (!jobReports.contains(job.getId())) {
+                newJobs.add(job);
+            }
+        }
+        newJobs.sort(Comparator.comparingLong(job -> Long.parseLong(job.getFinishTime())));
+
+        int batchSize = (int) PropertiesWrapper.getLong("reporting.append.batch.size", DEFAULT_APPEND_BATCH_SIZE);
+        // jobs are fetched ahead, but not more than the threads can work on, to limit the memory of waiting results
+        int maxPending = 2 * fetchThreads;
+        Deque<Future<JobReports.Entry>> pending = new ArrayDeque<>();
+        List<JobReports.Entry> batch = new ArrayList<>();
+        int counter = 0;
+        try {
+            Iterator<Job> jobIterator = newJobs.iterator();
+            while (jobIterator.hasNext() || !pending.isEmpty()) {
+                while (jobIterator.hasNext() && pending.size() < maxPending) {
+                    Job job = jobIterator.next();
+                    pending.add(fetchExecutor.submit(() -> fetchJobReport(job)));
+                }
+                batch.add(getResult(pending.poll()));
+                if (batch.size() >= batchSize || pending.isEmpty()) {
+                    counter += appendBatch(batch);
+                }
+            }
+        } finally {
+            for (Future<JobReports.Entry> future : pending) {
+                future.cancel(true);
+            }
+            if (!batch.isEmpty()) {
+                // keep what has been fetched before the failure, the jobs are in order of their finish time
+                counter += appendBatch(batch);
+            }
+        }
+        return counter;
+    }
+
+    private static int appendBatch(List<JobReports.Entry> batch) throws JobReportsException {
+        List<JobReports.Entry> entries = new ArrayList<>(batch);
+        batch.clear();
+        jobReports.addAll(entries);
+        return entries.size();
+    }
+
+    private JobReports.Entry fetchJobReport(Job job) throws JAXBException, ServerConnectionException, JobTransformerException {
+        JobConf conf = getConf(job);
+        JobCounters counters = getCounters(job);
+        JobDetailType jobDetailType = createJobDetailType(conf, counters, job);
+        String jobJsonString = gson.toJson(jobDetailType);
+        long finishTime = Long.parseLong(job.getFinishTime());
+        return new JobReports.Entry(job.getId(), finishTime, jobJsonString);
+    }
+
+    private static JobReports.Entry getResult(Future<JobReports.Entry> future)
+                throws ServerConnectionException, JAXBException, JobTransformerException {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new ServerConnectionException("Interrupted while retrieving job details.", exception);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof ServerConnectionException) {
+                throw (ServerConnectionException) cause;
+            } else if (cause instanceof JAXBException) {
+                throw (JAXBException) cause;
+            } else if (cause instanceof JobTransformerException) {
+                throw (JobTransformerException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new JobTransformerException(cause);
+        }
+    }
+
     private JobCounters getCounters(Job job) throws JAXBException, ServerConnectionException, JobTransformerException {
         InputStream countersStream = this.historyServerClient.getCounters(job.getId());
         StringReader countersReader = this.jobTransformer.applyCountersXslt(countersStream);
-        return (JobCounters) unmarshal(countersReader, JobCounters.class);
+        return (JobCounters) unmarshal(countersReader, countersContext);
     }
 
     private JobConf getConf(Job job) throws JAXBException, ServerConnectionException, JobTransformerException {
         InputStream confStream = this.historyServerClient.getConf(job.getId());
         StringReader confReader = this.jobTransformer.applyConfXslt(confStream);
-        return (JobConf) unmarshal(confReader, JobConf.class);
+        return (JobConf) unmarshal(confReader, confContext);
     }
 
     private JobDetailType createJobDetailType(JobConf conf, JobCounters counters, Job job) {
@@ -126,15 +222,21 @@ public class ReportingCollector<T> {
         return jobDetailType;
     }
 
-    private Jobs retrieveAllJobs() throws JAXBException, ServerConnectionException {
-        InputStream contentStream = this.historyServerClient.getAllJobs();
-        JAXBContext jc = JAXBContext.newInstance(Jobs.class);
-        return (Jobs) jc.createUnmarshaller().unmarshal(contentStream);
+    private Jobs retrieveJobs() throws JAXBException, ServerConnectionException {
+        long lastFinishTime = jobReports.getLastFinishTime();
+        InputStream contentStream;
+        if (lastFinishTime > 0) {
+            long listingOverlap = PropertiesWrapper.getLong("history.server.listing.overlap", DEFAULT_LISTING_OVERLAP);
+            contentStream = this.historyServerClient.getJobsFinishedSince(Math.max(0, lastFinishTime - listingOverlap));
+        } else {
+            contentStream = this.historyServerClient.getAllJobs();
+        }
+        return (Jobs) jobsContext.createUnmarshaller().unmarshal(contentStream);
     }
 
     @SuppressWarnings("unchecked")
-    private T unmarshal(StringReader reader, Class clazz) throws JAXBException {
-        JAXBContext jc = JAXBContext.newInstance(clazz);
+    private T unmarshal(StringReader reader, JAXBContext jc) throws JAXBException {
+        // unmarshallers are not thread-safe, the context is
         return (T) jc.createUnmarshaller().unmarshal(reader);
     }
 }
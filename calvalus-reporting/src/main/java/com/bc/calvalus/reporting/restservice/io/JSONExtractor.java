@@ -11,7 +11,6 @@ import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
@@ -23,11 +22,9 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.ZoneId;
+import java.time.YearMonth;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.TemporalAccessor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -37,13 +34,10 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.BiFunction;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * @author hans , muhammad
@@ -72,113 +66,67 @@ public class JSONExtractor {
 
     public Map<String, List<UsageStatistic>> getAllUserUsageStatistic(String date)
                 throws IOException, DatabaseFileNotFoundException {
-        List<UsageStatistic> allStatistics = loadStatisticOf(date);
-        ConcurrentHashMap<String, List<UsageStatistic>> groupUserUsageStatistic = new ConcurrentHashMap<>();
-        allStatistics.forEach(p -> {
-            String user = p.getUser();
-            groupUserUsageStatistic.computeIfAbsent(user, userName -> {
-                List<UsageStatistic> singleUserStatistic;
-                try {
-                    singleUserStatistic = getSingleUserStatistic(userName, date);
-                } catch (IOException exception) {
-                    throw new UncheckedIOException(exception);
-                }
-                return singleUserStatistic;
-            });
-        });
-        return groupUserUsageStatistic;
+        LocalDate firstDay = getFirstDayOfMonth(date);
+        return getUsageStore().getJobsByUser(startOf(firstDay), startOf(firstDay.plusMonths(1)));
+    }
+
+    public Map<String, UsageSummary> getAllUserSummaryOf(String date)
+                throws IOException, DatabaseFileNotFoundException {
+        return getUsageStore().getUserSummaries(YearMonth.from(LocalDate.parse(date)));
     }
 
     public List<UsageStatistic> getUsageStatisticsSince(String startDate)
                 throws IOException, DatabaseFileNotFoundException {
-        List<UsageStatistic> allStatistics = loadStatisticFromDate(startDate);
-        List<UsageStatistic> statisticsSinceStartDate = new ArrayList<>();
-        for (UsageStatistic usageStatistic : allStatistics) {
-            long finishTime = usageStatistic.getFinishTime();
-            TemporalAccessor accessor = TIME_FORMATTER.parse(startDate);
-            Date date = Date.from(Instant.from(accessor));
-            long dateMillis = date.getTime();
-            if (finishTime >= dateMillis) {
-                statisticsSinceStartDate.add(usageStatistic);
-            }
-        }
-        return statisticsSinceStartDate;
+        long dateMillis = Instant.from(TIME_FORMATTER.parse(startDate)).toEpochMilli();
+        return getUsageStore().getJobs(dateMillis, Long.MAX_VALUE);
     }
 
     public Map<String, List<UsageStatistic>> getAllUserUsageBetween(String startDate, String endDate) throws
                                                                                                       IOException {
-        Predicate<Long> predicate = filterDateIntervals(startDate, endDate);
-        List<UsageStatistic> allStatistics = loadStatisticBetweenDate(startDate, endDate);
-        List<UsageStatistic> usageStatisticList = allStatistics.stream().filter(
-                    p -> predicate.test(p.getFinishTime())).collect(Collectors.toList());
-
-        ConcurrentHashMap<String, List<UsageStatistic>> groupUserUsageStatistic = new ConcurrentHashMap<>();
-        usageStatisticList.forEach(p -> groupUserUsageStatistic.computeIfAbsent(p.getUser(), stringKey ->
-                    filterUser(stringKey, usageStatisticList)
-        ));
-        return groupUserUsageStatistic;
+        return getUsageStore().getJobsByUser(startOf(startDate), endOf(endDate));
+    }
+
+    public Map<String, UsageSummary> getAllUserSummaryBetween(String startDate, String endDate) throws IOException {
+        return getUsageStore().getUserSummaries(LocalDate.parse(startDate), LocalDate.parse(endDate));
     }
 
     public Map<String, List<UsageStatistic>> getAllDateUsageBetween(String startDate, String endDate)
                 throws IOException {
-        List<UsageStatistic> allStatistics = loadStatisticBetweenDate(startDate, endDate);
         Set<String> dates = getDatesBetween(startDate, endDate);
         Map<String, List<UsageStatistic>> usageWithDate = new HashMap<>();
-
-        dates.forEach(date -> {
-            Predicate<Long> predicate = filterDateIntervals(date, date);
-            List<UsageStatistic> usageStatisticList = allStatistics
-                        .stream()
-                        .filter(p -> predicate.test(p.getFinishTime()))
-                        .collect(Collectors.toList());
-            usageWithDate.put(date, usageStatisticList);
-        });
-
+        for (String date : dates) {
+            usageWithDate.put(date, getUsageStore().getJobs(startOf(date), endOf(date)));
+        }
         return usageWithDate;
     }
 
     public Map<String, List<UsageStatistic>> getAllQueueUsageBetween(String startDate, String endDate)
                 throws IOException {
-        Predicate<Long> predicate = filterDateIntervals(startDate, endDate);
-        List<UsageStatistic> allStatistics = loadStatisticBetweenDate(startDate, endDate);
-        List<UsageStatistic> usageStatisticList = allStatistics.stream().filter(
-                    p -> predicate.test(p.getFinishTime())).collect(Collectors.toList());
-        ConcurrentHashMap<String, List<UsageStatistic>> groupUserUsageStatistic = new ConcurrentHashMap<>();
-
-        usageStatisticList.forEach(p -> groupUserUsageStatistic.computeIfAbsent(p.getQueue(), queue ->
-                    filterQueue(queue, usageStatisticList)
-        ));
-        return groupUserUsageStatistic;
+        return getUsageStore().getJobsByQueue(startOf(startDate), endOf(endDate));
     }
 
+    public Map<String, UsageSummary> getAllQueueSummaryBetween(String startDate, String endDate) throws IOException {
+        return getUsageStore().getQueueSummaries(LocalDate.parse(startDate), LocalDate.parse(endDate));
+    }
+
+    /**
+     * Looks up the job in the index of all report files, the date is not required any more.
+     */
     public UsageStatistic getSingleStatistic(String jobId, String date)
                 throws IOException, DatabaseFileNotFoundException {
-        List<UsageStatistic> usageStatistics = loadStatisticOf(date);
-        for (UsageStatistic usageStatistic : usageStatistics) {
-            if (jobId.equalsIgnoreCase(usageStatistic.getJobId())) {
-                return usageStatistic;
-            }
-        }
-        return new NullUsageStatistic();
+        UsageStatistic usageStatistic = getUsageStore().getJob(jobId);
+        return usageStatistic != null ? usageStatistic : new NullUsageStatistic();
     }
 
     public List<UsageStatistic> getSingleUserStatistic(String userName, String date)
                 throws IOException, DatabaseFileNotFoundException {
-        List<UsageStatistic> usageStatistics = loadStatisticOf(date);
-        List<UsageStatistic> singleUserStatistics = new ArrayList<>();
-        for (UsageStatistic usageStatistic : usageStatistics) {
-            if (userName.equalsIgnoreCase(usageStatistic.getUser())) {
-                singleUserStatistics.add(usageStatistic);
-            }
-        }
-        return singleUserStatistics;
+        LocalDate firstDay = getFirstDayOfMonth(date);
+        return getUsageStore().getUserJobs(userName, startOf(firstDay), startOf(firstDay.plusMonths(1)));
     }
 
     public List<UsageStatistic> getSingleUserUsageBetween(String user, String startDate, String endDate)
                 throws IOException {
-        Predicate<Long> rangePredicate = filterDateIntervals(startDate, endDate);
-        List<UsageStatistic> allStatistics = loadStatisticBetweenDate(startDate, endDate);
-        return getSingleUserRangeStatistic(rangePredicate, user, allStatistics);
+        return getUsageStore().getUserJobs(user, startOf(startDate), endOf(endDate));
     }
 
     public List<UsageStatistic> getSingleUserUsageInYear(String user, String year) throws IOException {
@@ -190,16 +138,16 @@ public class JSONExtractor {
 
     public List<UsageStatistic> getSingleUserUsageInYearMonth(String user, String year, String month)
                 throws IOException, DatabaseFileNotFoundException {
-        Predicate<FilterUserTimeInterval> yearMonthPredicate = FilterUserTimeInterval::filterMonth;
-        return getSingleUserDate(yearMonthPredicate, user, year, month, INIT_FIRST_DAY);
+        String firstDay = String.format("%s-%s-%s", year, month, INIT_FIRST_DAY);
+        return getSingleUserUsageBetween(user, firstDay, getLastDayOfMonth(firstDay).toString());
 
     }
 
     public List<UsageStatistic> getSingleUserUsageYearMonthDay(String user, String year, String month,
                                                                String day)
                 throws IOException, DatabaseFileNotFoundException {
-        Predicate<FilterUserTimeInterval> ymdPredicate = FilterUserTimeInterval::filterDay;
-        return getSingleUserDate(ymdPredicate, user, year, month, day);
+        String date = String.format("%s-%s-%s", year, month, day);
+        return getSingleUserUsageBetween(user, date, date);
     }
 
     Set<String> getDatesBetween(String start, String end) {
@@ -262,68 +210,28 @@ public class JSONExtractor {
         };
     }
 
-    private List<UsageStatistic> loadStatisticBetweenDate(String startDate, String endDate) throws IOException {
-        List<UsageStatistic> usageStatisticList = new ArrayList<>();
-        String[] fileList = Paths.get(databaseFolderPath).toFile().list();
-        if (fileList != null) {
-            Predicate<String> filterFileLogBtwDate = filterFileLogBtwDate(startDate, endDate);
-            List<String> fileListCollected = Arrays.stream(fileList).filter(filterFileLogBtwDate).collect(
-                        Collectors.toList());
-            for (String fileNameToLoad : fileListCollected) {
-                String fullPathToLogFile = Paths.get(databaseFolderPath).resolve(fileNameToLoad).toString();
-                usageStatisticList.addAll(getAllStatistics(fullPathToLogFile));
-            }
-            return usageStatisticList;
-        } else {
-            throw new DatabaseFileNotFoundException("Database path '" + databaseFolderPath + "' is empty.");
-        }
+    LocalDate getLastDayOfMonth(String dateTime) {
+        return LocalDate.parse(dateTime).plusMonths(1).withDayOfMonth(DAY_OF_MONTH).minusDays(1);
     }
 
-    private List<UsageStatistic> loadStatisticFromDate(String startDate)
-                throws IOException, DatabaseFileNotFoundException {
-        List<UsageStatistic> usageStatisticList = new ArrayList<>();
-        String[] fileList = Paths.get(databaseFolderPath).toFile().list();
-        if (fileList != null) {
-            Predicate<String> logFileFilter = filterLogFileFromDate(startDate);
-            List<String> fileListCollected = Arrays.stream(fileList).filter(logFileFilter).collect(
-                        Collectors.toList());
-            for (String fileNameToLoad : fileListCollected) {
-                String fullPathToLogFile = Paths.get(databaseFolderPath).resolve(fileNameToLoad).toString();
-                usageStatisticList.addAll(getAllStatistics(fullPathToLogFile));
-            }
-            return usageStatisticList;
-        } else {
-            throw new DatabaseFileNotFoundException("Database path '" + databaseFolderPath + "' is empty.");
-        }
+    LocalDate getFirstDayOfMonth(String dateTime) {
+        return LocalDate.parse(dateTime).withDayOfMonth(DAY_OF_MONTH);
     }
 
-    private List<UsageStatistic> loadStatisticOfYearMonth(String year, String month)
-                throws IOException, DatabaseFileNotFoundException {
-        String firstDatetofYear = String.format("%s-%s-01", year, month);
-        return loadStatisticOf(firstDatetofYear);
+    private UsageStore getUsageStore() {
+        return UsageStore.getInstance(databaseFolderPath);
     }
 
-    private Predicate<String> filterLogFileFromDate(final String startDate) {
-        return aLong -> {
-            Matcher matcher = groupMatchers(aLong);
-            if (!matcher.find()) {
-                return false;
-            }
-            String endDateFrmFileName = matcher.group(3);
-            LocalDate end = LocalDate.parse(endDateFrmFileName);
-            TemporalAccessor accessor = TIME_FORMATTER.parse(startDate);
-            Date date = Date.from(Instant.from(accessor));
-            LocalDate instant = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-            return (end.isAfter(instant) || end.equals(instant));
-        };
+    private static long startOf(String date) {
+        return startOf(LocalDate.parse(date));
     }
 
-    LocalDate getLastDayOfMonth(String dateTime) {
-        return LocalDate.parse(dateTime).plusMonths(1).withDayOfMonth(DAY_OF_MONTH).minusDays(1);
+    private static long endOf(String date) {
+        return startOf(LocalDate.parse(date).plusDays(1));
     }
 
-    LocalDate getFirstDayOfMonth(String dateTime) {
-        return LocalDate.parse(dateTime).withDayOfMonth(DAY_OF_MONTH);
+    private static long startOf(LocalDate date) {
+        return date.atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
     }
 
 
@@ -370,80 +278,6 @@ public class JSONExtractor {
         return compile.matcher(aLong);
     }
 
-    private List<UsageStatistic> getSingleUserRangeStatistic(Predicate<Long> predTime, String userName,
-                                                             List<UsageStatistic> allStatisticUsage) {
-        ConcurrentHashMap<String, List<UsageStatistic>> filterUserWithDate = new ConcurrentHashMap<>();
-        List<UsageStatistic> userStatisticInYear = new ArrayList<>();
-        filterUserWithDate.put(userName, userStatisticInYear);
-        allStatisticUsage.forEach(p -> filterUserWithDate.computeIfPresent(p.getUser(), (s, usageStatistics) -> {
-            if (predTime.test(p.getFinishTime())) {
-                userStatisticInYear.add(p);
-            }
-            return userStatisticInYear;
-        }));
-        return userStatisticInYear;
-    }
-
-    private List<UsageStatistic> getSingleUserDate(Predicate<FilterUserTimeInterval> intervalPredicate,
-                                                   String user,
-                                                   String year,
-                                                   String month,
-                                                   String day) throws IOException, DatabaseFileNotFoundException {
-
-        final ConcurrentHashMap<String, List<UsageStatistic>> extractUserDate = new ConcurrentHashMap<>();
-        final List<UsageStatistic> userStatisticInYear = new ArrayList<>();
-        extractUserDate.put(user, userStatisticInYear);
-
-        List<UsageStatistic> usageStatisticList = loadStatisticOfYearMonth(year, month);
-
-        usageStatisticList
-                    .forEach(usage ->
-                                         extractUserDate.computeIfPresent(usage.getUser(),
-                                                                          getUserFromYear(intervalPredicate, year,
-                                                                                          month, day,
-                                                                                          userStatisticInYear, usage)));
-        return userStatisticInYear;
-    }
-
-    @NotNull
-    private BiFunction<String, List<UsageStatistic>, List<UsageStatistic>> getUserFromYear(
-                Predicate<FilterUserTimeInterval> intervalPredicate,
-                String yr, String mnth, String dy,
-                List<UsageStatistic> userStatisticInYear,
-                UsageStatistic usage) {
-        return (stringKey, usageStatistics) -> {
-            FilterUserTimeInterval filterUserTimeInterval = new FilterUserTimeInterval(usage.getFinishTime(), yr, mnth,
-                                                                                       dy);
-
-            if (intervalPredicate.test(filterUserTimeInterval)) {
-                userStatisticInYear.add(usage);
-            }
-            return userStatisticInYear;
-        };
-    }
-
-    @NotNull
-    private List<UsageStatistic> filterUser(String stringKey, List<UsageStatistic> usageStatisticList) {
-        return usageStatisticList.stream().filter(p -> p.getUser().equalsIgnoreCase(stringKey)).collect(
-                    Collectors.toList());
-    }
-
-    @NotNull
-    private List<UsageStatistic> filterQueue(String queue, List<UsageStatistic> usageStatisticList) {
-        return usageStatisticList.stream().filter(p -> p.getQueue().equalsIgnoreCase(queue)).collect(
-                    Collectors.toList());
-    }
-
-    @NotNull
-    private Predicate<Long> filterDateIntervals(final String startDate, final String endDate) {
-        return aLong -> {
-            Instant end = LocalDate.parse(endDate).atTime(LocalTime.MAX).toInstant(ZoneOffset.UTC);
-            Instant start = LocalDate.parse(startDate).atStartOfDay().toInstant(ZoneOffset.UTC);
-            Instant instant = new Date(aLong).toInstant();
-            return instant.isAfter(start) && instant.isBefore(end);
-        };
-    }
-
     @NotNull
     private String constructJsonString(String fileContentsString) {
         String reportingJsonString = StringUtils.stripEnd(fileContentsString.trim(), ",");
@@ -0,0 +1,279 @@
+package com.bc.calvalus.reporting.restservice.io;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.reporting.common.UsageStatistic;
+import com.bc.calvalus.reporting.restservice.exceptions.DatabaseFileNotFoundException;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory index of the job usage records in the reporting folder.
+ * <p/>
+ * The records are indexed by finish time, by user and by queue, and rolled up per user and queue
+ * into daily and monthly summaries (UTC). The report files are only ever appended by the collector,
+ * so a refresh reads just the bytes added since the last one. If a file shrinks, the index is rebuilt.
+ */
+public class UsageStore {
+
+    private static final Logger LOGGER = CalvalusLogger.getLogger();
+    private static final Map<String, UsageStore> INSTANCES = new HashMap<>();
+
+    private final Path reportingFolder;
+    private final Gson gson = new Gson();
+
+    private final Map<Path, Long> readPositions = new HashMap<>();
+    private final Map<String, UsageStatistic> jobIndex = new HashMap<>();
+    private final NavigableMap<Long, List<UsageStatistic>> finishTimeIndex = new TreeMap<>();
+    private final Map<String, NavigableMap<Long, List<UsageStatistic>>> userIndex = new HashMap<>();
+    private final Map<String, NavigableMap<Long, List<UsageStatistic>>> queueIndex = new HashMap<>();
+    private final Map<String, NavigableMap<LocalDate, UsageSummary>> dailyUserRollups = new HashMap<>();
+    private final Map<String, NavigableMap<LocalDate, UsageSummary>> dailyQueueRollups = new HashMap<>();
+    private final Map<String, NavigableMap<YearMonth, UsageSummary>> monthlyUserRollups = new HashMap<>();
+    private final Map<String, NavigableMap<YearMonth, UsageSummary>> monthlyQueueRollups = new HashMap<>();
+
+    /**
+     * @return the store shared by all requests reading from this reporting folder
+     */
+    public static synchronized UsageStore getInstance(String reportingFolderPath) {
+        return INSTANCES.computeIfAbsent(reportingFolderPath, path -> new UsageStore(Paths.get(path)));
+    }
+
+    UsageStore(Path reportingFolder) {
+        this.reportingFolder = reportingFolder;
+    }
+
+    /**
+     * Adds the records appended to the report files since the last refresh.
+     */
+    public synchronized void refresh() throws IOException {
+        if (!Files.isDirectory(reportingFolder)) {
+            throw new DatabaseFileNotFoundException("Database path '" + reportingFolder + "' is empty.");
+        }
+        List<Path> reportFiles = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(reportingFolder, "*.json")) {
+            for (Path reportFile : directoryStream) {
+                if (Files.isRegularFile(reportFile)) {
+                    reportFiles.add(reportFile);
+                }
+            }
+        }
+        Collections.sort(reportFiles);
+        if (!reportFiles.containsAll(readPositions.keySet())) {
+            LOGGER.info("report files have been removed, rebuilding usage index");
+            clear();
+        }
+        for (Path reportFile : reportFiles) {
+            if (Files.size(reportFile) < readPositions.getOrDefault(reportFile, 0L)) {
+                LOGGER.info("report file " + reportFile + " has been rewritten, rebuilding usage index");
+                clear();
+                break;
+            }
+        }
+        for (Path reportFile : reportFiles) {
+            readAppendedRecords(reportFile);
+        }
+    }
+
+    public synchronized UsageStatistic getJob(String jobId) throws IOException {
+        refresh();
+        return jobIndex.get(jobId.toLowerCase());
+    }
+
+    /**
+     * @return the jobs finished in the interval [from, to), in order of their finish time
+     */
+    public synchronized List<UsageStatistic> getJobs(long from, long to) throws IOException {
+        refresh();
+        return select(finishTimeIndex, from, to);
+    }
+
+    public synchronized List<UsageStatistic> getUserJobs(String user, long from, long to) throws IOException {
+        refresh();
+        return select(userIndex.get(user.toLowerCase()), from, to);
+    }
+
+    public synchronized List<UsageStatistic> getQueueJobs(String queue, long from, long to) throws IOException {
+        refresh();
+        return select(queueIndex.get(queue.toLowerCase()), from, to);
+    }
+
+    /**
+     * @return the jobs finished in the interval [from, to), grouped by user
+     */
+    public synchronized Map<String, List<UsageStatistic>> getJobsByUser(long from, long to) throws IOException {
+        refresh();
+        return group(select(finishTimeIndex, from, to), UsageStatistic::getUser);
+    }
+
+    public synchronized Map<String, List<UsageStatistic>> getJobsByQueue(long from, long to) throws IOException {
+        refresh();
+        return group(select(finishTimeIndex, from, to), UsageStatistic::getQueue);
+    }
+
+    /**
+     * @return the usage of each user with jobs finished between the first and the last day (inclusive)
+     */
+    public synchronized Map<String, UsageSummary> getUserSummaries(LocalDate first, LocalDate last) throws IOException {
+        refresh();
+        return summarize(dailyUserRollups, first, last);
+    }
+
+    public synchronized Map<String, UsageSummary> getQueueSummaries(LocalDate first, LocalDate last) throws IOException {
+        refresh();
+        return summarize(dailyQueueRollups, first, last);
+    }
+
+    public synchronized Map<String, UsageSummary> getUserSummaries(YearMonth month) throws IOException {
+        refresh();
+        return summarize(monthlyUserRollups, month, month);
+    }
+
+    public synchronized Map<String, UsageSummary> getQueueSummaries(YearMonth month) throws IOException {
+        refresh();
+        return summarize(monthlyQueueRollups, month, month);
+    }
+
+    private void readAppendedRecords(Path reportFile) throws IOException {
+        long position = readPositions.getOrDefault(reportFile, 0L);
+        try (FileChannel channel = FileChannel.open(reportFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= position) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) (size - position));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) <= 0) {
+                    break;
+                }
+            }
+            byte[] bytes = buffer.array();
+            int length = buffer.position();
+            // a line still being written by the collector is read with the next refresh
+            int end = length;
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            int lineStart = 0;
+            for (int i = 0; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    addRecord(reportFile, new String(bytes, lineStart, i - lineStart));
+                    lineStart = i + 1;
+                }
+            }
+            readPositions.put(reportFile, position + end);
+        }
+    }
+
+    private void addRecord(Path reportFile, String line) {
+        String json = line.trim();
+        if (json.endsWith(",")) {
+            json = json.substring(0, json.length() - 1);
+        }
+        if (json.isEmpty()) {
+            return;
+        }
+        UsageStatistic usageStatistic;
+        try {
+            usageStatistic = gson.fromJson(json, UsageStatistic.class);
+        } catch (JsonSyntaxException exception) {
+            LOGGER.log(Level.WARNING, "skipping malformed record in " + reportFile, exception);
+            return;
+        }
+        if (usageStatistic == null || usageStatistic.getJobId() == null
+            || jobIndex.putIfAbsent(usageStatistic.getJobId().toLowerCase(), usageStatistic) != null) {
+            return;
+        }
+        long finishTime = usageStatistic.getFinishTime();
+        LocalDate day = Instant.ofEpochMilli(finishTime).atZone(ZoneOffset.UTC).toLocalDate();
+        String user = String.valueOf(usageStatistic.getUser());
+        String queue = String.valueOf(usageStatistic.getQueue());
+        index(finishTimeIndex, finishTime, usageStatistic);
+        index(userIndex.computeIfAbsent(user.toLowerCase(), key -> new TreeMap<>()), finishTime, usageStatistic);
+        index(queueIndex.computeIfAbsent(queue.toLowerCase(), key -> new TreeMap<>()), finishTime, usageStatistic);
+        rollUp(dailyUserRollups, user, day, usageStatistic);
+        rollUp(dailyQueueRollups, queue, day, usageStatistic);
+        rollUp(monthlyUserRollups, user, YearMonth.from(day), usageStatistic);
+        rollUp(monthlyQueueRollups, queue, YearMonth.from(day), usageStatistic);
+    }
+
+    private void clear() {
+        readPositions.clear();
+        jobIndex.clear();
+        finishTimeIndex.clear();
+        userIndex.clear();
+        queueIndex.clear();
+        dailyUserRollups.clear();
+        dailyQueueRollups.clear();
+        monthlyUserRollups.clear();
+        monthlyQueueRollups.clear();
+    }
+
+    private static void index(NavigableMap<Long, List<UsageStatistic>> index, long finishTime, UsageStatistic usageStatistic) {
+        index.computeIfAbsent(finishTime, key -> new ArrayList<>(1)).add(usageStatistic);
+    }
+
+    private static <T extends Comparable<? super T>> void rollUp(Map<String, NavigableMap<T, UsageSummary>> rollups,
+                                                         String key, T period, UsageStatistic usageStatistic) {
+        rollups.computeIfAbsent(key, k -> new TreeMap<>()).computeIfAbsent(period, p -> new UsageSummary()).add(usageStatistic);
+    }
+
+    private static List<UsageStatistic> select(NavigableMap<Long, List<UsageStatistic>> index, long from, long to) {
+        List<UsageStatistic> selection = new ArrayList<>();
+        if (index != null && from < to) {
+            for (List<UsageStatistic> usageStatistics : index.subMap(from, true, to, false).values()) {
+                selection.addAll(usageStatistics);
+            }
+        }
+        return selection;
+    }
+
+    private static Map<String, List<UsageStatistic>> group(List<UsageStatistic> usageStatistics,
+                                                           Function<UsageStatistic, String> key) {
+        Map<String, List<UsageStatistic>> groups = new TreeMap<>();
+        for (UsageStatistic usageStatistic : usageStatistics) {
+            groups.computeIfAbsent(String.valueOf(key.apply(usageStatistic)), k -> new ArrayList<>()).add(usageStatistic);
+        }
+        return groups;
+    }
+
+    private static <T extends Comparable<? super T>> Map<String, UsageSummary> summarize(Map<String, NavigableMap<T, UsageSummary>> rollups,
+                                                                                  T first, T last) {
+        Map<String, UsageSummary> summaries = new TreeMap<>();
+        if (first.compareTo(last) > 0) {
+            return summaries;
+        }
+        for (Map.Entry<String, NavigableMap<T, UsageSummary>> entry : rollups.entrySet()) {
+            Collection<UsageSummary> periods = entry.getValue().subMap(first, true, last, true).values();
+            if (!periods.isEmpty()) {
+                UsageSummary summary = new UsageSummary();
+                periods.forEach(summary::add);
+                summaries.put(entry.getKey(), summary);
+            }
+        }
+        return summaries;
+    }
+}
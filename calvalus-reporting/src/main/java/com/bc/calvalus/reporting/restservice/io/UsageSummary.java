@@ -0,0 +1,83 @@
+package com.bc.calvalus.reporting.restservice.io;
+
+import com.bc.calvalus.reporting.common.UsageStatistic;
+
+/**
+ * Aggregated usage of a number of jobs, e.g. the jobs of one user on one day.
+ * The values are summed up per job in the units used by the reports.
+ */
+public class UsageSummary {
+
+    private static final int KILO_BYTES = 1024;
+    private static final int MILLISECONDS = 1000;
+
+    private String user;
+    private int jobs;
+    private long totalMaps;
+    private long fileWritingMb;
+    private long fileReadingMb;
+    private long cpuMilliseconds;
+    private long memoryMbs;
+    private long vCoresSeconds;
+
+    public void add(UsageStatistic usageStatistic) {
+        if (user == null) {
+            user = usageStatistic.getUser();
+        }
+        jobs++;
+        totalMaps += usageStatistic.getTotalMaps();
+        fileWritingMb += (usageStatistic.getFileBytesWritten() + usageStatistic.getHdfsBytesWritten()) / (KILO_BYTES * KILO_BYTES);
+        fileReadingMb += (usageStatistic.getFileBytesRead() + usageStatistic.getHdfsBytesRead()) / (KILO_BYTES * KILO_BYTES);
+        cpuMilliseconds += usageStatistic.getCpuMilliseconds();
+        memoryMbs += (usageStatistic.getMbMillisMapTotal() + usageStatistic.getMbMillisReduceTotal()) / MILLISECONDS;
+        vCoresSeconds += usageStatistic.getvCoresMillisTotal() / MILLISECONDS;
+    }
+
+    public void add(UsageSummary other) {
+        if (user == null) {
+            user = other.user;
+        }
+        jobs += other.jobs;
+        totalMaps += other.totalMaps;
+        fileWritingMb += other.fileWritingMb;
+        fileReadingMb += other.fileReadingMb;
+        cpuMilliseconds += other.cpuMilliseconds;
+        memoryMbs += other.memoryMbs;
+        vCoresSeconds += other.vCoresSeconds;
+    }
+
+    /**
+     * @return the user of the first job added
+     */
+    public String getUser() {
+        return user;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public long getTotalMaps() {
+        return totalMaps;
+    }
+
+    public long getFileWritingMb() {
+        return fileWritingMb;
+    }
+
+    public long getFileReadingMb() {
+        return fileReadingMb;
+    }
+
+    public long getCpuMilliseconds() {
+        return cpuMilliseconds;
+    }
+
+    public long getMemoryMbs() {
+        return memoryMbs;
+    }
+
+    public long getvCoresSeconds() {
+        return vCoresSeconds;
+    }
+}
@@ -1,6 +1,7 @@
 package com.bc.calvalus.reporting.restservice.ws;
 
 import com.bc.calvalus.reporting.common.UsageStatistic;
+import com.bc.calvalus.reporting.restservice.io.UsageSummary;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -18,9 +19,6 @@ import java.util.concurrent.TimeUnit;
  */
 class ReportGenerator {
 
-    private static final int KILO_BYTES = 1024;
-    private static final int MILLISECONDS = 1000;
-
     String generateJsonAllUserJobSummary(Map<String, List<UsageStatistic>> allUserStatisticsMap) {
         List<Map<String, String>> multiJobJsonContentsPerUserMap = new ArrayList<>();
         allUserStatisticsMap.forEach((key, usageStatisticsList) -> {
@@ -44,6 +42,30 @@ class ReportGenerator {
         return gson.toJson(multiJobJsonContentsPerUserMap);
     }
 
+    /**
+     * Same as {@link #generateJsonAllUserJobSummary(Map)}, from the pre-aggregated usage of each user.
+     */
+    String generateJsonAllUserSummary(Map<String, UsageSummary> allUserSummaryMap) {
+        List<Map<String, String>> multiJobJsonContentsPerUserMap = new ArrayList<>();
+        allUserSummaryMap.forEach((key, usageSummary) -> multiJobJsonContentsPerUserMap.add(getSummaryJsonContents(usageSummary)));
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        return gson.toJson(multiJobJsonContentsPerUserMap);
+    }
+
+    /**
+     * Same as {@link #generateJsonUsageBetween(Map, String)}, from pre-aggregated usage.
+     */
+    String generateJsonSummaryBetween(Map<String, UsageSummary> summaryMap, String keyToCreate) {
+        List<Map<String, String>> multiJobJsonContentsPerUserMap = new ArrayList<>();
+        summaryMap.forEach((key, usageSummary) -> {
+            Map<String, String> multiJobJsonContentsPerUser = getSummaryJsonContents(usageSummary);
+            multiJobJsonContentsPerUser.put(keyToCreate, key);
+            multiJobJsonContentsPerUserMap.add(multiJobJsonContentsPerUser);
+        });
+        Gson gson = new Gson();
+        return gson.toJson(multiJobJsonContentsPerUserMap);
+    }
+
     String generateTextSingleJob(UsageStatistic usageStatistic) {
         StringBuilder stringBuilder = new StringBuilder();
         List<String> report = getSingleJobReportContents(usageStatistic);
@@ -89,33 +111,28 @@ class ReportGenerator {
     }
 
     private Map<String, String> getMultiJobJsonContents(List<UsageStatistic> usageStatistics) {
-        Map<String, String> jobReportJson = new HashMap<>();
-        long totalFileWriting = 0;
-        long totalFileReading = 0;
-        long totalCpuTime = 0;
-        long totalMap = 0;
-        long totalReduce = 0;
-        long totalMemoryUsed = 0;
-        long totalVCoresUsed = 0;
-
         if (usageStatistics.size() == 0) {
             return null;
         }
+        UsageSummary usageSummary = new UsageSummary();
         for (UsageStatistic usageStatistic : usageStatistics) {
-            totalMap += (usageStatistic.getTotalMaps());
-            totalFileWriting += (usageStatistic.getFileBytesWritten() + usageStatistic.getHdfsBytesWritten()) / (KILO_BYTES * KILO_BYTES);
-            totalFileReading += (usageStatistic.getFileBytesRead() + usageStatistic.getHdfsBytesRead()) / (KILO_BYTES * KILO_BYTES);
-            totalCpuTime += usageStatistic.getCpuMilliseconds();
-            totalMemoryUsed += (usageStatistic.getMbMillisMapTotal() + usageStatistic.getMbMillisReduceTotal()) / (MILLISECONDS);
-            totalVCoresUsed += (usageStatistic.getvCoresMillisTotal()) / (MILLISECONDS);
+            usageSummary.add(usageStatistic);
         }
-        int jobNumbers = usageStatistics.size();
-        jobReportJson.put("user", usageStatistics.get(0).getUser()); // TODO(hans-permana, 20170116): should generate the report per user
-        jobReportJson.put("jobsProcessed", String.valueOf(jobNumbers));
-        jobReportJson.put("totalMap", getFormattedNumber(totalMap));
+        return getSummaryJsonContents(usageSummary);
+    }
+
+    private Map<String, String> getSummaryJsonContents(UsageSummary usageSummary) {
+        Map<String, String> jobReportJson = new HashMap<>();
+        long totalFileWriting = usageSummary.getFileWritingMb();
+        long totalFileReading = usageSummary.getFileReadingMb();
+        long totalMemoryUsed = usageSummary.getMemoryMbs();
+        long totalVCoresUsed = usageSummary.getvCoresSeconds();
+        jobReportJson.put("user", usageSummary.getUser()); // TODO(hans-permana, 20170116): should generate the report per user
+        jobReportJson.put("jobsProcessed", String.valueOf(usageSummary.getJobs()));
+        jobReportJson.put("totalMap", getFormattedNumber(usageSummary.getTotalMaps()));
         jobReportJson.put("totalFileWritingMb", getFormattedNumber(totalFileWriting));
         jobReportJson.put("totalFileReadingMb", getFormattedNumber(totalFileReading));
-        jobReportJson.put("totalCpuTimeSpent", getElapsedTime(totalCpuTime));
+        jobReportJson.put("totalCpuTimeSpent", getElapsedTime(usageSummary.getCpuMilliseconds()));
         jobReportJson.put("totalMemoryUsedMbs", getFormattedNumber(totalMemoryUsed));
         jobReportJson.put("totalVcoresUsed", getFormattedNumber(totalVCoresUsed));
         double cpuPrice = PriceCalculator.getCpuPrice(totalVCoresUsed);
@@ -4,6 +4,7 @@ import com.bc.calvalus.reporting.common.UsageStatistic;
 import com.bc.calvalus.reporting.restservice.exceptions.DatabaseFileNotFoundException;
 import com.bc.calvalus.reporting.restservice.exceptions.JobNotFoundException;
 import com.bc.calvalus.reporting.restservice.io.JSONExtractor;
+import com.bc.calvalus.reporting.restservice.io.UsageSummary;
 import com.bc.wps.utilities.PropertiesWrapper;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -66,11 +67,11 @@ public class ReportingService {
     public String getUserAggregatedJobReports() {
         try {
             // TODO(hans-permana, 20180111): get user-aggregated usage statistics should not require a hard-coded date
-            Map<String, List<UsageStatistic>> allUserStatistics = jsonExtractor.getAllUserUsageStatistic("2017-01-01");
-            if (allUserStatistics.size() < 1) {
+            Map<String, UsageSummary> allUserSummaries = jsonExtractor.getAllUserSummaryOf("2017-01-01");
+            if (allUserSummaries.size() < 1) {
                 throw new JobNotFoundException("No job found for any users");
             }
-            return reportGenerator.generateJsonAllUserJobSummary(allUserStatistics);
+            return reportGenerator.generateJsonAllUserSummary(allUserSummaries);
         } catch (IOException | JobNotFoundException |DatabaseFileNotFoundException exception) {
             return getErrorResponse(exception);
         }
@@ -141,12 +142,11 @@ public class ReportingService {
     @Produces(MediaType.APPLICATION_JSON)
     public String getRangeUserBetween(@PathParam("date_start") String start, @PathParam("date_end") String end) {
         try {
-            Map<String, List<UsageStatistic>> allUsersStartEndDateStatistic = jsonExtractor.getAllUserUsageBetween(
-                        start, end);
-            if (allUsersStartEndDateStatistic.size() < 1) {
+            Map<String, UsageSummary> allUsersStartEndDateSummaries = jsonExtractor.getAllUserSummaryBetween(start, end);
+            if (allUsersStartEndDateSummaries.size() < 1) {
                 throw new JobNotFoundException("No job found for any user ");
             }
-            return reportGenerator.generateJsonAllUserJobSummary(allUsersStartEndDateStatistic);
+            return reportGenerator.generateJsonAllUserSummary(allUsersStartEndDateSummaries);
         } catch (IOException | JobNotFoundException | DatabaseFileNotFoundException exception) {
             return getErrorResponse(exception);
         }
@@ -173,11 +173,11 @@ public class ReportingService {
     @Produces(MediaType.APPLICATION_JSON)
     public String getRangeQueueBetween(@PathParam("date_start") String start, @PathParam("date_end") String end) {
         try {
-            Map<String, List<UsageStatistic>> usageBetween = jsonExtractor.getAllQueueUsageBetween(start, end);
+            Map<String, UsageSummary> usageBetween = jsonExtractor.getAllQueueSummaryBetween(start, end);
             if (usageBetween.size() <= 0) {
                 throw new JobNotFoundException("No job found for any user ");
             }
-            return reportGenerator.generateJsonUsageBetween(usageBetween, "jobsInQueue");
+            return reportGenerator.generateJsonSummaryBetween(usageBetween, "jobsInQueue");
         } catch (IOException | JobNotFoundException | DatabaseFileNotFoundException exception) {
             return getErrorResponse(exception);
         }
@@ -15,6 +15,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * @author hans
@@ -45,6 +46,7 @@ public class JobReportsTest {
         assertThat(jobReports.getKnownJobIdSet().size(), equalTo(13));
         assertThat(jobReports.contains("job_1484837520075_13150"), equalTo(true));
         assertThat(jobReports.contains("unknown_job_id"), equalTo(false));
+        assertThat(jobReports.getLastFinishTime(), equalTo(1496275302818L));
     }
 
     @Test
@@ -81,6 +83,25 @@ public class JobReportsTest {
         cleanUp();
     }
 
+    @Test
+    public void canAppendBatch() throws Exception {
+        jobReports.init(NEW_REPORT_DIR);
+
+        jobReports.addAll(Arrays.asList(new JobReports.Entry("1", DUMMY_FINISH_TIME2, getSingleJsonReportEntry()),
+                                        new JobReports.Entry("2", DUMMY_FINISH_TIME, getSingleJsonReportEntry()),
+                                        new JobReports.Entry("3", DUMMY_FINISH_TIME, getSingleJsonReportEntry())));
+        assertThat(jobReports.getKnownJobIdSet().size(), equalTo(3));
+        assertThat(jobReports.getLastFinishTime(), equalTo(DUMMY_FINISH_TIME));
+        String[] reportFiles = new File(NEW_REPORT_DIR).list();
+        assertThat(reportFiles.length, equalTo(2));
+        assertThat(Files.readAllLines(Paths.get(NEW_REPORT_DIR, reportFiles[0])).size()
+                   + Files.readAllLines(Paths.get(NEW_REPORT_DIR, reportFiles[1])).size(), equalTo(3));
+
+        jobReports.closeBufferedWriters();
+
+        cleanUp();
+    }
+
     @Test
     public void canCatchIOException() throws Exception {
         thrownException.expect(JobReportsException.class);
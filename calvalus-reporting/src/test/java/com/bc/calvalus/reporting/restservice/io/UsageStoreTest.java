@@ -0,0 +1,146 @@
+package com.bc.calvalus.reporting.restservice.io;
+
+import com.bc.calvalus.reporting.common.UsageStatistic;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UsageStoreTest {
+
+    // 2017-01-10T00:00:00Z
+    private static final long DAY = 1484006400000L;
+    private static final long ONE_DAY = 24L * 60 * 60 * 1000;
+
+    private Path reportingFolder;
+    private File reportFile;
+    private UsageStore usageStore;
+
+    @Before
+    public void setUp() throws Exception {
+        reportingFolder = Files.createTempDirectory("calvalus-reporting");
+        reportFile = reportingFolder.resolve("calvalus-reporting-2017-01-01-to-2017-01-31.json").toFile();
+        usageStore = new UsageStore(reportingFolder);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = reportingFolder.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        Files.delete(reportingFolder);
+    }
+
+    @Test
+    public void testIndexes() throws Exception {
+        append(record("job_1", "martin", "lc", DAY + 1000, 100),
+               record("job_2", "jessica", "default", DAY + 2000, 10),
+               record("job_3", "martin", "default", DAY + ONE_DAY + 5, 1));
+
+        assertEquals(3, usageStore.getJobs(0, Long.MAX_VALUE).size());
+        List<UsageStatistic> firstDay = usageStore.getJobs(DAY, DAY + ONE_DAY);
+        assertEquals(2, firstDay.size());
+        assertEquals("job_1", firstDay.get(0).getJobId());
+        assertEquals("job_2", firstDay.get(1).getJobId());
+
+        assertEquals(2, usageStore.getUserJobs("Martin", 0, Long.MAX_VALUE).size());
+        assertEquals(1, usageStore.getUserJobs("martin", DAY + ONE_DAY, Long.MAX_VALUE).size());
+        assertEquals(2, usageStore.getQueueJobs("default", 0, Long.MAX_VALUE).size());
+        assertTrue(usageStore.getUserJobs("unknown", 0, Long.MAX_VALUE).isEmpty());
+
+        Map<String, List<UsageStatistic>> byQueue = usageStore.getJobsByQueue(DAY, DAY + ONE_DAY);
+        assertEquals(2, byQueue.size());
+        assertEquals("job_1", byQueue.get("lc").get(0).getJobId());
+
+        assertEquals("jessica", usageStore.getJob("JOB_2").getUser());
+        assertNull(usageStore.getJob("job_4"));
+    }
+
+    @Test
+    public void testRollups() throws Exception {
+        append(record("job_1", "martin", "lc", DAY + 1000, 100),
+               record("job_2", "jessica", "default", DAY + 2000, 10),
+               record("job_3", "martin", "default", DAY + ONE_DAY + 5, 1));
+
+        LocalDate day = LocalDate.of(2017, 1, 10);
+        Map<String, UsageSummary> firstDay = usageStore.getUserSummaries(day, day);
+        assertEquals(2, firstDay.size());
+        assertEquals(1, firstDay.get("martin").getJobs());
+        assertEquals(100, firstDay.get("martin").getTotalMaps());
+
+        Map<String, UsageSummary> bothDays = usageStore.getUserSummaries(day, day.plusDays(1));
+        assertEquals(2, bothDays.get("martin").getJobs());
+        assertEquals(101, bothDays.get("martin").getTotalMaps());
+        assertEquals(101000, bothDays.get("martin").getCpuMilliseconds());
+
+        Map<String, UsageSummary> queues = usageStore.getQueueSummaries(YearMonth.of(2017, 1));
+        assertEquals(2, queues.get("default").getJobs());
+        assertEquals("jessica", queues.get("default").getUser());
+        assertTrue(usageStore.getUserSummaries(YearMonth.of(2017, 2)).isEmpty());
+    }
+
+    @Test
+    public void testAppendedRecordsAreReadIncrementally() throws Exception {
+        append(record("job_1", "martin", "lc", DAY, 1));
+        assertEquals(1, usageStore.getJobs(0, Long.MAX_VALUE).size());
+
+        // the collector has not yet completed the line of the second job
+        String secondRecord = record("job_2", "martin", "lc", DAY + 1, 1);
+        try (Writer writer = new FileWriter(reportFile, true)) {
+            writer.write(secondRecord.substring(0, 20));
+        }
+        assertEquals(1, usageStore.getJobs(0, Long.MAX_VALUE).size());
+
+        try (Writer writer = new FileWriter(reportFile, true)) {
+            writer.write(secondRecord.substring(20) + ",\n");
+        }
+        append(record("job_1", "martin", "lc", DAY, 1));
+        assertEquals(2, usageStore.getJobs(0, Long.MAX_VALUE).size());
+        assertEquals(2, usageStore.getUserSummaries(YearMonth.of(2017, 1)).get("martin").getJobs());
+    }
+
+    @Test
+    public void testRewrittenFileIsReindexed() throws Exception {
+        append(record("job_1", "martin", "lc", DAY, 1),
+               record("job_2", "martin", "lc", DAY, 1));
+        assertEquals(2, usageStore.getJobs(0, Long.MAX_VALUE).size());
+
+        reportFile.delete();
+        append(record("job_3", "jessica", "lc", DAY, 1));
+        List<UsageStatistic> jobs = usageStore.getJobs(0, Long.MAX_VALUE);
+        assertEquals(1, jobs.size());
+        assertEquals("job_3", jobs.get(0).getJobId());
+        assertNull(usageStore.getUserSummaries(YearMonth.of(2017, 1)).get("martin"));
+    }
+
+    private void append(String... records) throws IOException {
+        try (Writer writer = new FileWriter(reportFile, true)) {
+            for (String record : records) {
+                writer.write(record + ",\n");
+            }
+        }
+    }
+
+    private static String record(String jobId, String user, String queue, long finishTime, int maps) {
+        return String.format("{\"jobId\":\"%s\",\"user\":\"%s\",\"queue\":\"%s\",\"finishTime\":\"%d\"," +
+                             "\"totalMaps\":\"%d\",\"cpuMilliseconds\":\"%d\"}",
+                             jobId, user, queue, finishTime, maps, maps * 1000L);
+    }
+}
@@ -24,8 +24,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Store of the local jobs. Reads are served from an in-memory view without locking, changes are
+ * recorded per job and only the changed jobs are written by {@link #persist()}, in batches.
+ *
  * @author hans
  */
 public class SqlStore {
@@ -33,12 +37,15 @@ public class SqlStore {
     private final Connection connection;
     private final Map<String, LocalJob> cachedJobs;
     private final Set<String> addedJobIds;
+    private final Set<String> updatedJobIds;
     private final Set<String> removedJobIds;
+    private final Object persistLock = new Object();
 
     private SqlStore(Connection connection) {
         this.connection = connection;
-        this.cachedJobs = new HashMap<>();
+        this.cachedJobs = new ConcurrentHashMap<>();
         this.addedJobIds = new HashSet<>();
+        this.updatedJobIds = new HashSet<>();
         this.removedJobIds = new HashSet<>();
     }
 
@@ -55,6 +62,8 @@ public class SqlStore {
 
         try {
             Connection connection = DriverManager.getConnection(url, user, password);
+            // the statements of a persist() are committed or rolled back together
+            connection.setAutoCommit(false);
             SqlStore store = new SqlStore(connection);
             if (init) {
                 store.init();
@@ -70,6 +79,7 @@ public class SqlStore {
     public synchronized void addJob(LocalJob job) {
         cachedJobs.put(job.getId(), job);
         addedJobIds.add(job.getId());
+        updatedJobIds.remove(job.getId());
         removedJobIds.remove(job.getId());
     }
 
@@ -78,6 +88,7 @@ public class SqlStore {
             cachedJobs.replace(job.getId(), job);
         } else {
             cachedJobs.put(job.getId(), job);
+            updatedJobIds.add(job.getId());
             removedJobIds.remove(job.getId());
         }
     }
@@ -85,42 +96,58 @@ public class SqlStore {
     public synchronized void removeJob(String jobId) {
         cachedJobs.remove(jobId);
         addedJobIds.remove(jobId);
+        updatedJobIds.remove(jobId);
         removedJobIds.add(jobId);
     }
 
-    public synchronized LocalJob[] getJobs() {
+    public LocalJob[] getJobs() {
         Collection<LocalJob> values = cachedJobs.values();
-        return values.toArray(new LocalJob[values.size()]);
+        return values.toArray(new LocalJob[0]);
     }
 
-    public synchronized LocalJob getJob(String jobId) {
+    public LocalJob getJob(String jobId) {
         return cachedJobs.get(jobId);
     }
 
-    public synchronized void persist() throws SqlStoreException {
-        try {
-            for (String jobId : removedJobIds) {
-                deleteJob(jobId);
-            }
+    /**
+     * @return the number of jobs changed since the last {@link #persist()}
+     */
+    public synchronized int getChangedJobCount() {
+        return addedJobIds.size() + updatedJobIds.size() + removedJobIds.size();
+    }
 
-            for (String jobId : addedJobIds) {
-                insertJob(cachedJobs.get(jobId));
+    /**
+     * Writes the jobs added, updated or removed since the last call. Changes made while the
+     * statements are executed are kept for the next call.
+     */
+    public void persist() throws SqlStoreException {
+        synchronized (persistLock) {
+            Set<String> removed;
+            Set<String> added;
+            Set<String> updated;
+            synchronized (this) {
+                removed = new HashSet<>(removedJobIds);
+                added = new HashSet<>(addedJobIds);
+                updated = new HashSet<>(updatedJobIds);
+                removedJobIds.clear();
+                addedJobIds.clear();
+                updatedJobIds.clear();
             }
-
-            for (String jobId : cachedJobs.keySet()) {
-                if (!addedJobIds.contains(jobId) &&
-                    !removedJobIds.contains(jobId)) {
-                    updateJobStatus(cachedJobs.get(jobId));
+            if (removed.isEmpty() && added.isEmpty() && updated.isEmpty()) {
+                return;
+            }
+            try {
+                deleteJobs(removed);
+                insertJobs(added);
+                updateJobStatuses(updated);
+                connection.commit();
+            } catch (SQLException exception) {
+                rollback();
+                synchronized (this) {
+                    markUnpersisted(removed, added, updated);
                 }
+                throw new SqlStoreException("Failed to persist production store: " + exception.getMessage(), exception);
             }
-
-            connection.commit();
-
-            addedJobIds.clear();
-            removedJobIds.clear();
-
-        } catch (SQLException exception) {
-            throw new SqlStoreException("Failed to persist production store: " + exception.getMessage(), exception);
         }
     }
 
@@ -132,7 +159,7 @@ public class SqlStore {
         }
     }
 
-    private synchronized void update() throws SqlStoreException {
+    private void update() throws SqlStoreException {
         try {
             List<LocalJob> jobList = selectJobs();
             for (LocalJob localJob : jobList) {
@@ -148,74 +175,125 @@ public class SqlStore {
         }
     }
 
-    private void insertJob(LocalJob job) throws SQLException {
+    private void markUnpersisted(Set<String> removed, Set<String> added, Set<String> updated) {
+        for (String jobId : removed) {
+            if (!cachedJobs.containsKey(jobId)) {
+                removedJobIds.add(jobId);
+            }
+        }
+        for (String jobId : added) {
+            if (cachedJobs.containsKey(jobId) && !removedJobIds.contains(jobId)) {
+                addedJobIds.add(jobId);
+                updatedJobIds.remove(jobId);
+            }
+        }
+        for (String jobId : updated) {
+            if (cachedJobs.containsKey(jobId) && !addedJobIds.contains(jobId)) {
+                updatedJobIds.add(jobId);
+            }
+        }
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException ignored) {
+            // the original failure is reported
+        }
+    }
+
+    private void insertJobs(Set<String> jobIds) throws SQLException {
+        if (jobIds.isEmpty()) {
+            return;
+        }
         @SuppressWarnings("SqlNoDataSourceInspection")
-        PreparedStatement insertJobStmt = connection.prepareStatement("INSERT INTO LocalJob " +
-                                                                      "(" +
-                                                                      "job_id, " +
-                                                                      "process_id, " +
-                                                                      "production_name, " +
-                                                                      "production_type, " +
-                                                                      "geo_region, " +
-                                                                      "source_product_name, " +
-                                                                      "output_format, " +
-                                                                      "target_dir, " +
-                                                                      "processing_state, " +
-                                                                      "processing_progress, " +
-                                                                      "processing_message, " +
-                                                                      "result_urls, " +
-                                                                      "stop_time" +
-                                                                      ") " +
-                                                                      " VALUES " +
-                                                                      "(" +
-                                                                      "?, ?, ?, ?, " +
-                                                                      "?, ?, ?, ?, " +
-                                                                      "?, ?, ?, ?, " +
-                                                                      "?" +
-                                                                      ")");
-        Map<String, Object> parameters = job.getParameters();
-        LocalProductionStatus status = job.getStatus();
-        String resultUrlString = "";
-        if (status.getResultUrls() != null) {
-            resultUrlString = constructResultUrlString(status.getResultUrls());
+        String insertSql = "INSERT INTO LocalJob " +
+                           "(" +
+                           "job_id, " +
+                           "process_id, " +
+                           "production_name, " +
+                           "production_type, " +
+                           "geo_region, " +
+                           "source_product_name, " +
+                           "output_format, " +
+                           "target_dir, " +
+                           "processing_state, " +
+                           "processing_progress, " +
+                           "processing_message, " +
+                           "result_urls, " +
+                           "stop_time" +
+                           ") " +
+                           " VALUES " +
+                           "(" +
+                           "?, ?, ?, ?, " +
+                           "?, ?, ?, ?, " +
+                           "?, ?, ?, ?, " +
+                           "?" +
+                           ")";
+        try (PreparedStatement insertJobStmt = connection.prepareStatement(insertSql)) {
+            for (String jobId : jobIds) {
+                LocalJob job = cachedJobs.get(jobId);
+                if (job == null) {
+                    continue;
+                }
+                Map<String, Object> parameters = job.getParameters();
+                LocalProductionStatus status = job.getStatus();
+                String resultUrlString = "";
+                if (status.getResultUrls() != null) {
+                    resultUrlString = constructResultUrlString(status.getResultUrls());
+                }
+                insertJobStmt.setString(1, job.getId());
+                insertJobStmt.setString(2, (String) parameters.get("processId"));
+                insertJobStmt.setString(3, (String) parameters.get("productionName"));
+                insertJobStmt.setString(4, (String) parameters.get("productionType"));
+                insertJobStmt.setString(5, (String) parameters.get("geoRegion"));
+                insertJobStmt.setString(6, (String) parameters.get("sourceProduct"));
+                insertJobStmt.setString(7, (String) parameters.get("outputFormat"));
+                insertJobStmt.setString(8, (String) parameters.get("targetDir"));
+                insertJobStmt.setString(9, status.getState());
+                insertJobStmt.setFloat(10, status.getProgress());
+                insertJobStmt.setString(11, status.getMessage());
+                insertJobStmt.setString(12, resultUrlString);
+                insertJobStmt.setTimestamp(13, status.getStopTime() != null ? new Timestamp(status.getStopTime().getTime()) : null);
+                insertJobStmt.addBatch();
+            }
+            insertJobStmt.executeBatch();
         }
-        insertJobStmt.setString(1, job.getId());
-        insertJobStmt.setString(2, (String) parameters.get("processId"));
-        insertJobStmt.setString(3, (String) parameters.get("productionName"));
-        insertJobStmt.setString(4, (String) parameters.get("productionType"));
-        insertJobStmt.setString(5, (String) parameters.get("geoRegion"));
-        insertJobStmt.setString(6, (String) parameters.get("sourceProduct"));
-        insertJobStmt.setString(7, (String) parameters.get("outputFormat"));
-        insertJobStmt.setString(8, (String) parameters.get("targetDir"));
-        insertJobStmt.setString(9, status.getState());
-        insertJobStmt.setFloat(10, status.getProgress());
-        insertJobStmt.setString(11, status.getMessage());
-        insertJobStmt.setString(12, resultUrlString);
-        insertJobStmt.setTimestamp(13, status.getStopTime() != null ? new Timestamp(status.getStopTime().getTime()) : null);
-        insertJobStmt.executeUpdate();
     }
 
-    private void updateJobStatus(LocalJob job) throws SQLException {
+    private void updateJobStatuses(Set<String> jobIds) throws SQLException {
+        if (jobIds.isEmpty()) {
+            return;
+        }
         @SuppressWarnings("SqlNoDataSourceInspection")
-        PreparedStatement updateJobStmt = connection.prepareStatement("UPDATE LocalJob SET " +
-                                                                      "processing_state=?, " +
-                                                                      "processing_progress=?, " +
-                                                                      "processing_message=?, " +
-                                                                      "result_urls=?, " +
-                                                                      "stop_time=?" +
-                                                                      " WHERE job_id=?");
-        LocalProductionStatus status = job.getStatus();
-        String resultUrlString = "";
-        if (status.getResultUrls() != null) {
-            resultUrlString = constructResultUrlString(status.getResultUrls());
+        String updateSql = "UPDATE LocalJob SET " +
+                           "processing_state=?, " +
+                           "processing_progress=?, " +
+                           "processing_message=?, " +
+                           "result_urls=?, " +
+                           "stop_time=?" +
+                           " WHERE job_id=?";
+        try (PreparedStatement updateJobStmt = connection.prepareStatement(updateSql)) {
+            for (String jobId : jobIds) {
+                LocalJob job = cachedJobs.get(jobId);
+                if (job == null) {
+                    continue;
+                }
+                LocalProductionStatus status = job.getStatus();
+                String resultUrlString = "";
+                if (status.getResultUrls() != null) {
+                    resultUrlString = constructResultUrlString(status.getResultUrls());
+                }
+                updateJobStmt.setString(1, status.getState());
+                updateJobStmt.setFloat(2, status.getProgress());
+                updateJobStmt.setString(3, status.getMessage());
+                updateJobStmt.setString(4, resultUrlString);
+                updateJobStmt.setTimestamp(5, status.getStopTime() != null ? new Timestamp(status.getStopTime().getTime()) : null);
+                updateJobStmt.setString(6, job.getId());
+                updateJobStmt.addBatch();
+            }
+            updateJobStmt.executeBatch();
         }
-        updateJobStmt.setString(1, status.getState());
-        updateJobStmt.setFloat(2, status.getProgress());
-        updateJobStmt.setString(3, status.getMessage());
-        updateJobStmt.setString(4, resultUrlString);
-        updateJobStmt.setTimestamp(5, status.getStopTime() != null ? new Timestamp(status.getStopTime().getTime()) : null);
-        updateJobStmt.setString(6, job.getId());
-        updateJobStmt.executeUpdate();
     }
 
     private String constructResultUrlString(List<String> resultUrls) {
@@ -227,11 +305,19 @@ public class SqlStore {
         return resultUrlString.replaceAll(",$", "");
     }
 
-    private void deleteJob(String jobId) throws SQLException {
+    private void deleteJobs(Set<String> jobIds) throws SQLException {
+        if (jobIds.isEmpty()) {
+            return;
+        }
         @SuppressWarnings("SqlNoDataSourceInspection")
-        PreparedStatement deleteJobStmt = connection.prepareStatement("DELETE FROM LocalJob WHERE job_id=?");
-        deleteJobStmt.setString(1, jobId);
-        deleteJobStmt.executeUpdate();
+        String deleteSql = "DELETE FROM LocalJob WHERE job_id=?";
+        try (PreparedStatement deleteJobStmt = connection.prepareStatement(deleteSql)) {
+            for (String jobId : jobIds) {
+                deleteJobStmt.setString(1, jobId);
+                deleteJobStmt.addBatch();
+            }
+            deleteJobStmt.executeBatch();
+        }
     }
 
     private void init() throws SQLException, IOException {
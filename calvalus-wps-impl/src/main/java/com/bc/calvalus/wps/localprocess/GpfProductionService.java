@@ -2,6 +2,7 @@ package com.bc.calvalus.wps.localprocess;
 
 import com.bc.calvalus.commons.DateUtils;
 import com.bc.calvalus.wps.exceptions.SqlStoreException;
+import com.bc.wps.utilities.PropertiesWrapper;
 import com.bc.wps.utilities.WpsLogger;
 import com.bc.wps.utilities.WpsServletContainer;
 
@@ -9,8 +10,9 @@ import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import java.io.File;
 import java.util.Date;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,19 +21,43 @@ import java.util.logging.Logger;
  */
 public class GpfProductionService implements ServletContextListener {
 
-    private static ExecutorService worker;
+    private static final int DEFAULT_WORKER_THREADS = 4;
+
+    private static ThreadPoolExecutor worker;
     private static LocalProductionService productionService;
     private static Logger logger = WpsLogger.getLogger();
 
-    synchronized static ExecutorService getWorker() {
+    synchronized static ThreadPoolExecutor getWorker() {
         if (worker == null) {
-            logger.log(Level.INFO, "registering GpfProductionService");
+            int workerThreads = (int) PropertiesWrapper.getLong("local.process.threads", DEFAULT_WORKER_THREADS);
+            logger.log(Level.INFO, "registering GpfProductionService with " + workerThreads + " worker threads");
             WpsServletContainer.addServletContextListener(new GpfProductionService());
-            worker = Executors.newFixedThreadPool(4);
+            worker = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
         }
         return worker;
     }
 
+    /**
+     * @return the number of threads running local processes
+     */
+    public synchronized static int getWorkerPoolSize() {
+        return worker != null ? worker.getCorePoolSize() : 0;
+    }
+
+    /**
+     * @return the number of local processes running at the moment
+     */
+    public synchronized static int getActiveJobCount() {
+        return worker != null ? worker.getActiveCount() : 0;
+    }
+
+    /**
+     * @return the number of local processes waiting for a worker thread
+     */
+    public synchronized static int getQueuedJobCount() {
+        return worker != null ? worker.getQueue().size() : 0;
+    }
+
     public synchronized static LocalProductionService getProductionServiceSingleton() throws SqlStoreException {
         if (productionService == null) {
             productionService = createProductionService();
@@ -217,7 +217,10 @@ class LocalProduction {
         productionService.addJob(job);
         GpfTask gpfTask = new GpfTask(localFacade, processBuilder);
         GpfProductionService.getWorker().submit(gpfTask);
-        logger.log(Level.INFO, "[" + processBuilder.getJobId() + "] job has been queued...");
+        logger.log(Level.INFO, "[" + processBuilder.getJobId() + "] job has been queued (" +
+                               GpfProductionService.getQueuedJobCount() + " waiting, " +
+                               GpfProductionService.getActiveJobCount() + " of " +
+                               GpfProductionService.getWorkerPoolSize() + " workers busy)...");
         return status;
     }
 
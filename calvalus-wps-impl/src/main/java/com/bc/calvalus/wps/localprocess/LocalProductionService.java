@@ -14,7 +14,7 @@ public class LocalProductionService {
         this.localJobStore = localJobStore;
     }
 
-    public synchronized LocalJob[] getJobs() {
+    public LocalJob[] getJobs() {
         return localJobStore.getJobs();
     }
 
@@ -0,0 +1,115 @@
+package com.bc.calvalus.wps.db;
+
+import com.bc.calvalus.commons.ProcessState;
+import com.bc.calvalus.wps.exceptions.SqlStoreException;
+import com.bc.calvalus.wps.localprocess.LocalJob;
+import com.bc.calvalus.wps.localprocess.LocalProductionStatus;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SqlStoreTest {
+
+    @Test
+    public void testOnlyChangedJobsArePersisted() throws Exception {
+        SqlStore store = openStore(true);
+        LocalJob job1 = createJob("job1");
+        store.addJob(job1);
+        store.addJob(createJob("job2"));
+        assertEquals(2, store.getChangedJobCount());
+        store.persist();
+        assertEquals(0, store.getChangedJobCount());
+
+        job1.getStatus().setState(ProcessState.COMPLETED);
+        job1.getStatus().setProgress(100);
+        job1.getStatus().setResultUrls(Collections.singletonList("http://result/job1.zip"));
+        store.updateJob(job1);
+        assertEquals(1, store.getChangedJobCount());
+        store.persist();
+        store.close();
+
+        store = openStore(false);
+        assertEquals(2, store.getJobs().length);
+        assertEquals("COMPLETED", store.getJob("job1").getStatus().getState());
+        assertEquals("http://result/job1.zip", store.getJob("job1").getStatus().getResultUrls().get(0));
+        assertEquals("SCHEDULED", store.getJob("job2").getStatus().getState());
+        store.close();
+    }
+
+    @Test
+    public void testAddUpdateAndRemoveBeforePersist() throws Exception {
+        SqlStore store = openStore(true);
+        LocalJob job1 = createJob("job1");
+        store.addJob(job1);
+        job1.getStatus().setState(ProcessState.RUNNING);
+        store.updateJob(job1);
+        store.addJob(createJob("job2"));
+        store.removeJob("job2");
+        assertNull(store.getJob("job2"));
+        store.persist();
+        store.close();
+
+        store = openStore(false);
+        assertEquals(1, store.getJobs().length);
+        assertEquals("RUNNING", store.getJob("job1").getStatus().getState());
+        store.removeJob("job1");
+        store.persist();
+        store.close();
+
+        store = openStore(false);
+        assertEquals(0, store.getJobs().length);
+        store.close();
+    }
+
+    @Test
+    public void testFailingBatchIsRolledBack() throws Exception {
+        SqlStore store = openStore(true);
+        store.addJob(createJob("job1"));
+        store.addJob(createJob("job2"));
+        store.persist();
+
+        store.removeJob("job2");
+        LocalJob invalidJob = createJob("job3");
+        invalidJob.getParameters().remove("processId");
+        store.addJob(invalidJob);
+        try {
+            store.persist();
+            fail("SqlStoreException expected");
+        } catch (SqlStoreException expected) {
+            // process_id must not be null
+        }
+        assertEquals(2, store.getChangedJobCount());
+        store.close();
+
+        store = openStore(false);
+        assertEquals(2, store.getJobs().length);
+        assertNotNull(store.getJob("job2"));
+        assertNull(store.getJob("job3"));
+        store.close();
+    }
+
+    private static SqlStore openStore(boolean init) throws Exception {
+        return SqlStore.create("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:calwps-test", "SA", "", init);
+    }
+
+    private static LocalJob createJob(String jobId) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("processId", "subset");
+        parameters.put("productionName", "production " + jobId);
+        parameters.put("productionType", "L2Plus");
+        parameters.put("geoRegion", "POLYGON((0 0, 1 0, 1 1, 0 1, 0 0))");
+        parameters.put("sourceProduct", "MER_RR.N1");
+        parameters.put("outputFormat", "NetCDF4-CF");
+        parameters.put("targetDir", "/tmp/" + jobId);
+        LocalProductionStatus status = new LocalProductionStatus(jobId, ProcessState.SCHEDULED, 0,
+                                                                 "The request has been queued.", null);
+        return new LocalJob(jobId, parameters, status);
+    }
+}